@@ -0,0 +1,106 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.khartec.waltz.benchmarks;
+
+import com.khartec.waltz.model.EntityReference;
+import com.khartec.waltz.model.application.Application;
+import com.khartec.waltz.model.authoritativesource.AuthoritativeRatingVantagePoint;
+import com.khartec.waltz.model.datatype.DataType;
+import com.khartec.waltz.service.authoritative_source.AuthoritativeSourceResolver;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Building the authoritative source lookup structure and resolving
+ * ratings from it, as done when (re)calculating flow ratings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuthoritativeSourceResolverBenchmark {
+
+    private static final int ORG_UNIT_COUNT = 2_000;
+    private static final int LOOKUP_COUNT = 10_000;
+
+    @Param({"10000", "200000"})
+    public int vantagePointCount;
+
+    private List<AuthoritativeRatingVantagePoint> vantagePoints;
+    private AuthoritativeSourceResolver resolver;
+    private List<Lookup> lookups;
+
+
+    @Setup
+    public void setup() {
+        SyntheticData data = new SyntheticData();
+        List<Application> apps = data.mkApplications(20_000, ORG_UNIT_COUNT);
+        List<DataType> dataTypes = data.mkDataTypes(500);
+
+        vantagePoints = data.mkVantagePoints(vantagePointCount, ORG_UNIT_COUNT, dataTypes, apps);
+        resolver = new AuthoritativeSourceResolver(vantagePoints);
+
+        lookups = new ArrayList<>();
+        for (int i = 0; i < LOOKUP_COUNT; i++) {
+            lookups.add(new Lookup(
+                    data.mkOrgUnitRef(ORG_UNIT_COUNT),
+                    data.pick(apps).entityReference(),
+                    data.pick(dataTypes).code()));
+        }
+    }
+
+
+    @Benchmark
+    public AuthoritativeSourceResolver construct() {
+        return new AuthoritativeSourceResolver(vantagePoints);
+    }
+
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void resolve(Blackhole blackhole) {
+        for (Lookup lookup : lookups) {
+            blackhole.consume(resolver.resolve(lookup.vantagePoint, lookup.source, lookup.dataTypeCode));
+        }
+    }
+
+
+    private static class Lookup {
+
+        private final EntityReference vantagePoint;
+        private final EntityReference source;
+        private final String dataTypeCode;
+
+        private Lookup(EntityReference vantagePoint, EntityReference source, String dataTypeCode) {
+            this.vantagePoint = vantagePoint;
+            this.source = source;
+            this.dataTypeCode = dataTypeCode;
+        }
+    }
+
+}
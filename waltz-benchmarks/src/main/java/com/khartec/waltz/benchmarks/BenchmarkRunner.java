@@ -0,0 +1,61 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.khartec.waltz.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+
+/**
+ * Runs the benchmarks and writes the results as JSON so they can be
+ * compared between releases.
+ * <p>
+ * Usage: <code>java -jar benchmarks.jar [include-regex] [results-file]</code>
+ * <p>
+ * The include regex defaults to all benchmarks and the results file
+ * defaults to <code>jmh-results.json</code>.
+ */
+public class BenchmarkRunner {
+
+    private static final String DEFAULT_RESULTS_FILE = "jmh-results.json";
+
+
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0
+                ? args[0]
+                : BenchmarkRunner.class.getPackage().getName() + ".*";
+
+        String resultsFile = args.length > 1
+                ? args[1]
+                : DEFAULT_RESULTS_FILE;
+
+        ChainedOptionsBuilder options = new OptionsBuilder()
+                .include(include)
+                .resultFormat(ResultFormatType.JSON)
+                .result(resultsFile);
+
+        new Runner(options.build()).run();
+    }
+
+}
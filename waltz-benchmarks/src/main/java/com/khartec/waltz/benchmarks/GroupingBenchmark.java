@@ -0,0 +1,101 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.khartec.waltz.benchmarks;
+
+import com.khartec.waltz.common.CollectionUtilities;
+import com.khartec.waltz.common.MapUtilities;
+import com.khartec.waltz.model.application.Application;
+import com.khartec.waltz.model.data_flow_decorator.LogicalFlowDecorator;
+import com.khartec.waltz.model.datatype.DataType;
+import com.khartec.waltz.model.logical_flow.LogicalFlow;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Grouping and indexing helpers used throughout the services when
+ * assembling responses, run over estate sized collections.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GroupingBenchmark {
+
+    @Param({"10000", "100000"})
+    public int flowCount;
+
+    private List<Application> apps;
+    private List<LogicalFlow> flows;
+    private List<LogicalFlowDecorator> decorators;
+
+
+    @Setup
+    public void setup() {
+        SyntheticData data = new SyntheticData();
+        apps = data.mkApplications(flowCount / 5, 1_000);
+        List<DataType> dataTypes = data.mkDataTypes(500);
+        flows = data.mkLogicalFlows(apps, flowCount);
+        decorators = data.mkDecorators(flows, dataTypes, 3);
+    }
+
+
+    @Benchmark
+    public Map<Long, Collection<Application>> groupAppsByOrgUnit() {
+        return MapUtilities.groupBy(Application::organisationalUnitId, apps);
+    }
+
+
+    @Benchmark
+    public Map<Long, Collection<Long>> groupDecoratorsByFlowId() {
+        return MapUtilities.groupBy(
+                LogicalFlowDecorator::dataFlowId,
+                d -> d.decoratorEntity().id(),
+                decorators);
+    }
+
+
+    @Benchmark
+    public Map<Long, Long> countFlowsBySource() {
+        return MapUtilities.countBy(f -> f.source().id(), flows);
+    }
+
+
+    @Benchmark
+    public Map<Long, LogicalFlow> indexFlowsById() {
+        return MapUtilities.indexBy(f -> f.id().get(), flows);
+    }
+
+
+    @Benchmark
+    public Collection<Long> mapAndFilterFlows() {
+        return CollectionUtilities.map(
+                CollectionUtilities.filter(flows, f -> f.source().id() % 2 == 0),
+                f -> f.target().id());
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.khartec.waltz.benchmarks;
+
+import com.khartec.waltz.common.hierarchy.FlatNode;
+import com.khartec.waltz.common.hierarchy.Forest;
+import com.khartec.waltz.common.hierarchy.HierarchyUtilities;
+import com.khartec.waltz.common.hierarchy.Node;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Hierarchy building as used by the entity and person hierarchy rebuilds.
+ * Sizes range from a typical data type taxonomy to a large HR feed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HierarchyUtilitiesBenchmark {
+
+    private static final int SAMPLE_SIZE = 1_000;
+
+    @Param({"1000", "50000", "300000"})
+    public int size;
+
+    @Param({"8"})
+    public int branchingFactor;
+
+    private List<FlatNode<Long, Long>> flatNodes;
+    private Forest<Long, Long> forest;
+    private List<Node<Long, Long>> sampleNodes;
+
+
+    @Setup
+    public void setup() {
+        SyntheticData data = new SyntheticData();
+        flatNodes = data.mkHierarchy(size, branchingFactor);
+        forest = HierarchyUtilities.toForest(flatNodes);
+
+        List<Node<Long, Long>> allNodes = new ArrayList<>(forest.getAllNodes().values());
+        sampleNodes = new ArrayList<>();
+        for (int i = 0; i < SAMPLE_SIZE; i++) {
+            sampleNodes.add(data.pick(allNodes));
+        }
+    }
+
+
+    @Benchmark
+    public Forest<Long, Long> toForest() {
+        return HierarchyUtilities.toForest(flatNodes);
+    }
+
+
+    @Benchmark
+    public Map<Long, Integer> assignDepths() {
+        return HierarchyUtilities.assignDepths(forest);
+    }
+
+
+    /**
+     * Ancestor lookups for a fixed sample of nodes, the cost per node
+     * grows with the depth of the tree
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void parents(Blackhole blackhole) {
+        for (Node<Long, Long> node : sampleNodes) {
+            blackhole.consume(HierarchyUtilities.parents(node));
+        }
+    }
+
+}
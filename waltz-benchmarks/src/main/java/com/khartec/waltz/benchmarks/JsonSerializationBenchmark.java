@@ -0,0 +1,92 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.khartec.waltz.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import com.fasterxml.jackson.datatype.jsr310.JSR310Module;
+import com.khartec.waltz.model.application.Application;
+import com.khartec.waltz.model.data_flow_decorator.LogicalFlowDecorator;
+import com.khartec.waltz.model.datatype.DataType;
+import com.khartec.waltz.model.logical_flow.LogicalFlow;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Serialization of the larger model payloads returned by the api.  The
+ * mapper is configured in the same way as the one in <code>WebUtilities</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonSerializationBenchmark {
+
+    @Param({"1000", "50000"})
+    public int count;
+
+    private ObjectMapper mapper;
+    private List<Application> applications;
+    private List<LogicalFlow> flows;
+    private List<LogicalFlowDecorator> decorators;
+
+
+    @Setup
+    public void setup() {
+        mapper = new ObjectMapper();
+        mapper.registerModule(new JSR310Module());
+        mapper.registerModule(new Jdk8Module());
+        mapper.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
+
+        SyntheticData data = new SyntheticData();
+        List<DataType> dataTypes = data.mkDataTypes(500);
+
+        applications = data.mkApplications(count, 2_000);
+        flows = data.mkLogicalFlows(applications, count);
+        decorators = data.mkDecorators(flows, dataTypes, 1);
+    }
+
+
+    @Benchmark
+    public String applications() throws JsonProcessingException {
+        return mapper.writeValueAsString(applications);
+    }
+
+
+    @Benchmark
+    public String logicalFlows() throws JsonProcessingException {
+        return mapper.writeValueAsString(flows);
+    }
+
+
+    @Benchmark
+    public String decorators() throws JsonProcessingException {
+        return mapper.writeValueAsString(decorators);
+    }
+
+}
@@ -0,0 +1,190 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.khartec.waltz.benchmarks;
+
+import com.khartec.waltz.data.application.ApplicationDao;
+import com.khartec.waltz.data.application.ApplicationIdSelectionCache;
+import com.khartec.waltz.data.application.ApplicationIdSelectorFactory;
+import com.khartec.waltz.data.application.search.ApplicationSearchDao;
+import com.khartec.waltz.data.authoritative_source.AuthoritativeSourceDao;
+import com.khartec.waltz.data.data_type.DataTypeDao;
+import com.khartec.waltz.data.data_type.DataTypeIdSelectorFactory;
+import com.khartec.waltz.data.entity_alias.EntityAliasDao;
+import com.khartec.waltz.data.entity_tag.EntityTagDao;
+import com.khartec.waltz.data.logical_flow.LogicalFlowDao;
+import com.khartec.waltz.data.measurable.MeasurableIdSelectorFactory;
+import com.khartec.waltz.data.orgunit.OrganisationalUnitIdSelectorFactory;
+import com.khartec.waltz.model.application.Application;
+import com.khartec.waltz.model.authoritativesource.AuthoritativeRatingVantagePoint;
+import com.khartec.waltz.model.data_flow_decorator.LogicalFlowDecorator;
+import com.khartec.waltz.model.datatype.DataType;
+import com.khartec.waltz.model.logical_flow.LogicalFlow;
+import com.khartec.waltz.service.application.ApplicationService;
+import com.khartec.waltz.service.data_flow_decorator.LogicalFlowDecoratorRatingsCalculator;
+import org.jooq.DSLContext;
+import org.jooq.SQLDialect;
+import org.jooq.impl.DSL;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.khartec.waltz.common.MapUtilities.indexBy;
+
+
+/**
+ * Rating calculation for a batch of flow decorators.  The calculator's
+ * data access is replaced with in-memory lookups over synthetic data so
+ * the benchmark measures the calculation itself rather than the database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RatingsCalculatorBenchmark {
+
+    private static final int ORG_UNIT_COUNT = 2_000;
+
+    @Param({"10000", "100000"})
+    public int flowCount;
+
+    private LogicalFlowDecoratorRatingsCalculator calculator;
+    private List<LogicalFlowDecorator> decorators;
+
+
+    @Setup
+    public void setup() {
+        SyntheticData data = new SyntheticData();
+        List<Application> apps = data.mkApplications(20_000, ORG_UNIT_COUNT);
+        List<DataType> dataTypes = data.mkDataTypes(500);
+        List<LogicalFlow> flows = data.mkLogicalFlows(apps, flowCount);
+        List<AuthoritativeRatingVantagePoint> vantagePoints = data.mkVantagePoints(50_000, ORG_UNIT_COUNT, dataTypes, apps);
+
+        decorators = data.mkDecorators(flows, dataTypes, 3);
+
+        DSLContext dsl = DSL.using(SQLDialect.POSTGRES);
+        calculator = new LogicalFlowDecoratorRatingsCalculator(
+                new InMemoryApplicationService(dsl, apps),
+                new InMemoryAuthoritativeSourceDao(dsl, vantagePoints),
+                new InMemoryLogicalFlowDao(dsl, flows),
+                new InMemoryDataTypeDao(dsl, dataTypes));
+    }
+
+
+    @Benchmark
+    public Collection<LogicalFlowDecorator> calculate() {
+        return calculator.calculate(decorators);
+    }
+
+
+    // -- HELPERS ---
+
+    private static class InMemoryApplicationService extends ApplicationService {
+
+        private final Map<Long, Application> appsById;
+
+        private InMemoryApplicationService(DSLContext dsl, List<Application> apps) {
+            super(new ApplicationDao(dsl),
+                    new EntityTagDao(dsl),
+                    new EntityAliasDao(dsl),
+                    new ApplicationSearchDao(dsl),
+                    mkAppIdSelectorFactory(dsl));
+            this.appsById = indexBy(a -> a.id().get(), apps);
+        }
+
+        @Override
+        public List<Application> findByIds(Collection<Long> ids) {
+            return ids.stream()
+                    .map(appsById::get)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+        }
+
+        private static ApplicationIdSelectorFactory mkAppIdSelectorFactory(DSLContext dsl) {
+            OrganisationalUnitIdSelectorFactory orgUnitIdSelectorFactory = new OrganisationalUnitIdSelectorFactory(dsl);
+            return new ApplicationIdSelectorFactory(
+                    dsl,
+                    new ApplicationIdSelectionCache(false, 0, 1, 1),
+                    new DataTypeIdSelectorFactory(dsl),
+                    new MeasurableIdSelectorFactory(dsl, orgUnitIdSelectorFactory),
+                    orgUnitIdSelectorFactory);
+        }
+    }
+
+
+    private static class InMemoryAuthoritativeSourceDao extends AuthoritativeSourceDao {
+
+        private final Map<Long, List<AuthoritativeRatingVantagePoint>> vantagePointsByOrgUnitId;
+
+        private InMemoryAuthoritativeSourceDao(DSLContext dsl, List<AuthoritativeRatingVantagePoint> vantagePoints) {
+            super(dsl);
+            this.vantagePointsByOrgUnitId = vantagePoints
+                    .stream()
+                    .collect(Collectors.groupingBy(vp -> vp.vantagePoint().id()));
+        }
+
+        @Override
+        public List<AuthoritativeRatingVantagePoint> findAuthoritativeRatingVantagePoints(Set<Long> orgIds) {
+            return orgIds.stream()
+                    .flatMap(id -> vantagePointsByOrgUnitId.getOrDefault(id, Collections.emptyList()).stream())
+                    .collect(Collectors.toList());
+        }
+    }
+
+
+    private static class InMemoryLogicalFlowDao extends LogicalFlowDao {
+
+        private final Map<Long, LogicalFlow> flowsById;
+
+        private InMemoryLogicalFlowDao(DSLContext dsl, List<LogicalFlow> flows) {
+            super(dsl);
+            this.flowsById = indexBy(f -> f.id().get(), flows);
+        }
+
+        @Override
+        public List<LogicalFlow> findByFlowIds(Collection<Long> dataFlowIds) {
+            return dataFlowIds.stream()
+                    .map(flowsById::get)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+        }
+    }
+
+
+    private static class InMemoryDataTypeDao extends DataTypeDao {
+
+        private final List<DataType> dataTypes;
+
+        private InMemoryDataTypeDao(DSLContext dsl, List<DataType> dataTypes) {
+            super(dsl);
+            this.dataTypes = dataTypes;
+        }
+
+        @Override
+        public List<DataType> findAll() {
+            return dataTypes;
+        }
+    }
+
+}
@@ -0,0 +1,203 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.khartec.waltz.benchmarks;
+
+import com.khartec.waltz.common.hierarchy.FlatNode;
+import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.model.EntityReference;
+import com.khartec.waltz.model.application.Application;
+import com.khartec.waltz.model.application.ApplicationKind;
+import com.khartec.waltz.model.application.ImmutableApplication;
+import com.khartec.waltz.model.application.LifecyclePhase;
+import com.khartec.waltz.model.authoritativesource.AuthoritativeRatingVantagePoint;
+import com.khartec.waltz.model.authoritativesource.ImmutableAuthoritativeRatingVantagePoint;
+import com.khartec.waltz.model.data_flow_decorator.ImmutableLogicalFlowDecorator;
+import com.khartec.waltz.model.data_flow_decorator.LogicalFlowDecorator;
+import com.khartec.waltz.model.datatype.DataType;
+import com.khartec.waltz.model.datatype.ImmutableDataType;
+import com.khartec.waltz.model.logical_flow.ImmutableLogicalFlow;
+import com.khartec.waltz.model.logical_flow.LogicalFlow;
+import com.khartec.waltz.model.rating.AuthoritativenessRating;
+import com.khartec.waltz.model.rating.RagRating;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import static com.khartec.waltz.model.EntityReference.mkRef;
+
+
+/**
+ * Generates synthetic, but realistically shaped, model objects for the
+ * benchmarks.  All generation is driven by a seeded random so repeated
+ * runs (and runs against different releases) see identical data.
+ */
+public class SyntheticData {
+
+    public static final long SEED = 42L;
+
+    private static final LocalDateTime TIMESTAMP = LocalDateTime.of(2019, 1, 1, 0, 0);
+    private static final AuthoritativenessRating[] AUTH_RATINGS = {
+            AuthoritativenessRating.PRIMARY,
+            AuthoritativenessRating.SECONDARY,
+            AuthoritativenessRating.DISCOURAGED };
+
+    private final Random random;
+
+
+    public SyntheticData() {
+        this(SEED);
+    }
+
+
+    public SyntheticData(long seed) {
+        this.random = new Random(seed);
+    }
+
+
+    /**
+     * Tree with roughly the given branching factor, node ids are
+     * <code>0..size-1</code> and node 0 is the single root.
+     */
+    public List<FlatNode<Long, Long>> mkHierarchy(int size, int branchingFactor) {
+        return LongStream
+                .range(0, size)
+                .mapToObj(id -> new FlatNode<Long, Long>(
+                        id,
+                        id == 0
+                                ? Optional.empty()
+                                : Optional.of((id - 1 - random.nextInt(branchingFactor / 2 + 1)) / branchingFactor),
+                        id))
+                .collect(Collectors.toList());
+    }
+
+
+    public List<Application> mkApplications(int count, int orgUnitCount) {
+        ApplicationKind[] kinds = ApplicationKind.values();
+        LifecyclePhase[] phases = LifecyclePhase.values();
+        RagRating[] ratings = RagRating.values();
+
+        return IntStream
+                .range(0, count)
+                .mapToObj(i -> ImmutableApplication.builder()
+                        .id((long) i)
+                        .name("app-" + i)
+                        .description("Synthetic application " + i)
+                        .assetCode("asset-" + i)
+                        .organisationalUnitId((long) random.nextInt(orgUnitCount))
+                        .applicationKind(kinds[random.nextInt(kinds.length)])
+                        .lifecyclePhase(phases[random.nextInt(phases.length)])
+                        .overallRating(ratings[random.nextInt(ratings.length)])
+                        .build())
+                .collect(Collectors.toList());
+    }
+
+
+    public List<DataType> mkDataTypes(int count) {
+        return IntStream
+                .range(0, count)
+                .mapToObj(i -> ImmutableDataType.builder()
+                        .id((long) i)
+                        .code("DT_" + i)
+                        .name("Data type " + i)
+                        .description("Synthetic data type " + i)
+                        .parentId(i == 0 ? Optional.empty() : Optional.of((long) (i - 1) / 4))
+                        .build())
+                .collect(Collectors.toList());
+    }
+
+
+    /**
+     * Flows between random pairs of distinct applications
+     */
+    public List<LogicalFlow> mkLogicalFlows(List<Application> apps, int count) {
+        return IntStream
+                .range(0, count)
+                .mapToObj(i -> {
+                    int source = random.nextInt(apps.size());
+                    int target = (source + 1 + random.nextInt(apps.size() - 1)) % apps.size();
+                    return ImmutableLogicalFlow.builder()
+                            .id((long) i)
+                            .source(apps.get(source).entityReference())
+                            .target(apps.get(target).entityReference())
+                            .lastUpdatedBy("benchmark")
+                            .lastUpdatedAt(TIMESTAMP)
+                            .build();
+                })
+                .collect(Collectors.toList());
+    }
+
+
+    public List<LogicalFlowDecorator> mkDecorators(List<LogicalFlow> flows,
+                                                   List<DataType> dataTypes,
+                                                   int decoratorsPerFlow) {
+        return flows
+                .stream()
+                .flatMap(f -> random
+                        .ints(0, dataTypes.size())
+                        .distinct()
+                        .limit(Math.min(decoratorsPerFlow, dataTypes.size()))
+                        .mapToObj(dtIdx -> ImmutableLogicalFlowDecorator.builder()
+                                .dataFlowId(f.id().get())
+                                .decoratorEntity(mkRef(EntityKind.DATA_TYPE, dataTypes.get(dtIdx).id().get()))
+                                .rating(AuthoritativenessRating.NO_OPINION)
+                                .lastUpdatedBy("benchmark")
+                                .lastUpdatedAt(TIMESTAMP)
+                                .build()))
+                .collect(Collectors.toList());
+    }
+
+
+    /**
+     * Authoritative source declarations for random (org unit, data type, app)
+     * triples, expanded to the vantage points of the org unit hierarchy in
+     * the way the authoritative source dao does (a deeper declaration outranks
+     * a shallower one).
+     */
+    public List<AuthoritativeRatingVantagePoint> mkVantagePoints(int count,
+                                                                 int orgUnitCount,
+                                                                 List<DataType> dataTypes,
+                                                                 List<Application> apps) {
+        return IntStream
+                .range(0, count)
+                .mapToObj(i -> ImmutableAuthoritativeRatingVantagePoint.builder()
+                        .vantagePoint(mkRef(EntityKind.ORG_UNIT, random.nextInt(orgUnitCount)))
+                        .rank(random.nextInt(5) + 1)
+                        .dataTypeCode(dataTypes.get(random.nextInt(dataTypes.size())).code())
+                        .applicationId(apps.get(random.nextInt(apps.size())).id().get())
+                        .rating(AUTH_RATINGS[random.nextInt(AUTH_RATINGS.length)])
+                        .build())
+                .collect(Collectors.toList());
+    }
+
+
+    public <T> T pick(List<T> ts) {
+        return ts.get(random.nextInt(ts.size()));
+    }
+
+
+    public EntityReference mkOrgUnitRef(int orgUnitCount) {
+        return mkRef(EntityKind.ORG_UNIT, random.nextInt(orgUnitCount));
+    }
+
+}
@@ -110,6 +110,28 @@ public class ListUtilities {
     }
 
 
+    /**
+     * Splits a list into consecutive sub-lists of (at most) the given size.
+     * Useful for batching large writes or keeping <code>IN</code> clauses
+     * under database parameter limits.
+     *
+     * @param ts list of elements to split
+     * @param size maximum size of each partition, must be positive
+     * @param <T> type of elements
+     * @return list of partitions, the final one may be smaller than <code>size</code>
+     */
+    public static <T> List<List<T>> partition(List<T> ts, int size) {
+        checkNotNull(ts, "list must not be null");
+        Checks.checkTrue(size > 0, "size must be positive");
+
+        List<List<T>> partitions = new ArrayList<>();
+        for (int i = 0; i < ts.size(); i += size) {
+            partitions.add(new ArrayList<>(ts.subList(i, Math.min(i + size, ts.size()))));
+        }
+        return partitions;
+    }
+
+
     /**
      * @param ts collection of elements of type T.
      * @param <T> type of elements
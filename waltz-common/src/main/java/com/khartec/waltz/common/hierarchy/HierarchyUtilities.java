@@ -138,6 +138,32 @@ public class HierarchyUtilities {
     }
 
 
+    /**
+     * Returns all descendants of the given node (children, grandchildren etc.),
+     * the start node is not included.  Guards against cycles by never visiting
+     * a node twice.
+     * @param startNode node to start from, not included in output
+     * @param <T> type of the node data
+     * @param <K> type of the node key
+     * @return set of descendant nodes (or empty set)
+     */
+    public static <T, K> Set<Node<T, K>> descendants(Node<T, K> startNode) {
+        Checks.checkNotNull(startNode, "startNode must not be null");
+
+        Set<Node<T, K>> descendants = new HashSet<>();
+        Deque<Node<T, K>> toVisit = new ArrayDeque<>(startNode.getChildren());
+
+        while (! toVisit.isEmpty()) {
+            Node<T, K> node = toVisit.pop();
+            if (node != startNode && descendants.add(node)) {
+                toVisit.addAll(node.getChildren());
+            }
+        }
+
+        return descendants;
+    }
+
+
     public static <T, K> Map<K, Integer> assignDepths(Forest<T, K> forest) {
         return assignDepths(forest.getRootNodes(), 1);
     }
@@ -0,0 +1,61 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.khartec.waltz.common;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static com.khartec.waltz.common.ListUtilities.newArrayList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ListUtilities_partition {
+
+    @Test
+    public void listIsSplitIntoPartitionsOfGivenSize() {
+        List<List<String>> partitions = ListUtilities.partition(newArrayList("a", "b", "c", "d", "e"), 2);
+        assertEquals(3, partitions.size());
+        assertEquals(newArrayList("a", "b"), partitions.get(0));
+        assertEquals(newArrayList("c", "d"), partitions.get(1));
+        assertEquals(newArrayList("e"), partitions.get(2));
+    }
+
+
+    @Test
+    public void emptyListGivesNoPartitions() {
+        assertTrue(ListUtilities.partition(Collections.emptyList(), 10).isEmpty());
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sizeMustBePositive() {
+        ListUtilities.partition(newArrayList("a"), 0);
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void aNullListWillThrowIllegalArgException() {
+        ListUtilities.partition(null, 2);
+    }
+
+}
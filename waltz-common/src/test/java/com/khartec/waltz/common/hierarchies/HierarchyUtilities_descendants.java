@@ -0,0 +1,65 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.khartec.waltz.common.hierarchies;
+
+import com.khartec.waltz.common.SetUtilities;
+import com.khartec.waltz.common.hierarchy.Forest;
+import com.khartec.waltz.common.hierarchy.HierarchyUtilities;
+import com.khartec.waltz.common.hierarchy.Node;
+import org.junit.Test;
+
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+public class HierarchyUtilities_descendants {
+
+    @Test
+    public void descendantsIncludesAllLevelsButNotStartNode() {
+        Forest<Void, String> forest = HierarchyUtilities.toForest(SampleData.TWO_TREES);
+        Set<String> ids = SetUtilities.map(
+                HierarchyUtilities.descendants(forest.getAllNodes().get("a")),
+                Node::getId);
+
+        assertEquals(SetUtilities.asSet("b", "c", "d", "e"), ids);
+    }
+
+
+    @Test
+    public void leafNodesHaveNoDescendants() {
+        Forest<Void, String> forest = HierarchyUtilities.toForest(SampleData.TWO_TREES);
+        assertTrue(HierarchyUtilities.descendants(forest.getAllNodes().get("g")).isEmpty());
+    }
+
+
+    @Test
+    public void cyclesDoNotCauseInfiniteLoop() {
+        Forest<Void, String> forest = HierarchyUtilities.toForest(SampleData.CIRCULAR);
+        Set<String> ids = SetUtilities.map(
+                HierarchyUtilities.descendants(forest.getAllNodes().get("a")),
+                Node::getId);
+
+        assertEquals(SetUtilities.asSet("b", "c"), ids);
+    }
+
+}
@@ -19,34 +19,323 @@
 
 package com.khartec.waltz.data;
 
-import org.springframework.beans.factory.annotation.Autowired;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.Checks.checkTrue;
+
+/**
+ * Executes database work in parallel on behalf of request threads.
+ *
+ * <ul>
+ *     <li>The queue is bounded, when it is full the rejection policy decides
+ *     whether the task runs on the submitting thread (back-pressure) or is
+ *     refused with a <code>RejectedExecutionException</code></li>
+ *     <li>Each submitting (request) thread may only have a limited number of
+ *     tasks in flight, further submissions wait for one of them to finish</li>
+ *     <li>Tasks are given a deadline when submitted, time spent queued counts
+ *     against it.  The remaining time is exposed to the running task (see
+ *     <code>remainingMillis</code>) so it can be applied to jOOQ queries as a
+ *     statement timeout</li>
+ *     <li>Tasks submitted from a pool thread are run directly, avoiding pool
+ *     starvation from nested submissions</li>
+ * </ul>
+ */
 public class DBExecutorPool implements DBExecutorPoolInterface {
 
-    private final ExecutorService executorPool;
+    public enum RejectionPolicy {
+        CALLER_RUNS,
+        ABORT
+    }
+
+
+    private static final Logger LOG = LoggerFactory.getLogger(DBExecutorPool.class);
+    private static final String THREAD_NAME = "DB Executor";
+
+    private static final ThreadLocal<Long> deadline = new ThreadLocal<>();
+
+    private final ThreadPoolExecutor executorPool;
+    private final ThreadLocal<Semaphore> requestPermits;
+    private final int maxTasksPerRequest;
+    private final long taskTimeoutMillis;
+
+    private final AtomicLong submittedCount = new AtomicLong();
+    private final AtomicLong callerRunsCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong timedOutCount = new AtomicLong();
+    private final AtomicLong totalWaitMillis = new AtomicLong();
+    private final AtomicLong maxWaitMillis = new AtomicLong();
+    private final AtomicLong startedCount = new AtomicLong();
+
+
+    public DBExecutorPool(int threads,
+                          int queueSize,
+                          int maxTasksPerRequest,
+                          int taskTimeoutInSeconds,
+                          RejectionPolicy rejectionPolicy) {
+        checkTrue(threads > 0, "threads must be positive");
+        checkTrue(queueSize > 0, "queueSize must be positive");
+        checkTrue(maxTasksPerRequest > 0, "maxTasksPerRequest must be positive");
+        checkTrue(taskTimeoutInSeconds >= 0, "taskTimeoutInSeconds cannot be negative");
+        checkNotNull(rejectionPolicy, "rejectionPolicy cannot be null");
 
+        this.maxTasksPerRequest = maxTasksPerRequest;
+        this.taskTimeoutMillis = TimeUnit.SECONDS.toMillis(taskTimeoutInSeconds);
+        this.requestPermits = ThreadLocal.withInitial(() -> new Semaphore(maxTasksPerRequest));
 
-    @Autowired
-    public DBExecutorPool(int dbPoolMin, int dbPoolMax) {
-        executorPool = Executors.newFixedThreadPool(
-                Integer.max(dbPoolMax / 2, 1),
+        executorPool = new ThreadPoolExecutor(
+                threads,
+                threads,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize),
                 (runnable) -> {
-                    Thread t = new Thread(runnable, "DB Executor");
+                    Thread t = new Thread(runnable, THREAD_NAME);
                     t.setDaemon(true);
                     return t;
-                });
+                },
+                mkRejectedExecutionHandler(rejectionPolicy));
 
+        LOG.info(
+                "Initialising with {} threads, queue size {}, {} tasks per request, {} second timeout, rejection policy: {}",
+                threads,
+                queueSize,
+                maxTasksPerRequest,
+                taskTimeoutInSeconds,
+                rejectionPolicy);
     }
 
 
     @Override
     public <T> Future<T> submit(Callable<T> task) {
-        return executorPool.submit(task);
+        checkNotNull(task, "task cannot be null");
+
+        long submittedAt = System.currentTimeMillis();
+        Long taskDeadline = taskTimeoutMillis > 0
+                ? submittedAt + taskTimeoutMillis
+                : null;
+
+        if (isPoolThread()) {
+            return runDirectly(task);
+        }
+
+        Semaphore permits = requestPermits.get();
+        acquire(permits, taskDeadline);
+
+        submittedCount.incrementAndGet();
+        try {
+            return executorPool.submit(() -> {
+                try {
+                    return runTask(task, submittedAt, taskDeadline);
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+
+    /**
+     * Time left before the deadline of the task running on the current
+     * thread, empty if the thread is not running a pooled task (or the task
+     * has no deadline).
+     */
+    public static Optional<Long> remainingMillis() {
+        return Optional
+                .ofNullable(deadline.get())
+                .map(d -> d - System.currentTimeMillis());
+    }
+
+
+    /**
+     * Stops accepting tasks, tasks already queued are still run.  Later
+     * submissions are rejected regardless of the rejection policy.
+     */
+    public void shutdown() {
+        executorPool.shutdown();
+    }
+
+
+    // -- STATS ---
+
+    public int getPoolSize() {
+        return executorPool.getPoolSize();
+    }
+
+
+    public int getActiveCount() {
+        return executorPool.getActiveCount();
+    }
+
+
+    public int getQueueDepth() {
+        return executorPool.getQueue().size();
+    }
+
+
+    public int getQueueRemainingCapacity() {
+        return executorPool.getQueue().remainingCapacity();
+    }
+
+
+    public int getMaxTasksPerRequest() {
+        return maxTasksPerRequest;
+    }
+
+
+    public long getSubmittedCount() {
+        return submittedCount.get();
+    }
+
+
+    public long getCompletedCount() {
+        return executorPool.getCompletedTaskCount();
+    }
+
+
+    public long getCallerRunsCount() {
+        return callerRunsCount.get();
+    }
+
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+
+    public long getTimedOutCount() {
+        return timedOutCount.get();
+    }
+
+
+    public long getAverageWaitMillis() {
+        long started = startedCount.get();
+        return started == 0
+                ? 0
+                : totalWaitMillis.get() / started;
+    }
+
+
+    public long getMaxWaitMillis() {
+        return maxWaitMillis.get();
+    }
+
+
+    public void resetStats() {
+        submittedCount.set(0);
+        callerRunsCount.set(0);
+        rejectedCount.set(0);
+        timedOutCount.set(0);
+        totalWaitMillis.set(0);
+        maxWaitMillis.set(0);
+        startedCount.set(0);
+    }
+
+
+    // -- HELPERS ---
+
+    private <T> T runTask(Callable<T> task,
+                          long submittedAt,
+                          Long taskDeadline) throws Exception {
+        long now = System.currentTimeMillis();
+        long waited = now - submittedAt;
+        startedCount.incrementAndGet();
+        totalWaitMillis.addAndGet(waited);
+        maxWaitMillis.accumulateAndGet(waited, Math::max);
+
+        if (taskDeadline != null && now >= taskDeadline) {
+            timedOutCount.incrementAndGet();
+            throw new TimeoutException("Task waited " + waited + "ms for a db executor thread, exceeding its deadline");
+        }
+
+        Long previousDeadline = deadline.get();
+        deadline.set(taskDeadline);
+        try {
+            return task.call();
+        } finally {
+            if (previousDeadline == null) {
+                deadline.remove();
+            } else {
+                deadline.set(previousDeadline);
+            }
+        }
+    }
+
+
+    private <T> Future<T> runDirectly(Callable<T> task) {
+        FutureTask<T> future = new FutureTask<>(task);
+        future.run();
+        return future;
+    }
+
+
+    private void acquire(Semaphore permits, Long taskDeadline) {
+        try {
+            if (taskDeadline == null) {
+                permits.acquire();
+            } else {
+                long wait = taskDeadline - System.currentTimeMillis();
+                if (! permits.tryAcquire(wait, TimeUnit.MILLISECONDS)) {
+                    timedOutCount.incrementAndGet();
+                    throw new RejectedExecutionException(String.format(
+                            "Request already has %d db tasks in flight and none completed within the task timeout",
+                            maxTasksPerRequest));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted whilst waiting to submit db task", e);
+        }
+    }
+
+
+    private boolean isPoolThread() {
+        return Thread.currentThread().getName().equals(THREAD_NAME);
+    }
+
+
+    /**
+     * The task will never run, so its future is completed (cancelled) for
+     * anyone already holding it and the submitter is told via the exception
+     */
+    private void rejectShutdown(Runnable runnable) {
+        rejectedCount.incrementAndGet();
+        if (runnable instanceof Future) {
+            ((Future<?>) runnable).cancel(false);
+        }
+        throw new RejectedExecutionException("DB executor has been shut down");
+    }
+
+
+    private RejectedExecutionHandler mkRejectedExecutionHandler(RejectionPolicy rejectionPolicy) {
+        switch (rejectionPolicy) {
+            case CALLER_RUNS:
+                return (runnable, executor) -> {
+                    if (executor.isShutdown()) {
+                        rejectShutdown(runnable);
+                    }
+                    callerRunsCount.incrementAndGet();
+                    runnable.run();
+                };
+            case ABORT:
+                return (runnable, executor) -> {
+                    if (executor.isShutdown()) {
+                        rejectShutdown(runnable);
+                    }
+                    rejectedCount.incrementAndGet();
+                    throw new RejectedExecutionException("DB executor queue is full (" + executor.getQueue().size() + " tasks waiting)");
+                };
+            default:
+                throw new IllegalArgumentException("Unknown rejection policy: " + rejectionPolicy);
+        }
     }
 
 }
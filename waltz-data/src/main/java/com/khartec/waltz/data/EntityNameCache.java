@@ -0,0 +1,209 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.khartec.waltz.data;
+
+import com.khartec.waltz.model.EntityKind;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.Checks.checkTrue;
+
+
+/**
+ * Remembers recently resolved entity names, per entity kind, for the
+ * {@link EntityReferenceNameResolver}.
+ *
+ * Each kind has its own size bounded, least recently used, map of id to
+ * name and entries expire after a configurable ttl.  Names are never
+ * served stale after a write: any write to the table a kind's names are
+ * read from (a rename, but also an insert or delete) should be followed
+ * by a call to `invalidate` for that kind, which drops every cached name
+ * of the kind.  Loads which were already in flight when a kind was
+ * invalidated are returned to their caller but not remembered.
+ */
+public class EntityNameCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EntityNameCache.class);
+
+    private final Map<EntityKind, KindCache> caches = new EnumMap<>(EntityKind.class);
+    private final int maxSizePerKind;
+    private final long ttlInMillis;
+    private final LongSupplier clock;
+
+
+    public EntityNameCache(int maxSizePerKind, int ttlInSeconds) {
+        this(maxSizePerKind, ttlInSeconds, System::currentTimeMillis);
+    }
+
+
+    EntityNameCache(int maxSizePerKind, int ttlInSeconds, LongSupplier clock) {
+        checkTrue(maxSizePerKind >= 0, "maxSizePerKind cannot be negative");
+        checkTrue(ttlInSeconds >= 0, "ttlInSeconds cannot be negative");
+        checkNotNull(clock, "clock cannot be null");
+
+        LOG.info("Initialising entity name cache, maxSizePerKind: {}, ttl: {}s", maxSizePerKind, ttlInSeconds);
+
+        this.maxSizePerKind = maxSizePerKind;
+        this.ttlInMillis = TimeUnit.SECONDS.toMillis(ttlInSeconds);
+        this.clock = clock;
+    }
+
+
+    /**
+     * Returns the names of the given ids, calling the loader (once) for
+     * any which are not cached.  Ids the loader cannot find are absent
+     * from the result and are not remembered, so they will be looked up
+     * again next time.
+     */
+    public Map<Long, String> getAll(EntityKind kind,
+                                    Collection<Long> ids,
+                                    Function<List<Long>, Map<Long, String>> loader) {
+        checkNotNull(kind, "kind cannot be null");
+        checkNotNull(ids, "ids cannot be null");
+        checkNotNull(loader, "loader cannot be null");
+
+        KindCache cache = getCache(kind);
+        long now = clock.getAsLong();
+        long generationAtStart = cache.generation();
+
+        Map<Long, String> names = new HashMap<>(ids.size());
+        List<Long> missing = new ArrayList<>();
+
+        for (Long id : ids) {
+            String name = cache.get(id, now);
+            if (name == null) {
+                missing.add(id);
+            } else {
+                names.put(id, name);
+            }
+        }
+
+        if (! missing.isEmpty()) {
+            Map<Long, String> loaded = loader.apply(missing);
+            cache.putAll(loaded, now + ttlInMillis, generationAtStart);
+            names.putAll(loaded);
+        }
+
+        return names;
+    }
+
+
+    /**
+     * Drops all cached names of the given kind, e.g. after a rename.
+     */
+    public void invalidate(EntityKind kind) {
+        checkNotNull(kind, "kind cannot be null");
+        getCache(kind).clear();
+    }
+
+
+    /**
+     * Drops all cached names, e.g. after bulk updates.
+     */
+    public void clear() {
+        synchronized (caches) {
+            caches.values().forEach(KindCache::clear);
+        }
+    }
+
+
+    int size(EntityKind kind) {
+        return getCache(kind).size();
+    }
+
+
+    // -- HELPERS ---
+
+    private KindCache getCache(EntityKind kind) {
+        synchronized (caches) {
+            return caches.computeIfAbsent(kind, k -> new KindCache(maxSizePerKind));
+        }
+    }
+
+
+    /**
+     * Size bounded, access ordered, map of id to name with per entry expiry.
+     * The generation is bumped on every clear so in flight loads can tell
+     * their results may be stale.
+     */
+    private static class KindCache {
+
+        private final Map<Long, Map.Entry<String, Long>> entries;
+        private long generation = 0;
+
+
+        private KindCache(int maxSize) {
+            this.entries = new LinkedHashMap<Long, Map.Entry<String, Long>>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, Map.Entry<String, Long>> eldest) {
+                    return size() > maxSize;
+                }
+            };
+        }
+
+
+        private synchronized long generation() {
+            return generation;
+        }
+
+
+        private synchronized String get(Long id, long now) {
+            Map.Entry<String, Long> entry = entries.get(id);
+            if (entry == null) {
+                return null;
+            } else if (entry.getValue() <= now) {
+                entries.remove(id);
+                return null;
+            } else {
+                return entry.getKey();
+            }
+        }
+
+
+        private synchronized void putAll(Map<Long, String> names, long expiresAt, long expectedGeneration) {
+            if (generation != expectedGeneration) {
+                return;
+            }
+            names.forEach((id, name) -> {
+                if (name != null) {
+                    entries.put(id, new AbstractMap.SimpleImmutableEntry<>(name, expiresAt));
+                }
+            });
+        }
+
+
+        private synchronized void clear() {
+            entries.clear();
+            generation++;
+        }
+
+
+        private synchronized int size() {
+            return entries.size();
+        }
+    }
+
+}
@@ -19,78 +19,135 @@
 
 package com.khartec.waltz.data;
 
-import com.khartec.waltz.common.ListUtilities;
 import com.khartec.waltz.model.EntityKind;
 import com.khartec.waltz.model.EntityReference;
-import org.jooq.*;
-import org.jooq.impl.DSL;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Table;
+import org.jooq.lambda.tuple.Tuple3;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
-import java.util.Collections;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
 
 import static com.khartec.waltz.common.Checks.checkNotNull;
 import static com.khartec.waltz.common.CollectionUtilities.maybeFirst;
-import static com.khartec.waltz.common.ListUtilities.map;
 import static com.khartec.waltz.common.ListUtilities.newArrayList;
+import static com.khartec.waltz.common.ListUtilities.partition;
 import static com.khartec.waltz.model.EntityReference.mkRef;
+import static java.util.stream.Collectors.*;
 
 /**
  * Service which takes a list of entity references and returns a list
  * enriched with entity names.
+ *
+ * References are grouped by kind and resolved with a single <code>IN</code>
+ * query per kind (split into batches to stay within driver parameter limits).
+ * Recently resolved names are kept in the {@link EntityNameCache}, which is
+ * invalidated per kind whenever the table holding the kind's names is
+ * written to, so renames are seen straight away.
  */
 @Repository
 public class EntityReferenceNameResolver {
 
-    private final DSLContext dsl;
+    private static final int MAX_IDS_PER_QUERY = 1000;
+
+
+    /**
+     * Looks up the names of the given ids of a kind.  Returns empty if
+     * names of the kind cannot be resolved, otherwise ids which cannot be
+     * found are absent from the returned map.
+     */
+    @FunctionalInterface
+    interface NameLoader {
+        Optional<Map<Long, String>> load(EntityKind kind, List<Long> ids);
+    }
+
+
+    private final EntityNameCache nameCache;
+    private final NameLoader nameLoader;
+
 
     @Autowired
-    public EntityReferenceNameResolver(DSLContext dsl) {
-        this.dsl = dsl;
+    public EntityReferenceNameResolver(DSLContext dsl, EntityNameCache nameCache) {
+        this(nameCache, mkDatabaseLoader(checkNotNull(dsl, "dsl cannot be null")));
+    }
+
+
+    EntityReferenceNameResolver(EntityNameCache nameCache, NameLoader nameLoader) {
+        checkNotNull(nameCache, "nameCache cannot be null");
+        checkNotNull(nameLoader, "nameLoader cannot be null");
+
+        this.nameCache = nameCache;
+        this.nameLoader = nameLoader;
     }
 
+
     public Optional<EntityReference> resolve(EntityReference ref) {
         return maybeFirst(resolve(newArrayList(ref)));
     }
 
+
+    /**
+     * Returns a reference (with name) for each of the given refs, in the same order.
+     * If an entity cannot be found, or its kind is not supported, the name will be empty.
+     */
     public List<EntityReference> resolve(List<EntityReference> refs) {
         checkNotNull(refs, "refs cannot be null");
-        
-        Field<Long> idField = DSL.field("tref_id", Long.class);
-        Field<String> kindField = DSL.field("tref_kind", String.class);
-
-        Field<String> nameField = InlineSelectFieldFactory.mkNameField(
-                idField,
-                kindField);
-
-        List<SelectSelectStep<Record2<String, Long>>> parts = map(
-                refs,
-                r -> DSL.select(
-                        DSL.val(r.kind().name()).as(kindField),
-                        DSL.val(r.id()).as(idField)));
-
-
-        if (parts.size() > 0) {
-            SelectSelectStep<Record2<String, Long>> firstPart = parts.get(0);
-            if (parts.size() > 1) {
-                List<SelectSelectStep<Record2<String, Long>>> tail = ListUtilities.drop(parts, 1);
-                tail.forEach(part -> firstPart.union(part));
-            }
-
-            Table<Record2<String, Long>> tempRefs = firstPart.asTable("temp_refs");
-            return dsl
-                    .select(idField, kindField, nameField)
-                    .from(tempRefs)
-                    .fetch(r -> mkRef(
-                            EntityKind.valueOf(r.get(kindField)),
-                            r.get(idField),
-                            r.get(nameField)));
-        } else {
-            return Collections.emptyList();
-        }
 
+        Map<EntityKind, Set<Long>> idsByKind = refs
+                .stream()
+                .collect(groupingBy(
+                        EntityReference::kind,
+                        () -> new EnumMap<>(EntityKind.class),
+                        mapping(EntityReference::id, toSet())));
+
+        Map<EntityKind, Map<Long, String>> namesByKind = new EnumMap<>(EntityKind.class);
+        idsByKind.forEach((kind, ids) -> namesByKind.put(
+                kind,
+                nameCache.getAll(
+                        kind,
+                        ids,
+                        missing -> nameLoader
+                                .load(kind, missing)
+                                .orElse(Collections.emptyMap()))));
+
+        return refs
+                .stream()
+                .map(r -> mkRef(
+                        r.kind(),
+                        r.id(),
+                        namesByKind.get(r.kind()).get(r.id())))
+                .collect(toList());
+    }
+
+
+    // -- HELPERS ---
+
+    private static NameLoader mkDatabaseLoader(DSLContext dsl) {
+        return (kind, ids) -> InlineSelectFieldFactory
+                .findNameMapping(kind)
+                .map(mapping -> fetchNames(dsl, mapping, ids));
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private static Map<Long, String> fetchNames(DSLContext dsl,
+                                                Tuple3<Table, Field<Long>, Field<String>> mapping,
+                                                List<Long> ids) {
+        Table table = mapping.v1();
+        Field<Long> idField = mapping.v2();
+        Field<String> nameField = mapping.v3();
+
+        Map<Long, String> names = new HashMap<>(ids.size());
+        for (List<Long> batch : partition(ids, MAX_IDS_PER_QUERY)) {
+            dsl.select(idField, nameField)
+                    .from(table)
+                    .where(idField.in(batch))
+                    .fetch()
+                    .forEach(r -> names.put(r.get(idField), r.get(nameField)));
+        }
+        return names;
     }
 
 }
@@ -61,6 +61,26 @@ public class InlineSelectFieldFactory {
     }
 
 
+    /**
+     * Gives the table, id field and name field used to resolve names of the given kind,
+     * allowing callers to fetch names in bulk rather than per row.
+     */
+    static Optional<Tuple3<Table, Field<Long>, Field<String>>> findNameMapping(EntityKind kind) {
+        return Optional.ofNullable(NAME_RESOLVER.mappings.get(kind));
+    }
+
+
+    /**
+     * Gives the table names are read from for each kind which supports name resolution,
+     * so writes to those tables can be detected.
+     */
+    public static Map<EntityKind, Table<?>> findNameTables() {
+        Map<EntityKind, Table<?>> tables = new EnumMap<>(EntityKind.class);
+        NAME_RESOLVER.mappings.forEach((kind, mapping) -> tables.put(kind, mapping.v1()));
+        return tables;
+    }
+
+
     // --- External Id
 
     public static Field<String> mkExternalIdField(Field<Long> idCompareField,
@@ -26,6 +26,7 @@ import com.khartec.waltz.model.accesslog.ImmutableAccessTime;
 import com.khartec.waltz.schema.tables.records.AccessLogRecord;
 import org.jooq.DSLContext;
 import org.jooq.Field;
+import org.jooq.InsertValuesStep4;
 import org.jooq.Record;
 import org.jooq.RecordMapper;
 import org.jooq.impl.DSL;
@@ -36,6 +37,7 @@ import org.springframework.stereotype.Repository;
 
 import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -85,6 +87,32 @@ public class AccessLogDao {
     }
 
 
+    /**
+     * Writes the entries with a single multi-row insert.  Callers should
+     * keep batches modest as some databases limit the number of bind
+     * values per statement.
+     */
+    public int write(Collection<AccessLog> logEntries) {
+        if (logEntries.isEmpty()) {
+            return 0;
+        }
+
+        InsertValuesStep4<AccessLogRecord, String, String, String, Timestamp> insert = dsl
+                .insertInto(ACCESS_LOG)
+                .columns(ACCESS_LOG.PARAMS, ACCESS_LOG.STATE, ACCESS_LOG.USER_ID, ACCESS_LOG.CREATED_AT);
+
+        for (AccessLog logEntry : logEntries) {
+            insert = insert.values(
+                    logEntry.params(),
+                    logEntry.state(),
+                    logEntry.userId(),
+                    Timestamp.valueOf(logEntry.createdAt()));
+        }
+
+        return insert.execute();
+    }
+
+
     public List<AccessLog> findForUserId(String userId,
                                          Optional<Integer> limit) {
         return dsl.select(ACCESS_LOG.fields())
@@ -0,0 +1,244 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.khartec.waltz.data.application;
+
+import com.khartec.waltz.model.EntityReference;
+import com.khartec.waltz.model.ImmutableEntityReference;
+import com.khartec.waltz.model.application.ApplicationIdSelectionOptions;
+import com.khartec.waltz.model.application.ImmutableApplicationIdSelectionOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.Checks.checkTrue;
+
+
+/**
+ * Holds resolved application id sets keyed by the selection options
+ * which produced them.  Ids are stored as sorted primitive arrays to
+ * keep the footprint small on large estates (~8k apps is ~64kb).
+ *
+ * Entries expire after a configurable ttl and the whole cache is
+ * dropped whenever a write is detected against one of the tables
+ * the selectors depend upon (see `invalidate`).
+ */
+public class ApplicationIdSelectionCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ApplicationIdSelectionCache.class);
+
+    private final Map<ApplicationIdSelectionOptions, CachedSelection> selections = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final boolean enabled;
+    private final long ttlInMillis;
+    private final int maxEntries;
+    private final int maxIds;
+
+
+    /**
+     * A resolved selection. If the selection contained more than
+     * `maxIds` then it is marked as oversized and no ids are retained,
+     * callers should fall back to the original sub-select.
+     */
+    public static class CachedSelection {
+
+        private static final long[] NO_IDS = new long[0];
+
+        private final long[] ids;
+        private final boolean oversized;
+        private final long createdAt;
+
+
+        private CachedSelection(long[] ids, boolean oversized) {
+            this.ids = ids;
+            this.oversized = oversized;
+            this.createdAt = System.currentTimeMillis();
+        }
+
+
+        /**
+         * @return  sorted, distinct application ids (empty if oversized)
+         */
+        public long[] ids() {
+            return ids;
+        }
+
+
+        public boolean isOversized() {
+            return oversized;
+        }
+    }
+
+
+    public ApplicationIdSelectionCache(boolean enabled,
+                                       int ttlInSeconds,
+                                       int maxEntries,
+                                       int maxIds) {
+        checkTrue(ttlInSeconds >= 0, "ttlInSeconds cannot be negative");
+        checkTrue(maxEntries > 0, "maxEntries must be positive");
+        checkTrue(maxIds > 0, "maxIds must be positive");
+
+        LOG.info("Initialising app id selection cache, enabled: {}, ttl: {}s, maxEntries: {}, maxIds: {}",
+                enabled,
+                ttlInSeconds,
+                maxEntries,
+                maxIds);
+
+        this.enabled = enabled;
+        this.ttlInMillis = TimeUnit.SECONDS.toMillis(ttlInSeconds);
+        this.maxEntries = maxEntries;
+        this.maxIds = maxIds;
+    }
+
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+
+    public Optional<CachedSelection> get(ApplicationIdSelectionOptions options) {
+        checkNotNull(options, "options cannot be null");
+
+        if (! enabled) {
+            return Optional.empty();
+        }
+
+        CachedSelection selection = selections.get(mkKey(options));
+        if (selection == null || isExpired(selection)) {
+            misses.incrementAndGet();
+            return Optional.empty();
+        } else {
+            hits.incrementAndGet();
+            return Optional.of(selection);
+        }
+    }
+
+
+    /**
+     * Records the ids resolved for the given options, provided no
+     * invalidation has occurred since `generationAtStart` was obtained
+     * (via `generation()`).  This prevents a slow resolution which started
+     * before a write from repopulating the cache with stale ids.
+     * Oversized selections are never cached.
+     *
+     * @param options  the options used to resolve the ids
+     * @param ids  sorted, distinct application ids
+     * @param generationAtStart  generation observed before resolution began
+     * @return  the selection (which may be marked as oversized)
+     */
+    public CachedSelection put(ApplicationIdSelectionOptions options,
+                               long[] ids,
+                               long generationAtStart) {
+        checkNotNull(options, "options cannot be null");
+        checkNotNull(ids, "ids cannot be null");
+
+        boolean oversized = ids.length > maxIds;
+        CachedSelection selection = new CachedSelection(
+                oversized ? CachedSelection.NO_IDS : ids,
+                oversized);
+
+        if (enabled && ! oversized && generation.get() == generationAtStart) {
+            if (selections.size() >= maxEntries) {
+                evict();
+            }
+            selections.put(mkKey(options), selection);
+        }
+
+        return selection;
+    }
+
+
+    public long generation() {
+        return generation.get();
+    }
+
+
+    public void invalidate() {
+        generation.incrementAndGet();
+        invalidations.incrementAndGet();
+        if (! selections.isEmpty()) {
+            LOG.debug("Invalidating {} cached app id selections", selections.size());
+            selections.clear();
+        }
+    }
+
+
+    public int size() {
+        return selections.size();
+    }
+
+
+    public long hitCount() {
+        return hits.get();
+    }
+
+
+    public long missCount() {
+        return misses.get();
+    }
+
+
+    public long invalidationCount() {
+        return invalidations.get();
+    }
+
+
+    // -- HELPERS ---
+
+    private boolean isExpired(CachedSelection selection) {
+        return System.currentTimeMillis() - selection.createdAt > ttlInMillis;
+    }
+
+
+    private void evict() {
+        selections.values().removeIf(this::isExpired);
+        if (selections.size() >= maxEntries) {
+            selections.clear();
+        }
+    }
+
+
+    /**
+     * Entity references carry optional names/descriptions which do not
+     * affect the selected ids, therefore we strip them from the key.
+     */
+    private static ApplicationIdSelectionOptions mkKey(ApplicationIdSelectionOptions options) {
+        EntityReference ref = options.entityReference();
+        EntityReference keyRef = ImmutableEntityReference.builder()
+                .kind(ref.kind())
+                .id(ref.id())
+                .build();
+
+        return ImmutableApplicationIdSelectionOptions
+                .copyOf(options)
+                .withEntityReference(keyRef);
+    }
+
+}
@@ -34,7 +34,10 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.Objects;
 import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 
 import static com.khartec.waltz.common.Checks.checkNotNull;
 import static com.khartec.waltz.common.Checks.checkTrue;
@@ -61,7 +64,10 @@ public class ApplicationIdSelectorFactory implements Function<ApplicationIdSelec
 
     private static final Logger LOG = LoggerFactory.getLogger(ApplicationIdSelectorFactory.class);
 
+    private static final int MAX_BOUND_IDS = 2000;
+
     private final DSLContext dsl;
+    private final ApplicationIdSelectionCache selectionCache;
     private final DataTypeIdSelectorFactory dataTypeIdSelectorFactory;
     private final MeasurableIdSelectorFactory measurableIdSelectorFactory;
     private final OrganisationalUnitIdSelectorFactory orgUnitIdSelectorFactory;
@@ -78,23 +84,98 @@ public class ApplicationIdSelectorFactory implements Function<ApplicationIdSelec
 
     @Autowired
     public ApplicationIdSelectorFactory(DSLContext dsl,
+                                        ApplicationIdSelectionCache selectionCache,
                                         DataTypeIdSelectorFactory dataTypeIdSelectorFactory,
                                         MeasurableIdSelectorFactory measurableIdSelectorFactory, 
                                         OrganisationalUnitIdSelectorFactory orgUnitIdSelectorFactory) {
         checkNotNull(dsl, "dsl cannot be null");
+        checkNotNull(selectionCache, "selectionCache cannot be null");
         checkNotNull(dataTypeIdSelectorFactory, "dataTypeIdSelectorFactory cannot be null");
         checkNotNull(measurableIdSelectorFactory, "measurableIdSelectorFactory cannot be null");
         checkNotNull(orgUnitIdSelectorFactory, "orgUnitIdSelectorFactory cannot be null");
 
         this.dsl = dsl;
+        this.selectionCache = selectionCache;
         this.dataTypeIdSelectorFactory = dataTypeIdSelectorFactory;
         this.measurableIdSelectorFactory = measurableIdSelectorFactory;
         this.orgUnitIdSelectorFactory = orgUnitIdSelectorFactory;
     }
 
 
+    /**
+     * Returns a selector for the application ids described by the options.
+     *
+     * When the selection cache is enabled the ids are resolved once and
+     * subsequent calls for equivalent options are served from the cached
+     * ids, passed to the database as a single array parameter (or a list of
+     * bound ids where arrays are not supported).  This saves the database
+     * from re-evaluating the (often deeply nested) sub-select in every
+     * downstream query.
+     *
+     * @param options  describes the applications to select
+     * @return  selector returning application ids
+     */
     public Select<Record1<Long>> apply(ApplicationIdSelectionOptions options) {
         checkNotNull(options, "options cannot be null");
+
+        if (! selectionCache.isEnabled() || options.entityReference().kind() == EntityKind.APPLICATION) {
+            return mkSelector(options);
+        }
+
+        ApplicationIdSelectionCache.CachedSelection selection = selectionCache
+                .get(options)
+                .orElseGet(() -> resolve(options));
+
+        return selection.isOversized() || ! canBind(selection.ids())
+                ? mkSelector(options)
+                : mkForIds(selection.ids());
+    }
+
+
+    private ApplicationIdSelectionCache.CachedSelection resolve(ApplicationIdSelectionOptions options) {
+        long generation = selectionCache.generation();
+
+        long[] ids = dsl
+                .fetch(mkSelector(options))
+                .stream()
+                .map(Record1::value1)
+                .filter(Objects::nonNull)
+                .mapToLong(Long::longValue)
+                .distinct()
+                .sorted()
+                .toArray();
+
+        return selectionCache.put(options, ids, generation);
+    }
+
+
+    private boolean supportsArrays() {
+        return dsl.dialect().family() == SQLDialect.POSTGRES;
+    }
+
+
+    /**
+     * Without array parameters each id is bound individually, which must
+     * stay within the driver's parameter limit (e.g. 2100 on SQL Server)
+     */
+    private boolean canBind(long[] ids) {
+        return supportsArrays() || ids.length <= MAX_BOUND_IDS;
+    }
+
+
+    private Select<Record1<Long>> mkForIds(long[] ids) {
+        Condition idCondition = supportsArrays()
+                ? APPLICATION.ID.eq(DSL.any(LongStream.of(ids).boxed().toArray(Long[]::new)))
+                : APPLICATION.ID.in(LongStream.of(ids).boxed().collect(Collectors.toList()));
+
+        return DSL
+                .select(APPLICATION.ID)
+                .from(APPLICATION)
+                .where(idCondition);
+    }
+
+
+    private Select<Record1<Long>> mkSelector(ApplicationIdSelectionOptions options) {
         EntityReference ref = options.entityReference();
         switch (ref.kind()) {
             case ACTOR:
@@ -25,6 +25,7 @@ import com.khartec.waltz.model.EntityLifecycleStatus;
 import com.khartec.waltz.model.EntityReference;
 import com.khartec.waltz.model.attestation.AttestationInstance;
 import com.khartec.waltz.model.attestation.ImmutableAttestationInstance;
+import com.khartec.waltz.schema.tables.records.AttestationInstanceRecipientRecord;
 import com.khartec.waltz.schema.tables.records.AttestationInstanceRecord;
 import org.jooq.*;
 import org.jooq.impl.DSL;
@@ -33,10 +34,11 @@ import org.springframework.stereotype.Repository;
 
 import java.sql.Timestamp;
 import java.time.LocalDateTime;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
+import java.util.stream.Collectors;
 
 import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.ListUtilities.map;
 import static com.khartec.waltz.common.ListUtilities.newArrayList;
 import static com.khartec.waltz.schema.Tables.ATTESTATION_INSTANCE;
 import static com.khartec.waltz.schema.Tables.ATTESTATION_INSTANCE_RECIPIENT;
@@ -174,6 +176,93 @@ public class AttestationInstanceDao {
     }
 
 
+    public int deleteForRun(long attestationRunId) {
+        return dsl.delete(ATTESTATION_INSTANCE)
+                .where(ATTESTATION_INSTANCE.ATTESTATION_RUN_ID.eq(attestationRunId))
+                .execute();
+    }
+
+
+    /**
+     * Creates an instance for each of the given parent entities, along with
+     * its recipients, using batch inserts in a single transaction.  A run has
+     * at most one instance per parent entity, so the generated instance ids
+     * are read back by run and parent entity.
+     * @param recipientsByParentEntity  user ids of the recipients, keyed by parent entity
+     * @return number of recipients created
+     */
+    public int createInstancesWithRecipients(long attestationRunId,
+                                             Map<EntityReference, ? extends Collection<String>> recipientsByParentEntity) {
+        checkNotNull(recipientsByParentEntity, "recipientsByParentEntity cannot be null");
+
+        if (recipientsByParentEntity.isEmpty()) {
+            return 0;
+        }
+
+        Set<String> parentKinds = recipientsByParentEntity
+                .keySet()
+                .stream()
+                .map(ref -> ref.kind().name())
+                .collect(Collectors.toSet());
+
+        Set<Long> parentIds = recipientsByParentEntity
+                .keySet()
+                .stream()
+                .map(EntityReference::id)
+                .collect(Collectors.toSet());
+
+        return dsl.transactionResult(configuration -> {
+            DSLContext txDsl = DSL.using(configuration);
+
+            List<AttestationInstanceRecord> instanceRecords = map(
+                    recipientsByParentEntity.keySet(),
+                    ref -> {
+                        AttestationInstanceRecord record = new AttestationInstanceRecord();
+                        record.setAttestationRunId(attestationRunId);
+                        record.setParentEntityKind(ref.kind().name());
+                        record.setParentEntityId(ref.id());
+                        return record;
+                    });
+
+            txDsl.batchInsert(instanceRecords).execute();
+
+            Map<EntityReference, Long> newInstanceIdsByParent = txDsl
+                    .select(ATTESTATION_INSTANCE.ID, ATTESTATION_INSTANCE.PARENT_ENTITY_KIND, ATTESTATION_INSTANCE.PARENT_ENTITY_ID)
+                    .from(ATTESTATION_INSTANCE)
+                    .where(ATTESTATION_INSTANCE.ATTESTATION_RUN_ID.eq(attestationRunId))
+                    .and(ATTESTATION_INSTANCE.PARENT_ENTITY_KIND.in(parentKinds))
+                    .and(ATTESTATION_INSTANCE.PARENT_ENTITY_ID.in(parentIds))
+                    .and(DSL.notExists(DSL
+                            .selectFrom(ATTESTATION_INSTANCE_RECIPIENT)
+                            .where(ATTESTATION_INSTANCE_RECIPIENT.ATTESTATION_INSTANCE_ID.eq(ATTESTATION_INSTANCE.ID))))
+                    .fetchMap(
+                            r -> EntityReference.mkRef(
+                                    EntityKind.valueOf(r.get(ATTESTATION_INSTANCE.PARENT_ENTITY_KIND)),
+                                    r.get(ATTESTATION_INSTANCE.PARENT_ENTITY_ID)),
+                            r -> r.get(ATTESTATION_INSTANCE.ID));
+
+            List<AttestationInstanceRecipientRecord> recipientRecords = new ArrayList<>();
+            recipientsByParentEntity.forEach((ref, userIds) -> {
+                Long instanceId = newInstanceIdsByParent.get(ref);
+                if (instanceId == null) {
+                    throw new IllegalStateException("Could not find newly created attestation instance for: " + ref);
+                }
+
+                userIds.forEach(userId -> {
+                    AttestationInstanceRecipientRecord record = new AttestationInstanceRecipientRecord();
+                    record.setAttestationInstanceId(instanceId);
+                    record.setUserId(userId);
+                    recipientRecords.add(record);
+                });
+            });
+
+            txDsl.batchInsert(recipientRecords).execute();
+
+            return recipientRecords.size();
+        });
+    }
+
+
     public int cleanupOrphans() {
 
         Select<Record1<Long>> orphanAttestationIds = DSL.selectDistinct(ATTESTATION_INSTANCE.ID)
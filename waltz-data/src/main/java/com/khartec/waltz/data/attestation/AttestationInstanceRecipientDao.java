@@ -21,6 +21,8 @@ package com.khartec.waltz.data.attestation;
 
 import com.khartec.waltz.schema.tables.records.AttestationInstanceRecipientRecord;
 import org.jooq.DSLContext;
+import org.jooq.Record1;
+import org.jooq.Select;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
@@ -53,6 +55,17 @@ public class AttestationInstanceRecipientDao {
     }
 
 
+    public int deleteForRun(long attestationRunId) {
+        Select<Record1<Long>> instanceIdSelector = dsl.select(ATTESTATION_INSTANCE.ID)
+                .from(ATTESTATION_INSTANCE)
+                .where(ATTESTATION_INSTANCE.ATTESTATION_RUN_ID.eq(attestationRunId));
+
+        return dsl.delete(ATTESTATION_INSTANCE_RECIPIENT)
+                .where(ATTESTATION_INSTANCE_RECIPIENT.ATTESTATION_INSTANCE_ID.in(instanceIdSelector))
+                .execute();
+    }
+
+
     public List<String> findRecipientsByRunId(Long id) {
 
         return dsl
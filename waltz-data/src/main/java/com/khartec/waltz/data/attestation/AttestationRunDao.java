@@ -32,10 +32,13 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
 import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.DateTimeUtilities.nowUtc;
 import static com.khartec.waltz.common.DateTimeUtilities.toSqlDate;
 import static com.khartec.waltz.common.ListUtilities.newArrayList;
 import static com.khartec.waltz.common.StringUtilities.join;
@@ -115,6 +118,18 @@ public class AttestationRunDao {
                 .build();
     };
 
+    private static final RecordMapper<Record, AttestationRunIssuance> TO_ISSUANCE_MAPPER = r -> {
+        AttestationRunRecord record = r.into(ATTESTATION_RUN);
+        return ImmutableAttestationRunIssuance.builder()
+                .attestationRunId(record.getId())
+                .status(AttestationRunIssuanceStatus.valueOf(record.getIssuanceStatus()))
+                .totalCount(Optional.ofNullable(record.getIssuanceTotal()))
+                .processedCount(record.getIssuanceProcessed())
+                .lastUpdatedAt(Optional.ofNullable(record.getIssuanceUpdatedAt()).map(Timestamp::toLocalDateTime))
+                .message(Optional.ofNullable(record.getIssuanceMessage()))
+                .build();
+    };
+
     private final DSLContext dsl;
 
 
@@ -199,6 +214,9 @@ public class AttestationRunDao {
         record.setDueDate(toSqlDate(command.dueDate()));
         record.setAttestedEntityKind(command.attestedEntityKind().name());
         record.setAttestedEntityId(command.attestedEntityId().orElse(null));
+        record.setIssuanceStatus(AttestationRunIssuanceStatus.PENDING.name());
+        record.setIssuanceProcessed(0);
+        record.setIssuanceUpdatedAt(Timestamp.valueOf(nowUtc()));
 
         record.insert();
 
@@ -206,10 +224,108 @@ public class AttestationRunDao {
     }
 
 
+    public AttestationRunIssuance getIssuance(long attestationRunId) {
+        return dsl.select(
+                    ATTESTATION_RUN.ID,
+                    ATTESTATION_RUN.ISSUANCE_STATUS,
+                    ATTESTATION_RUN.ISSUANCE_TOTAL,
+                    ATTESTATION_RUN.ISSUANCE_PROCESSED,
+                    ATTESTATION_RUN.ISSUANCE_UPDATED_AT,
+                    ATTESTATION_RUN.ISSUANCE_MESSAGE)
+                .from(ATTESTATION_RUN)
+                .where(ATTESTATION_RUN.ID.eq(attestationRunId))
+                .fetchOne(TO_ISSUANCE_MAPPER);
+    }
+
+
+    /**
+     * @param staleBefore  runs still being issued which have not reported progress
+     *                     since this time are assumed to have been abandoned
+     * @return ids of runs which are waiting to be issued, oldest first
+     */
+    public List<Long> findIssuableRunIds(LocalDateTime staleBefore) {
+        return dsl.select(ATTESTATION_RUN.ID)
+                .from(ATTESTATION_RUN)
+                .where(mkIssuableCondition(staleBefore))
+                .orderBy(ATTESTATION_RUN.ID)
+                .fetch(ATTESTATION_RUN.ID);
+    }
+
+
+    /**
+     * Marks the run as being issued, provided it is still issuable.  The
+     * update is conditional so only one worker (on any node) claims a run.
+     * @return true if the run was claimed by the caller
+     */
+    public boolean claimIssuance(long attestationRunId, LocalDateTime staleBefore) {
+        return dsl.update(ATTESTATION_RUN)
+                .set(ATTESTATION_RUN.ISSUANCE_STATUS, AttestationRunIssuanceStatus.ISSUING.name())
+                .setNull(ATTESTATION_RUN.ISSUANCE_TOTAL)
+                .set(ATTESTATION_RUN.ISSUANCE_PROCESSED, 0)
+                .set(ATTESTATION_RUN.ISSUANCE_UPDATED_AT, Timestamp.valueOf(nowUtc()))
+                .setNull(ATTESTATION_RUN.ISSUANCE_MESSAGE)
+                .where(ATTESTATION_RUN.ID.eq(attestationRunId))
+                .and(mkIssuableCondition(staleBefore))
+                .execute() == 1;
+    }
+
+
+    /**
+     * Returns a failed run to pending so it can be claimed and issued again.
+     * @return true if the run had failed and is now pending
+     */
+    public boolean resetFailedIssuance(long attestationRunId) {
+        return dsl.update(ATTESTATION_RUN)
+                .set(ATTESTATION_RUN.ISSUANCE_STATUS, AttestationRunIssuanceStatus.PENDING.name())
+                .setNull(ATTESTATION_RUN.ISSUANCE_TOTAL)
+                .set(ATTESTATION_RUN.ISSUANCE_PROCESSED, 0)
+                .set(ATTESTATION_RUN.ISSUANCE_UPDATED_AT, Timestamp.valueOf(nowUtc()))
+                .setNull(ATTESTATION_RUN.ISSUANCE_MESSAGE)
+                .where(ATTESTATION_RUN.ID.eq(attestationRunId))
+                .and(ATTESTATION_RUN.ISSUANCE_STATUS.eq(AttestationRunIssuanceStatus.FAILED.name()))
+                .execute() == 1;
+    }
+
+
+    public int updateIssuanceProgress(long attestationRunId, int totalCount, int processedCount) {
+        return dsl.update(ATTESTATION_RUN)
+                .set(ATTESTATION_RUN.ISSUANCE_TOTAL, totalCount)
+                .set(ATTESTATION_RUN.ISSUANCE_PROCESSED, processedCount)
+                .set(ATTESTATION_RUN.ISSUANCE_UPDATED_AT, Timestamp.valueOf(nowUtc()))
+                .where(ATTESTATION_RUN.ID.eq(attestationRunId))
+                .execute();
+    }
+
+
+    public int completeIssuance(long attestationRunId,
+                                AttestationRunIssuanceStatus status,
+                                String message) {
+        checkNotNull(status, "status cannot be null");
+
+        return dsl.update(ATTESTATION_RUN)
+                .set(ATTESTATION_RUN.ISSUANCE_STATUS, status.name())
+                .set(ATTESTATION_RUN.ISSUANCE_UPDATED_AT, Timestamp.valueOf(nowUtc()))
+                .set(ATTESTATION_RUN.ISSUANCE_MESSAGE, message)
+                .where(ATTESTATION_RUN.ID.eq(attestationRunId))
+                .execute();
+    }
+
+
     public int getEntityCount(Select<Record1<Long>> idSelector) {
         Field<Integer> entityCount = DSL.count().as("entity_count");
         return dsl.select(entityCount)
                 .from(idSelector)
                 .fetchOne(r -> r.get(entityCount));
     }
+
+
+    // -- HELPERS ---
+
+    private static Condition mkIssuableCondition(LocalDateTime staleBefore) {
+        checkNotNull(staleBefore, "staleBefore cannot be null");
+
+        return ATTESTATION_RUN.ISSUANCE_STATUS.eq(AttestationRunIssuanceStatus.PENDING.name())
+                .or(ATTESTATION_RUN.ISSUANCE_STATUS.eq(AttestationRunIssuanceStatus.ISSUING.name())
+                        .and(ATTESTATION_RUN.ISSUANCE_UPDATED_AT.lt(Timestamp.valueOf(staleBefore))));
+    }
 }
@@ -24,22 +24,39 @@ import com.khartec.waltz.model.EntityKind;
 import com.khartec.waltz.model.complexity.*;
 import com.khartec.waltz.schema.tables.records.ComplexityScoreRecord;
 import org.jooq.*;
+import org.jooq.impl.DSL;
+import org.jooq.lambda.tuple.Tuple;
+import org.jooq.lambda.tuple.Tuple2;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.schema.tables.ChangeLog.CHANGE_LOG;
 import static com.khartec.waltz.schema.tables.ComplexityScore.COMPLEXITY_SCORE;
+import static com.khartec.waltz.schema.tables.LogicalFlow.LOGICAL_FLOW;
+import static com.khartec.waltz.schema.tables.MeasurableRating.MEASURABLE_RATING;
+import static com.khartec.waltz.schema.tables.ServerUsage.SERVER_USAGE;
 import static java.util.Collections.emptyList;
 
 @Repository
 public class ComplexityScoreDao {
 
+    /** matches the DECIMAL(10,3) score column, used when comparing against stored values */
+    private static final int SCORE_SCALE = 3;
+
     private static final Function<Record, ComplexityScore> TO_COMPLEXITY_SCORE_MAPPER = r -> {
         ComplexityScoreRecord record = r.into(COMPLEXITY_SCORE);
         return ImmutableComplexityScore.builder()
@@ -119,6 +136,125 @@ public class ComplexityScoreDao {
     }
 
 
+    /**
+     * Finds applications whose logical flows, server usages or measurable
+     * ratings have been modified since the given time.  Hard deletes leave no
+     * row to inspect so applications with change log entries in the same
+     * period are included too.
+     * @param since  exclusive lower bound
+     * @return ids of the changed applications
+     */
+    public Set<Long> findChangedAppIds(LocalDateTime since) {
+        checkNotNull(since, "since cannot be null");
+        return dsl
+                .fetch(mkChangedAppIdSelector(since))
+                .intoSet(Record1::value1);
+    }
+
+
+    private Select<Record1<Long>> mkChangedAppIdSelector(LocalDateTime since) {
+        Timestamp sinceTs = Timestamp.valueOf(since);
+        String appKind = EntityKind.APPLICATION.name();
+
+        return DSL.select(LOGICAL_FLOW.SOURCE_ENTITY_ID)
+                .from(LOGICAL_FLOW)
+                .where(LOGICAL_FLOW.SOURCE_ENTITY_KIND.eq(appKind))
+                .and(LOGICAL_FLOW.LAST_UPDATED_AT.gt(sinceTs))
+                .union(DSL.select(LOGICAL_FLOW.TARGET_ENTITY_ID)
+                        .from(LOGICAL_FLOW)
+                        .where(LOGICAL_FLOW.TARGET_ENTITY_KIND.eq(appKind))
+                        .and(LOGICAL_FLOW.LAST_UPDATED_AT.gt(sinceTs)))
+                .union(DSL.select(SERVER_USAGE.ENTITY_ID)
+                        .from(SERVER_USAGE)
+                        .where(SERVER_USAGE.ENTITY_KIND.eq(appKind))
+                        .and(SERVER_USAGE.LAST_UPDATED_AT.gt(sinceTs)))
+                .union(DSL.select(MEASURABLE_RATING.ENTITY_ID)
+                        .from(MEASURABLE_RATING)
+                        .where(MEASURABLE_RATING.ENTITY_KIND.eq(appKind))
+                        .and(MEASURABLE_RATING.LAST_UPDATED_AT.gt(sinceTs)))
+                .union(DSL.select(CHANGE_LOG.PARENT_ID)
+                        .from(CHANGE_LOG)
+                        .where(CHANGE_LOG.PARENT_KIND.eq(appKind))
+                        .and(CHANGE_LOG.CREATED_AT.gt(sinceTs)));
+    }
+
+
+    /**
+     * Brings the stored application scores in line with the given records
+     * within a single transaction, only rows which actually differ are
+     * touched so readers never see a partially populated table.
+     * @param appIds  applications to reconcile, null for all applications
+     * @param records  the complete set of scores for those applications
+     * @return number of rows inserted, updated or deleted
+     */
+    public int replaceScores(Set<Long> appIds,
+                             Collection<ComplexityScoreRecord> records) {
+        checkNotNull(records, "records cannot be null");
+
+        Condition scope = COMPLEXITY_SCORE.ENTITY_KIND.eq(EntityKind.APPLICATION.name())
+                .and(appIds == null
+                        ? DSL.trueCondition()
+                        : COMPLEXITY_SCORE.ENTITY_ID.in(appIds));
+
+        return dsl.transactionResult(configuration -> {
+            DSLContext tx = DSL.using(configuration);
+
+            Map<Tuple2<Long, String>, BigDecimal> existing = tx
+                    .select(COMPLEXITY_SCORE.ENTITY_ID, COMPLEXITY_SCORE.COMPLEXITY_KIND, COMPLEXITY_SCORE.SCORE)
+                    .from(COMPLEXITY_SCORE)
+                    .where(scope)
+                    .fetch()
+                    .stream()
+                    .collect(Collectors.toMap(
+                            r -> Tuple.tuple(r.value1(), r.value2()),
+                            r -> r.value3(),
+                            (s1, s2) -> s1));
+
+            List<ComplexityScoreRecord> inserts = new ArrayList<>();
+            List<ComplexityScoreRecord> updates = new ArrayList<>();
+
+            records.forEach(r -> {
+                BigDecimal current = existing.remove(Tuple.tuple(r.getEntityId(), r.getComplexityKind()));
+                if (current == null) {
+                    inserts.add(r);
+                } else if (current.compareTo(r.getScore().setScale(SCORE_SCALE, RoundingMode.HALF_UP)) != 0) {
+                    updates.add(r);
+                }
+            });
+
+            // anything left no longer has a score
+            Set<Tuple2<Long, String>> deletes = existing.keySet();
+
+            if (! inserts.isEmpty()) {
+                tx.batchInsert(inserts).execute();
+            }
+
+            if (! updates.isEmpty()) {
+                BatchBindStep batch = tx.batch(tx
+                        .update(COMPLEXITY_SCORE)
+                        .set(COMPLEXITY_SCORE.SCORE, (BigDecimal) null)
+                        .where(COMPLEXITY_SCORE.ENTITY_KIND.eq(EntityKind.APPLICATION.name()))
+                        .and(COMPLEXITY_SCORE.ENTITY_ID.eq((Long) null))
+                        .and(COMPLEXITY_SCORE.COMPLEXITY_KIND.eq((String) null)));
+                updates.forEach(r -> batch.bind(r.getScore(), r.getEntityId(), r.getComplexityKind()));
+                batch.execute();
+            }
+
+            if (! deletes.isEmpty()) {
+                BatchBindStep batch = tx.batch(tx
+                        .deleteFrom(COMPLEXITY_SCORE)
+                        .where(COMPLEXITY_SCORE.ENTITY_KIND.eq(EntityKind.APPLICATION.name()))
+                        .and(COMPLEXITY_SCORE.ENTITY_ID.eq((Long) null))
+                        .and(COMPLEXITY_SCORE.COMPLEXITY_KIND.eq((String) null)));
+                deletes.forEach(k -> batch.bind(k.v1, k.v2));
+                batch.execute();
+            }
+
+            return inserts.size() + updates.size() + deletes.size();
+        });
+    }
+
+
     public int deleteAll() {
         return dsl.deleteFrom(COMPLEXITY_SCORE).execute();
     }
@@ -35,6 +35,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
@@ -42,6 +43,7 @@ import java.util.function.Function;
 
 import static com.khartec.waltz.common.Checks.checkNotNull;
 import static com.khartec.waltz.common.ListUtilities.newArrayList;
+import static com.khartec.waltz.common.ListUtilities.partition;
 import static com.khartec.waltz.data.logical_flow.LogicalFlowDao.NOT_REMOVED;
 import static com.khartec.waltz.schema.tables.LogicalFlow.LOGICAL_FLOW;
 import static com.khartec.waltz.schema.tables.LogicalFlowDecorator.LOGICAL_FLOW_DECORATOR;
@@ -79,6 +81,8 @@ public class LogicalFlowDecoratorDao {
         return r;
     };
 
+    private static final int UPDATE_BATCH_SIZE = 1000;
+
     private final DSLContext dsl;
 
 
@@ -269,6 +273,44 @@ public class LogicalFlowDecoratorDao {
     }
 
 
+    /**
+     * Writes just the ratings of the given decorators.  Updates are sent
+     * as batches of a single prepared statement and applied in one
+     * transaction so readers never see a partially updated set of ratings.
+     *
+     * @return the number of decorators written
+     */
+    public int updateRatings(Collection<LogicalFlowDecorator> decorators) {
+        checkNotNull(decorators, "decorators cannot be null");
+        if (decorators.isEmpty()) {
+            return 0;
+        }
+
+        dsl.transaction(configuration -> {
+            DSLContext tx = DSL.using(configuration);
+
+            for (List<LogicalFlowDecorator> batch : partition(new ArrayList<>(decorators), UPDATE_BATCH_SIZE)) {
+                BatchBindStep batchUpdate = tx.batch(tx
+                        .update(LOGICAL_FLOW_DECORATOR)
+                        .set(LOGICAL_FLOW_DECORATOR.RATING, (String) null)
+                        .where(LOGICAL_FLOW_DECORATOR.LOGICAL_FLOW_ID.eq((Long) null))
+                        .and(LOGICAL_FLOW_DECORATOR.DECORATOR_ENTITY_KIND.eq((String) null))
+                        .and(LOGICAL_FLOW_DECORATOR.DECORATOR_ENTITY_ID.eq((Long) null)));
+
+                batch.forEach(d -> batchUpdate.bind(
+                        d.rating().name(),
+                        d.dataFlowId(),
+                        d.decoratorEntity().kind().name(),
+                        d.decoratorEntity().id()));
+
+                batchUpdate.execute();
+            }
+        });
+
+        return decorators.size();
+    }
+
+
     // --- HELPERS ---
 
     private List<LogicalFlowDecorator> findByCondition(Condition condition) {
@@ -0,0 +1,320 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.khartec.waltz.data.email;
+
+
+import com.khartec.waltz.model.email.*;
+import com.khartec.waltz.schema.tables.records.EmailMessageRecord;
+import com.khartec.waltz.schema.tables.records.EmailOutboxRecord;
+import org.jooq.Condition;
+import org.jooq.DSLContext;
+import org.jooq.Record;
+import org.jooq.RecordMapper;
+import org.jooq.impl.DSL;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.DateTimeUtilities.nowUtc;
+import static com.khartec.waltz.common.SetUtilities.fromCollection;
+import static com.khartec.waltz.schema.tables.EmailMessage.EMAIL_MESSAGE;
+import static com.khartec.waltz.schema.tables.EmailOutbox.EMAIL_OUTBOX;
+import static java.util.stream.Collectors.toList;
+
+
+/**
+ * Durable queue of outbound emails.  Message content is stored once
+ * and each recipient has an outbox entry recording its delivery status.
+ * Workers claim due entries with a token (so entries are only sent by
+ * one worker, on any node), send them and then record the outcome.
+ */
+@Repository
+public class EmailOutboxDao {
+
+    private static final RecordMapper<Record, EmailOutboxEntry> TO_ENTRY_MAPPER = r -> {
+        EmailOutboxRecord record = r.into(EMAIL_OUTBOX);
+        return ImmutableEmailOutboxEntry.builder()
+                .id(record.getId())
+                .messageId(record.getMessageId())
+                .recipient(record.getRecipient())
+                .status(EmailDeliveryStatus.valueOf(record.getStatus()))
+                .attempts(record.getAttempts())
+                .nextAttemptAt(record.getNextAttemptAt().toLocalDateTime())
+                .sentAt(Optional.ofNullable(record.getSentAt()).map(Timestamp::toLocalDateTime))
+                .lastError(Optional.ofNullable(record.getLastError()))
+                .build();
+    };
+
+    private static final RecordMapper<Record, EmailMessage> TO_MESSAGE_MAPPER = r -> {
+        EmailMessageRecord record = r.into(EMAIL_MESSAGE);
+        return ImmutableEmailMessage.builder()
+                .id(record.getId())
+                .subject(record.getSubject())
+                .body(record.getBody())
+                .build();
+    };
+
+    private final DSLContext dsl;
+
+
+    @Autowired
+    public EmailOutboxDao(DSLContext dsl) {
+        checkNotNull(dsl, "dsl cannot be null");
+        this.dsl = dsl;
+    }
+
+
+    /**
+     * Queues the message for each recipient.  If an identical message (same
+     * content hash) was queued since <code>dedupeSince</code> it is reused,
+     * and recipients who already have a pending or in flight entry for it
+     * are skipped.  Recipients it has already been sent to are queued again,
+     * as a repeated notification (e.g. for another run) is a new email.
+     * @return number of recipients queued
+     */
+    public int enqueue(String subject,
+                       String body,
+                       String contentHash,
+                       Collection<String> recipients,
+                       LocalDateTime dedupeSince) {
+        checkNotNull(subject, "subject cannot be null");
+        checkNotNull(body, "body cannot be null");
+        checkNotNull(contentHash, "contentHash cannot be null");
+        checkNotNull(recipients, "recipients cannot be null");
+        checkNotNull(dedupeSince, "dedupeSince cannot be null");
+
+        return dsl.transactionResult(configuration -> {
+            DSLContext txDsl = DSL.using(configuration);
+            Timestamp now = Timestamp.valueOf(nowUtc());
+
+            Long messageId = txDsl
+                    .select(EMAIL_MESSAGE.ID)
+                    .from(EMAIL_MESSAGE)
+                    .where(EMAIL_MESSAGE.CONTENT_HASH.eq(contentHash))
+                    .and(EMAIL_MESSAGE.CREATED_AT.ge(Timestamp.valueOf(dedupeSince)))
+                    .orderBy(EMAIL_MESSAGE.ID.desc())
+                    .limit(1)
+                    .fetchOptional(EMAIL_MESSAGE.ID)
+                    .orElseGet(() -> {
+                        EmailMessageRecord record = txDsl.newRecord(EMAIL_MESSAGE);
+                        record.setSubject(subject);
+                        record.setBody(body);
+                        record.setContentHash(contentHash);
+                        record.setCreatedAt(now);
+                        record.store();
+                        return record.getId();
+                    });
+
+            Set<String> alreadyQueued = fromCollection(txDsl
+                    .select(EMAIL_OUTBOX.RECIPIENT)
+                    .from(EMAIL_OUTBOX)
+                    .where(EMAIL_OUTBOX.MESSAGE_ID.eq(messageId))
+                    .and(EMAIL_OUTBOX.STATUS.in(
+                            EmailDeliveryStatus.PENDING.name(),
+                            EmailDeliveryStatus.SENDING.name()))
+                    .fetch(EMAIL_OUTBOX.RECIPIENT));
+
+            List<EmailOutboxRecord> records = findRecipientsToQueue(recipients, alreadyQueued)
+                    .stream()
+                    .map(recipient -> {
+                        EmailOutboxRecord record = new EmailOutboxRecord();
+                        record.setMessageId(messageId);
+                        record.setRecipient(recipient);
+                        record.setStatus(EmailDeliveryStatus.PENDING.name());
+                        record.setAttempts(0);
+                        record.setNextAttemptAt(now);
+                        record.setCreatedAt(now);
+                        return record;
+                    })
+                    .collect(toList());
+
+            if (records.isEmpty()) {
+                return 0;
+            }
+
+            txDsl.batchInsert(records).execute();
+            return records.size();
+        });
+    }
+
+
+    /**
+     * Claims up to <code>limit</code> pending entries which are due, oldest first.
+     * @return the entries claimed with the given token
+     */
+    public List<EmailOutboxEntry> claimDue(String claimToken, int limit) {
+        checkNotNull(claimToken, "claimToken cannot be null");
+
+        Timestamp now = Timestamp.valueOf(nowUtc());
+
+        List<Long> dueIds = dsl
+                .select(EMAIL_OUTBOX.ID)
+                .from(EMAIL_OUTBOX)
+                .where(EMAIL_OUTBOX.STATUS.eq(EmailDeliveryStatus.PENDING.name()))
+                .and(EMAIL_OUTBOX.NEXT_ATTEMPT_AT.le(now))
+                .orderBy(EMAIL_OUTBOX.ID)
+                .limit(limit)
+                .fetch(EMAIL_OUTBOX.ID);
+
+        if (dueIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        dsl.update(EMAIL_OUTBOX)
+                .set(EMAIL_OUTBOX.STATUS, EmailDeliveryStatus.SENDING.name())
+                .set(EMAIL_OUTBOX.CLAIMED_BY, claimToken)
+                .set(EMAIL_OUTBOX.CLAIMED_AT, now)
+                .where(EMAIL_OUTBOX.ID.in(dueIds))
+                .and(EMAIL_OUTBOX.STATUS.eq(EmailDeliveryStatus.PENDING.name()))
+                .execute();
+
+        return dsl
+                .selectFrom(EMAIL_OUTBOX)
+                .where(EMAIL_OUTBOX.CLAIMED_BY.eq(claimToken))
+                .and(EMAIL_OUTBOX.STATUS.eq(EmailDeliveryStatus.SENDING.name()))
+                .orderBy(EMAIL_OUTBOX.ID)
+                .fetch(TO_ENTRY_MAPPER);
+    }
+
+
+    public List<EmailMessage> findMessagesByIds(Collection<Long> messageIds) {
+        checkNotNull(messageIds, "messageIds cannot be null");
+
+        return dsl
+                .selectFrom(EMAIL_MESSAGE)
+                .where(EMAIL_MESSAGE.ID.in(messageIds))
+                .fetch(TO_MESSAGE_MAPPER);
+    }
+
+
+    public int markSent(Collection<Long> entryIds) {
+        return dsl.update(EMAIL_OUTBOX)
+                .set(EMAIL_OUTBOX.STATUS, EmailDeliveryStatus.SENT.name())
+                .set(EMAIL_OUTBOX.ATTEMPTS, EMAIL_OUTBOX.ATTEMPTS.plus(1))
+                .set(EMAIL_OUTBOX.SENT_AT, Timestamp.valueOf(nowUtc()))
+                .setNull(EMAIL_OUTBOX.CLAIMED_BY)
+                .setNull(EMAIL_OUTBOX.LAST_ERROR)
+                .where(mkClaimedCondition(entryIds))
+                .execute();
+    }
+
+
+    /**
+     * Returns the entries to the queue, to be sent again once <code>nextAttemptAt</code> has passed
+     */
+    public int markForRetry(Collection<Long> entryIds, String error, LocalDateTime nextAttemptAt) {
+        checkNotNull(nextAttemptAt, "nextAttemptAt cannot be null");
+
+        return dsl.update(EMAIL_OUTBOX)
+                .set(EMAIL_OUTBOX.STATUS, EmailDeliveryStatus.PENDING.name())
+                .set(EMAIL_OUTBOX.ATTEMPTS, EMAIL_OUTBOX.ATTEMPTS.plus(1))
+                .set(EMAIL_OUTBOX.NEXT_ATTEMPT_AT, Timestamp.valueOf(nextAttemptAt))
+                .setNull(EMAIL_OUTBOX.CLAIMED_BY)
+                .set(EMAIL_OUTBOX.LAST_ERROR, error)
+                .where(mkClaimedCondition(entryIds))
+                .execute();
+    }
+
+
+    public int markFailed(Collection<Long> entryIds, String error) {
+        return dsl.update(EMAIL_OUTBOX)
+                .set(EMAIL_OUTBOX.STATUS, EmailDeliveryStatus.FAILED.name())
+                .set(EMAIL_OUTBOX.ATTEMPTS, EMAIL_OUTBOX.ATTEMPTS.plus(1))
+                .setNull(EMAIL_OUTBOX.CLAIMED_BY)
+                .set(EMAIL_OUTBOX.LAST_ERROR, error)
+                .where(mkClaimedCondition(entryIds))
+                .execute();
+    }
+
+
+    /**
+     * Returns entries claimed before the cutoff, whose worker is assumed to
+     * have died, to the queue.  They are not counted as an attempt.
+     */
+    public int releaseStaleClaims(LocalDateTime claimedBefore) {
+        checkNotNull(claimedBefore, "claimedBefore cannot be null");
+
+        return dsl.update(EMAIL_OUTBOX)
+                .set(EMAIL_OUTBOX.STATUS, EmailDeliveryStatus.PENDING.name())
+                .setNull(EMAIL_OUTBOX.CLAIMED_BY)
+                .where(EMAIL_OUTBOX.STATUS.eq(EmailDeliveryStatus.SENDING.name()))
+                .and(EMAIL_OUTBOX.CLAIMED_AT.lt(Timestamp.valueOf(claimedBefore)))
+                .execute();
+    }
+
+
+    /**
+     * Removes sent and failed entries created before the cutoff, along with
+     * any messages which no longer have entries.
+     * @return number of entries removed
+     */
+    public int removeCompleted(LocalDateTime createdBefore) {
+        checkNotNull(createdBefore, "createdBefore cannot be null");
+
+        Timestamp cutoff = Timestamp.valueOf(createdBefore);
+
+        return dsl.transactionResult(configuration -> {
+            DSLContext txDsl = DSL.using(configuration);
+
+            int removed = txDsl
+                    .deleteFrom(EMAIL_OUTBOX)
+                    .where(EMAIL_OUTBOX.STATUS.in(EmailDeliveryStatus.SENT.name(), EmailDeliveryStatus.FAILED.name()))
+                    .and(EMAIL_OUTBOX.CREATED_AT.lt(cutoff))
+                    .execute();
+
+            txDsl.deleteFrom(EMAIL_MESSAGE)
+                    .where(EMAIL_MESSAGE.CREATED_AT.lt(cutoff))
+                    .and(DSL.notExists(DSL
+                            .selectFrom(EMAIL_OUTBOX)
+                            .where(EMAIL_OUTBOX.MESSAGE_ID.eq(EMAIL_MESSAGE.ID))))
+                    .execute();
+
+            return removed;
+        });
+    }
+
+
+    // -- HELPERS ---
+
+    /**
+     * @return each recipient once, in their original order, skipping those
+     * with an entry for the message which is still to be sent
+     */
+    static List<String> findRecipientsToQueue(Collection<String> recipients, Set<String> alreadyQueued) {
+        return recipients
+                .stream()
+                .distinct()
+                .filter(recipient -> ! alreadyQueued.contains(recipient))
+                .collect(toList());
+    }
+
+
+    private static Condition mkClaimedCondition(Collection<Long> entryIds) {
+        checkNotNull(entryIds, "entryIds cannot be null");
+
+        return EMAIL_OUTBOX.ID.in(entryIds)
+                .and(EMAIL_OUTBOX.STATUS.eq(EmailDeliveryStatus.SENDING.name()));
+    }
+}
@@ -22,21 +22,28 @@ package com.khartec.waltz.data.entity_hierarchy;
 import com.khartec.waltz.data.JooqUtilities;
 import com.khartec.waltz.model.EntityKind;
 import com.khartec.waltz.model.entity_hierarchy.EntityHierarchyItem;
+import com.khartec.waltz.model.entity_hierarchy.ImmutableEntityHierarchyItem;
 import com.khartec.waltz.model.tally.Tally;
 import com.khartec.waltz.schema.tables.EntityHierarchy;
 import com.khartec.waltz.schema.tables.records.EntityHierarchyRecord;
 import org.jooq.DSLContext;
+import org.jooq.Query;
+import org.jooq.RecordMapper;
 import org.jooq.impl.DSL;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static com.khartec.waltz.common.Checks.checkNotNull;
 import static com.khartec.waltz.common.ListUtilities.map;
+import static com.khartec.waltz.common.ListUtilities.partition;
 import static com.khartec.waltz.data.JooqUtilities.TO_STRING_TALLY;
 import static com.khartec.waltz.schema.tables.EntityHierarchy.ENTITY_HIERARCHY;
 
@@ -54,6 +61,16 @@ public class EntityHierarchyDao {
                     item.parentId().orElse(null),
                     item.level());
 
+    private static final RecordMapper<EntityHierarchyRecord, EntityHierarchyItem> TO_DOMAIN_MAPPER =
+            r -> ImmutableEntityHierarchyItem.builder()
+                    .kind(EntityKind.valueOf(r.getKind()))
+                    .id(r.getId())
+                    .parentId(r.getAncestorId())
+                    .level(r.getLevel())
+                    .build();
+
+    private static final int BATCH_SIZE = 1000;
+
     private final DSLContext dsl;
 
     @Autowired
@@ -85,6 +102,65 @@ public class EntityHierarchyDao {
     }
 
 
+    public List<EntityHierarchyItem> findByKindAndIds(EntityKind kind, Collection<Long> ids) {
+        checkNotNull(kind, "kind cannot be null");
+        checkNotNull(ids, "ids cannot be null");
+
+        // chunked to stay within parameter limits of some databases
+        return partition(new ArrayList<>(ids), BATCH_SIZE)
+                .stream()
+                .flatMap(chunk -> dsl
+                        .selectFrom(ENTITY_HIERARCHY)
+                        .where(ENTITY_HIERARCHY.KIND.eq(kind.name()))
+                        .and(ENTITY_HIERARCHY.ID.in(chunk))
+                        .fetch(TO_DOMAIN_MAPPER)
+                        .stream())
+                .collect(Collectors.toList());
+    }
+
+
+    /**
+     * Applies a set of changes to the hierarchy for the given kind within a
+     * single transaction.  Removals are applied before additions, so an item
+     * whose level has changed can be supplied in both collections.
+     *
+     * @param kind  the hierarchy being updated
+     * @param itemsToRemove  existing hierarchy items which are no longer valid
+     * @param itemsToAdd  new hierarchy items
+     * @return  the total number of rows removed and added
+     */
+    public int applyChanges(EntityKind kind,
+                            Collection<EntityHierarchyItem> itemsToRemove,
+                            Collection<EntityHierarchyItem> itemsToAdd) {
+        checkNotNull(kind, "kind cannot be null");
+        checkNotNull(itemsToRemove, "itemsToRemove cannot be null");
+        checkNotNull(itemsToAdd, "itemsToAdd cannot be null");
+
+        List<Query> deletes = map(itemsToRemove, item -> DSL
+                .deleteFrom(ENTITY_HIERARCHY)
+                .where(ENTITY_HIERARCHY.KIND.eq(kind.name()))
+                .and(ENTITY_HIERARCHY.ID.eq(item.id().get()))
+                .and(ENTITY_HIERARCHY.ANCESTOR_ID.eq(item.parentId().get())));
+
+        List<EntityHierarchyRecord> inserts = map(itemsToAdd, ITEM_TO_RECORD_MAPPER);
+
+        LOG.info("Applying hierarchy changes for kind: {}, removing: #{}, adding: #{}",
+                kind,
+                deletes.size(),
+                inserts.size());
+
+        dsl.transaction(configuration -> {
+            DSLContext txDsl = DSL.using(configuration);
+            partition(deletes, BATCH_SIZE)
+                    .forEach(batch -> txDsl.batch(batch).execute());
+            partition(inserts, BATCH_SIZE)
+                    .forEach(batch -> txDsl.batchInsert(batch).execute());
+        });
+
+        return deletes.size() + inserts.size();
+    }
+
+
     public List<Tally<String>> tallyByKind() {
         return JooqUtilities.calculateStringTallies(dsl, eh, eh.KIND, DSL.trueCondition());
     }
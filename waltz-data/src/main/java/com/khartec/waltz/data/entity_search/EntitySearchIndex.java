@@ -0,0 +1,229 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.khartec.waltz.data.entity_search;
+
+import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.model.EntityLifecycleStatus;
+import com.khartec.waltz.model.EntityReference;
+import com.khartec.waltz.model.entity_search.EntitySearchDocument;
+import com.khartec.waltz.model.entity_search.EntitySearchOptions;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Stream;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.StringUtilities.isEmpty;
+import static java.util.Collections.emptyList;
+import static java.util.stream.Collectors.toList;
+
+
+/**
+ * In-memory prefix index over the searchable text of entities, one index per
+ * entity kind.  Each per-kind index is immutable once built and is swapped in
+ * whole, so searches never block on (or see a partially applied) rebuild.
+ *
+ * Every query token must prefix-match a token of the document (mirroring the
+ * `AND` semantics of `plainto_tsquery`).  Matches on primary text are ranked
+ * far above matches on secondary text, in line with the default Postgres
+ * weights for the `A` and `D` categories, and exact token matches rank above
+ * prefix matches.
+ *
+ * Kinds are marked as stale when their underlying tables are written to, it
+ * is up to the caller to rebuild them.
+ */
+public class EntitySearchIndex {
+
+    private static final float PRIMARY_WEIGHT = 1.0F;
+    private static final float SECONDARY_WEIGHT = 0.1F;
+    private static final float PREFIX_MATCH_FACTOR = 0.5F;
+    private static final int MIN_QUERY_LENGTH = 3;
+
+    private final boolean enabled;
+    private final ConcurrentMap<EntityKind, KindIndex> indexes = new ConcurrentHashMap<>();
+    private final Set<EntityKind> staleKinds = ConcurrentHashMap.newKeySet();
+
+
+    public EntitySearchIndex(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+
+    /**
+     * @return true if the kind has never been indexed or has been written to since it was indexed
+     */
+    public boolean needsRebuild(EntityKind kind) {
+        return ! indexes.containsKey(kind) || staleKinds.contains(kind);
+    }
+
+
+    public void markStale(EntityKind kind) {
+        staleKinds.add(kind);
+    }
+
+
+    /**
+     * Replaces the index for the given kind.  Callers should invoke
+     * {@link #beginRebuild(EntityKind)} <em>before</em> reading the documents
+     * so writes made during the load are not lost.
+     */
+    public void replace(EntityKind kind, Collection<EntitySearchDocument> documents) {
+        checkNotNull(kind, "kind cannot be null");
+        checkNotNull(documents, "documents cannot be null");
+        indexes.put(kind, new KindIndex(documents));
+    }
+
+
+    /**
+     * Clears the stale flag for the kind, to be called immediately before
+     * reading the documents for a rebuild.  Any write which happens after this
+     * call will mark the kind as stale again.
+     */
+    public void beginRebuild(EntityKind kind) {
+        staleKinds.remove(kind);
+    }
+
+
+    public int size(EntityKind kind) {
+        KindIndex index = indexes.get(kind);
+        return index == null
+                ? 0
+                : index.documents.length;
+    }
+
+
+    public List<EntityReference> search(EntityKind kind,
+                                        String query,
+                                        EntitySearchOptions options) {
+        checkNotNull(kind, "kind cannot be null");
+        checkNotNull(options, "options cannot be null");
+
+        KindIndex index = indexes.get(kind);
+        if (index == null || isEmpty(query) || query.trim().length() < MIN_QUERY_LENGTH) {
+            return emptyList();
+        }
+
+        List<String> terms = tokenize(query).distinct().collect(toList());
+        if (terms.isEmpty()) {
+            return emptyList();
+        }
+
+        Set<EntityLifecycleStatus> statuses = options.entityLifecycleStatuses().isEmpty()
+                ? EnumSet.allOf(EntityLifecycleStatus.class)
+                : EnumSet.copyOf(options.entityLifecycleStatuses());
+
+        return index.search(terms, statuses, options.limit());
+    }
+
+
+    // -- HELPERS ---
+
+    static Stream<String> tokenize(String text) {
+        return Stream
+                .of(text.toLowerCase().split("[^\\p{L}\\p{N}]+"))
+                .filter(t -> ! t.isEmpty());
+    }
+
+
+    private static class KindIndex {
+
+        private final EntityReference[] documents;
+        private final NavigableMap<String, Map<Integer, Float>> tokens = new TreeMap<>();
+
+
+        private KindIndex(Collection<EntitySearchDocument> searchDocuments) {
+            this.documents = new EntityReference[searchDocuments.size()];
+
+            int docIdx = 0;
+            for (EntitySearchDocument document : searchDocuments) {
+                documents[docIdx] = document.entityReference();
+                addTokens(docIdx, document.primaryText(), PRIMARY_WEIGHT);
+                addTokens(docIdx, document.secondaryText(), SECONDARY_WEIGHT);
+                docIdx++;
+            }
+        }
+
+
+        private void addTokens(int docIdx, List<String> texts, float weight) {
+            texts.stream()
+                    .flatMap(EntitySearchIndex::tokenize)
+                    .forEach(token -> tokens
+                            .computeIfAbsent(token, k -> new HashMap<>())
+                            .merge(docIdx, weight, Math::max));
+        }
+
+
+        private List<EntityReference> search(List<String> terms,
+                                             Set<EntityLifecycleStatus> statuses,
+                                             int limit) {
+            Map<Integer, Float> scores = null;
+
+            for (String term : terms) {
+                Map<Integer, Float> termScores = scoreTerm(term);
+                if (scores == null) {
+                    scores = termScores;
+                } else {
+                    scores.keySet().retainAll(termScores.keySet());
+                    scores.replaceAll((docIdx, score) -> score + termScores.get(docIdx));
+                }
+
+                if (scores.isEmpty()) {
+                    return emptyList();
+                }
+            }
+
+            Map<Integer, Float> finalScores = scores;
+            return finalScores
+                    .keySet()
+                    .stream()
+                    .filter(docIdx -> statuses.contains(documents[docIdx].entityLifecycleStatus()))
+                    .sorted(Comparator
+                            .comparing((Integer docIdx) -> finalScores.get(docIdx))
+                            .reversed()
+                            .thenComparing(docIdx -> documents[docIdx].name().orElse("")))
+                    .limit(limit)
+                    .map(docIdx -> documents[docIdx])
+                    .collect(toList());
+        }
+
+
+        private Map<Integer, Float> scoreTerm(String term) {
+            Map<Integer, Float> termScores = new HashMap<>();
+            tokens.subMap(term, true, term + Character.MAX_VALUE, true)
+                    .forEach((token, postings) -> {
+                        float factor = token.length() == term.length()
+                                ? 1.0F
+                                : PREFIX_MATCH_FACTOR;
+                        postings.forEach((docIdx, weight) -> termScores.merge(
+                                docIdx,
+                                weight * factor,
+                                Math::max));
+                    });
+            return termScores;
+        }
+    }
+
+}
@@ -0,0 +1,186 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.khartec.waltz.data.entity_search;
+
+import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.model.EntityLifecycleStatus;
+import com.khartec.waltz.model.EntityReference;
+import com.khartec.waltz.model.ImmutableEntityReference;
+import com.khartec.waltz.model.entity_search.EntitySearchDocument;
+import com.khartec.waltz.model.entity_search.ImmutableEntitySearchDocument;
+import org.jooq.Condition;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Table;
+import org.jooq.impl.DSL;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.SetUtilities.asSet;
+import static com.khartec.waltz.schema.Tables.*;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.stream.Collectors.toList;
+
+
+/**
+ * Loads the searchable text of entities for the {@link EntitySearchIndex}.
+ * The fields mirror those used (and weighted) by the vendor specific full
+ * text searches.
+ */
+@Repository
+public class EntitySearchIndexDao {
+
+    public static final Set<EntityKind> INDEXED_KINDS = asSet(
+            EntityKind.ACTOR,
+            EntityKind.APPLICATION,
+            EntityKind.CHANGE_INITIATIVE,
+            EntityKind.DATA_TYPE,
+            EntityKind.LOGICAL_DATA_ELEMENT,
+            EntityKind.MEASURABLE,
+            EntityKind.ORG_UNIT,
+            EntityKind.PERSON,
+            EntityKind.ROADMAP,
+            EntityKind.SERVER);
+
+    private final DSLContext dsl;
+
+
+    @Autowired
+    public EntitySearchIndexDao(DSLContext dsl) {
+        checkNotNull(dsl, "dsl cannot be null");
+        this.dsl = dsl;
+    }
+
+
+    /**
+     * @return the searchable documents for the kind, empty if the kind is not one of {@link #INDEXED_KINDS}
+     */
+    public List<EntitySearchDocument> findDocuments(EntityKind kind) {
+        checkNotNull(kind, "kind cannot be null");
+
+        switch (kind) {
+            case ACTOR:
+                return fetchDocuments(kind, ACTOR, ACTOR.ID, ACTOR.NAME, ACTOR.DESCRIPTION,
+                        null, DSL.trueCondition());
+            case APPLICATION:
+                return fetchDocuments(kind, APPLICATION, APPLICATION.ID, APPLICATION.NAME, APPLICATION.DESCRIPTION,
+                        APPLICATION.ENTITY_LIFECYCLE_STATUS, DSL.trueCondition(),
+                        APPLICATION.ASSET_CODE, APPLICATION.PARENT_ASSET_CODE);
+            case CHANGE_INITIATIVE:
+                return fetchDocuments(kind, CHANGE_INITIATIVE, CHANGE_INITIATIVE.ID, CHANGE_INITIATIVE.NAME, CHANGE_INITIATIVE.DESCRIPTION,
+                        null, DSL.trueCondition(),
+                        CHANGE_INITIATIVE.EXTERNAL_ID);
+            case DATA_TYPE:
+                return fetchDocuments(kind, DATA_TYPE, DATA_TYPE.ID, DATA_TYPE.NAME, DATA_TYPE.DESCRIPTION,
+                        null, DSL.trueCondition(),
+                        DATA_TYPE.CODE);
+            case LOGICAL_DATA_ELEMENT:
+                return fetchDocuments(kind, LOGICAL_DATA_ELEMENT, LOGICAL_DATA_ELEMENT.ID, LOGICAL_DATA_ELEMENT.NAME, LOGICAL_DATA_ELEMENT.DESCRIPTION,
+                        LOGICAL_DATA_ELEMENT.ENTITY_LIFECYCLE_STATUS, DSL.trueCondition(),
+                        LOGICAL_DATA_ELEMENT.EXTERNAL_ID);
+            case MEASURABLE:
+                return fetchDocuments(kind, MEASURABLE, MEASURABLE.ID, MEASURABLE.NAME, MEASURABLE.DESCRIPTION,
+                        MEASURABLE.ENTITY_LIFECYCLE_STATUS, DSL.trueCondition(),
+                        MEASURABLE.EXTERNAL_ID);
+            case ORG_UNIT:
+                return fetchDocuments(kind, ORGANISATIONAL_UNIT, ORGANISATIONAL_UNIT.ID, ORGANISATIONAL_UNIT.NAME, ORGANISATIONAL_UNIT.DESCRIPTION,
+                        null, DSL.trueCondition());
+            case PERSON:
+                return fetchDocuments(kind, PERSON, PERSON.ID, PERSON.DISPLAY_NAME, PERSON.TITLE,
+                        null, PERSON.IS_REMOVED.isFalse());
+            case ROADMAP:
+                return fetchDocuments(kind, ROADMAP, ROADMAP.ID, ROADMAP.NAME, ROADMAP.DESCRIPTION,
+                        ROADMAP.ENTITY_LIFECYCLE_STATUS, DSL.trueCondition());
+            case SERVER:
+                return fetchDocuments(kind, SERVER_INFORMATION, SERVER_INFORMATION.ID, SERVER_INFORMATION.HOSTNAME, SERVER_INFORMATION.OPERATING_SYSTEM,
+                        null, DSL.trueCondition(),
+                        SERVER_INFORMATION.EXTERNAL_ID, SERVER_INFORMATION.LOCATION);
+            default:
+                return emptyList();
+        }
+    }
+
+
+    /**
+     * @param lifecycleStatusField  may be null, in which case all entities are treated as `ACTIVE`
+     * @param additionalPrimaryFields  codes and identifiers ranked alongside the name
+     */
+    @SafeVarargs
+    private final List<EntitySearchDocument> fetchDocuments(EntityKind kind,
+                                                            Table<?> table,
+                                                            Field<Long> idField,
+                                                            Field<String> nameField,
+                                                            Field<String> secondaryField,
+                                                            Field<String> lifecycleStatusField,
+                                                            Condition condition,
+                                                            Field<String>... additionalPrimaryFields) {
+        List<Field<?>> fields = new ArrayList<>(asList(idField, nameField, secondaryField));
+        fields.addAll(asList(additionalPrimaryFields));
+        if (lifecycleStatusField != null) {
+            fields.add(lifecycleStatusField);
+        }
+
+        return dsl
+                .select(fields)
+                .from(table)
+                .where(condition)
+                .fetch(r -> {
+                    String name = r.get(nameField);
+                    String secondaryText = r.get(secondaryField);
+
+                    EntityLifecycleStatus lifecycleStatus = lifecycleStatusField == null
+                            ? EntityLifecycleStatus.ACTIVE
+                            : EntityLifecycleStatus.valueOf(r.get(lifecycleStatusField));
+
+                    EntityReference ref = ImmutableEntityReference.builder()
+                            .kind(kind)
+                            .id(r.get(idField))
+                            .name(Optional.ofNullable(name))
+                            .description(secondaryText)
+                            .entityLifecycleStatus(lifecycleStatus)
+                            .build();
+
+                    List<String> primaryText = Stream
+                            .concat(
+                                Stream.of(name),
+                                Stream.of(additionalPrimaryFields).map(f -> r.get(f)))
+                            .filter(Objects::nonNull)
+                            .collect(toList());
+
+                    return ImmutableEntitySearchDocument.builder()
+                            .entityReference(ref)
+                            .primaryText(primaryText)
+                            .secondaryText(Optional.ofNullable(secondaryText)
+                                    .map(t -> asList(t))
+                                    .orElse(new ArrayList<>()))
+                            .build();
+                });
+    }
+
+}
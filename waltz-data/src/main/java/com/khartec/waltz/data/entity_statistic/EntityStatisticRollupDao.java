@@ -0,0 +1,515 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.khartec.waltz.data.entity_statistic;
+
+import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.model.EntityLifecycleStatus;
+import com.khartec.waltz.model.EntityReference;
+import com.khartec.waltz.model.HierarchyQueryScope;
+import com.khartec.waltz.model.application.ApplicationIdSelectionOptions;
+import com.khartec.waltz.model.application.ApplicationKind;
+import com.khartec.waltz.model.entity_statistic.EntityStatisticRollupStatus;
+import com.khartec.waltz.model.entity_statistic.ImmutableEntityStatisticRollupStatus;
+import com.khartec.waltz.model.entity_statistic.RollupKind;
+import com.khartec.waltz.model.tally.ImmutableTally;
+import com.khartec.waltz.model.tally.ImmutableTallyPack;
+import com.khartec.waltz.model.tally.Tally;
+import com.khartec.waltz.model.tally.TallyPack;
+import com.khartec.waltz.schema.tables.EntityStatisticRollup;
+import com.khartec.waltz.schema.tables.records.EntityStatisticRollupStatusRecord;
+import org.jooq.*;
+import org.jooq.impl.DSL;
+import org.jooq.impl.SQLDataType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.DateTimeUtilities.nowUtc;
+import static com.khartec.waltz.common.ListUtilities.map;
+import static com.khartec.waltz.schema.tables.Application.APPLICATION;
+import static com.khartec.waltz.schema.tables.EntityHierarchy.ENTITY_HIERARCHY;
+import static com.khartec.waltz.schema.tables.EntityStatisticDefinition.ENTITY_STATISTIC_DEFINITION;
+import static com.khartec.waltz.schema.tables.EntityStatisticRollup.ENTITY_STATISTIC_ROLLUP;
+import static com.khartec.waltz.schema.tables.EntityStatisticRollupStatus.ENTITY_STATISTIC_ROLLUP_STATUS;
+import static com.khartec.waltz.schema.tables.EntityStatisticValue.ENTITY_STATISTIC_VALUE;
+import static com.khartec.waltz.schema.tables.MeasurableRating.MEASURABLE_RATING;
+
+
+/**
+ * Maintains a precomputed rollup of the current statistic values, holding
+ * the count, sum and number of values for each outcome of a statistic at
+ * every org unit and measurable (including the applications of their
+ * descendants).
+ *
+ * The rollup mirrors the default application selection for those
+ * entities (children scope, active applications of any kind).  Tallies for
+ * any other selection must be calculated directly from the values, see
+ * {@link EntityStatisticSummaryDao}.
+ */
+@Repository
+public class EntityStatisticRollupDao {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EntityStatisticRollupDao.class);
+
+    public static final Set<EntityKind> HIERARCHY_KINDS = EnumSet.of(EntityKind.ORG_UNIT, EntityKind.MEASURABLE);
+    public static final Set<RollupKind> ROLLUP_KINDS = EnumSet.of(
+            RollupKind.COUNT_BY_ENTITY,
+            RollupKind.SUM_BY_VALUE,
+            RollupKind.AVG_BY_VALUE);
+
+    private static final Set<RollupKind> VALUE_ROLLUP_KINDS = EnumSet.of(RollupKind.SUM_BY_VALUE, RollupKind.AVG_BY_VALUE);
+    private static final Set<EntityLifecycleStatus> LIFECYCLE_STATUSES = EnumSet.of(EntityLifecycleStatus.ACTIVE);
+    private static final Set<ApplicationKind> APPLICATION_KINDS = EnumSet.allOf(ApplicationKind.class);
+
+    private static final com.khartec.waltz.schema.tables.EntityStatisticValue esv = ENTITY_STATISTIC_VALUE.as("esv");
+    private static final com.khartec.waltz.schema.tables.EntityStatisticDefinition esd = ENTITY_STATISTIC_DEFINITION.as("esd");
+    private static final EntityStatisticRollup esr = ENTITY_STATISTIC_ROLLUP.as("esr");
+    private static final com.khartec.waltz.schema.tables.EntityStatisticRollupStatus esrs = ENTITY_STATISTIC_ROLLUP_STATUS.as("esrs");
+
+    private static final DataType<BigDecimal> decimalValueDataType = SQLDataType.DECIMAL(38, 12);
+    private static final String APP_ID = "app_id";
+    private static final String NODE_ID = "node_id";
+
+    private static final RecordMapper<Record, EntityStatisticRollupStatus> TO_STATUS_MAPPER = r -> {
+        EntityStatisticRollupStatusRecord record = r.into(ENTITY_STATISTIC_ROLLUP_STATUS);
+        return ImmutableEntityStatisticRollupStatus.builder()
+                .statisticId(record.getStatisticId())
+                .rollupKind(RollupKind.valueOf(record.getRollupKind()))
+                .valueCount(record.getValueCount())
+                .maxCreatedAt(Optional.ofNullable(record.getMaxCreatedAt()).map(Timestamp::toLocalDateTime))
+                .build();
+    };
+
+    private final DSLContext dsl;
+
+
+    @Autowired
+    public EntityStatisticRollupDao(DSLContext dsl) {
+        checkNotNull(dsl, "dsl cannot be null");
+        this.dsl = dsl;
+    }
+
+
+    /**
+     * @param options  application selection options
+     * @return true if tallies for the selection can be answered from the rollup
+     */
+    public static boolean isSupported(ApplicationIdSelectionOptions options) {
+        checkNotNull(options, "options cannot be null");
+        return HIERARCHY_KINDS.contains(options.entityReference().kind())
+                && options.scope() == HierarchyQueryScope.CHILDREN
+                && LIFECYCLE_STATUSES.equals(options.entityLifecycleStatuses())
+                && APPLICATION_KINDS.equals(options.applicationKinds());
+    }
+
+
+    /**
+     * Summarises the current application values of every statistic which
+     * can be rolled up.  Statistics without any values are included so that
+     * their (empty) rollup can be answered too.
+     */
+    public List<EntityStatisticRollupStatus> findSourceStatuses() {
+        Field<Integer> valueCount = DSL.count(esv.ID);
+        Field<Timestamp> maxCreatedAt = DSL.max(esv.CREATED_AT);
+
+        return dsl
+                .select(esd.ID, esd.ROLLUP_KIND, valueCount, maxCreatedAt)
+                .from(esd)
+                .leftJoin(esv)
+                    .on(esv.STATISTIC_ID.eq(esd.ID))
+                    .and(esv.ENTITY_KIND.eq(EntityKind.APPLICATION.name()))
+                    .and(esv.CURRENT.eq(true))
+                .where(esd.ROLLUP_KIND.in(map(ROLLUP_KINDS, Enum::name)))
+                .groupBy(esd.ID, esd.ROLLUP_KIND)
+                .fetch(r -> ImmutableEntityStatisticRollupStatus.builder()
+                        .statisticId(r.get(esd.ID))
+                        .rollupKind(RollupKind.valueOf(r.get(esd.ROLLUP_KIND)))
+                        .valueCount(r.get(valueCount))
+                        .maxCreatedAt(Optional.ofNullable(r.get(maxCreatedAt)).map(Timestamp::toLocalDateTime))
+                        .build());
+    }
+
+
+    /**
+     * Summaries of the values each statistic's rollup was last built from.
+     */
+    public List<EntityStatisticRollupStatus> findRollupStatuses() {
+        return dsl
+                .selectFrom(ENTITY_STATISTIC_ROLLUP_STATUS)
+                .fetch(TO_STATUS_MAPPER);
+    }
+
+
+    /**
+     * Rebuilds the rollup for the given statistics within a single
+     * transaction, recording the supplied statuses as the values the rollup
+     * now reflects.  Callers should keep the number of statistics per call
+     * modest as each call aggregates all of their current values.
+     *
+     * @param statuses  current status of each statistic to rebuild
+     * @return number of rollup rows written
+     */
+    public int refresh(Collection<EntityStatisticRollupStatus> statuses) {
+        checkNotNull(statuses, "statuses cannot be null");
+
+        if (statuses.isEmpty()) {
+            return 0;
+        }
+
+        Set<Long> statisticIds = statuses
+                .stream()
+                .map(EntityStatisticRollupStatus::statisticId)
+                .collect(Collectors.toSet());
+
+        Map<Boolean, List<Long>> statisticIdsByHasValues = statuses
+                .stream()
+                .collect(Collectors.partitioningBy(
+                        s -> VALUE_ROLLUP_KINDS.contains(s.rollupKind()),
+                        Collectors.mapping(EntityStatisticRollupStatus::statisticId, Collectors.toList())));
+
+        Timestamp refreshedAt = Timestamp.valueOf(nowUtc());
+        List<EntityStatisticRollupStatusRecord> statusRecords = map(statuses, s -> mkStatusRecord(s, refreshedAt));
+
+        return dsl.transactionResult(configuration -> {
+            DSLContext txDsl = DSL.using(configuration);
+
+            txDsl.deleteFrom(ENTITY_STATISTIC_ROLLUP)
+                    .where(ENTITY_STATISTIC_ROLLUP.STATISTIC_ID.in(statisticIds))
+                    .execute();
+
+            txDsl.deleteFrom(ENTITY_STATISTIC_ROLLUP_STATUS)
+                    .where(ENTITY_STATISTIC_ROLLUP_STATUS.STATISTIC_ID.in(statisticIds))
+                    .execute();
+
+            int rowsWritten = 0;
+            for (EntityKind hierarchyKind : HIERARCHY_KINDS) {
+                rowsWritten += insertRollup(txDsl, hierarchyKind, DSL.trueCondition(), statisticIdsByHasValues.get(false), false);
+                rowsWritten += insertRollup(txDsl, hierarchyKind, DSL.trueCondition(), statisticIdsByHasValues.get(true), true);
+            }
+
+            txDsl.batchInsert(statusRecords)
+                    .execute();
+
+            LOG.debug("Refreshed rollup for statistics: {}, rows written: {}", statisticIds, rowsWritten);
+            return rowsWritten;
+        });
+    }
+
+
+    /**
+     * Rebuilds the rollup of the given statistics at just the given nodes
+     * of a hierarchy, e.g. the org units an application has moved between
+     * (and their ancestors).  The statistic values are unchanged so the
+     * recorded statuses are left as they are.
+     *
+     * @param statuses  status of each statistic to rebuild
+     * @param hierarchyKind  org unit or measurable
+     * @param nodeIds  nodes whose rollup rows are rebuilt
+     * @return number of rollup rows written
+     */
+    public int refreshNodes(Collection<EntityStatisticRollupStatus> statuses,
+                            EntityKind hierarchyKind,
+                            Collection<Long> nodeIds) {
+        checkNotNull(statuses, "statuses cannot be null");
+        checkNotNull(hierarchyKind, "hierarchyKind cannot be null");
+        checkNotNull(nodeIds, "nodeIds cannot be null");
+
+        if (statuses.isEmpty() || nodeIds.isEmpty()) {
+            return 0;
+        }
+
+        Set<Long> statisticIds = statuses
+                .stream()
+                .map(EntityStatisticRollupStatus::statisticId)
+                .collect(Collectors.toSet());
+
+        Map<Boolean, List<Long>> statisticIdsByHasValues = statuses
+                .stream()
+                .collect(Collectors.partitioningBy(
+                        s -> VALUE_ROLLUP_KINDS.contains(s.rollupKind()),
+                        Collectors.mapping(EntityStatisticRollupStatus::statisticId, Collectors.toList())));
+
+        Condition isAffectedNode = ENTITY_HIERARCHY.ANCESTOR_ID.in(nodeIds);
+
+        return dsl.transactionResult(configuration -> {
+            DSLContext txDsl = DSL.using(configuration);
+
+            txDsl.deleteFrom(ENTITY_STATISTIC_ROLLUP)
+                    .where(ENTITY_STATISTIC_ROLLUP.STATISTIC_ID.in(statisticIds))
+                    .and(ENTITY_STATISTIC_ROLLUP.HIERARCHY_KIND.eq(hierarchyKind.name()))
+                    .and(ENTITY_STATISTIC_ROLLUP.HIERARCHY_ID.in(nodeIds))
+                    .execute();
+
+            int rowsWritten = insertRollup(txDsl, hierarchyKind, isAffectedNode, statisticIdsByHasValues.get(false), false)
+                    + insertRollup(txDsl, hierarchyKind, isAffectedNode, statisticIdsByHasValues.get(true), true);
+
+            LOG.debug("Refreshed rollup for statistics: {} at {} nodes: {}, rows written: {}",
+                    statisticIds,
+                    hierarchyKind,
+                    nodeIds,
+                    rowsWritten);
+            return rowsWritten;
+        });
+    }
+
+
+    public int remove(Collection<Long> statisticIds) {
+        checkNotNull(statisticIds, "statisticIds cannot be null");
+
+        if (statisticIds.isEmpty()) {
+            return 0;
+        }
+
+        return dsl.transactionResult(configuration -> {
+            DSLContext txDsl = DSL.using(configuration);
+
+            int removed = txDsl.deleteFrom(ENTITY_STATISTIC_ROLLUP)
+                    .where(ENTITY_STATISTIC_ROLLUP.STATISTIC_ID.in(statisticIds))
+                    .execute();
+
+            txDsl.deleteFrom(ENTITY_STATISTIC_ROLLUP_STATUS)
+                    .where(ENTITY_STATISTIC_ROLLUP_STATUS.STATISTIC_ID.in(statisticIds))
+                    .execute();
+
+            return removed;
+        });
+    }
+
+
+    /**
+     * Answers the tallies of many statistics for a single org unit or
+     * measurable in one query.  Statistics which have not (yet) been rolled
+     * up are omitted from the result so the caller can calculate them
+     * directly.
+     *
+     * @param statisticIds  statistics to tally
+     * @param hierarchyNode  org unit or measurable, tallies include all of its descendants
+     * @return tally packs, in the order of the given statistic ids
+     */
+    public List<TallyPack<String>> findTallies(Collection<Long> statisticIds, EntityReference hierarchyNode) {
+        checkNotNull(statisticIds, "statisticIds cannot be null");
+        checkNotNull(hierarchyNode, "hierarchyNode cannot be null");
+
+        if (statisticIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        Map<Long, List<Record>> rowsByStatisticId = dsl
+                .select(esrs.STATISTIC_ID,
+                        esrs.ROLLUP_KIND,
+                        esr.OUTCOME,
+                        esr.ENTITY_COUNT,
+                        esr.VALUE_SUM,
+                        esr.VALUE_COUNT,
+                        esr.MAX_CREATED_AT)
+                .from(esrs)
+                .leftJoin(esr)
+                    .on(esr.STATISTIC_ID.eq(esrs.STATISTIC_ID))
+                    .and(esr.HIERARCHY_KIND.eq(hierarchyNode.kind().name()))
+                    .and(esr.HIERARCHY_ID.eq(hierarchyNode.id()))
+                .where(esrs.STATISTIC_ID.in(statisticIds))
+                .fetch()
+                .stream()
+                .collect(Collectors.groupingBy(r -> r.get(esrs.STATISTIC_ID)));
+
+        return statisticIds
+                .stream()
+                .distinct()
+                .filter(rowsByStatisticId::containsKey)
+                .map(statisticId -> mkTallyPack(statisticId, rowsByStatisticId.get(statisticId)))
+                .collect(Collectors.toList());
+    }
+
+
+    // -- HELPERS ---
+
+    /**
+     * @param nodeCondition  restricts the hierarchy nodes (<code>ENTITY_HIERARCHY.ANCESTOR_ID</code>) rolled up to
+     */
+    private static int insertRollup(DSLContext txDsl,
+                                    EntityKind hierarchyKind,
+                                    Condition nodeCondition,
+                                    Collection<Long> statisticIds,
+                                    boolean withValues) {
+        if (statisticIds.isEmpty()) {
+            return 0;
+        }
+
+        Table<Record2<Long, Long>> appsByNode = mkAppsByNode(hierarchyKind, nodeCondition).asTable("apps_by_node");
+        Field<Long> appId = appsByNode.field(APP_ID, Long.class);
+        Field<Long> nodeId = appsByNode.field(NODE_ID, Long.class);
+
+        // values are only numeric for statistics which are summed or averaged
+        Field<BigDecimal> valueSum = withValues
+                ? DSL.sum(DSL.cast(esv.VALUE, decimalValueDataType))
+                : DSL.castNull(decimalValueDataType);
+        Field<Integer> valueCount = withValues
+                ? DSL.count(esv.VALUE)
+                : DSL.inline(0);
+
+        return txDsl
+                .insertInto(ENTITY_STATISTIC_ROLLUP)
+                .columns(ENTITY_STATISTIC_ROLLUP.STATISTIC_ID,
+                        ENTITY_STATISTIC_ROLLUP.HIERARCHY_KIND,
+                        ENTITY_STATISTIC_ROLLUP.HIERARCHY_ID,
+                        ENTITY_STATISTIC_ROLLUP.OUTCOME,
+                        ENTITY_STATISTIC_ROLLUP.ENTITY_COUNT,
+                        ENTITY_STATISTIC_ROLLUP.VALUE_SUM,
+                        ENTITY_STATISTIC_ROLLUP.VALUE_COUNT,
+                        ENTITY_STATISTIC_ROLLUP.MAX_CREATED_AT)
+                .select(DSL
+                        .select(esv.STATISTIC_ID,
+                                DSL.inline(hierarchyKind.name()),
+                                nodeId,
+                                esv.OUTCOME,
+                                DSL.count(),
+                                valueSum,
+                                valueCount,
+                                DSL.max(esv.CREATED_AT))
+                        .from(esv)
+                        .innerJoin(appsByNode)
+                            .on(appId.eq(esv.ENTITY_ID))
+                        .where(esv.STATISTIC_ID.in(statisticIds))
+                        .and(esv.ENTITY_KIND.eq(EntityKind.APPLICATION.name()))
+                        .and(esv.CURRENT.eq(true))
+                        .groupBy(esv.STATISTIC_ID, nodeId, esv.OUTCOME))
+                .execute();
+    }
+
+
+    /**
+     * Pairs every active application with each hierarchy node it would be
+     * selected by when using the children scope, each pair appears once.
+     */
+    private static Select<Record2<Long, Long>> mkAppsByNode(EntityKind hierarchyKind, Condition nodeCondition) {
+        Condition isActive = APPLICATION.ENTITY_LIFECYCLE_STATUS.in(map(LIFECYCLE_STATUSES, Enum::name));
+
+        switch (hierarchyKind) {
+            case ORG_UNIT:
+                return DSL
+                        .select(APPLICATION.ID.as(APP_ID),
+                                ENTITY_HIERARCHY.ANCESTOR_ID.as(NODE_ID))
+                        .from(APPLICATION)
+                        .innerJoin(ENTITY_HIERARCHY)
+                            .on(ENTITY_HIERARCHY.ID.eq(APPLICATION.ORGANISATIONAL_UNIT_ID))
+                            .and(ENTITY_HIERARCHY.KIND.eq(EntityKind.ORG_UNIT.name()))
+                        .where(isActive)
+                        .and(nodeCondition);
+            case MEASURABLE:
+                return DSL
+                        .selectDistinct(MEASURABLE_RATING.ENTITY_ID.as(APP_ID),
+                                ENTITY_HIERARCHY.ANCESTOR_ID.as(NODE_ID))
+                        .from(MEASURABLE_RATING)
+                        .innerJoin(APPLICATION)
+                            .on(APPLICATION.ID.eq(MEASURABLE_RATING.ENTITY_ID))
+                        .innerJoin(ENTITY_HIERARCHY)
+                            .on(ENTITY_HIERARCHY.ID.eq(MEASURABLE_RATING.MEASURABLE_ID))
+                            .and(ENTITY_HIERARCHY.KIND.eq(EntityKind.MEASURABLE.name()))
+                        .where(MEASURABLE_RATING.ENTITY_KIND.eq(EntityKind.APPLICATION.name()))
+                        .and(isActive)
+                        .and(nodeCondition);
+            default:
+                throw new IllegalArgumentException("Cannot rollup statistics for hierarchy kind: " + hierarchyKind);
+        }
+    }
+
+
+    private static TallyPack<String> mkTallyPack(long statisticId, List<Record> rows) {
+        List<Tally<String>> tallies = rows
+                .stream()
+                .filter(r -> r.get(esr.OUTCOME) != null)
+                .map(r -> ImmutableTally.<String>builder()
+                        .id(r.get(esr.OUTCOME))
+                        .count(toTallyCount(
+                                RollupKind.valueOf(r.get(esrs.ROLLUP_KIND)),
+                                r.get(esr.ENTITY_COUNT),
+                                r.get(esr.VALUE_SUM),
+                                r.get(esr.VALUE_COUNT)))
+                        .build())
+                .collect(Collectors.toList());
+
+        LocalDateTime lastUpdatedAt = rows
+                .stream()
+                .map(r -> r.get(esr.MAX_CREATED_AT))
+                .filter(Objects::nonNull)
+                .max(Comparator.naturalOrder())
+                .map(Timestamp::toLocalDateTime)
+                .orElse(nowUtc());
+
+        return ImmutableTallyPack.<String>builder()
+                .entityReference(EntityReference.mkRef(EntityKind.ENTITY_STATISTIC, statisticId))
+                .tallies(tallies)
+                .lastUpdatedAt(lastUpdatedAt)
+                .build();
+    }
+
+
+    /**
+     * Rounds sums and averages to two decimal places, as done when
+     * calculating tallies directly from the values.
+     *
+     * @param valueSum  sum of the values, null for counted statistics
+     */
+    static double toTallyCount(RollupKind rollupKind, int entityCount, BigDecimal valueSum, int valueCount) {
+        BigDecimal sum = Optional
+                .ofNullable(valueSum)
+                .orElse(BigDecimal.ZERO);
+
+        switch (rollupKind) {
+            case COUNT_BY_ENTITY:
+                return entityCount;
+            case SUM_BY_VALUE:
+                return sum
+                        .setScale(2, RoundingMode.HALF_UP)
+                        .doubleValue();
+            case AVG_BY_VALUE:
+                return valueCount == 0
+                        ? 0
+                        : sum
+                            .divide(BigDecimal.valueOf(valueCount), 12, RoundingMode.HALF_UP)
+                            .setScale(2, RoundingMode.HALF_UP)
+                            .doubleValue();
+            default:
+                throw new UnsupportedOperationException(String.format("Rollup kind [%s] not supported.", rollupKind));
+        }
+    }
+
+
+    private static EntityStatisticRollupStatusRecord mkStatusRecord(EntityStatisticRollupStatus status, Timestamp refreshedAt) {
+        EntityStatisticRollupStatusRecord record = new EntityStatisticRollupStatusRecord();
+        record.setStatisticId(status.statisticId());
+        record.setRollupKind(status.rollupKind().name());
+        record.setValueCount(status.valueCount());
+        record.setMaxCreatedAt(status.maxCreatedAt().map(Timestamp::valueOf).orElse(null));
+        record.setRefreshedAt(refreshedAt);
+        return record;
+    }
+
+}
@@ -26,11 +26,13 @@ import com.khartec.waltz.model.flow_diagram.FlowDiagramAnnotation;
 import com.khartec.waltz.model.flow_diagram.ImmutableFlowDiagramAnnotation;
 import com.khartec.waltz.schema.tables.records.FlowDiagramAnnotationRecord;
 import org.jooq.DSLContext;
+import org.jooq.Query;
 import org.jooq.Record;
 import org.jooq.RecordMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.function.Function;
 
@@ -99,6 +101,44 @@ public class FlowDiagramAnnotationDao {
     }
 
 
+    /**
+     * Updates the note and annotated entity of the given annotations, one
+     * batched statement per annotation.
+     *
+     * @param annotations the annotations to update, must have a diagram id
+     * @return update counts
+     */
+    public int[] updateAnnotations(Collection<FlowDiagramAnnotation> annotations) {
+        List<Query> updates = annotations
+                .stream()
+                .map(a -> dsl
+                        .update(FLOW_DIAGRAM_ANNOTATION)
+                        .set(FLOW_DIAGRAM_ANNOTATION.NOTE, a.note())
+                        .set(FLOW_DIAGRAM_ANNOTATION.ENTITY_KIND, a.entityReference().kind().name())
+                        .set(FLOW_DIAGRAM_ANNOTATION.ENTITY_ID, a.entityReference().id())
+                        .where(FLOW_DIAGRAM_ANNOTATION.DIAGRAM_ID.eq(a.diagramId().get()))
+                        .and(FLOW_DIAGRAM_ANNOTATION.ANNOTATION_ID.eq(a.annotationId())))
+                .collect(toList());
+
+        return dsl.batch(updates)
+                .execute();
+    }
+
+
+    public int[] deleteAnnotations(long diagramId, Collection<String> annotationIds) {
+        List<Query> deletes = annotationIds
+                .stream()
+                .map(id -> dsl
+                        .deleteFrom(FLOW_DIAGRAM_ANNOTATION)
+                        .where(FLOW_DIAGRAM_ANNOTATION.DIAGRAM_ID.eq(diagramId))
+                        .and(FLOW_DIAGRAM_ANNOTATION.ANNOTATION_ID.eq(id)))
+                .collect(toList());
+
+        return dsl.batch(deletes)
+                .execute();
+    }
+
+
     public int deleteForDiagram(long diagramId) {
         return dsl.deleteFrom(FLOW_DIAGRAM_ANNOTATION)
                 .where(FLOW_DIAGRAM_ANNOTATION.DIAGRAM_ID.eq(diagramId))
@@ -30,6 +30,7 @@ import org.jooq.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.function.Function;
 
@@ -124,6 +125,52 @@ public class FlowDiagramEntityDao {
     }
 
 
+    /**
+     * Sets the notable flag of the given diagram entities, one batched
+     * statement per entity.
+     *
+     * @param entities the entities to update, must have a diagram id
+     * @return update counts
+     */
+    public int[] updateEntities(Collection<FlowDiagramEntity> entities) {
+        List<Query> updates = entities
+                .stream()
+                .map(e -> dsl
+                        .update(FLOW_DIAGRAM_ENTITY)
+                        .set(FLOW_DIAGRAM_ENTITY.IS_NOTABLE, e.isNotable())
+                        .where(FLOW_DIAGRAM_ENTITY.DIAGRAM_ID.eq(e.diagramId().get()))
+                        .and(FLOW_DIAGRAM_ENTITY.ENTITY_KIND.eq(e.entityReference().kind().name()))
+                        .and(FLOW_DIAGRAM_ENTITY.ENTITY_ID.eq(e.entityReference().id())))
+                .collect(toList());
+
+        return dsl.batch(updates)
+                .execute();
+    }
+
+
+    /**
+     * Deletes the given entities from a diagram, one batched statement
+     * per entity.
+     *
+     * @param diagramId the diagram to remove the entities from
+     * @param entityReferences the entities to remove
+     * @return delete counts
+     */
+    public int[] deleteEntities(long diagramId, Collection<EntityReference> entityReferences) {
+        List<Query> deletes = entityReferences
+                .stream()
+                .map(ref -> dsl
+                        .deleteFrom(FLOW_DIAGRAM_ENTITY)
+                        .where(FLOW_DIAGRAM_ENTITY.DIAGRAM_ID.eq(diagramId))
+                        .and(FLOW_DIAGRAM_ENTITY.ENTITY_KIND.eq(ref.kind().name()))
+                        .and(FLOW_DIAGRAM_ENTITY.ENTITY_ID.eq(ref.id())))
+                .collect(toList());
+
+        return dsl.batch(deletes)
+                .execute();
+    }
+
+
     /**
      * Removes entities associated with diagram except for measurables
      * which remain as they are explicitly linked to diagrams, not implicitly
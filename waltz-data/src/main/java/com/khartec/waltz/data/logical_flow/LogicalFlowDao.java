@@ -28,6 +28,7 @@ import org.jooq.*;
 import org.jooq.impl.DSL;
 import org.jooq.lambda.tuple.Tuple;
 import org.jooq.lambda.tuple.Tuple2;
+import org.jooq.lambda.tuple.Tuple3;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -43,6 +44,7 @@ import static com.khartec.waltz.common.CollectionUtilities.map;
 import static com.khartec.waltz.common.DateTimeUtilities.nowUtc;
 import static com.khartec.waltz.common.EnumUtilities.readEnum;
 import static com.khartec.waltz.common.ListUtilities.newArrayList;
+import static com.khartec.waltz.common.ListUtilities.partition;
 import static com.khartec.waltz.common.MapUtilities.groupBy;
 import static com.khartec.waltz.data.application.ApplicationDao.IS_ACTIVE;
 import static com.khartec.waltz.model.EntityLifecycleStatus.ACTIVE;
@@ -116,6 +118,8 @@ public class LogicalFlowDao {
 
     public static final Condition NOT_REMOVED = LOGICAL_FLOW.ENTITY_LIFECYCLE_STATUS.ne(REMOVED.name());
 
+    private static final int BATCH_SIZE = 1000;
+
 
     private final DSLContext dsl;
 
@@ -145,23 +149,7 @@ public class LogicalFlowDao {
 
 
     public List<LogicalFlow> findBySourcesAndTargets(List<Tuple2<EntityReference, EntityReference>> sourceAndTargets) {
-        if(sourceAndTargets.isEmpty()) {
-            return Collections.emptyList();
-        }
-
-        Condition condition = sourceAndTargets
-                .stream()
-                .map(t -> isSourceCondition(t.v1)
-                        .and(isTargetCondition(t.v2))
-                        .and(NOT_REMOVED))
-                .reduce((a, b) -> a.or(b))
-                .get();
-
-        List<LogicalFlow> fetch = baseQuery()
-                .where(condition)
-                .fetch(TO_DOMAIN_MAPPER);
-
-        return fetch;
+        return findBySourcesAndTargets(sourceAndTargets, NOT_REMOVED);
     }
 
 
@@ -207,43 +195,53 @@ public class LogicalFlowDao {
     }
 
 
+    /**
+     * Adds the given flows, restoring any previously removed flows with the
+     * same source and target rather than creating duplicates.  New flows are
+     * written with a single batch insert and then re-read to obtain their ids.
+     * @param flows  flows to add (ids are ignored)
+     * @param user  user performing the change
+     * @return the added and restored flows
+     */
     public List<LogicalFlow> addFlows(List<LogicalFlow> flows, String user) {
-        Condition condition = flows
-                .stream()
-                .map(t -> isSourceCondition(t.source())
-                        .and(isTargetCondition(t.target()))
-                        .and(LOGICAL_FLOW.ENTITY_LIFECYCLE_STATUS.eq(REMOVED.name())))
-                .reduce((a, b) -> a.or(b))
-                .get();
-
-        List<LogicalFlow> removedFlows = baseQuery()
-                .where(condition)
-                .fetch(TO_DOMAIN_MAPPER);
-
-        if(removedFlows.size() > 0) {
-            restoreFlows(removedFlows, user);
+        if (flows.isEmpty()) {
+            return Collections.emptyList();
         }
 
-        Map<Tuple2<EntityReference, EntityReference>, LogicalFlow> existing = removedFlows
+        List<Tuple2<EntityReference, EntityReference>> sourceAndTargets = flows
                 .stream()
-                .collect(Collectors.toMap(f -> Tuple.tuple(f.source(), f.target()), f -> f));
+                .map(f -> Tuple.tuple(f.source(), f.target()))
+                .collect(toList());
+
+        List<LogicalFlow> removedFlows = findBySourcesAndTargets(
+                sourceAndTargets,
+                LOGICAL_FLOW.ENTITY_LIFECYCLE_STATUS.eq(REMOVED.name()));
 
+        restoreFlows(removedFlows, user);
 
-        List<LogicalFlow> addedFlows = flows
+        Set<Tuple2<EntityReference, EntityReference>> restoredKeys = removedFlows
                 .stream()
-                .filter(f -> !existing.containsKey(Tuple.tuple(f.source(), f.target())))
-                .map(f -> {
-                    LogicalFlowRecord record = TO_RECORD_MAPPER.apply(f, dsl);
-                    record.store();
-                    return ImmutableLogicalFlow
-                            .copyOf(f)
-                            .withId(record.getId());
-                })
+                .map(f -> mkSourceAndTargetKey(f.source(), f.target()))
+                .collect(Collectors.toSet());
+
+        Map<Tuple2<EntityReference, EntityReference>, LogicalFlow> flowsToInsert = flows
+                .stream()
+                .filter(f -> !restoredKeys.contains(mkSourceAndTargetKey(f.source(), f.target())))
+                .collect(Collectors.toMap(
+                        f -> mkSourceAndTargetKey(f.source(), f.target()),
+                        f -> f,
+                        (f1, f2) -> f1,
+                        LinkedHashMap::new));
+
+        List<LogicalFlowRecord> records = flowsToInsert
+                .values()
+                .stream()
+                .map(f -> TO_RECORD_MAPPER.apply(f, dsl))
                 .collect(toList());
 
+        dsl.batchInsert(records).execute();
 
-        addedFlows.addAll(removedFlows);
-        return addedFlows;
+        return findBySourcesAndTargets(sourceAndTargets, NOT_REMOVED);
     }
 
 
@@ -283,20 +281,20 @@ public class LogicalFlowDao {
             return 0;
         }
 
-        Condition condition = flows
+        List<Long> flowIds = flows
                 .stream()
-                .map(t -> isSourceCondition(t.source())
-                        .and(isTargetCondition(t.target()))
-                        .and(LOGICAL_FLOW.ENTITY_LIFECYCLE_STATUS.eq(REMOVED.name())))
-                .reduce((a, b) -> a.or(b))
-                .get();
+                .map(f -> f.id().get())
+                .collect(toList());
 
-        return dsl.update(LOGICAL_FLOW)
-                .set(LOGICAL_FLOW.ENTITY_LIFECYCLE_STATUS, ACTIVE.name())
-                .set(LOGICAL_FLOW.LAST_UPDATED_BY, username)
-                .set(LOGICAL_FLOW.LAST_UPDATED_AT, Timestamp.valueOf(nowUtc()))
-                .where(condition)
-                .execute();
+        return partition(flowIds, BATCH_SIZE)
+                .stream()
+                .mapToInt(batch -> dsl.update(LOGICAL_FLOW)
+                        .set(LOGICAL_FLOW.ENTITY_LIFECYCLE_STATUS, ACTIVE.name())
+                        .set(LOGICAL_FLOW.LAST_UPDATED_BY, username)
+                        .set(LOGICAL_FLOW.LAST_UPDATED_AT, Timestamp.valueOf(nowUtc()))
+                        .where(LOGICAL_FLOW.ID.in(batch))
+                        .execute())
+                .sum();
     }
 
 
@@ -307,6 +305,24 @@ public class LogicalFlowDao {
     }
 
 
+    /**
+     * Lightweight (no names) listing of all application to application flows
+     * which have not been removed.
+     * @return tuples of (flow id, source application id, target application id)
+     */
+    public List<Tuple3<Long, Long, Long>> findAppToAppFlowIds() {
+        return dsl
+                .select(LOGICAL_FLOW.ID,
+                        LOGICAL_FLOW.SOURCE_ENTITY_ID,
+                        LOGICAL_FLOW.TARGET_ENTITY_ID)
+                .from(LOGICAL_FLOW)
+                .where(LOGICAL_FLOW.SOURCE_ENTITY_KIND.eq(EntityKind.APPLICATION.name()))
+                .and(LOGICAL_FLOW.TARGET_ENTITY_KIND.eq(EntityKind.APPLICATION.name()))
+                .and(NOT_REMOVED)
+                .fetch(r -> Tuple.tuple(r.value1(), r.value2(), r.value3()));
+    }
+
+
     public List<LogicalFlow> findAllActive() {
         return baseQuery()
                 .where(LOGICAL_FLOW.ENTITY_LIFECYCLE_STATUS.eq(EntityLifecycleStatus.ACTIVE.name()))
@@ -388,6 +404,51 @@ public class LogicalFlowDao {
 
     // -- HELPERS ---
 
+    /**
+     * Looks up flows by (source, target) pairs.  Each batch selects candidates
+     * with two IN lists (source ids and target ids) and then discards any
+     * candidate whose exact pair was not requested, this avoids building a
+     * large OR condition per pair.
+     */
+    private List<LogicalFlow> findBySourcesAndTargets(List<Tuple2<EntityReference, EntityReference>> sourceAndTargets,
+                                                      Condition lifecycleCondition) {
+        if(sourceAndTargets.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        Set<Tuple2<EntityReference, EntityReference>> requested = sourceAndTargets
+                .stream()
+                .map(t -> mkSourceAndTargetKey(t.v1, t.v2))
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+
+        return partition(new ArrayList<>(requested), BATCH_SIZE)
+                .stream()
+                .flatMap(batch -> {
+                    Set<Long> sourceIds = batch.stream().map(t -> t.v1.id()).collect(Collectors.toSet());
+                    Set<Long> targetIds = batch.stream().map(t -> t.v2.id()).collect(Collectors.toSet());
+                    return baseQuery()
+                            .where(LOGICAL_FLOW.SOURCE_ENTITY_ID.in(sourceIds))
+                            .and(LOGICAL_FLOW.TARGET_ENTITY_ID.in(targetIds))
+                            .and(lifecycleCondition)
+                            .fetch(TO_DOMAIN_MAPPER)
+                            .stream();
+                })
+                .filter(f -> requested.contains(mkSourceAndTargetKey(f.source(), f.target())))
+                .collect(toList());
+    }
+
+
+    /**
+     * Name-less key so that references which differ only by name still match
+     */
+    private static Tuple2<EntityReference, EntityReference> mkSourceAndTargetKey(EntityReference source,
+                                                                                EntityReference target) {
+        return Tuple.tuple(
+                EntityReference.mkRef(source.kind(), source.id()),
+                EntityReference.mkRef(target.kind(), target.id()));
+    }
+
+
     private Condition isSourceOrTargetCondition(EntityReference ref) {
         return isSourceCondition(ref)
                 .or(isTargetCondition(ref));
@@ -0,0 +1,120 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.khartec.waltz.data.logical_flow;
+
+import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.model.EntityLifecycleStatus;
+import com.khartec.waltz.model.EntityReference;
+import org.jooq.Condition;
+import org.jooq.Cursor;
+import org.jooq.DSLContext;
+import org.jooq.Record2;
+import org.jooq.Record5;
+import org.jooq.lambda.tuple.Tuple2;
+import org.jooq.lambda.tuple.Tuple3;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.model.EntityReference.mkRef;
+import static com.khartec.waltz.schema.tables.LogicalFlow.LOGICAL_FLOW;
+import static com.khartec.waltz.schema.tables.LogicalFlowDecorator.LOGICAL_FLOW_DECORATOR;
+import static org.jooq.lambda.tuple.Tuple.tuple;
+
+
+/**
+ * Bulk, lightweight, reads of the logical flow network used to build the
+ * in-memory flow graph.  Names are deliberately not resolved.
+ */
+@Repository
+public class LogicalFlowGraphDao {
+
+    private static final int FETCH_SIZE = 5000;
+
+    private static final Condition IS_ACTIVE = LOGICAL_FLOW.ENTITY_LIFECYCLE_STATUS.eq(EntityLifecycleStatus.ACTIVE.name());
+
+    private final DSLContext dsl;
+
+
+    @Autowired
+    public LogicalFlowGraphDao(DSLContext dsl) {
+        checkNotNull(dsl, "dsl cannot be null");
+        this.dsl = dsl;
+    }
+
+
+    /**
+     * @return tuples of (logical flow id, source, target) for all active flows
+     */
+    public List<Tuple3<Long, EntityReference, EntityReference>> findActiveFlows() {
+        List<Tuple3<Long, EntityReference, EntityReference>> flows = new ArrayList<>();
+
+        try (Cursor<Record5<Long, String, Long, String, Long>> cursor = dsl
+                .select(LOGICAL_FLOW.ID,
+                        LOGICAL_FLOW.SOURCE_ENTITY_KIND,
+                        LOGICAL_FLOW.SOURCE_ENTITY_ID,
+                        LOGICAL_FLOW.TARGET_ENTITY_KIND,
+                        LOGICAL_FLOW.TARGET_ENTITY_ID)
+                .from(LOGICAL_FLOW)
+                .where(IS_ACTIVE)
+                .fetchSize(FETCH_SIZE)
+                .fetchLazy()) {
+
+            for (Record5<Long, String, Long, String, Long> r : cursor) {
+                flows.add(tuple(
+                        r.value1(),
+                        mkRef(EntityKind.valueOf(r.value2()), r.value3()),
+                        mkRef(EntityKind.valueOf(r.value4()), r.value5())));
+            }
+        }
+
+        return flows;
+    }
+
+
+    /**
+     * @return tuples of (logical flow id, data type id) for all active flows
+     */
+    public List<Tuple2<Long, Long>> findActiveFlowDataTypes() {
+        List<Tuple2<Long, Long>> decorations = new ArrayList<>();
+
+        try (Cursor<Record2<Long, Long>> cursor = dsl
+                .select(LOGICAL_FLOW_DECORATOR.LOGICAL_FLOW_ID,
+                        LOGICAL_FLOW_DECORATOR.DECORATOR_ENTITY_ID)
+                .from(LOGICAL_FLOW_DECORATOR)
+                .innerJoin(LOGICAL_FLOW)
+                .on(LOGICAL_FLOW.ID.eq(LOGICAL_FLOW_DECORATOR.LOGICAL_FLOW_ID))
+                .where(LOGICAL_FLOW_DECORATOR.DECORATOR_ENTITY_KIND.eq(EntityKind.DATA_TYPE.name()))
+                .and(IS_ACTIVE)
+                .fetchSize(FETCH_SIZE)
+                .fetchLazy()) {
+
+            for (Record2<Long, Long> r : cursor) {
+                decorations.add(tuple(r.value1(), r.value2()));
+            }
+        }
+
+        return decorations;
+    }
+
+}
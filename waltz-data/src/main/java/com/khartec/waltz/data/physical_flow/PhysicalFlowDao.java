@@ -38,13 +38,20 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import static com.khartec.waltz.common.Checks.checkFalse;
 import static com.khartec.waltz.common.Checks.checkNotNull;
 import static com.khartec.waltz.common.DateTimeUtilities.nowUtcTimestamp;
+import static com.khartec.waltz.common.ListUtilities.partition;
 import static com.khartec.waltz.data.logical_flow.LogicalFlowDao.NOT_REMOVED;
 import static com.khartec.waltz.model.EntityLifecycleStatus.REMOVED;
 import static com.khartec.waltz.schema.tables.LogicalFlow.LOGICAL_FLOW;
@@ -57,6 +64,7 @@ import static com.khartec.waltz.schema.tables.PhysicalSpecification.PHYSICAL_SPE
 public class PhysicalFlowDao {
 
     private static final Logger LOG = LoggerFactory.getLogger(PhysicalFlowDao.class);
+    private static final int BATCH_SIZE = 1000;
 
     public static final RecordMapper<Record, PhysicalFlow> TO_DOMAIN_MAPPER = r -> {
         PhysicalFlowRecord record = r.into(PHYSICAL_FLOW);
@@ -194,6 +202,73 @@ public class PhysicalFlowDao {
     }
 
 
+    /**
+     * Set based equivalent of {@link #getByParsedFlow(PhysicalFlowParsed)}.
+     * Candidates are selected in batches by source id and specification name
+     * and then matched exactly on every attribute the single lookup uses.
+     * @param flows  parsed flows to resolve
+     * @return map of parsed flow to matching physical flow, flows without a match are absent
+     */
+    public Map<PhysicalFlowParsed, PhysicalFlow> findByParsedFlows(Collection<PhysicalFlowParsed> flows) {
+        checkNotNull(flows, "flows cannot be null");
+
+        Map<PhysicalFlowParsed, PhysicalFlow> result = new HashMap<>();
+
+        partition(new ArrayList<>(flows), BATCH_SIZE)
+                .forEach(batch -> {
+                    Set<Long> sourceIds = batch.stream().map(f -> f.source().id()).collect(Collectors.toSet());
+                    Set<String> names = batch.stream().map(f -> f.name()).collect(Collectors.toSet());
+
+                    Map<List<Object>, PhysicalFlow> candidates = new HashMap<>();
+                    dsl.select(PHYSICAL_FLOW.fields())
+                            .select(LOGICAL_FLOW.SOURCE_ENTITY_KIND,
+                                    LOGICAL_FLOW.SOURCE_ENTITY_ID,
+                                    LOGICAL_FLOW.TARGET_ENTITY_KIND,
+                                    LOGICAL_FLOW.TARGET_ENTITY_ID,
+                                    PHYSICAL_SPECIFICATION.OWNING_ENTITY_KIND,
+                                    PHYSICAL_SPECIFICATION.OWNING_ENTITY_ID,
+                                    PHYSICAL_SPECIFICATION.FORMAT,
+                                    PHYSICAL_SPECIFICATION.NAME,
+                                    PHYSICAL_SPEC_DATA_TYPE.DATA_TYPE_ID)
+                            .from(PHYSICAL_FLOW)
+                            .join(LOGICAL_FLOW).on(LOGICAL_FLOW.ID.eq(PHYSICAL_FLOW.LOGICAL_FLOW_ID))
+                            .join(PHYSICAL_SPECIFICATION).on(PHYSICAL_SPECIFICATION.ID.eq(PHYSICAL_FLOW.SPECIFICATION_ID))
+                            .join(PHYSICAL_SPEC_DATA_TYPE).on(PHYSICAL_SPEC_DATA_TYPE.SPECIFICATION_ID.eq(PHYSICAL_SPECIFICATION.ID))
+                            .where(LOGICAL_FLOW.SOURCE_ENTITY_ID.in(sourceIds))
+                            .and(PHYSICAL_SPECIFICATION.NAME.in(names))
+                            .and(LOGICAL_FLOW.ENTITY_LIFECYCLE_STATUS.ne(REMOVED.name()))
+                            .and(PHYSICAL_SPECIFICATION.IS_REMOVED.isFalse())
+                            .and(PHYSICAL_FLOW.IS_REMOVED.isFalse())
+                            .fetch()
+                            .forEach(r -> candidates.putIfAbsent(
+                                    Arrays.asList(
+                                            r.get(LOGICAL_FLOW.SOURCE_ENTITY_KIND),
+                                            r.get(LOGICAL_FLOW.SOURCE_ENTITY_ID),
+                                            r.get(LOGICAL_FLOW.TARGET_ENTITY_KIND),
+                                            r.get(LOGICAL_FLOW.TARGET_ENTITY_ID),
+                                            r.get(PHYSICAL_SPECIFICATION.OWNING_ENTITY_KIND),
+                                            r.get(PHYSICAL_SPECIFICATION.OWNING_ENTITY_ID),
+                                            r.get(PHYSICAL_SPECIFICATION.FORMAT),
+                                            r.get(PHYSICAL_SPECIFICATION.NAME),
+                                            r.get(PHYSICAL_FLOW.BASIS_OFFSET),
+                                            r.get(PHYSICAL_FLOW.FREQUENCY),
+                                            r.get(PHYSICAL_FLOW.TRANSPORT),
+                                            r.get(PHYSICAL_FLOW.CRITICALITY),
+                                            r.get(PHYSICAL_SPEC_DATA_TYPE.DATA_TYPE_ID)),
+                                    TO_DOMAIN_MAPPER.map(r)));
+
+                    batch.forEach(f -> {
+                        PhysicalFlow match = candidates.get(mkParsedFlowKey(f));
+                        if (match != null) {
+                            result.put(f, match);
+                        }
+                    });
+                });
+
+        return result;
+    }
+
+
     /**
      * Returns the flow in the database that matches the parameter based on all attributes except possibly id
      * @param flow the physical flow to match against
@@ -237,30 +312,28 @@ public class PhysicalFlowDao {
         checkNotNull(flow, "flow cannot be null");
         checkFalse(flow.id().isPresent(), "flow must not have an id");
 
-        PhysicalFlowRecord record = dsl.newRecord(PHYSICAL_FLOW);
-        record.setLogicalFlowId(flow.logicalFlowId());
-
-        record.setFrequency(flow.frequency().name());
-        record.setTransport(flow.transport());
-        record.setBasisOffset(flow.basisOffset());
-        record.setCriticality(flow.criticality().name());
+        PhysicalFlowRecord record = mkRecord(flow);
+        record.store();
+        return record.getId();
+    }
 
-        record.setSpecificationId(flow.specificationId());
 
-        record.setDescription(flow.description());
-        record.setLastUpdatedBy(flow.lastUpdatedBy());
-        record.setLastUpdatedAt(Timestamp.valueOf(flow.lastUpdatedAt()));
-        record.setLastAttestedBy(flow.lastAttestedBy().orElse(null));
-        record.setLastAttestedAt(flow.lastAttestedAt().map(Timestamp::valueOf).orElse(null));
-        record.setIsRemoved(flow.isRemoved());
-        record.setProvenance("waltz");
-        record.setExternalId(flow.externalId().orElse(null));
+    /**
+     * Writes the given flows with a single batch insert.  Generated ids are
+     * not returned, callers should re-read the flows if they are required.
+     * @param flows  flows to create, must not have ids
+     * @return batch insert counts
+     */
+    public int[] createAll(Collection<PhysicalFlow> flows) {
+        checkNotNull(flows, "flows cannot be null");
 
-        record.setCreatedAt(flow.created().map(c -> c.atTimestamp()).orElse(Timestamp.valueOf(flow.lastUpdatedAt())));
-        record.setCreatedBy(flow.created().map(c -> c.by()).orElse(flow.lastUpdatedBy()));
+        List<PhysicalFlowRecord> records = flows
+                .stream()
+                .peek(f -> checkFalse(f.id().isPresent(), "flow must not have an id"))
+                .map(this::mkRecord)
+                .collect(Collectors.toList());
 
-        record.store();
-        return record.getId();
+        return dsl.batchInsert(records).execute();
     }
 
 
@@ -416,6 +489,54 @@ public class PhysicalFlowDao {
 
     // --- helpers
 
+    private PhysicalFlowRecord mkRecord(PhysicalFlow flow) {
+        PhysicalFlowRecord record = dsl.newRecord(PHYSICAL_FLOW);
+        record.setLogicalFlowId(flow.logicalFlowId());
+
+        record.setFrequency(flow.frequency().name());
+        record.setTransport(flow.transport());
+        record.setBasisOffset(flow.basisOffset());
+        record.setCriticality(flow.criticality().name());
+
+        record.setSpecificationId(flow.specificationId());
+
+        record.setDescription(flow.description());
+        record.setLastUpdatedBy(flow.lastUpdatedBy());
+        record.setLastUpdatedAt(Timestamp.valueOf(flow.lastUpdatedAt()));
+        record.setLastAttestedBy(flow.lastAttestedBy().orElse(null));
+        record.setLastAttestedAt(flow.lastAttestedAt().map(Timestamp::valueOf).orElse(null));
+        record.setIsRemoved(flow.isRemoved());
+        record.setProvenance("waltz");
+        record.setExternalId(flow.externalId().orElse(null));
+
+        record.setCreatedAt(flow.created().map(c -> c.atTimestamp()).orElse(Timestamp.valueOf(flow.lastUpdatedAt())));
+        record.setCreatedBy(flow.created().map(c -> c.by()).orElse(flow.lastUpdatedBy()));
+        return record;
+    }
+
+
+    /**
+     * Key must line up, field for field, with the candidate key built in
+     * {@link #findByParsedFlows(Collection)}
+     */
+    private static List<Object> mkParsedFlowKey(PhysicalFlowParsed flow) {
+        return Arrays.asList(
+                flow.source().kind().name(),
+                flow.source().id(),
+                flow.target().kind().name(),
+                flow.target().id(),
+                flow.owner().kind().name(),
+                flow.owner().id(),
+                flow.format().name(),
+                flow.name(),
+                flow.basisOffset(),
+                flow.frequency().name(),
+                flow.transport(),
+                flow.criticality().name(),
+                flow.dataType().id());
+    }
+
+
     private int updateEnum(long flowId, TableField<PhysicalFlowRecord, String> field, String value) {
         return dsl
                 .update(PHYSICAL_FLOW)
@@ -0,0 +1,215 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.khartec.waltz.data.physical_flow;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import com.khartec.waltz.model.physical_flow.ImmutablePhysicalFlowUploadJob;
+import com.khartec.waltz.model.physical_flow.PhysicalFlowUploadCommandResponse;
+import com.khartec.waltz.model.physical_flow.PhysicalFlowUploadJob;
+import com.khartec.waltz.model.scheduled_job.JobLifecycleStatus;
+import com.khartec.waltz.schema.tables.records.PhysicalFlowUploadJobRecord;
+import org.jooq.DSLContext;
+import org.jooq.Record;
+import org.jooq.RecordMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.DateTimeUtilities.nowUtc;
+import static com.khartec.waltz.schema.tables.PhysicalFlowUploadJob.PHYSICAL_FLOW_UPLOAD_JOB;
+
+
+/**
+ * Bulk physical flow uploads run in the background on whichever node
+ * received them, their progress (and, once finished, their results) is kept
+ * here so the submitter can poll any node for it.
+ */
+@Repository
+public class PhysicalFlowUploadJobDao {
+
+    private static final ObjectMapper JSON_MAPPER = new ObjectMapper().registerModule(new Jdk8Module());
+
+    private static final TypeReference<List<PhysicalFlowUploadCommandResponse>> RESULTS_TYPE =
+            new TypeReference<List<PhysicalFlowUploadCommandResponse>>() {};
+
+
+    private static final RecordMapper<Record, PhysicalFlowUploadJob> TO_DOMAIN_MAPPER = r -> {
+        PhysicalFlowUploadJobRecord record = r.into(PHYSICAL_FLOW_UPLOAD_JOB);
+        return ImmutablePhysicalFlowUploadJob.builder()
+                .id(record.getId())
+                .submittedBy(record.getSubmittedBy())
+                .submittedAt(record.getSubmittedAt().toLocalDateTime())
+                .status(JobLifecycleStatus.valueOf(record.getStatus()))
+                .stage(record.getStage())
+                .totalCount(record.getTotalCount())
+                .processedCount(record.getProcessedCount())
+                .completedAt(Optional.ofNullable(record.getCompletedAt()).map(Timestamp::toLocalDateTime))
+                .message(Optional.ofNullable(record.getMessage()))
+                .results(readResults(record.getResults()))
+                .build();
+    };
+
+
+    private final DSLContext dsl;
+
+
+    @Autowired
+    public PhysicalFlowUploadJobDao(DSLContext dsl) {
+        checkNotNull(dsl, "dsl cannot be null");
+        this.dsl = dsl;
+    }
+
+
+    public int create(PhysicalFlowUploadJob job) {
+        checkNotNull(job, "job cannot be null");
+
+        PhysicalFlowUploadJobRecord record = dsl.newRecord(PHYSICAL_FLOW_UPLOAD_JOB);
+        record.setId(job.id());
+        record.setSubmittedBy(job.submittedBy());
+        record.setSubmittedAt(Timestamp.valueOf(job.submittedAt()));
+        record.setStatus(job.status().name());
+        record.setStage(job.stage());
+        record.setTotalCount(job.totalCount());
+        record.setProcessedCount(job.processedCount());
+        record.setLastUpdatedAt(Timestamp.valueOf(nowUtc()));
+        return record.insert();
+    }
+
+
+    /**
+     * Jobs are only visible to the user who submitted them.
+     * @return the job or null if there is no such job for the user
+     */
+    public PhysicalFlowUploadJob getByIdAndSubmitter(String jobId, String submittedBy) {
+        checkNotNull(jobId, "jobId cannot be null");
+        checkNotNull(submittedBy, "submittedBy cannot be null");
+
+        return dsl.selectFrom(PHYSICAL_FLOW_UPLOAD_JOB)
+                .where(PHYSICAL_FLOW_UPLOAD_JOB.ID.eq(jobId))
+                .and(PHYSICAL_FLOW_UPLOAD_JOB.SUBMITTED_BY.eq(submittedBy))
+                .fetchOne(TO_DOMAIN_MAPPER);
+    }
+
+
+    public int updateProgress(String jobId,
+                              JobLifecycleStatus status,
+                              String stage,
+                              int processedCount) {
+        checkNotNull(status, "status cannot be null");
+        checkNotNull(stage, "stage cannot be null");
+
+        return dsl.update(PHYSICAL_FLOW_UPLOAD_JOB)
+                .set(PHYSICAL_FLOW_UPLOAD_JOB.STATUS, status.name())
+                .set(PHYSICAL_FLOW_UPLOAD_JOB.STAGE, stage)
+                .set(PHYSICAL_FLOW_UPLOAD_JOB.PROCESSED_COUNT, processedCount)
+                .set(PHYSICAL_FLOW_UPLOAD_JOB.LAST_UPDATED_AT, Timestamp.valueOf(nowUtc()))
+                .where(PHYSICAL_FLOW_UPLOAD_JOB.ID.eq(jobId))
+                .execute();
+    }
+
+
+    public int markCompleted(String jobId, List<PhysicalFlowUploadCommandResponse> results) {
+        checkNotNull(results, "results cannot be null");
+
+        Timestamp now = Timestamp.valueOf(nowUtc());
+        return dsl.update(PHYSICAL_FLOW_UPLOAD_JOB)
+                .set(PHYSICAL_FLOW_UPLOAD_JOB.STATUS, JobLifecycleStatus.COMPLETED.name())
+                .set(PHYSICAL_FLOW_UPLOAD_JOB.STAGE, "completed")
+                .set(PHYSICAL_FLOW_UPLOAD_JOB.PROCESSED_COUNT, PHYSICAL_FLOW_UPLOAD_JOB.TOTAL_COUNT)
+                .set(PHYSICAL_FLOW_UPLOAD_JOB.RESULTS, writeResults(results))
+                .set(PHYSICAL_FLOW_UPLOAD_JOB.LAST_UPDATED_AT, now)
+                .set(PHYSICAL_FLOW_UPLOAD_JOB.COMPLETED_AT, now)
+                .where(PHYSICAL_FLOW_UPLOAD_JOB.ID.eq(jobId))
+                .execute();
+    }
+
+
+    public int markErrored(String jobId, String message) {
+        Timestamp now = Timestamp.valueOf(nowUtc());
+        return dsl.update(PHYSICAL_FLOW_UPLOAD_JOB)
+                .set(PHYSICAL_FLOW_UPLOAD_JOB.STATUS, JobLifecycleStatus.ERRORED.name())
+                .set(PHYSICAL_FLOW_UPLOAD_JOB.MESSAGE, message)
+                .set(PHYSICAL_FLOW_UPLOAD_JOB.LAST_UPDATED_AT, now)
+                .set(PHYSICAL_FLOW_UPLOAD_JOB.COMPLETED_AT, now)
+                .where(PHYSICAL_FLOW_UPLOAD_JOB.ID.eq(jobId))
+                .execute();
+    }
+
+
+    /**
+     * Unfinished jobs which have not reported progress since the cutoff are
+     * assumed to have been lost (e.g. the node running them was restarted)
+     * and are marked as errored, finished jobs older than the cutoff are
+     * removed.
+     * @return number of jobs removed
+     */
+    public int removeExpired(LocalDateTime cutoff) {
+        checkNotNull(cutoff, "cutoff cannot be null");
+        Timestamp cutoffTimestamp = Timestamp.valueOf(cutoff);
+
+        dsl.update(PHYSICAL_FLOW_UPLOAD_JOB)
+                .set(PHYSICAL_FLOW_UPLOAD_JOB.STATUS, JobLifecycleStatus.ERRORED.name())
+                .set(PHYSICAL_FLOW_UPLOAD_JOB.MESSAGE, "Upload was abandoned, please resubmit")
+                .set(PHYSICAL_FLOW_UPLOAD_JOB.LAST_UPDATED_AT, Timestamp.valueOf(nowUtc()))
+                .set(PHYSICAL_FLOW_UPLOAD_JOB.COMPLETED_AT, Timestamp.valueOf(nowUtc()))
+                .where(PHYSICAL_FLOW_UPLOAD_JOB.COMPLETED_AT.isNull())
+                .and(PHYSICAL_FLOW_UPLOAD_JOB.LAST_UPDATED_AT.lt(cutoffTimestamp))
+                .execute();
+
+        return dsl.deleteFrom(PHYSICAL_FLOW_UPLOAD_JOB)
+                .where(PHYSICAL_FLOW_UPLOAD_JOB.COMPLETED_AT.lt(cutoffTimestamp))
+                .execute();
+    }
+
+
+    // -- HELPERS ---
+
+    static String writeResults(List<PhysicalFlowUploadCommandResponse> results) {
+        try {
+            return JSON_MAPPER.writeValueAsString(results);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot serialize physical flow upload results", e);
+        }
+    }
+
+
+    static List<PhysicalFlowUploadCommandResponse> readResults(String json) {
+        if (json == null) {
+            return new ArrayList<>();
+        }
+
+        try {
+            return JSON_MAPPER.readValue(json, RESULTS_TYPE);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read physical flow upload results", e);
+        }
+    }
+
+}
@@ -30,17 +30,24 @@ import com.khartec.waltz.model.physical_specification.PhysicalSpecification;
 import com.khartec.waltz.schema.tables.records.PhysicalSpecificationRecord;
 import org.jooq.*;
 import org.jooq.impl.DSL;
+import org.jooq.lambda.tuple.Tuple;
+import org.jooq.lambda.tuple.Tuple3;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
 import static com.khartec.waltz.common.Checks.checkFalse;
 import static com.khartec.waltz.common.Checks.checkNotNull;
 import static com.khartec.waltz.common.ListUtilities.newArrayList;
+import static com.khartec.waltz.common.ListUtilities.partition;
 import static com.khartec.waltz.data.logical_flow.LogicalFlowDao.NOT_REMOVED;
 import static com.khartec.waltz.model.EntityReference.mkRef;
 import static com.khartec.waltz.schema.tables.LogicalFlow.LOGICAL_FLOW;
@@ -51,6 +58,7 @@ import static org.jooq.impl.DSL.*;
 @Repository
 public class PhysicalSpecificationDao {
 
+    private static final int BATCH_SIZE = 1000;
 
     public static final Field<String> owningEntityNameField = InlineSelectFieldFactory.mkNameField(
                 PHYSICAL_SPECIFICATION.OWNING_ENTITY_ID,
@@ -153,6 +161,49 @@ public class PhysicalSpecificationDao {
     }
 
 
+    /**
+     * Set based equivalent of {@link #getByParsedFlow(PhysicalFlowParsed)}.
+     * Candidates are selected in batches by name and owner id and then matched
+     * exactly on owner, format and name.
+     * @param flows  parsed flows to resolve specifications for
+     * @return map of parsed flow to matching specification, flows without a match are absent
+     */
+    public Map<PhysicalFlowParsed, PhysicalSpecification> findByParsedFlows(Collection<PhysicalFlowParsed> flows) {
+        checkNotNull(flows, "flows cannot be null");
+
+        Map<PhysicalFlowParsed, PhysicalSpecification> result = new HashMap<>();
+
+        partition(new ArrayList<>(flows), BATCH_SIZE)
+                .forEach(batch -> {
+                    Set<String> names = batch.stream().map(f -> f.name()).collect(Collectors.toSet());
+                    Set<Long> ownerIds = batch.stream().map(f -> f.owner().id()).collect(Collectors.toSet());
+
+                    Map<Tuple3<EntityReference, DataFormatKind, String>, PhysicalSpecification> candidates = dsl
+                            .select(PHYSICAL_SPECIFICATION.fields())
+                            .select(owningEntityNameField)
+                            .from(PHYSICAL_SPECIFICATION)
+                            .where(PHYSICAL_SPECIFICATION.NAME.in(names))
+                            .and(PHYSICAL_SPECIFICATION.OWNING_ENTITY_ID.in(ownerIds))
+                            .and(PHYSICAL_SPECIFICATION.IS_REMOVED.isFalse())
+                            .fetch(TO_DOMAIN_MAPPER)
+                            .stream()
+                            .collect(Collectors.toMap(
+                                    s -> mkSpecKey(s.owningEntity(), s.format(), s.name()),
+                                    s -> s,
+                                    (s1, s2) -> s1));
+
+                    batch.forEach(f -> {
+                        PhysicalSpecification spec = candidates.get(mkSpecKey(f.owner(), f.format(), f.name()));
+                        if (spec != null) {
+                            result.put(f, spec);
+                        }
+                    });
+                });
+
+        return result;
+    }
+
+
     public boolean isUsed(long id) {
         Field<Boolean> specUsed = DSL.when(
                     exists(selectFrom(PHYSICAL_FLOW).where(PHYSICAL_FLOW.SPECIFICATION_ID.eq(id))),
@@ -169,6 +220,44 @@ public class PhysicalSpecificationDao {
         checkNotNull(specification, "specification cannot be null");
         checkFalse(specification.id().isPresent(), "specification must not have an id");
 
+        PhysicalSpecificationRecord record = mkRecord(specification);
+        record.store();
+        return record.getId();
+    }
+
+
+    /**
+     * Writes the given specifications with a single batch insert.  Generated
+     * ids are not returned, callers should re-read the specifications if
+     * they are required.
+     * @param specifications  specifications to create, must not have ids
+     * @return batch insert counts
+     */
+    public int[] createAll(Collection<PhysicalSpecification> specifications) {
+        checkNotNull(specifications, "specifications cannot be null");
+
+        List<PhysicalSpecificationRecord> records = specifications
+                .stream()
+                .peek(s -> checkFalse(s.id().isPresent(), "specification must not have an id"))
+                .map(this::mkRecord)
+                .collect(Collectors.toList());
+
+        return dsl.batchInsert(records).execute();
+    }
+
+
+    public int delete(long specId) {
+        return dsl.deleteFrom(PHYSICAL_SPECIFICATION)
+                .where(PHYSICAL_SPECIFICATION.ID.eq(specId))
+                .and(notExists(selectFrom(PHYSICAL_FLOW)
+                                .where(PHYSICAL_FLOW.SPECIFICATION_ID.eq(specId))))
+                .execute();
+    }
+
+
+    // -- HELPERS ---
+
+    private PhysicalSpecificationRecord mkRecord(PhysicalSpecification specification) {
         PhysicalSpecificationRecord record = dsl.newRecord(PHYSICAL_SPECIFICATION);
         record.setOwningEntityKind(specification.owningEntity().kind().name());
         record.setOwningEntityId(specification.owningEntity().id());
@@ -184,18 +273,14 @@ public class PhysicalSpecificationDao {
 
         record.setCreatedAt(specification.created().get().atTimestamp());
         record.setCreatedBy(specification.created().get().by());
-
-        record.store();
-        return record.getId();
+        return record;
     }
 
 
-    public int delete(long specId) {
-        return dsl.deleteFrom(PHYSICAL_SPECIFICATION)
-                .where(PHYSICAL_SPECIFICATION.ID.eq(specId))
-                .and(notExists(selectFrom(PHYSICAL_FLOW)
-                                .where(PHYSICAL_FLOW.SPECIFICATION_ID.eq(specId))))
-                .execute();
+    private static Tuple3<EntityReference, DataFormatKind, String> mkSpecKey(EntityReference owner,
+                                                                             DataFormatKind format,
+                                                                             String name) {
+        return Tuple.tuple(mkRef(owner.kind(), owner.id()), format, name);
     }
 
 }
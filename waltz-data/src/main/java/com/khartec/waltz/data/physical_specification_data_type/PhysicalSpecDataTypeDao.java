@@ -21,6 +21,7 @@ package com.khartec.waltz.data.physical_specification_data_type;
 
 import com.khartec.waltz.data.data_flow_decorator.LogicalFlowDecoratorDao;
 import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.model.EntityReference;
 import com.khartec.waltz.model.physical_specification_data_type.ImmutablePhysicalSpecificationDataType;
 import com.khartec.waltz.model.physical_specification_data_type.PhysicalSpecificationDataType;
 import com.khartec.waltz.model.rating.AuthoritativenessRating;
@@ -33,15 +34,20 @@ import org.springframework.stereotype.Repository;
 import java.sql.Timestamp;
 import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 import java.util.function.Function;
+import java.util.stream.Stream;
 
 import static com.khartec.waltz.common.Checks.checkNotNull;
 import static com.khartec.waltz.common.DateTimeUtilities.nowUtc;
 import static com.khartec.waltz.common.DateTimeUtilities.toLocalDateTime;
+import static com.khartec.waltz.model.EntityReference.mkRef;
+import static com.khartec.waltz.schema.tables.LogicalFlow.LOGICAL_FLOW;
 import static com.khartec.waltz.schema.tables.LogicalFlowDecorator.LOGICAL_FLOW_DECORATOR;
 import static com.khartec.waltz.schema.tables.PhysicalFlow.PHYSICAL_FLOW;
 import static com.khartec.waltz.schema.tables.PhysicalSpecDataType.PHYSICAL_SPEC_DATA_TYPE;
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
 
 @Repository
 public class PhysicalSpecDataTypeDao {
@@ -95,6 +101,14 @@ public class PhysicalSpecDataTypeDao {
     }
 
 
+    public List<PhysicalSpecificationDataType> findBySpecificationIds(Collection<Long> specIds) {
+        checkNotNull(specIds, "specIds cannot be null");
+        return dsl.selectFrom(PHYSICAL_SPEC_DATA_TYPE)
+                .where(PHYSICAL_SPEC_DATA_TYPE.SPECIFICATION_ID.in(specIds))
+                .fetch(TO_DOMAIN_MAPPER);
+    }
+
+
     public List<PhysicalSpecificationDataType> findBySpecificationIdSelector(Select<Record1<Long>> specIdSelector) {
         return dsl.selectFrom(PHYSICAL_SPEC_DATA_TYPE)
                 .where(PHYSICAL_SPEC_DATA_TYPE.SPECIFICATION_ID.in(specIdSelector))
@@ -126,6 +140,36 @@ public class PhysicalSpecDataTypeDao {
     }
 
 
+    /**
+     * @return the sources and targets of logical flows which will gain
+     * decorators when {@link #rippleDataTypesToLogicalFlows()} is next run
+     */
+    public Set<EntityReference> findEntitiesAffectedByRipple() {
+        Select<Record1<Long>> flowsToRipple = DSL
+                .selectDistinct(PHYSICAL_FLOW.LOGICAL_FLOW_ID)
+                .from(PHYSICAL_SPEC_DATA_TYPE)
+                .join(PHYSICAL_FLOW).on(PHYSICAL_SPEC_DATA_TYPE.SPECIFICATION_ID.eq(PHYSICAL_FLOW.SPECIFICATION_ID))
+                .leftJoin(LOGICAL_FLOW_DECORATOR)
+                    .on(LOGICAL_FLOW_DECORATOR.LOGICAL_FLOW_ID.eq(PHYSICAL_FLOW.LOGICAL_FLOW_ID)
+                        .and(LOGICAL_FLOW_DECORATOR.DECORATOR_ENTITY_ID.eq(PHYSICAL_SPEC_DATA_TYPE.DATA_TYPE_ID)))
+                .where(LOGICAL_FLOW_DECORATOR.LOGICAL_FLOW_ID.isNull());
+
+        return dsl
+                .select(LOGICAL_FLOW.SOURCE_ENTITY_KIND,
+                        LOGICAL_FLOW.SOURCE_ENTITY_ID,
+                        LOGICAL_FLOW.TARGET_ENTITY_KIND,
+                        LOGICAL_FLOW.TARGET_ENTITY_ID)
+                .from(LOGICAL_FLOW)
+                .where(LOGICAL_FLOW.ID.in(flowsToRipple))
+                .fetch()
+                .stream()
+                .flatMap(r -> Stream.of(
+                        mkRef(EntityKind.valueOf(r.get(LOGICAL_FLOW.SOURCE_ENTITY_KIND)), r.get(LOGICAL_FLOW.SOURCE_ENTITY_ID)),
+                        mkRef(EntityKind.valueOf(r.get(LOGICAL_FLOW.TARGET_ENTITY_KIND)), r.get(LOGICAL_FLOW.TARGET_ENTITY_ID))))
+                .collect(toSet());
+    }
+
+
     public int rippleDataTypesToLogicalFlows() {
         return dsl.insertInto(LOGICAL_FLOW_DECORATOR)
                 .select(DSL
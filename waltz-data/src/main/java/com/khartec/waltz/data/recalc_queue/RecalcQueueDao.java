@@ -0,0 +1,136 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.khartec.waltz.data.recalc_queue;
+
+
+import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.model.EntityReference;
+import com.khartec.waltz.model.recalc_queue.RecalcKind;
+import com.khartec.waltz.schema.tables.records.RecalcQueueRecord;
+import org.jooq.DSLContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.DateTimeUtilities.nowUtc;
+import static com.khartec.waltz.common.ListUtilities.partition;
+import static com.khartec.waltz.model.EntityReference.mkRef;
+import static com.khartec.waltz.schema.tables.RecalcQueue.RECALC_QUEUE;
+import static java.util.stream.Collectors.toList;
+
+
+/**
+ * Durable queue of entities awaiting recalculation.  Writers enqueue
+ * entries, a worker reads the queued entries, processes them and then
+ * removes exactly those entries by id.  Anything enqueued whilst the
+ * worker is busy (including entries committed late with a lower id) is
+ * left for the next pass, and a failed pass leaves the queue untouched
+ * so the work is retried.
+ */
+@Repository
+public class RecalcQueueDao {
+
+    // keeps the in-list within the bind variable limits of every supported database
+    private static final int DEQUEUE_BATCH_SIZE = 1000;
+
+    private final DSLContext dsl;
+
+
+    @Autowired
+    public RecalcQueueDao(DSLContext dsl) {
+        checkNotNull(dsl, "dsl cannot be null");
+        this.dsl = dsl;
+    }
+
+
+    public int enqueue(RecalcKind recalcKind, Collection<EntityReference> refs) {
+        checkNotNull(recalcKind, "recalcKind cannot be null");
+        checkNotNull(refs, "refs cannot be null");
+
+        Timestamp now = Timestamp.valueOf(nowUtc());
+
+        List<RecalcQueueRecord> records = refs
+                .stream()
+                .distinct()
+                .map(ref -> {
+                    RecalcQueueRecord record = dsl.newRecord(RECALC_QUEUE);
+                    record.setRecalcKind(recalcKind.name());
+                    record.setEntityKind(ref.kind().name());
+                    record.setEntityId(ref.id());
+                    record.setQueuedAt(now);
+                    return record;
+                })
+                .collect(toList());
+
+        if (records.isEmpty()) {
+            return 0;
+        }
+
+        return dsl
+                .batchInsert(records)
+                .execute()
+                .length;
+    }
+
+
+    /**
+     * @return entries currently queued for the given kind, keyed by entry id.
+     * Several entries may refer to the same entity
+     */
+    public Map<Long, EntityReference> findQueuedEntries(RecalcKind recalcKind) {
+        checkNotNull(recalcKind, "recalcKind cannot be null");
+
+        return dsl
+                .select(RECALC_QUEUE.ID, RECALC_QUEUE.ENTITY_KIND, RECALC_QUEUE.ENTITY_ID)
+                .from(RECALC_QUEUE)
+                .where(RECALC_QUEUE.RECALC_KIND.eq(recalcKind.name()))
+                .fetchMap(
+                        RECALC_QUEUE.ID,
+                        r -> mkRef(
+                                EntityKind.valueOf(r.get(RECALC_QUEUE.ENTITY_KIND)),
+                                r.get(RECALC_QUEUE.ENTITY_ID)));
+    }
+
+
+    /**
+     * Removes exactly the given entries (as returned by {@link #findQueuedEntries(RecalcKind)}).
+     */
+    public int dequeue(RecalcKind recalcKind, Collection<Long> entryIds) {
+        checkNotNull(recalcKind, "recalcKind cannot be null");
+        checkNotNull(entryIds, "entryIds cannot be null");
+
+        return partition(new ArrayList<>(entryIds), DEQUEUE_BATCH_SIZE)
+                .stream()
+                .mapToInt(batch -> dsl
+                        .deleteFrom(RECALC_QUEUE)
+                        .where(RECALC_QUEUE.RECALC_KIND.eq(recalcKind.name()))
+                        .and(RECALC_QUEUE.ID.in(batch))
+                        .execute())
+                .sum();
+    }
+
+}
@@ -20,19 +20,39 @@
 package com.khartec.waltz.data.scheduled_job;
 
 
+import com.khartec.waltz.model.scheduled_job.ImmutableScheduledJobRun;
 import com.khartec.waltz.model.scheduled_job.JobKey;
 import com.khartec.waltz.model.scheduled_job.JobLifecycleStatus;
+import com.khartec.waltz.model.scheduled_job.ScheduledJobRun;
+import com.khartec.waltz.schema.tables.records.ScheduledJobLogRecord;
 import org.jooq.DSLContext;
+import org.jooq.RecordMapper;
 import org.jooq.impl.DSL;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Optional;
+
 import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.schema.tables.ScheduledJobLog.SCHEDULED_JOB_LOG;
 import static com.khartec.waltz.schema.tables.Settings.SETTINGS;
 
 @Repository
 public class ScheduledJobDao {
 
+    private static final RecordMapper<ScheduledJobLogRecord, ScheduledJobRun> TO_RUN_MAPPER =
+            r -> ImmutableScheduledJobRun.builder()
+                    .jobKey(JobKey.valueOf(r.getJobKey()))
+                    .status(JobLifecycleStatus.valueOf(r.getStatus()))
+                    .startedAt(r.getStartedAt().toLocalDateTime())
+                    .completedAt(r.getCompletedAt().toLocalDateTime())
+                    .durationMillis(r.getDurationMillis())
+                    .rowsAffected(Optional.ofNullable(r.getRowsAffected()))
+                    .message(Optional.ofNullable(r.getMessage()))
+                    .build();
+
     private final DSLContext dsl;
 
 
@@ -69,4 +89,29 @@ public class ScheduledJobDao {
                 .where(SETTINGS.NAME.eq(jobKey.name()))
                 .execute();
     }
+
+
+    public int recordRun(ScheduledJobRun run) {
+        checkNotNull(run, "run cannot be null");
+
+        ScheduledJobLogRecord record = dsl.newRecord(SCHEDULED_JOB_LOG);
+        record.setJobKey(run.jobKey().name());
+        record.setStatus(run.status().name());
+        record.setStartedAt(Timestamp.valueOf(run.startedAt()));
+        record.setCompletedAt(Timestamp.valueOf(run.completedAt()));
+        record.setDurationMillis(run.durationMillis());
+        record.setRowsAffected(run.rowsAffected().orElse(null));
+        record.setMessage(run.message().orElse(null));
+
+        return record.insert();
+    }
+
+
+    public List<ScheduledJobRun> findRecentRuns(int limit) {
+        return dsl
+                .selectFrom(SCHEDULED_JOB_LOG)
+                .orderBy(SCHEDULED_JOB_LOG.STARTED_AT.desc())
+                .limit(limit)
+                .fetch(TO_RUN_MAPPER);
+    }
 }
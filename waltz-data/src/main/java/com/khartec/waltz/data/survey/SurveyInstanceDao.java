@@ -28,22 +28,24 @@ import com.khartec.waltz.schema.tables.records.SurveyInstanceRecipientRecord;
 import com.khartec.waltz.schema.tables.records.SurveyInstanceRecord;
 import org.jooq.*;
 import org.jooq.impl.DSL;
+import org.jooq.lambda.tuple.Tuple2;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
 import java.sql.Date;
 import java.sql.Timestamp;
 import java.time.LocalDate;
-import java.util.Collection;
-import java.util.List;
+import java.util.*;
 
 import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.Checks.checkTrue;
 import static com.khartec.waltz.common.DateTimeUtilities.nowUtc;
 import static com.khartec.waltz.common.DateTimeUtilities.toSqlDate;
 import static com.khartec.waltz.common.ListUtilities.newArrayList;
 import static com.khartec.waltz.schema.Tables.SURVEY_INSTANCE;
 import static com.khartec.waltz.schema.Tables.SURVEY_INSTANCE_RECIPIENT;
 import static java.util.Optional.ofNullable;
+import static org.jooq.lambda.tuple.Tuple.tuple;
 
 @Repository
 public class SurveyInstanceDao {
@@ -290,4 +292,90 @@ public class SurveyInstanceDao {
 
         return dsl.batchInsert(records).execute();
     }
+
+
+    /**
+     * Creates survey instances, each with their recipients, for a survey run
+     * within a single transaction.  Instances are created with a status of
+     * NOT_STARTED.
+     *
+     * The instances are written with a single multi-row insert which
+     * returns the generated ids alongside each instance's subject entity,
+     * the recipients are then batch inserted against those ids.
+     *
+     * @param surveyRunId  survey run the instances belong to
+     * @param dueDate  due date of the instances, may be null
+     * @param instances  one entry per instance to create, giving the subject entity and the ids of the recipients
+     * @return number of recipients created
+     */
+    public int createInstancesWithRecipients(long surveyRunId,
+                                             LocalDate dueDate,
+                                             List<Tuple2<EntityReference, List<Long>>> instances) {
+        checkNotNull(instances, "instances cannot be null");
+
+        if (instances.isEmpty()) {
+            return 0;
+        }
+
+        return dsl.transactionResult(configuration -> {
+            DSLContext txDsl = DSL.using(configuration);
+
+            InsertValuesStep5<SurveyInstanceRecord, Long, String, Long, String, Date> insert = txDsl
+                    .insertInto(SURVEY_INSTANCE)
+                    .columns(SURVEY_INSTANCE.SURVEY_RUN_ID,
+                            SURVEY_INSTANCE.ENTITY_KIND,
+                            SURVEY_INSTANCE.ENTITY_ID,
+                            SURVEY_INSTANCE.STATUS,
+                            SURVEY_INSTANCE.DUE_DATE);
+
+            for (Tuple2<EntityReference, List<Long>> instance : instances) {
+                insert = insert.values(
+                        surveyRunId,
+                        instance.v1().kind().name(),
+                        instance.v1().id(),
+                        SurveyInstanceStatus.NOT_STARTED.name(),
+                        toSqlDate(dueDate));
+            }
+
+            Result<SurveyInstanceRecord> created = insert
+                    .returning(SURVEY_INSTANCE.ID, SURVEY_INSTANCE.ENTITY_KIND, SURVEY_INSTANCE.ENTITY_ID)
+                    .fetch();
+
+            List<SurveyInstanceRecipientRecord> recipientRecords = mkRecipientRecords(instances, created);
+
+            txDsl.batchInsert(recipientRecords).execute();
+
+            return recipientRecords.size();
+        });
+    }
+
+
+    // -- HELPERS ---
+
+    /**
+     * Pairs the recipients of each requested instance with the id of a created instance.
+     * Rows are matched on natural key as databases do not promise to return them in
+     * insertion order, repeated entities are identical so any of their recipient lists will do.
+     */
+    static List<SurveyInstanceRecipientRecord> mkRecipientRecords(List<Tuple2<EntityReference, List<Long>>> instances,
+                                                                  Collection<SurveyInstanceRecord> created) {
+        Map<Tuple2<String, Long>, Deque<List<Long>>> recipientsByEntity = new HashMap<>();
+        instances.forEach(instance -> recipientsByEntity
+                .computeIfAbsent(tuple(instance.v1().kind().name(), instance.v1().id()), k -> new ArrayDeque<>())
+                .add(instance.v2()));
+
+        List<SurveyInstanceRecipientRecord> recipientRecords = new ArrayList<>();
+        for (SurveyInstanceRecord instanceRecord : created) {
+            Deque<List<Long>> pending = recipientsByEntity.get(tuple(instanceRecord.getEntityKind(), instanceRecord.getEntityId()));
+            checkTrue(pending != null && ! pending.isEmpty(), "Unexpected survey instance created for: %s/%d", instanceRecord.getEntityKind(), instanceRecord.getEntityId());
+
+            pending.remove().forEach(personId -> {
+                SurveyInstanceRecipientRecord record = new SurveyInstanceRecipientRecord();
+                record.setSurveyInstanceId(instanceRecord.getId());
+                record.setPersonId(personId);
+                recipientRecords.add(record);
+            });
+        }
+        return recipientRecords;
+    }
 }
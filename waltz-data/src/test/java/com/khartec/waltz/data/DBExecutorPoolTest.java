@@ -0,0 +1,213 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.khartec.waltz.data;
+
+import org.junit.Test;
+
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class DBExecutorPoolTest {
+
+    @Test
+    public void tasksAreRunAndStatsRecorded() throws Exception {
+        DBExecutorPool pool = new DBExecutorPool(2, 10, 4, 60, DBExecutorPool.RejectionPolicy.ABORT);
+
+        assertEquals(Integer.valueOf(42), pool.submit(() -> 42).get());
+        assertEquals(1, pool.getSubmittedCount());
+    }
+
+
+    @Test
+    public void runningTasksCanSeeTheirRemainingTime() throws Exception {
+        DBExecutorPool pool = new DBExecutorPool(1, 10, 4, 60, DBExecutorPool.RejectionPolicy.ABORT);
+
+        Optional<Long> remaining = pool.submit(DBExecutorPool::remainingMillis).get();
+
+        assertTrue(remaining.isPresent());
+        assertTrue(remaining.get() > 0 && remaining.get() <= 60_000);
+        assertFalse("caller thread has no deadline", DBExecutorPool.remainingMillis().isPresent());
+    }
+
+
+    @Test
+    public void concurrentTasksPerRequestAreCapped() throws Exception {
+        DBExecutorPool pool = new DBExecutorPool(4, 10, 2, 60, DBExecutorPool.RejectionPolicy.ABORT);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        Callable<Integer> task = () -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            Thread.sleep(50);
+            running.decrementAndGet();
+            return 1;
+        };
+
+        Future<Integer> a = pool.submit(task);
+        Future<Integer> b = pool.submit(task);
+        Future<Integer> c = pool.submit(task);
+        Future<Integer> d = pool.submit(task);
+
+        assertEquals(4, a.get() + b.get() + c.get() + d.get());
+        assertTrue(maxRunning.get() <= 2);
+    }
+
+
+    @Test(expected = RejectedExecutionException.class)
+    public void fullQueueRejectsWhenAborting() throws Exception {
+        DBExecutorPool pool = new DBExecutorPool(1, 1, 10, 60, DBExecutorPool.RejectionPolicy.ABORT);
+        CountDownLatch latch = new CountDownLatch(1);
+
+        try {
+            pool.submit(() -> latch.await(5, TimeUnit.SECONDS)); // occupies the thread
+            pool.submit(() -> true);  // fills the queue
+            pool.submit(() -> true);  // rejected
+        } finally {
+            latch.countDown();
+        }
+    }
+
+
+    @Test
+    public void fullQueueRunsOnCallerWhenConfigured() throws Exception {
+        DBExecutorPool pool = new DBExecutorPool(1, 1, 10, 60, DBExecutorPool.RejectionPolicy.CALLER_RUNS);
+        CountDownLatch latch = new CountDownLatch(1);
+
+        try {
+            pool.submit(() -> latch.await(5, TimeUnit.SECONDS));
+            pool.submit(() -> true);
+            Future<String> overflow = pool.submit(() -> Thread.currentThread().getName());
+
+            assertEquals(Thread.currentThread().getName(), overflow.get());
+            assertEquals(1, pool.getCallerRunsCount());
+        } finally {
+            latch.countDown();
+        }
+    }
+
+
+    @Test
+    public void nestedSubmissionsRunOnTheSameThread() throws Exception {
+        DBExecutorPool pool = new DBExecutorPool(1, 10, 4, 60, DBExecutorPool.RejectionPolicy.ABORT);
+
+        Future<Boolean> outer = pool.submit(() -> {
+            String outerThread = Thread.currentThread().getName();
+            return pool.submit(() -> Thread.currentThread().getName().equals(outerThread)).get();
+        });
+
+        assertTrue(outer.get(5, TimeUnit.SECONDS));
+    }
+
+
+    @Test
+    public void rejectedSubmissionsReleaseTheirPermit() throws Exception {
+        DBExecutorPool pool = new DBExecutorPool(1, 1, 3, 60, DBExecutorPool.RejectionPolicy.ABORT);
+        CountDownLatch latch = new CountDownLatch(1);
+
+        try {
+            pool.submit(() -> latch.await(5, TimeUnit.SECONDS));
+            Future<Boolean> queued = pool.submit(() -> true);
+
+            try {
+                pool.submit(() -> true);
+                fail("queue is full, submission should be rejected");
+            } catch (RejectedExecutionException e) {
+                assertEquals(1, pool.getRejectedCount());
+            }
+
+            latch.countDown();
+            assertTrue(queued.get(5, TimeUnit.SECONDS));
+
+            // had the rejected task kept its permit the request would be one short
+            assertTrue(pool.submit(() -> true).get(5, TimeUnit.SECONDS));
+            assertTrue(pool.submit(() -> true).get(5, TimeUnit.SECONDS));
+        } finally {
+            latch.countDown();
+        }
+    }
+
+
+    @Test
+    public void submissionsAfterShutdownAreRejectedWhenCallerRuns() throws Exception {
+        DBExecutorPool pool = new DBExecutorPool(1, 1, 1, 60, DBExecutorPool.RejectionPolicy.CALLER_RUNS);
+        pool.shutdown();
+
+        for (int i = 0; i < 2; i++) {
+            // a leaked permit would make the second attempt wait for the (60s) timeout
+            try {
+                pool.submit(() -> true);
+                fail("executor is shut down, submission should be rejected");
+            } catch (RejectedExecutionException e) {
+                assertEquals(i + 1, pool.getRejectedCount());
+            }
+        }
+
+        assertEquals("shut down submissions are not run by the caller", 0, pool.getCallerRunsCount());
+    }
+
+
+    @Test(expected = RejectedExecutionException.class)
+    public void submissionsAfterShutdownAreRejectedWhenAborting() throws Exception {
+        DBExecutorPool pool = new DBExecutorPool(1, 1, 1, 60, DBExecutorPool.RejectionPolicy.ABORT);
+        pool.shutdown();
+        pool.submit(() -> true);
+    }
+
+
+    @Test
+    public void tasksQueuedBeyondTheirDeadlineFailWithTimeout() throws Exception {
+        DBExecutorPool pool = new DBExecutorPool(1, 10, 4, 1, DBExecutorPool.RejectionPolicy.ABORT);
+        AtomicInteger ran = new AtomicInteger();
+
+        pool.submit(() -> {
+            Thread.sleep(1_200);  // outlives the deadline of the task queued behind it
+            return true;
+        });
+        Future<Integer> late = pool.submit(ran::incrementAndGet);
+
+        try {
+            late.get(5, TimeUnit.SECONDS);
+            fail("task should have timed out in the queue");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+
+        assertEquals("timed out tasks are not run", 0, ran.get());
+        assertEquals(1, pool.getTimedOutCount());
+    }
+
+
+    @Test(expected = RejectedExecutionException.class)
+    public void waitingForAPermitIsBoundedByTheTimeout() throws Exception {
+        DBExecutorPool pool = new DBExecutorPool(2, 10, 1, 1, DBExecutorPool.RejectionPolicy.ABORT);
+        CountDownLatch latch = new CountDownLatch(1);
+
+        try {
+            pool.submit(() -> latch.await(5, TimeUnit.SECONDS));  // holds the request's only permit
+            pool.submit(() -> true);
+        } finally {
+            latch.countDown();
+        }
+    }
+
+}
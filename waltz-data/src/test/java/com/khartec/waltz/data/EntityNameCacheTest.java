@@ -0,0 +1,195 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.khartec.waltz.data;
+
+import com.khartec.waltz.model.EntityKind;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+
+
+public class EntityNameCacheTest {
+
+    private final AtomicLong clock = new AtomicLong(1_000);
+    private final List<List<Long>> loads = new ArrayList<>();
+
+
+    @Test
+    public void cachedNamesAreNotLoadedAgain() {
+        EntityNameCache cache = new EntityNameCache(10, 60, clock::get);
+
+        assertEquals(names(1L, "a1", 2L, "a2"), cache.getAll(EntityKind.APPLICATION, asList(1L, 2L), loader("a")));
+        assertEquals(names(1L, "a1", 2L, "a2", 3L, "a3"), cache.getAll(EntityKind.APPLICATION, asList(1L, 2L, 3L), loader("a")));
+        assertEquals(names(2L, "a2"), cache.getAll(EntityKind.APPLICATION, asList(2L), loader("a")));
+
+        assertEquals(asList(asList(1L, 2L), asList(3L)), loads);
+    }
+
+
+    @Test
+    public void kindsAreCachedSeparately() {
+        EntityNameCache cache = new EntityNameCache(10, 60, clock::get);
+
+        cache.getAll(EntityKind.APPLICATION, asList(1L), loader("a"));
+        assertEquals(names(1L, "p1"), cache.getAll(EntityKind.PERSON, asList(1L), loader("p")));
+
+        assertEquals(2, loads.size());
+    }
+
+
+    @Test
+    public void unknownIdsAreNotRemembered() {
+        EntityNameCache cache = new EntityNameCache(10, 60, clock::get);
+        Function<List<Long>, Map<Long, String>> onlyOdd = ids -> {
+            loads.add(ids);
+            Map<Long, String> names = new HashMap<>();
+            ids.stream().filter(id -> id % 2 == 1).forEach(id -> names.put(id, "n" + id));
+            return names;
+        };
+
+        assertEquals(names(1L, "n1"), cache.getAll(EntityKind.APPLICATION, asList(1L, 2L), onlyOdd));
+        assertEquals(names(1L, "n1"), cache.getAll(EntityKind.APPLICATION, asList(1L, 2L), onlyOdd));
+
+        assertEquals(asList(asList(1L, 2L), asList(2L)), loads);
+        assertEquals(1, cache.size(EntityKind.APPLICATION));
+    }
+
+
+    @Test
+    public void sizeIsBoundedPerKindEvictingTheLeastRecentlyUsed() {
+        EntityNameCache cache = new EntityNameCache(2, 60, clock::get);
+
+        cache.getAll(EntityKind.APPLICATION, asList(1L), loader("a"));
+        cache.getAll(EntityKind.APPLICATION, asList(2L), loader("a"));
+        cache.getAll(EntityKind.APPLICATION, asList(1L), loader("a"));  // touch 1, so 2 is the eldest
+        cache.getAll(EntityKind.APPLICATION, asList(3L), loader("a"));
+
+        assertEquals(2, cache.size(EntityKind.APPLICATION));
+
+        loads.clear();
+        cache.getAll(EntityKind.APPLICATION, asList(1L, 2L, 3L), loader("a"));
+        assertEquals(asList(asList(2L)), loads);
+    }
+
+
+    @Test
+    public void zeroSizeDisablesCaching() {
+        EntityNameCache cache = new EntityNameCache(0, 60, clock::get);
+
+        assertEquals(names(1L, "a1"), cache.getAll(EntityKind.APPLICATION, asList(1L), loader("a")));
+        assertEquals(names(1L, "a1"), cache.getAll(EntityKind.APPLICATION, asList(1L), loader("a")));
+
+        assertEquals(2, loads.size());
+        assertEquals(0, cache.size(EntityKind.APPLICATION));
+    }
+
+
+    @Test
+    public void entriesExpireAfterTheTtl() {
+        EntityNameCache cache = new EntityNameCache(10, 60, clock::get);
+
+        cache.getAll(EntityKind.APPLICATION, asList(1L), loader("a"));
+        clock.addAndGet(59_999);
+        cache.getAll(EntityKind.APPLICATION, asList(1L), loader("a"));
+        assertEquals(1, loads.size());
+
+        clock.addAndGet(1);
+        cache.getAll(EntityKind.APPLICATION, asList(1L), loader("a"));
+        assertEquals(2, loads.size());
+    }
+
+
+    @Test
+    public void invalidateDropsOnlyTheGivenKind() {
+        EntityNameCache cache = new EntityNameCache(10, 60, clock::get);
+        cache.getAll(EntityKind.APPLICATION, asList(1L), loader("a"));
+        cache.getAll(EntityKind.PERSON, asList(1L), loader("p"));
+
+        cache.invalidate(EntityKind.APPLICATION);
+
+        assertEquals(names(1L, "renamed1"), cache.getAll(EntityKind.APPLICATION, asList(1L), loader("renamed")));
+        assertEquals(names(1L, "p1"), cache.getAll(EntityKind.PERSON, asList(1L), loader("ignored")));
+    }
+
+
+    @Test
+    public void loadsInFlightWhenInvalidatedAreNotRemembered() {
+        EntityNameCache cache = new EntityNameCache(10, 60, clock::get);
+
+        Map<Long, String> result = cache.getAll(
+                EntityKind.APPLICATION,
+                asList(1L),
+                ids -> {
+                    // a rename commits whilst the old name is being read
+                    cache.invalidate(EntityKind.APPLICATION);
+                    return names(1L, "old");
+                });
+
+        assertEquals(names(1L, "old"), result);
+        assertEquals(0, cache.size(EntityKind.APPLICATION));
+        assertEquals(names(1L, "new1"), cache.getAll(EntityKind.APPLICATION, asList(1L), loader("new")));
+    }
+
+
+    @Test
+    public void clearDropsEveryKind() {
+        EntityNameCache cache = new EntityNameCache(10, 60, clock::get);
+        cache.getAll(EntityKind.APPLICATION, asList(1L), loader("a"));
+        cache.getAll(EntityKind.PERSON, asList(1L), loader("p"));
+
+        cache.clear();
+
+        assertEquals(0, cache.size(EntityKind.APPLICATION));
+        assertEquals(0, cache.size(EntityKind.PERSON));
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeSizeIsRejected() {
+        new EntityNameCache(-1, 60);
+    }
+
+
+    // -- HELPERS ---
+
+    private Function<List<Long>, Map<Long, String>> loader(String prefix) {
+        return ids -> {
+            loads.add(new ArrayList<>(ids));
+            Map<Long, String> names = new HashMap<>();
+            ids.forEach(id -> names.put(id, prefix + id));
+            return names;
+        };
+    }
+
+
+    private static Map<Long, String> names(Object... idsAndNames) {
+        Map<Long, String> names = new HashMap<>();
+        for (int i = 0; i < idsAndNames.length; i += 2) {
+            names.put((Long) idsAndNames[i], (String) idsAndNames[i + 1]);
+        }
+        return names;
+    }
+
+}
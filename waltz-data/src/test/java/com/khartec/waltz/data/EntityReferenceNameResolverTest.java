@@ -0,0 +1,137 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.khartec.waltz.data;
+
+import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.model.EntityReference;
+import org.junit.Test;
+
+import java.util.*;
+
+import static com.khartec.waltz.model.EntityReference.mkRef;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.*;
+
+
+public class EntityReferenceNameResolverTest {
+
+    private final Map<EntityKind, List<List<Long>>> loadsByKind = new EnumMap<>(EntityKind.class);
+
+
+    @Test
+    public void mixedKindsAreResolvedInTheOriginalOrderWithOneLoadPerKind() {
+        EntityReferenceNameResolver resolver = mkResolver(10);
+
+        List<EntityReference> resolved = resolver.resolve(asList(
+                mkRef(EntityKind.APPLICATION, 1),
+                mkRef(EntityKind.PERSON, 1),
+                mkRef(EntityKind.APPLICATION, 2),
+                mkRef(EntityKind.APPLICATION, 1)));
+
+        assertEquals(
+                asList("APPLICATION:1", "PERSON:1", "APPLICATION:2", "APPLICATION:1"),
+                names(resolved));
+        assertEquals(1, loadsByKind.get(EntityKind.APPLICATION).size());
+        assertEquals(new HashSet<>(asList(1L, 2L)), new HashSet<>(loadsByKind.get(EntityKind.APPLICATION).get(0)));
+        assertEquals(singletonList(singletonList(1L)), loadsByKind.get(EntityKind.PERSON));
+    }
+
+
+    @Test
+    public void unknownIdsAndUnsupportedKindsResolveWithoutAName() {
+        EntityReferenceNameResolver resolver = mkResolver(10);
+
+        List<EntityReference> resolved = resolver.resolve(asList(
+                mkRef(EntityKind.APPLICATION, 1),
+                mkRef(EntityKind.APPLICATION, 404),
+                mkRef(EntityKind.BOOKMARK, 1)));
+
+        assertEquals(asList("APPLICATION:1", null, null), names(resolved));
+        assertEquals(
+                asList(EntityKind.APPLICATION, EntityKind.APPLICATION, EntityKind.BOOKMARK),
+                resolved.stream().map(EntityReference::kind).collect(toList()));
+        assertEquals(
+                asList(1L, 404L, 1L),
+                resolved.stream().map(EntityReference::id).collect(toList()));
+    }
+
+
+    @Test
+    public void resolvedNamesAreServedFromTheCache() {
+        EntityReferenceNameResolver resolver = mkResolver(10);
+
+        resolver.resolve(asList(mkRef(EntityKind.APPLICATION, 1), mkRef(EntityKind.APPLICATION, 2)));
+        Optional<EntityReference> again = resolver.resolve(mkRef(EntityKind.APPLICATION, 2));
+
+        assertEquals(Optional.of("APPLICATION:2"), again.flatMap(EntityReference::name));
+        assertEquals(1, loadsByKind.get(EntityKind.APPLICATION).size());
+    }
+
+
+    @Test
+    public void unknownIdsAreLookedUpAgain() {
+        EntityReferenceNameResolver resolver = mkResolver(10);
+
+        resolver.resolve(mkRef(EntityKind.APPLICATION, 404));
+        resolver.resolve(mkRef(EntityKind.APPLICATION, 404));
+
+        assertEquals(2, loadsByKind.get(EntityKind.APPLICATION).size());
+    }
+
+
+    @Test
+    public void emptyListGivesEmptyList() {
+        assertTrue(mkResolver(10).resolve(Collections.emptyList()).isEmpty());
+        assertTrue(loadsByKind.isEmpty());
+    }
+
+
+    // -- HELPERS ---
+
+    /**
+     * Knows applications and people (ids below 100), names are "KIND:id".
+     */
+    private EntityReferenceNameResolver mkResolver(int cacheSize) {
+        return new EntityReferenceNameResolver(
+                new EntityNameCache(cacheSize, 60),
+                (kind, ids) -> {
+                    if (kind != EntityKind.APPLICATION && kind != EntityKind.PERSON) {
+                        return Optional.empty();
+                    }
+                    loadsByKind.computeIfAbsent(kind, k -> new ArrayList<>()).add(new ArrayList<>(ids));
+                    Map<Long, String> names = new HashMap<>();
+                    ids.stream()
+                            .filter(id -> id < 100)
+                            .forEach(id -> names.put(id, kind.name() + ":" + id));
+                    return Optional.of(names);
+                });
+    }
+
+
+    private static List<String> names(List<EntityReference> refs) {
+        return refs
+                .stream()
+                .map(r -> r.name().orElse(null))
+                .collect(toList());
+    }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.khartec.waltz.data.application;
+
+import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.model.HierarchyQueryScope;
+import com.khartec.waltz.model.application.ApplicationIdSelectionOptions;
+import org.junit.Test;
+
+import static com.khartec.waltz.model.EntityReference.mkRef;
+import static org.junit.Assert.*;
+
+public class ApplicationIdSelectionCacheTest {
+
+    private static final ApplicationIdSelectionOptions ORG_UNIT_OPTIONS = ApplicationIdSelectionOptions.mkOpts(
+            mkRef(EntityKind.ORG_UNIT, 10L),
+            HierarchyQueryScope.CHILDREN);
+
+
+    @Test
+    public void missThenHit() {
+        ApplicationIdSelectionCache cache = new ApplicationIdSelectionCache(true, 300, 10, 100);
+
+        assertFalse(cache.get(ORG_UNIT_OPTIONS).isPresent());
+        cache.put(ORG_UNIT_OPTIONS, new long[]{1, 2, 3}, cache.generation());
+
+        assertArrayEquals(new long[]{1, 2, 3}, cache.get(ORG_UNIT_OPTIONS).get().ids());
+        assertEquals(1, cache.missCount());
+        assertEquals(1, cache.hitCount());
+    }
+
+
+    @Test
+    public void namesDoNotAffectTheKey() {
+        ApplicationIdSelectionCache cache = new ApplicationIdSelectionCache(true, 300, 10, 100);
+        cache.put(ORG_UNIT_OPTIONS, new long[]{1, 2, 3}, cache.generation());
+
+        ApplicationIdSelectionOptions named = ApplicationIdSelectionOptions.mkOpts(
+                mkRef(EntityKind.ORG_UNIT, 10L, "Finance"),
+                HierarchyQueryScope.CHILDREN);
+
+        assertTrue(cache.get(named).isPresent());
+    }
+
+
+    @Test
+    public void invalidateDropsEntries() {
+        ApplicationIdSelectionCache cache = new ApplicationIdSelectionCache(true, 300, 10, 100);
+        cache.put(ORG_UNIT_OPTIONS, new long[]{1, 2, 3}, cache.generation());
+
+        cache.invalidate();
+
+        assertEquals(0, cache.size());
+        assertFalse(cache.get(ORG_UNIT_OPTIONS).isPresent());
+        assertEquals(1, cache.invalidationCount());
+    }
+
+
+    @Test
+    public void resolutionStartedBeforeAnInvalidationIsNotCached() {
+        ApplicationIdSelectionCache cache = new ApplicationIdSelectionCache(true, 300, 10, 100);
+        long generation = cache.generation();
+
+        cache.invalidate();
+        ApplicationIdSelectionCache.CachedSelection selection = cache.put(ORG_UNIT_OPTIONS, new long[]{1, 2, 3}, generation);
+
+        assertArrayEquals("selection is still usable by the caller", new long[]{1, 2, 3}, selection.ids());
+        assertFalse(cache.get(ORG_UNIT_OPTIONS).isPresent());
+    }
+
+
+    @Test
+    public void oversizedSelectionsAreNotCached() {
+        ApplicationIdSelectionCache cache = new ApplicationIdSelectionCache(true, 300, 10, 2);
+
+        ApplicationIdSelectionCache.CachedSelection selection = cache.put(ORG_UNIT_OPTIONS, new long[]{1, 2, 3}, cache.generation());
+
+        assertTrue(selection.isOversized());
+        assertEquals("ids of oversized selections are not retained", 0, selection.ids().length);
+        assertEquals(0, cache.size());
+    }
+
+
+    @Test
+    public void expiredEntriesAreMisses() {
+        ApplicationIdSelectionCache cache = new ApplicationIdSelectionCache(true, 0, 10, 100);
+        cache.put(ORG_UNIT_OPTIONS, new long[]{1, 2, 3}, cache.generation());
+
+        sleep(5);
+
+        assertFalse(cache.get(ORG_UNIT_OPTIONS).isPresent());
+        assertEquals(1, cache.missCount());
+    }
+
+
+    @Test
+    public void disabledCacheNeverStores() {
+        ApplicationIdSelectionCache cache = new ApplicationIdSelectionCache(false, 300, 10, 100);
+        cache.put(ORG_UNIT_OPTIONS, new long[]{1, 2, 3}, cache.generation());
+
+        assertFalse(cache.get(ORG_UNIT_OPTIONS).isPresent());
+        assertEquals(0, cache.size());
+    }
+
+
+    // -- HELPERS ---
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
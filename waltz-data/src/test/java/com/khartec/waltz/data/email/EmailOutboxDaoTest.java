@@ -0,0 +1,63 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.khartec.waltz.data.email;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+
+import static com.khartec.waltz.common.ListUtilities.newArrayList;
+import static com.khartec.waltz.common.SetUtilities.asSet;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EmailOutboxDaoTest {
+
+    @Test
+    public void recipientsStillWaitingForTheMessageAreSkipped() {
+        List<String> toQueue = EmailOutboxDao.findRecipientsToQueue(
+                newArrayList("pending@example.com", "sent@example.com"),
+                asSet("pending@example.com"));
+
+        assertEquals(newArrayList("sent@example.com"), toQueue);
+    }
+
+
+    @Test
+    public void recipientsAreOnlyQueuedOnceInTheirOriginalOrder() {
+        List<String> toQueue = EmailOutboxDao.findRecipientsToQueue(
+                newArrayList("b@example.com", "a@example.com", "b@example.com", "c@example.com"),
+                new HashSet<>());
+
+        assertEquals(newArrayList("b@example.com", "a@example.com", "c@example.com"), toQueue);
+    }
+
+
+    @Test
+    public void nothingIsQueuedWhenAllRecipientsAreWaiting() {
+        List<String> toQueue = EmailOutboxDao.findRecipientsToQueue(
+                newArrayList("a@example.com", "a@example.com"),
+                asSet("a@example.com", "b@example.com"));
+
+        assertTrue(toQueue.isEmpty());
+    }
+
+}
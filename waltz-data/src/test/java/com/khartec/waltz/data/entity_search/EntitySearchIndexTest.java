@@ -0,0 +1,171 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.khartec.waltz.data.entity_search;
+
+import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.model.EntityLifecycleStatus;
+import com.khartec.waltz.model.EntityReference;
+import com.khartec.waltz.model.ImmutableEntityReference;
+import com.khartec.waltz.model.entity_search.EntitySearchDocument;
+import com.khartec.waltz.model.entity_search.EntitySearchOptions;
+import com.khartec.waltz.model.entity_search.ImmutableEntitySearchDocument;
+import com.khartec.waltz.model.entity_search.ImmutableEntitySearchOptions;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static com.khartec.waltz.common.ListUtilities.newArrayList;
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.*;
+
+public class EntitySearchIndexTest {
+
+    private static final EntitySearchOptions OPTIONS = EntitySearchOptions.mkForEntity(EntityKind.APPLICATION);
+
+    private EntitySearchIndex index;
+
+
+    @Before
+    public void setUp() {
+        index = new EntitySearchIndex(true);
+        index.replace(EntityKind.APPLICATION, newArrayList(
+                mkDoc(1, "Trade Booking", "Books trades", EntityLifecycleStatus.ACTIVE, "TB-001"),
+                mkDoc(2, "Settlements", "Settles trade bookings", EntityLifecycleStatus.ACTIVE, "ST-002"),
+                mkDoc(3, "Trade Archive", "Historic trades", EntityLifecycleStatus.REMOVED, "TA-003"),
+                mkDoc(4, "Payments", "Payment gateway", EntityLifecycleStatus.ACTIVE, "PA-004")));
+    }
+
+
+    @Test
+    public void primaryMatchesRankAboveSecondaryMatches() {
+        assertEquals(
+                newArrayList(1L, 2L),
+                ids(index.search(EntityKind.APPLICATION, "booking", OPTIONS)));
+    }
+
+
+    @Test
+    public void queryTokensArePrefixMatched() {
+        assertEquals(
+                newArrayList(4L),
+                ids(index.search(EntityKind.APPLICATION, "paym", OPTIONS)));
+    }
+
+
+    @Test
+    public void allQueryTokensMustMatch() {
+        assertEquals(
+                newArrayList(1L, 2L),
+                ids(index.search(EntityKind.APPLICATION, "trade book", OPTIONS)));
+
+        assertTrue(index.search(EntityKind.APPLICATION, "trade gateway", OPTIONS).isEmpty());
+    }
+
+
+    @Test
+    public void codesAreSearchable() {
+        assertEquals(
+                newArrayList(2L),
+                ids(index.search(EntityKind.APPLICATION, "st-002", OPTIONS)));
+    }
+
+
+    @Test
+    public void lifecycleStatusesAreRespected() {
+        assertTrue(index.search(EntityKind.APPLICATION, "archive", OPTIONS).isEmpty());
+
+        EntitySearchOptions includeRemoved = ImmutableEntitySearchOptions
+                .copyOf(OPTIONS)
+                .withEntityLifecycleStatuses(EntityLifecycleStatus.REMOVED);
+
+        assertEquals(
+                newArrayList(3L),
+                ids(index.search(EntityKind.APPLICATION, "archive", includeRemoved)));
+    }
+
+
+    @Test
+    public void shortOrEmptyQueriesReturnNothing() {
+        assertTrue(index.search(EntityKind.APPLICATION, "tr", OPTIONS).isEmpty());
+        assertTrue(index.search(EntityKind.APPLICATION, "", OPTIONS).isEmpty());
+        assertTrue(index.search(EntityKind.APPLICATION, "!!!!", OPTIONS).isEmpty());
+    }
+
+
+    @Test
+    public void limitIsRespected() {
+        EntitySearchOptions limited = ImmutableEntitySearchOptions
+                .copyOf(OPTIONS)
+                .withLimit(1);
+
+        assertEquals(1, index.search(EntityKind.APPLICATION, "trade", limited).size());
+    }
+
+
+    @Test
+    public void unindexedKindsAreFlaggedForRebuild() {
+        assertFalse(index.needsRebuild(EntityKind.APPLICATION));
+        assertTrue(index.needsRebuild(EntityKind.MEASURABLE));
+        assertTrue(index.search(EntityKind.MEASURABLE, "trade", OPTIONS).isEmpty());
+    }
+
+
+    @Test
+    public void staleKindsAreFlaggedUntilRebuilt() {
+        index.markStale(EntityKind.APPLICATION);
+        assertTrue(index.needsRebuild(EntityKind.APPLICATION));
+
+        index.beginRebuild(EntityKind.APPLICATION);
+        assertFalse(index.needsRebuild(EntityKind.APPLICATION));
+    }
+
+
+    // -- HELPERS ---
+
+    private static EntitySearchDocument mkDoc(long id,
+                                              String name,
+                                              String description,
+                                              EntityLifecycleStatus status,
+                                              String code) {
+        EntityReference ref = ImmutableEntityReference.builder()
+                .kind(EntityKind.APPLICATION)
+                .id(id)
+                .name(name)
+                .description(description)
+                .entityLifecycleStatus(status)
+                .build();
+
+        return ImmutableEntitySearchDocument.builder()
+                .entityReference(ref)
+                .addPrimaryText(name, code)
+                .addSecondaryText(description)
+                .build();
+    }
+
+
+    private static List<Long> ids(List<EntityReference> refs) {
+        return refs
+                .stream()
+                .map(EntityReference::id)
+                .collect(toList());
+    }
+
+}
@@ -0,0 +1,136 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.khartec.waltz.data.entity_statistic;
+
+import com.khartec.waltz.model.entity_statistic.RollupKind;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.*;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The rollup stores per outcome counts and sums, tallies are derived from
+ * them in java.  These tests check the derived tallies agree with those
+ * calculated directly from the values by {@link EntityStatisticSummaryDao},
+ * which casts the sum or average of the values to <code>DECIMAL(38, 2)</code>
+ * (rounding half away from zero).
+ */
+public class EntityStatisticRollupDaoTest {
+
+    private static final Map<String, List<String>> VALUES_BY_OUTCOME = new HashMap<>();
+
+    static {
+        VALUES_BY_OUTCOME.put("A", asList("1.005", "2.3333", "4"));
+        VALUES_BY_OUTCOME.put("B", singletonList("0.125"));
+        VALUES_BY_OUTCOME.put("C", asList("-0.125", "-0.2", "0.3"));
+        VALUES_BY_OUTCOME.put("D", asList("10", "20", "0.015"));
+    }
+
+
+    @Test
+    public void countTalliesMatchLiveTallies() {
+        assertRollupMatchesLive(RollupKind.COUNT_BY_ENTITY);
+    }
+
+
+    @Test
+    public void sumTalliesMatchLiveTallies() {
+        assertRollupMatchesLive(RollupKind.SUM_BY_VALUE);
+    }
+
+
+    @Test
+    public void averageTalliesMatchLiveTallies() {
+        assertRollupMatchesLive(RollupKind.AVG_BY_VALUE);
+    }
+
+
+    @Test
+    public void averageOfNoValuesIsZero() {
+        assertEquals(0, EntityStatisticRollupDao.toTallyCount(RollupKind.AVG_BY_VALUE, 3, null, 0), 0);
+    }
+
+
+    @Test
+    public void missingSumIsZero() {
+        assertEquals(0, EntityStatisticRollupDao.toTallyCount(RollupKind.SUM_BY_VALUE, 3, null, 0), 0);
+    }
+
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void otherRollupKindsAreNotSupported() {
+        EntityStatisticRollupDao.toTallyCount(RollupKind.NONE, 1, null, 0);
+    }
+
+
+    // -- HELPERS ---
+
+    /**
+     * Mirrors the rows written by the rollup refresh: a count of entities
+     * and, for summed or averaged statistics, the sum and number of values.
+     */
+    private static void assertRollupMatchesLive(RollupKind rollupKind) {
+        boolean withValues = rollupKind != RollupKind.COUNT_BY_ENTITY;
+
+        VALUES_BY_OUTCOME.forEach((outcome, values) -> assertEquals(
+                outcome,
+                calcLiveTally(rollupKind, values),
+                EntityStatisticRollupDao.toTallyCount(
+                        rollupKind,
+                        values.size(),
+                        withValues ? sum(values) : null,
+                        withValues ? values.size() : 0),
+                0));
+    }
+
+
+    private static double calcLiveTally(RollupKind rollupKind, List<String> values) {
+        switch (rollupKind) {
+            case COUNT_BY_ENTITY:
+                return values.size();
+            case SUM_BY_VALUE:
+                return sum(values)
+                        .setScale(2, RoundingMode.HALF_UP)
+                        .doubleValue();
+            case AVG_BY_VALUE:
+                return sum(values)
+                        .divide(BigDecimal.valueOf(values.size()), MathContext.DECIMAL128)
+                        .setScale(2, RoundingMode.HALF_UP)
+                        .doubleValue();
+            default:
+                throw new IllegalArgumentException("Unexpected rollup kind: " + rollupKind);
+        }
+    }
+
+
+    private static BigDecimal sum(List<String> values) {
+        return values
+                .stream()
+                .map(v -> new BigDecimal(v).setScale(12, RoundingMode.UNNECESSARY))
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+
+}
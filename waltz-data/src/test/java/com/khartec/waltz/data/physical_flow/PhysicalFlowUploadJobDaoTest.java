@@ -0,0 +1,109 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.khartec.waltz.data.physical_flow;
+
+import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.model.command.CommandOutcome;
+import com.khartec.waltz.model.physical_flow.*;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.khartec.waltz.common.ListUtilities.newArrayList;
+import static com.khartec.waltz.model.EntityReference.mkRef;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PhysicalFlowUploadJobDaoTest {
+
+    @Test
+    public void resultsSurviveTheRoundTrip() {
+        PhysicalFlowUploadCommandResponse created = mkResponse("flow a", CommandOutcome.SUCCESS);
+        PhysicalFlowUploadCommandResponse failed = ImmutablePhysicalFlowUploadCommandResponse
+                .copyOf(mkResponse("flow b", CommandOutcome.FAILURE))
+                .withEntityReference(null)
+                .withMessage("Duplicate");
+
+        List<PhysicalFlowUploadCommandResponse> results = newArrayList(created, failed);
+
+        String json = PhysicalFlowUploadJobDao.writeResults(results);
+
+        assertEquals(results, PhysicalFlowUploadJobDao.readResults(json));
+    }
+
+
+    @Test
+    public void missingResultsAreEmpty() {
+        assertTrue(PhysicalFlowUploadJobDao.readResults(null).isEmpty());
+    }
+
+
+    @Test
+    public void noResultsSurviveTheRoundTrip() {
+        String json = PhysicalFlowUploadJobDao.writeResults(new ArrayList<>());
+
+        assertTrue(PhysicalFlowUploadJobDao.readResults(json).isEmpty());
+    }
+
+
+    @Test(expected = IllegalStateException.class)
+    public void unreadableResultsAreRejected() {
+        PhysicalFlowUploadJobDao.readResults("{ not a list");
+    }
+
+
+    // -- HELPERS ---
+
+    private static PhysicalFlowUploadCommandResponse mkResponse(String name, CommandOutcome outcome) {
+        PhysicalFlowUploadCommand cmd = ImmutablePhysicalFlowUploadCommand.builder()
+                .source("APP-1")
+                .target("APP-2")
+                .owner("APP-1")
+                .name(name)
+                .format("FLAT_FILE")
+                .basisOffset("0")
+                .criticality("LOW")
+                .description("")
+                .frequency("DAILY")
+                .transport("FILE_TRANSPORT")
+                .dataType("Book Data")
+                .build();
+
+        PhysicalFlowParsed parsed = ImmutablePhysicalFlowParsed.builder()
+                .source(mkRef(EntityKind.APPLICATION, 1L))
+                .target(mkRef(EntityKind.APPLICATION, 2L))
+                .owner(mkRef(EntityKind.APPLICATION, 1L))
+                .name(name)
+                .description("")
+                .basisOffset(0)
+                .transport("FILE_TRANSPORT")
+                .dataType(mkRef(EntityKind.DATA_TYPE, 3L))
+                .build();
+
+        return ImmutablePhysicalFlowUploadCommandResponse.builder()
+                .entityReference(mkRef(EntityKind.PHYSICAL_FLOW, 4L))
+                .originalCommand(cmd)
+                .parsedFlow(parsed)
+                .outcome(outcome)
+                .build();
+    }
+
+}
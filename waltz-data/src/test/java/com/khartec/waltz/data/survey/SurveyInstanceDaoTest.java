@@ -0,0 +1,111 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.khartec.waltz.data.survey;
+
+import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.model.EntityReference;
+import com.khartec.waltz.schema.tables.records.SurveyInstanceRecipientRecord;
+import com.khartec.waltz.schema.tables.records.SurveyInstanceRecord;
+import org.jooq.lambda.tuple.Tuple2;
+import org.junit.Test;
+
+import java.util.List;
+
+import static com.khartec.waltz.common.ListUtilities.newArrayList;
+import static com.khartec.waltz.model.EntityReference.mkRef;
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
+import static org.jooq.lambda.tuple.Tuple.tuple;
+import static org.junit.Assert.assertEquals;
+
+public class SurveyInstanceDaoTest {
+
+    private static final EntityReference APP_1 = mkRef(EntityKind.APPLICATION, 1L);
+    private static final EntityReference APP_2 = mkRef(EntityKind.APPLICATION, 2L);
+
+
+    @Test
+    public void recipientsAreMatchedByEntityNotPosition() {
+        List<Tuple2<EntityReference, List<Long>>> instances = newArrayList(
+                tuple(APP_1, newArrayList(10L, 11L)),
+                tuple(APP_2, newArrayList(12L)));
+
+        // returned in a different order to the insert
+        List<SurveyInstanceRecord> created = newArrayList(
+                mkInstance(101L, APP_2),
+                mkInstance(100L, APP_1));
+
+        assertEquals(
+                newArrayList(
+                        asList(101L, 12L),
+                        asList(100L, 10L),
+                        asList(100L, 11L)),
+                toPairs(SurveyInstanceDao.mkRecipientRecords(instances, created)));
+    }
+
+
+    @Test
+    public void repeatedEntitiesEachGetTheirOwnInstance() {
+        List<Tuple2<EntityReference, List<Long>>> instances = newArrayList(
+                tuple(APP_1, newArrayList(10L)),
+                tuple(APP_1, newArrayList(11L)));
+
+        List<SurveyInstanceRecord> created = newArrayList(
+                mkInstance(100L, APP_1),
+                mkInstance(101L, APP_1));
+
+        assertEquals(
+                newArrayList(
+                        asList(100L, 10L),
+                        asList(101L, 11L)),
+                toPairs(SurveyInstanceDao.mkRecipientRecords(instances, created)));
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unexpectedInstancesAreRejected() {
+        List<Tuple2<EntityReference, List<Long>>> instances = newArrayList(
+                tuple(APP_1, newArrayList(10L)));
+
+        SurveyInstanceDao.mkRecipientRecords(
+                instances,
+                newArrayList(mkInstance(100L, APP_1), mkInstance(101L, APP_1)));
+    }
+
+
+    // -- HELPERS ---
+
+    private static SurveyInstanceRecord mkInstance(long id, EntityReference ref) {
+        SurveyInstanceRecord record = new SurveyInstanceRecord();
+        record.setId(id);
+        record.setEntityKind(ref.kind().name());
+        record.setEntityId(ref.id());
+        return record;
+    }
+
+
+    private static List<List<Long>> toPairs(List<SurveyInstanceRecipientRecord> records) {
+        return records
+                .stream()
+                .map(r -> asList(r.getSurveyInstanceId(), r.getPersonId()))
+                .collect(toList());
+    }
+}
@@ -0,0 +1,402 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.khartec.waltz.jobs.generators.scaled;
+
+import com.khartec.waltz.common.LoggingUtilities;
+import com.khartec.waltz.service.DIConfiguration;
+import org.jooq.DSLContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static com.khartec.waltz.schema.tables.Application.APPLICATION;
+import static com.khartec.waltz.schema.tables.OrganisationalUnit.ORGANISATIONAL_UNIT;
+import static com.khartec.waltz.schema.tables.Person.PERSON;
+
+
+/**
+ * Replays a weighted mix of the api calls made by the most used pages
+ * (application, org unit and person views, plus search) against a running
+ * server and reports latency percentiles per endpoint.  Intended to be run
+ * against an estate produced by {@link ScaledEstateGenerator}, whose ids
+ * are read from the database to build the requests.
+ * <p>
+ * Usage: <code>EndpointLatencyDriver [base-url] [duration-seconds] [threads] [seed]</code>
+ * <p>
+ * If the server requires authentication pass a token with
+ * <code>-Dwaltz.loadtest.token=...</code>.
+ */
+public class EndpointLatencyDriver {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EndpointLatencyDriver.class);
+
+    private static final String DEFAULT_BASE_URL = "http://localhost:8443/";
+    private static final int DEFAULT_DURATION_SECONDS = 120;
+    private static final int DEFAULT_THREADS = 8;
+    private static final long DEFAULT_SEED = 42L;
+    private static final long WARMUP_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    private static final int SAMPLE_SIZE = 5_000;
+    private static final String[] SEARCH_TERMS = { "scaled", "app 1", "person 2", "org", "measurable" };
+
+    private final String baseUrl;
+    private final Optional<String> token;
+    private final List<Call> calls;
+    private final int totalWeight;
+    private final Map<String, Stats> statsByCall = new ConcurrentHashMap<>();
+    private int failedWorkers = 0;
+
+
+    private EndpointLatencyDriver(String baseUrl, Optional<String> token, Estate estate) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
+        this.token = token;
+        this.calls = mkCalls(estate);
+        this.totalWeight = calls.stream().mapToInt(c -> c.weight).sum();
+    }
+
+
+    public static void main(String[] args) throws InterruptedException {
+        String baseUrl = args.length > 0 ? args[0] : DEFAULT_BASE_URL;
+        int durationSeconds = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_DURATION_SECONDS;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_THREADS;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : DEFAULT_SEED;
+
+        LoggingUtilities.configureLogging();
+        AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext(DIConfiguration.class);
+        Estate estate = Estate.load(ctx.getBean(DSLContext.class), new Random(seed));
+        ctx.close();
+
+        EndpointLatencyDriver driver = new EndpointLatencyDriver(
+                baseUrl,
+                Optional.ofNullable(System.getProperty("waltz.loadtest.token")),
+                estate);
+
+        driver.run(durationSeconds, threads, seed);
+        driver.report();
+    }
+
+
+    private void run(int durationSeconds, int threads, long seed) throws InterruptedException {
+        LOG.info("Running {} threads against {} for {}s", threads, baseUrl, durationSeconds);
+
+        long start = System.currentTimeMillis();
+        long recordFrom = start + WARMUP_MILLIS;
+        long end = recordFrom + TimeUnit.SECONDS.toMillis(durationSeconds);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> workers = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            Random random = new Random(seed + i);
+            workers.add(executor.submit(() -> {
+                while (System.currentTimeMillis() < end) {
+                    Call call = pickCall(random);
+                    long elapsed = invoke(call, random);
+                    if (System.currentTimeMillis() >= recordFrom) {
+                        statsByCall
+                                .computeIfAbsent(call.name, k -> new Stats())
+                                .record(elapsed);
+                    }
+                }
+            }));
+        }
+
+        executor.shutdown();
+        if (! executor.awaitTermination(durationSeconds + WARMUP_MILLIS / 1000 + 60, TimeUnit.SECONDS)) {
+            LOG.warn("Workers did not finish in time, interrupting them");
+            executor.shutdownNow();
+        }
+
+        failedWorkers = countFailures(workers);
+        if (failedWorkers > 0) {
+            LOG.warn("{} of {} workers failed, results are based on fewer threads than requested", failedWorkers, threads);
+        }
+    }
+
+
+    private void report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(
+                "%n%-40s %8s %8s %10s %10s %10s",
+                "endpoint", "calls", "errors", "p50 (ms)", "p99 (ms)", "max (ms)"));
+
+        statsByCall
+                .entrySet()
+                .stream()
+                .sorted(Comparator.comparingDouble((Map.Entry<String, Stats> e) -> e.getValue().percentile(99)).reversed())
+                .forEach(e -> {
+                    Stats stats = e.getValue();
+                    sb.append(String.format(
+                            "%n%-40s %8d %8d %10.1f %10.1f %10.1f",
+                            e.getKey(),
+                            stats.count(),
+                            stats.errors.get(),
+                            stats.percentile(50),
+                            stats.percentile(99),
+                            stats.percentile(100)));
+                });
+
+        long calls = statsByCall.values().stream().mapToLong(Stats::count).sum();
+        long errors = statsByCall.values().stream().mapToLong(s -> s.errors.get()).sum();
+
+        LOG.info("Latency by endpoint: {}", sb);
+        LOG.info("{} calls, {} failed calls, {} failed workers", calls, errors, failedWorkers);
+    }
+
+
+    // -- HELPERS ---
+
+    private List<Call> mkCalls(Estate estate) {
+        Function<Random, String> orgUnitSelector = r -> String.format(
+                "{\"entityReference\": {\"kind\": \"ORG_UNIT\", \"id\": %d}, \"scope\": \"CHILDREN\"}",
+                estate.pickOrgUnit(r));
+
+        return Arrays.asList(
+                Call.get("app: by id", 20, r -> "api/app/id/" + estate.pickApp(r)),
+                Call.get("logical-flow: by app", 20, r -> "api/logical-flow/entity/APPLICATION/" + estate.pickApp(r)),
+                Call.get("measurable-rating: by app", 15, r -> "api/measurable-rating/entity/APPLICATION/" + estate.pickApp(r)),
+                Call.get("data-type-usage: by app", 10, r -> "api/data-type-usage/entity/APPLICATION/" + estate.pickApp(r)),
+                Call.get("org-unit: by id", 8, r -> "api/org-unit/" + estate.pickOrgUnit(r)),
+                Call.post("app: by org unit selector", 6, r -> "api/app/selector", orgUnitSelector),
+                Call.post("logical-flow: by org unit selector", 4, r -> "api/logical-flow/selector", orgUnitSelector),
+                Call.post("logical-flow-decorator: by org unit selector", 4, r -> "api/logical-flow-decorator/selector", orgUnitSelector),
+                Call.get("person: by employee id", 5, r -> "api/person/employee-id/" + estate.pickPerson(r)),
+                Call.get("person: directs", 3, r -> "api/person/employee-id/" + estate.pickPerson(r) + "/directs"),
+                Call.post(
+                        "entity-search",
+                        5,
+                        r -> "api/entity-search/" + SEARCH_TERMS[r.nextInt(SEARCH_TERMS.length)].replace(" ", "%20"),
+                        r -> "{\"entityKinds\": [\"APPLICATION\", \"PERSON\", \"ORG_UNIT\"]}"));
+    }
+
+
+    /**
+     * Waits for each (already terminated) worker and counts those that
+     * ended with an exception rather than running to the deadline.
+     */
+    private static int countFailures(List<Future<?>> workers) throws InterruptedException {
+        int failures = 0;
+        for (Future<?> worker : workers) {
+            try {
+                worker.get(0, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                LOG.error("Worker failed", e.getCause());
+                failures++;
+            } catch (CancellationException | TimeoutException e) {
+                LOG.error("Worker did not complete: {}", e.toString());
+                failures++;
+            }
+        }
+        return failures;
+    }
+
+
+    private Call pickCall(Random random) {
+        int target = random.nextInt(totalWeight);
+        for (Call call : calls) {
+            target -= call.weight;
+            if (target < 0) {
+                return call;
+            }
+        }
+        return calls.get(calls.size() - 1);
+    }
+
+
+    /**
+     * Returns the elapsed time in nanos, or -1 if the call failed
+     */
+    private long invoke(Call call, Random random) {
+        String path = call.pathFn.apply(random);
+        Optional<String> body = call.bodyFn.map(fn -> fn.apply(random));
+
+        long start = System.nanoTime();
+        try {
+            HttpURLConnection conn = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+            conn.setRequestMethod(body.isPresent() ? "POST" : "GET");
+            conn.setRequestProperty("Accept", "application/json");
+            token.ifPresent(t -> conn.setRequestProperty("Authorization", "Bearer " + t));
+
+            if (body.isPresent()) {
+                conn.setDoOutput(true);
+                conn.setRequestProperty("Content-Type", "application/json");
+                try (OutputStream out = conn.getOutputStream()) {
+                    out.write(body.get().getBytes(StandardCharsets.UTF_8));
+                }
+            }
+
+            int status = conn.getResponseCode();
+            drain(status >= 400 ? conn.getErrorStream() : conn.getInputStream());
+
+            return status >= 400 ? -1 : System.nanoTime() - start;
+        } catch (IOException e) {
+            LOG.debug("Call to {} failed: {}", path, e.getMessage());
+            return -1;
+        }
+    }
+
+
+    private static void drain(InputStream in) throws IOException {
+        if (in == null) return;
+        try (InputStream is = in) {
+            byte[] buffer = new byte[8192];
+            while (is.read(buffer) != -1) {
+                // discard, we only care about the time to read the full response
+            }
+        }
+    }
+
+
+    private static class Call {
+
+        private final String name;
+        private final int weight;
+        private final Function<Random, String> pathFn;
+        private final Optional<Function<Random, String>> bodyFn;
+
+        private Call(String name, int weight, Function<Random, String> pathFn, Optional<Function<Random, String>> bodyFn) {
+            this.name = name;
+            this.weight = weight;
+            this.pathFn = pathFn;
+            this.bodyFn = bodyFn;
+        }
+
+        private static Call get(String name, int weight, Function<Random, String> pathFn) {
+            return new Call(name, weight, pathFn, Optional.empty());
+        }
+
+        private static Call post(String name, int weight, Function<Random, String> pathFn, Function<Random, String> bodyFn) {
+            return new Call(name, weight, pathFn, Optional.of(bodyFn));
+        }
+    }
+
+
+    private static class Stats {
+
+        private final List<Long> elapsedNanos = new ArrayList<>();
+        private final AtomicLong errors = new AtomicLong();
+
+        private void record(long elapsed) {
+            if (elapsed < 0) {
+                errors.incrementAndGet();
+            } else {
+                synchronized (elapsedNanos) {
+                    elapsedNanos.add(elapsed);
+                }
+            }
+        }
+
+        private int count() {
+            synchronized (elapsedNanos) {
+                return elapsedNanos.size() + (int) errors.get();
+            }
+        }
+
+        /**
+         * Nearest-rank percentile, in millis
+         */
+        private double percentile(int p) {
+            List<Long> sorted;
+            synchronized (elapsedNanos) {
+                sorted = new ArrayList<>(elapsedNanos);
+            }
+            if (sorted.isEmpty()) return 0;
+            Collections.sort(sorted);
+            int rank = (int) Math.ceil(p / 100.0 * sorted.size());
+            return sorted.get(Math.max(0, rank - 1)) / 1_000_000.0;
+        }
+    }
+
+
+    /**
+     * Ids to build requests from.  Prefers the generated estate, falling
+     * back to whatever is in the database.
+     */
+    private static class Estate {
+
+        private final List<Long> appIds;
+        private final List<Long> orgUnitIds;
+        private final List<String> employeeIds;
+
+        private Estate(List<Long> appIds, List<Long> orgUnitIds, List<String> employeeIds) {
+            this.appIds = appIds;
+            this.orgUnitIds = orgUnitIds;
+            this.employeeIds = employeeIds;
+        }
+
+        private static Estate load(DSLContext dsl, Random random) {
+            List<Long> appIds = dsl
+                    .select(APPLICATION.ID)
+                    .from(APPLICATION)
+                    .where(APPLICATION.PROVENANCE.eq(ScaledEstateGenerator.PROVENANCE))
+                    .fetch(APPLICATION.ID);
+            if (appIds.isEmpty()) {
+                LOG.warn("No generated estate found, using all applications");
+                appIds = dsl.select(APPLICATION.ID).from(APPLICATION).fetch(APPLICATION.ID);
+            }
+
+            List<Long> orgUnitIds = dsl
+                    .select(ORGANISATIONAL_UNIT.ID)
+                    .from(ORGANISATIONAL_UNIT)
+                    .fetch(ORGANISATIONAL_UNIT.ID);
+
+            List<String> employeeIds = dsl
+                    .select(PERSON.EMPLOYEE_ID)
+                    .from(PERSON)
+                    .where(PERSON.IS_REMOVED.isFalse())
+                    .fetch(PERSON.EMPLOYEE_ID);
+
+            return new Estate(
+                    sample(appIds, random),
+                    sample(orgUnitIds, random),
+                    sample(employeeIds, random));
+        }
+
+        private static <T extends Comparable<T>> List<T> sample(List<T> ts, Random random) {
+            List<T> shuffled = new ArrayList<>(ts);
+            Collections.sort(shuffled);  // database order is not stable, sort so the seed gives a repeatable sample
+            Collections.shuffle(shuffled, random);
+            return shuffled.subList(0, Math.min(SAMPLE_SIZE, shuffled.size()));
+        }
+
+        private long pickApp(Random random) {
+            return appIds.get(random.nextInt(appIds.size()));
+        }
+
+        private long pickOrgUnit(Random random) {
+            return orgUnitIds.get(random.nextInt(orgUnitIds.size()));
+        }
+
+        private String pickPerson(Random random) {
+            return employeeIds.get(random.nextInt(employeeIds.size()));
+        }
+    }
+
+}
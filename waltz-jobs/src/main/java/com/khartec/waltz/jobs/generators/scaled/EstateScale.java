@@ -0,0 +1,79 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.khartec.waltz.jobs.generators.scaled;
+
+
+/**
+ * Size of a generated estate.  Counts are given for the 1x estate
+ * (roughly a mid-sized business unit) and multiplied up for the larger
+ * scales.
+ */
+public enum EstateScale {
+
+    X1(1),
+    X10(10),
+    X100(100);
+
+
+    private static final int ORG_UNITS = 200;
+    private static final int PEOPLE = 2_000;
+    private static final int APPS = 2_000;
+    private static final int FLOWS_PER_APP = 4;
+    private static final int MEASURABLES = 500;
+
+
+    private final int multiplier;
+
+
+    EstateScale(int multiplier) {
+        this.multiplier = multiplier;
+    }
+
+
+    public int orgUnitCount() {
+        return ORG_UNITS * multiplier;
+    }
+
+
+    public int personCount() {
+        return PEOPLE * multiplier;
+    }
+
+
+    public int appCount() {
+        return APPS * multiplier;
+    }
+
+
+    public int flowCount() {
+        return appCount() * FLOWS_PER_APP;
+    }
+
+
+    /**
+     * Measurables do not grow linearly with the estate, taxonomies get
+     * deeper rather than wider, so only scale them by the square root.
+     */
+    public int measurableCount() {
+        return (int) (MEASURABLES * Math.sqrt(multiplier));
+    }
+
+}
@@ -0,0 +1,482 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.khartec.waltz.jobs.generators.scaled;
+
+import com.khartec.waltz.common.DateTimeUtilities;
+import com.khartec.waltz.common.LoggingUtilities;
+import com.khartec.waltz.model.Criticality;
+import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.model.EntityLifecycleStatus;
+import com.khartec.waltz.model.application.ApplicationKind;
+import com.khartec.waltz.model.application.LifecyclePhase;
+import com.khartec.waltz.model.person.PersonKind;
+import com.khartec.waltz.model.rating.AuthoritativenessRating;
+import com.khartec.waltz.model.rating.RagRating;
+import com.khartec.waltz.schema.tables.records.*;
+import com.khartec.waltz.service.DIConfiguration;
+import com.khartec.waltz.service.entity_hierarchy.EntityHierarchyService;
+import com.khartec.waltz.service.person_hierarchy.PersonHierarchyService;
+import com.khartec.waltz.service.usage_info.DataTypeUsageService;
+import org.jooq.Condition;
+import org.jooq.DSLContext;
+import org.jooq.Record;
+import org.jooq.TableField;
+import org.jooq.TableRecord;
+import org.jooq.impl.DSL;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static com.khartec.waltz.common.Checks.checkTrue;
+import static com.khartec.waltz.jobs.WaltzUtilities.getOrCreateMeasurableCategory;
+import static com.khartec.waltz.schema.tables.Application.APPLICATION;
+import static com.khartec.waltz.schema.tables.DataType.DATA_TYPE;
+import static com.khartec.waltz.schema.tables.LogicalFlow.LOGICAL_FLOW;
+import static com.khartec.waltz.schema.tables.LogicalFlowDecorator.LOGICAL_FLOW_DECORATOR;
+import static com.khartec.waltz.schema.tables.Measurable.MEASURABLE;
+import static com.khartec.waltz.schema.tables.MeasurableRating.MEASURABLE_RATING;
+import static com.khartec.waltz.schema.tables.OrganisationalUnit.ORGANISATIONAL_UNIT;
+import static com.khartec.waltz.schema.tables.Person.PERSON;
+
+
+/**
+ * Generates a synthetic estate (org units, people, applications, flows,
+ * flow decorators, measurables and ratings) at a given scale so that
+ * performance can be checked against estates larger than production.
+ * <p>
+ * Generation is driven by a seeded random, so the same scale and seed
+ * always produce the same estate.  Records are written with batched
+ * inserts and everything generated is tagged (provenance, asset code or
+ * employee id prefix) so a re-run replaces the previous estate without
+ * touching any other data.
+ * <p>
+ * Usage: <code>ScaledEstateGenerator [X1|X10|X100] [seed]</code>
+ */
+public class ScaledEstateGenerator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ScaledEstateGenerator.class);
+
+    public static final String PROVENANCE = "waltz-scaled";
+    public static final String MEASURABLE_CATEGORY_EXTERNAL_ID = "SCALED";
+    public static final String KEY_PREFIX = "scaled-";
+
+    private static final String USER = "admin";
+    private static final long DEFAULT_SEED = 42L;
+    private static final int BATCH_SIZE = 1000;
+    private static final int ORG_UNIT_BRANCHING_FACTOR = 5;
+    private static final int SPAN_OF_CONTROL = 8;
+    private static final int MAX_DECORATORS_PER_FLOW = 3;
+    private static final int MAX_RATINGS_PER_APP = 12;
+    private static final String[] RAG_RATINGS = { "R", "A", "A", "G", "G", "G" };
+
+    private final DSLContext dsl;
+    private final EstateScale scale;
+    private final Random random;
+    private final Timestamp now = DateTimeUtilities.nowUtcTimestamp();
+
+
+    public ScaledEstateGenerator(DSLContext dsl, EstateScale scale, long seed) {
+        this.dsl = dsl;
+        this.scale = scale;
+        this.random = new Random(seed);
+    }
+
+
+    public static void main(String[] args) {
+        EstateScale scale = args.length > 0
+                ? EstateScale.valueOf(args[0].toUpperCase())
+                : EstateScale.X1;
+        long seed = args.length > 1
+                ? Long.parseLong(args[1])
+                : DEFAULT_SEED;
+
+        LoggingUtilities.configureLogging();
+        AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext(DIConfiguration.class);
+        DSLContext dsl = ctx.getBean(DSLContext.class);
+
+        ScaledEstateGenerator generator = new ScaledEstateGenerator(dsl, scale, seed);
+        generator.remove();
+        generator.create();
+
+        LOG.info("Rebuilding hierarchies");
+        EntityHierarchyService entityHierarchyService = ctx.getBean(EntityHierarchyService.class);
+        entityHierarchyService.buildFor(EntityKind.ORG_UNIT);
+        entityHierarchyService.buildFor(EntityKind.MEASURABLE);
+        ctx.getBean(PersonHierarchyService.class).build();
+
+        LOG.info("Recalculating data type usages");
+        ctx.getBean(DataTypeUsageService.class).recalculateForAllApplications();
+
+        LOG.info("Done");
+        ctx.close();
+    }
+
+
+    public void create() {
+        LOG.info("Generating {} estate", scale);
+
+        List<Long> orgUnitIds = createOrgUnits();
+        createPeople(orgUnitIds);
+        List<Long> appIds = createApplications(orgUnitIds);
+        List<Long> flowIds = createLogicalFlows(appIds);
+        createDecorators(flowIds);
+        List<Long> measurableIds = createMeasurables();
+        createMeasurableRatings(appIds, measurableIds);
+    }
+
+
+    public void remove() {
+        LOG.info("Removing previously generated estate");
+
+        Long categoryId = getOrCreateMeasurableCategory(dsl, MEASURABLE_CATEGORY_EXTERNAL_ID, "Scaled Estate");
+
+        dsl.deleteFrom(LOGICAL_FLOW_DECORATOR)
+                .where(LOGICAL_FLOW_DECORATOR.LOGICAL_FLOW_ID.in(DSL
+                        .select(LOGICAL_FLOW.ID)
+                        .from(LOGICAL_FLOW)
+                        .where(LOGICAL_FLOW.PROVENANCE.eq(PROVENANCE))))
+                .execute();
+        dsl.deleteFrom(LOGICAL_FLOW)
+                .where(LOGICAL_FLOW.PROVENANCE.eq(PROVENANCE))
+                .execute();
+        dsl.deleteFrom(MEASURABLE_RATING)
+                .where(MEASURABLE_RATING.PROVENANCE.eq(PROVENANCE))
+                .execute();
+        dsl.deleteFrom(MEASURABLE)
+                .where(MEASURABLE.MEASURABLE_CATEGORY_ID.eq(categoryId))
+                .execute();
+        dsl.deleteFrom(APPLICATION)
+                .where(APPLICATION.PROVENANCE.eq(PROVENANCE))
+                .execute();
+        dsl.deleteFrom(PERSON)
+                .where(PERSON.EMPLOYEE_ID.startsWith(KEY_PREFIX))
+                .execute();
+        dsl.deleteFrom(ORGANISATIONAL_UNIT)
+                .where(ORGANISATIONAL_UNIT.PROVENANCE.eq(PROVENANCE))
+                .execute();
+    }
+
+
+    // -- HELPERS ---
+
+    /**
+     * Org unit ids are not generated by the database, so they are
+     * allocated above the current maximum.  The tree is balanced with a
+     * fixed branching factor.
+     */
+    private List<Long> createOrgUnits() {
+        Long maxId = dsl
+                .select(DSL.max(ORGANISATIONAL_UNIT.ID))
+                .from(ORGANISATIONAL_UNIT)
+                .fetchOne()
+                .value1();
+        long baseId = (maxId == null ? 0 : maxId) + 1;
+
+        Stream<OrganisationalUnitRecord> records = IntStream
+                .range(0, scale.orgUnitCount())
+                .mapToObj(i -> {
+                    OrganisationalUnitRecord record = dsl.newRecord(ORGANISATIONAL_UNIT);
+                    record.setId(baseId + i);
+                    record.setParentId(i == 0 ? null : baseId + parentIndex(i, ORG_UNIT_BRANCHING_FACTOR));
+                    record.setName("Scaled Org Unit " + i);
+                    record.setDescription("Generated org unit " + i);
+                    record.setProvenance(PROVENANCE);
+                    record.setLastUpdatedAt(now);
+                    return record;
+                });
+
+        insertInBatches("org units", records);
+
+        return loadIds(ORGANISATIONAL_UNIT.ID, ORGANISATIONAL_UNIT.PROVENANCE.eq(PROVENANCE));
+    }
+
+
+    private void createPeople(List<Long> orgUnitIds) {
+        Stream<PersonRecord> records = IntStream
+                .range(0, scale.personCount())
+                .mapToObj(i -> {
+                    PersonRecord record = dsl.newRecord(PERSON);
+                    record.setEmployeeId(KEY_PREFIX + i);
+                    record.setManagerEmployeeId(i == 0 ? "" : KEY_PREFIX + parentIndex(i, SPAN_OF_CONTROL));
+                    record.setDisplayName("Scaled Person " + i);
+                    record.setEmail("scaled.person." + i + "@example.com");
+                    record.setUserPrincipalName("scaled.person." + i);
+                    record.setKind(PersonKind.EMPLOYEE.name());
+                    record.setTitle("");
+                    record.setDepartmentName("");
+                    record.setOfficePhone("");
+                    record.setMobilePhone("");
+                    record.setOrganisationalUnitId(pick(orgUnitIds));
+                    record.setIsRemoved(false);
+                    return record;
+                });
+
+        insertInBatches("people", records);
+    }
+
+
+    private List<Long> createApplications(List<Long> orgUnitIds) {
+        Stream<ApplicationRecord> records = IntStream
+                .range(0, scale.appCount())
+                .mapToObj(i -> {
+                    ApplicationRecord record = dsl.newRecord(APPLICATION);
+                    record.setName("Scaled App " + i);
+                    record.setDescription("Generated application " + i);
+                    record.setAssetCode(KEY_PREFIX + i);
+                    record.setParentAssetCode("");
+                    record.setOrganisationalUnitId(pick(orgUnitIds));
+                    record.setKind(pick(ApplicationKind.values()).name());
+                    record.setLifecyclePhase(random.nextInt(10) > 7
+                            ? pick(LifecyclePhase.values()).name()
+                            : LifecyclePhase.PRODUCTION.name());
+                    record.setOverallRating(pick(RagRating.R, RagRating.A, RagRating.G, RagRating.G).name());
+                    record.setBusinessCriticality(random.nextInt(10) > 7
+                            ? pick(Criticality.values()).name()
+                            : Criticality.HIGH.name());
+                    record.setProvenance(PROVENANCE);
+                    record.setUpdatedAt(now);
+                    return record;
+                });
+
+        insertInBatches("applications", records);
+
+        return loadIds(APPLICATION.ID, APPLICATION.PROVENANCE.eq(PROVENANCE));
+    }
+
+
+    private List<Long> createLogicalFlows(List<Long> appIds) {
+        Stream<LogicalFlowRecord> records = flowIndexPairs(random, appIds.size())
+                .limit(scale.flowCount())
+                .map(pair -> mkLogicalFlowRecord(appIds.get(pair[0]), appIds.get(pair[1])));
+
+        insertInBatches("logical flows", records);
+
+        return loadIds(LOGICAL_FLOW.ID, LOGICAL_FLOW.PROVENANCE.eq(PROVENANCE));
+    }
+
+
+    private void createDecorators(List<Long> flowIds) {
+        List<Long> dataTypeIds = loadIds(DATA_TYPE.ID, DSL.trueCondition());
+
+        if (dataTypeIds.isEmpty()) {
+            LOG.warn("No data types found, skipping flow decorators");
+            return;
+        }
+
+        Stream<LogicalFlowDecoratorRecord> records = flowIds
+                .stream()
+                .flatMap(flowId -> pickDistinct(random, dataTypeIds, 1 + random.nextInt(MAX_DECORATORS_PER_FLOW))
+                        .stream()
+                        .map(dataTypeId -> {
+                            LogicalFlowDecoratorRecord record = dsl.newRecord(LOGICAL_FLOW_DECORATOR);
+                            record.setLogicalFlowId(flowId);
+                            record.setDecoratorEntityKind(EntityKind.DATA_TYPE.name());
+                            record.setDecoratorEntityId(dataTypeId);
+                            record.setRating(AuthoritativenessRating.NO_OPINION.name());
+                            record.setProvenance(PROVENANCE);
+                            record.setLastUpdatedBy(USER);
+                            record.setLastUpdatedAt(now);
+                            return record;
+                        }));
+
+        insertInBatches("logical flow decorators", records);
+    }
+
+
+    /**
+     * A two level taxonomy: a handful of abstract roots with concrete
+     * leaves beneath them.
+     */
+    private List<Long> createMeasurables() {
+        Long categoryId = getOrCreateMeasurableCategory(dsl, MEASURABLE_CATEGORY_EXTERNAL_ID, "Scaled Estate");
+        int rootCount = Math.max(1, scale.measurableCount() / 20);
+
+        insertInBatches("measurable roots", IntStream
+                .range(0, rootCount)
+                .mapToObj(i -> mkMeasurableRecord(categoryId, null, "Scaled Root " + i, false)));
+
+        List<Long> rootIds = loadIds(MEASURABLE.ID, MEASURABLE.MEASURABLE_CATEGORY_ID.eq(categoryId));
+
+        insertInBatches("measurable leaves", IntStream
+                .range(0, scale.measurableCount() - rootCount)
+                .mapToObj(i -> mkMeasurableRecord(categoryId, pick(rootIds), "Scaled Measurable " + i, true)));
+
+        return loadIds(MEASURABLE.ID, MEASURABLE.MEASURABLE_CATEGORY_ID.eq(categoryId).and(MEASURABLE.CONCRETE.isTrue()));
+    }
+
+
+    private void createMeasurableRatings(List<Long> appIds, List<Long> measurableIds) {
+        Stream<MeasurableRatingRecord> records = appIds
+                .stream()
+                .flatMap(appId -> pickDistinct(random, measurableIds, random.nextInt(MAX_RATINGS_PER_APP + 1))
+                        .stream()
+                        .map(measurableId -> {
+                            MeasurableRatingRecord record = dsl.newRecord(MEASURABLE_RATING);
+                            record.setEntityKind(EntityKind.APPLICATION.name());
+                            record.setEntityId(appId);
+                            record.setMeasurableId(measurableId);
+                            record.setRating(pick(RAG_RATINGS));
+                            record.setDescription("");
+                            record.setProvenance(PROVENANCE);
+                            record.setLastUpdatedBy(USER);
+                            record.setLastUpdatedAt(now);
+                            return record;
+                        }));
+
+        insertInBatches("measurable ratings", records);
+    }
+
+
+    private LogicalFlowRecord mkLogicalFlowRecord(long sourceAppId, long targetAppId) {
+        LogicalFlowRecord record = dsl.newRecord(LOGICAL_FLOW);
+        record.setSourceEntityKind(EntityKind.APPLICATION.name());
+        record.setSourceEntityId(sourceAppId);
+        record.setTargetEntityKind(EntityKind.APPLICATION.name());
+        record.setTargetEntityId(targetAppId);
+        record.setEntityLifecycleStatus(EntityLifecycleStatus.ACTIVE.name());
+        record.setProvenance(PROVENANCE);
+        record.setLastUpdatedBy(USER);
+        record.setLastUpdatedAt(now);
+        record.setCreatedBy(USER);
+        record.setCreatedAt(now);
+        return record;
+    }
+
+
+    private MeasurableRecord mkMeasurableRecord(long categoryId, Long parentId, String name, boolean concrete) {
+        MeasurableRecord record = dsl.newRecord(MEASURABLE);
+        record.setMeasurableCategoryId(categoryId);
+        record.setParentId(parentId);
+        record.setName(name);
+        record.setDescription(name);
+        record.setExternalId(KEY_PREFIX + name.toLowerCase().replace(' ', '-'));
+        record.setConcrete(concrete);
+        record.setProvenance(PROVENANCE);
+        record.setLastUpdatedBy(USER);
+        record.setLastUpdatedAt(now);
+        return record;
+    }
+
+
+    private <R extends TableRecord<R>> void insertInBatches(String label, Stream<R> records) {
+        Iterator<R> iterator = records.iterator();
+        List<R> batch = new ArrayList<>(BATCH_SIZE);
+        int total = 0;
+
+        while (iterator.hasNext()) {
+            batch.add(iterator.next());
+            if (batch.size() == BATCH_SIZE || ! iterator.hasNext()) {
+                dsl.batchInsert(batch).execute();
+                total += batch.size();
+                batch.clear();
+                if (total % (BATCH_SIZE * 50) == 0) {
+                    LOG.info("Inserted {} {} so far", total, label);
+                }
+            }
+        }
+
+        LOG.info("Inserted {} {}", total, label);
+    }
+
+
+    private List<Long> loadIds(TableField<? extends Record, Long> idField,
+                               Condition condition) {
+        return dsl
+                .select(idField)
+                .from(idField.getTable())
+                .where(condition)
+                .orderBy(idField)
+                .fetch(idField);
+    }
+
+
+    /**
+     * Index of the parent of the i'th node of a balanced tree laid out
+     * breadth first, where every node has <code>fanOut</code> children.
+     * The root (i = 0) has no parent.
+     */
+    static int parentIndex(int i, int fanOut) {
+        checkTrue(i > 0, "the root has no parent");
+        return (i - 1) / fanOut;
+    }
+
+
+    /**
+     * Flow sources are skewed so a small number of applications act as
+     * hubs, which is what makes real estates expensive to query.  Targets
+     * are uniform.  Source/target pairs are unique and never self
+     * referencing.  The stream is unbounded, callers must limit it to
+     * fewer than <code>size * (size - 1)</code> pairs.
+     */
+    static Stream<int[]> flowIndexPairs(Random random, int size) {
+        Set<Long> seenPairs = new HashSet<>();
+
+        return Stream
+                .generate(() -> {
+                    int source = skewedIndex(random, size);
+                    int target = random.nextInt(size);
+                    long pair = (long) source * size + target;
+                    return source == target || ! seenPairs.add(pair)
+                            ? null
+                            : new int[] { source, target };
+                })
+                .filter(Objects::nonNull);
+    }
+
+
+    /**
+     * Squaring a uniform value biases towards the low indices, giving a
+     * long tail of rarely used entries.  Half of all picks fall in the
+     * lowest quarter of the range.
+     */
+    static int skewedIndex(Random random, int size) {
+        double r = random.nextDouble();
+        return (int) (size * r * r);
+    }
+
+
+    static <T> List<T> pickDistinct(Random random, List<T> ts, int count) {
+        return random
+                .ints(0, ts.size())
+                .distinct()
+                .limit(Math.min(count, ts.size()))
+                .mapToObj(ts::get)
+                .collect(Collectors.toList());
+    }
+
+
+    private <T> T pick(List<T> ts) {
+        return ts.get(random.nextInt(ts.size()));
+    }
+
+
+    @SafeVarargs
+    private final <T> T pick(T... ts) {
+        return ts[random.nextInt(ts.length)];
+    }
+
+}
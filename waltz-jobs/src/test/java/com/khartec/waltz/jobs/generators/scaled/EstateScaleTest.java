@@ -0,0 +1,67 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.khartec.waltz.jobs.generators.scaled;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+public class EstateScaleTest {
+
+    @Test
+    public void smallestScaleIsAMidSizedBusinessUnit() {
+        assertEquals(200, EstateScale.X1.orgUnitCount());
+        assertEquals(2_000, EstateScale.X1.personCount());
+        assertEquals(2_000, EstateScale.X1.appCount());
+        assertEquals(8_000, EstateScale.X1.flowCount());
+        assertEquals(500, EstateScale.X1.measurableCount());
+    }
+
+
+    @Test
+    public void countsGrowLinearlyWithTheScale() {
+        for (EstateScale scale : EstateScale.values()) {
+            int multiplier = scale.appCount() / EstateScale.X1.appCount();
+            assertEquals(EstateScale.X1.orgUnitCount() * multiplier, scale.orgUnitCount());
+            assertEquals(EstateScale.X1.personCount() * multiplier, scale.personCount());
+            assertEquals(EstateScale.X1.flowCount() * multiplier, scale.flowCount());
+        }
+        assertEquals(200_000, EstateScale.X100.appCount());
+    }
+
+
+    @Test
+    public void measurablesGrowWithTheSquareRootOfTheScale() {
+        assertEquals(1_581, EstateScale.X10.measurableCount());
+        assertEquals(5_000, EstateScale.X100.measurableCount());
+    }
+
+
+    @Test
+    public void flowsNeverExhaustThePossibleSourceTargetPairs() {
+        for (EstateScale scale : EstateScale.values()) {
+            long possiblePairs = (long) scale.appCount() * (scale.appCount() - 1);
+            assertTrue(scale.flowCount() < possiblePairs);
+        }
+    }
+
+}
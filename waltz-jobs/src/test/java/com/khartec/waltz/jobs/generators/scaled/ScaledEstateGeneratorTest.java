@@ -0,0 +1,152 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.khartec.waltz.jobs.generators.scaled;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.khartec.waltz.jobs.generators.scaled.ScaledEstateGenerator.*;
+import static org.junit.Assert.*;
+
+
+public class ScaledEstateGeneratorTest {
+
+    private static final int SAMPLES = 100_000;
+
+
+    @Test
+    public void parentIndexBuildsABalancedTree() {
+        assertEquals(0, parentIndex(1, 5));
+        assertEquals(0, parentIndex(5, 5));
+        assertEquals(1, parentIndex(6, 5));
+        assertEquals(1, parentIndex(10, 5));
+        assertEquals(2, parentIndex(11, 5));
+
+        Map<Integer, Long> childCounts = IntStream
+                .range(1, 1 + 5 * 40)
+                .boxed()
+                .collect(Collectors.groupingBy(i -> parentIndex(i, 5), Collectors.counting()));
+
+        assertEquals(40, childCounts.size());
+        assertTrue(childCounts.values().stream().allMatch(c -> c == 5));
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rootHasNoParent() {
+        parentIndex(0, 5);
+    }
+
+
+    @Test
+    public void skewedIndexStaysInRangeAndFavoursLowIndices() {
+        Random random = new Random(42);
+        int size = 1_000;
+        int lowestQuarter = 0;
+
+        for (int i = 0; i < SAMPLES; i++) {
+            int idx = skewedIndex(random, size);
+            assertTrue(idx >= 0 && idx < size);
+            if (idx < size / 4) lowestQuarter++;
+        }
+
+        // uniform would give 25%, squaring a uniform value gives 50%
+        double share = lowestQuarter / (double) SAMPLES;
+        assertEquals(0.5, share, 0.01);
+    }
+
+
+    @Test
+    public void flowPairsAreUniqueAndNeverSelfReferencing() {
+        int size = 200;
+        List<int[]> pairs = flowIndexPairs(new Random(42), size)
+                .limit(size * 4)
+                .collect(Collectors.toList());
+
+        Set<Long> seen = new HashSet<>();
+        for (int[] pair : pairs) {
+            assertNotEquals(pair[0], pair[1]);
+            assertTrue(pair[0] >= 0 && pair[0] < size);
+            assertTrue(pair[1] >= 0 && pair[1] < size);
+            assertTrue(seen.add((long) pair[0] * size + pair[1]));
+        }
+        assertEquals(size * 4, pairs.size());
+    }
+
+
+    @Test
+    public void flowSourcesAreSkewedTowardsHubs() {
+        int size = 1_000;
+        int[] outDegree = new int[size];
+        int[] inDegree = new int[size];
+
+        flowIndexPairs(new Random(42), size)
+                .limit(size * 4)
+                .forEach(pair -> {
+                    outDegree[pair[0]]++;
+                    inDegree[pair[1]]++;
+                });
+
+        assertTrue(max(outDegree) > 4 * max(inDegree));
+    }
+
+
+    @Test
+    public void flowPairsAreRepeatableForAGivenSeed() {
+        List<String> first = flowIndexPairs(new Random(7), 50)
+                .limit(100)
+                .map(Arrays::toString)
+                .collect(Collectors.toList());
+        List<String> second = flowIndexPairs(new Random(7), 50)
+                .limit(100)
+                .map(Arrays::toString)
+                .collect(Collectors.toList());
+
+        assertEquals(first, second);
+    }
+
+
+    @Test
+    public void pickDistinctReturnsDistinctElementsBoundedByTheInput() {
+        List<Integer> ts = IntStream.range(0, 10).boxed().collect(Collectors.toList());
+        Random random = new Random(42);
+
+        List<Integer> picked = pickDistinct(random, ts, 4);
+        assertEquals(4, picked.size());
+        assertEquals(4, new HashSet<>(picked).size());
+        assertTrue(ts.containsAll(picked));
+
+        List<Integer> all = pickDistinct(random, ts, 50);
+        assertEquals(new HashSet<>(ts), new HashSet<>(all));
+
+        assertTrue(pickDistinct(random, ts, 0).isEmpty());
+    }
+
+
+    // -- HELPERS ---
+
+    private static int max(int[] xs) {
+        return Arrays.stream(xs).max().orElse(0);
+    }
+
+}
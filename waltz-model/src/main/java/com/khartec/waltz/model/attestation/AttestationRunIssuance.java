@@ -0,0 +1,52 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.khartec.waltz.model.attestation;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import org.immutables.value.Value;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+
+/**
+ * Progress of issuing the instances and recipients of an attestation run.
+ * The total is only known once the recipients have been generated.
+ */
+@Value.Immutable
+@JsonSerialize(as = ImmutableAttestationRunIssuance.class)
+@JsonDeserialize(as = ImmutableAttestationRunIssuance.class)
+public abstract class AttestationRunIssuance {
+
+    public abstract long attestationRunId();
+
+    public abstract AttestationRunIssuanceStatus status();
+
+    public abstract Optional<Integer> totalCount();
+
+    public abstract int processedCount();
+
+    public abstract Optional<LocalDateTime> lastUpdatedAt();
+
+    public abstract Optional<String> message();
+
+}
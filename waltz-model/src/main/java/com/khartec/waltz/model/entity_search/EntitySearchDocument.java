@@ -0,0 +1,43 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.khartec.waltz.model.entity_search;
+
+import com.khartec.waltz.model.EntityReference;
+import org.immutables.value.Value;
+
+import java.util.List;
+
+
+/**
+ * The searchable text of a single entity, as held by the in-memory
+ * search index.  Primary text is ranked like the `A` weighted fields
+ * of the Postgres full text searches (names, codes, external ids),
+ * secondary text like the `D` weighted fields (descriptions).
+ */
+@Value.Immutable
+public abstract class EntitySearchDocument {
+
+    public abstract EntityReference entityReference();
+
+    public abstract List<String> primaryText();
+
+    public abstract List<String> secondaryText();
+
+}
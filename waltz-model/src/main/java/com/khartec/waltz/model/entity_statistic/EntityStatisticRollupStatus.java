@@ -0,0 +1,49 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.khartec.waltz.model.entity_statistic;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import org.immutables.value.Value;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+
+/**
+ * Summarises the current values of a statistic.  A statistic's rollup
+ * only needs refreshing when the summary of its current values differs
+ * from the summary recorded when the rollup was last built.
+ */
+@Value.Immutable
+@JsonSerialize(as = ImmutableEntityStatisticRollupStatus.class)
+@JsonDeserialize(as = ImmutableEntityStatisticRollupStatus.class)
+public abstract class EntityStatisticRollupStatus {
+
+    public abstract long statisticId();
+
+    public abstract RollupKind rollupKind();
+
+    public abstract long valueCount();
+
+    public abstract Optional<LocalDateTime> maxCreatedAt();
+
+}
@@ -0,0 +1,42 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.khartec.waltz.model.logical_flow;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.khartec.waltz.model.EntityReference;
+import org.immutables.value.Value;
+
+/**
+ * A single hop in a lineage or route through the logical flow graph.
+ * <code>depth</code> is the number of hops from the starting entity
+ * (1 being flows directly connected to it).
+ */
+@Value.Immutable
+@JsonSerialize(as = ImmutableLogicalFlowGraphLink.class)
+@JsonDeserialize(as = ImmutableLogicalFlowGraphLink.class)
+public abstract class LogicalFlowGraphLink {
+
+    public abstract long logicalFlowId();
+    public abstract EntityReference source();
+    public abstract EntityReference target();
+    public abstract int depth();
+
+}
@@ -0,0 +1,61 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.khartec.waltz.model.physical_flow;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.khartec.waltz.model.scheduled_job.JobLifecycleStatus;
+import org.immutables.value.Value;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+
+/**
+ * Progress of a bulk physical flow upload running in the background.
+ * The command responses are only populated once the job has finished.
+ */
+@Value.Immutable
+@JsonSerialize(as = ImmutablePhysicalFlowUploadJob.class)
+@JsonDeserialize(as = ImmutablePhysicalFlowUploadJob.class)
+public abstract class PhysicalFlowUploadJob {
+
+    public abstract String id();
+
+    public abstract String submittedBy();
+
+    public abstract LocalDateTime submittedAt();
+
+    public abstract JobLifecycleStatus status();
+
+    public abstract String stage();
+
+    public abstract int totalCount();
+
+    public abstract int processedCount();
+
+    public abstract Optional<LocalDateTime> completedAt();
+
+    public abstract Optional<String> message();
+
+    public abstract List<PhysicalFlowUploadCommandResponse> results();
+
+}
@@ -0,0 +1,65 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.khartec.waltz.model.query_metric;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import org.immutables.value.Value;
+
+import java.util.Optional;
+
+
+/**
+ * Aggregated execution statistics for all queries sharing a
+ * normalized SQL fingerprint (literals and bind values removed)
+ * issued from the same calling dao method.
+ *
+ * Percentiles are estimated from a latency histogram and are
+ * reported as the upper bound of the bucket they fall into.
+ */
+@Value.Immutable
+@JsonSerialize(as = ImmutableQueryMetric.class)
+@JsonDeserialize(as = ImmutableQueryMetric.class)
+public abstract class QueryMetric {
+
+    public abstract String fingerprint();
+
+    public abstract Optional<String> caller();
+
+    public abstract long executionCount();
+
+    public abstract long errorCount();
+
+    public abstract long totalMillis();
+
+    public abstract double meanMillis();
+
+    public abstract long maxMillis();
+
+    public abstract long p50Millis();
+
+    public abstract long p95Millis();
+
+    public abstract long p99Millis();
+
+    public abstract long rowsFetched();
+
+}
@@ -139,9 +139,9 @@ function controller($state,
         serviceBroker
             .execute(CORE_API.AttestationRunStore.create, [command])
             .then(res => {
-                notification.success('Attestation run created successfully');
+                notification.success('Attestation run created, recipients are being issued in the background');
                 serviceBroker.loadAppData(CORE_API.NotificationStore.findAll, [], { force: true });
-                $state.go('main.attestation.run.view', {id: res.data.id});
+                $state.go('main.attestation.run.view', {id: res.data.attestationRunId});
             }, () => notification.error('Failed to create attestation run'))
     };
 
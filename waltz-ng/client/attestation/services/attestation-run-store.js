@@ -41,6 +41,18 @@ function store($http, baseApiUrl) {
             .then(r => r.data);
     };
 
+    const getIssuance = (id) => {
+        return $http
+            .get(`${base}/id/${id}/issuance`)
+            .then(r => r.data);
+    };
+
+    const reissue = (id) => {
+        return $http
+            .post(`${base}/id/${id}/issuance`)
+            .then(r => r.data);
+    };
+
     const findAll = () => {
         return $http
             .get(`${base}`)
@@ -71,6 +83,8 @@ function store($http, baseApiUrl) {
         getCreateSummary,
         create,
         getById,
+        getIssuance,
+        reissue,
         findAll,
         findByRecipient,
         findResponseSummaries,
@@ -104,6 +118,16 @@ export const AttestationRunStore_API = {
         serviceFnName: 'getById',
         description: 'attestation run by id'
     },
+    getIssuance: {
+        serviceName,
+        serviceFnName: 'getIssuance',
+        description: 'progress of issuing the instances and recipients of an attestation run'
+    },
+    reissue: {
+        serviceName,
+        serviceFnName: 'reissue',
+        description: 'retry issuing an attestation run whose issuance failed'
+    },
     findAll: {
         serviceName,
         serviceFnName: 'findAll',
@@ -0,0 +1,101 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.khartec.waltz.service;
+
+
+import org.jooq.TransactionContext;
+import org.jooq.TransactionListener;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+
+
+/**
+ * Lets services defer work (typically updates to in-memory state derived
+ * from the database) until the writes it reflects have been committed.
+ *
+ * Transactions are tracked per thread.  Work submitted outside of a
+ * transaction runs immediately, work submitted inside one runs once the
+ * outermost transaction commits and is discarded if the (possibly nested)
+ * transaction it was submitted in rolls back.
+ */
+public class AfterCommitListener implements TransactionListener {
+
+    // one entry per open (possibly nested) transaction, holding the work submitted at that level
+    private final ThreadLocal<List<List<Runnable>>> pendingByLevel = ThreadLocal.withInitial(ArrayList::new);
+
+
+    public void runAfterCommit(Runnable work) {
+        checkNotNull(work, "work cannot be null");
+
+        List<List<Runnable>> levels = pendingByLevel.get();
+        if (levels.isEmpty()) {
+            pendingByLevel.remove();
+            work.run();
+        } else {
+            levels.get(levels.size() - 1).add(work);
+        }
+    }
+
+
+    @Override
+    public void beginEnd(TransactionContext ctx) {
+        pendingByLevel.get().add(new ArrayList<>());
+    }
+
+
+    @Override
+    public void commitEnd(TransactionContext ctx) {
+        List<List<Runnable>> levels = pendingByLevel.get();
+        if (levels.isEmpty()) {
+            return;
+        }
+
+        List<Runnable> committed = levels.remove(levels.size() - 1);
+        if (levels.isEmpty()) {
+            pendingByLevel.remove();
+            committed.forEach(Runnable::run);
+        } else {
+            // a nested commit only releases the savepoint, the work waits for the enclosing transaction
+            levels.get(levels.size() - 1).addAll(committed);
+        }
+    }
+
+
+    @Override
+    public void rollbackEnd(TransactionContext ctx) {
+        List<List<Runnable>> levels = pendingByLevel.get();
+        if (! levels.isEmpty()) {
+            levels.remove(levels.size() - 1);
+        }
+        if (levels.isEmpty()) {
+            pendingByLevel.remove();
+        }
+    }
+
+
+    @Override public void beginStart(TransactionContext ctx) { }
+    @Override public void commitStart(TransactionContext ctx) { }
+    @Override public void rollbackStart(TransactionContext ctx) { }
+
+}
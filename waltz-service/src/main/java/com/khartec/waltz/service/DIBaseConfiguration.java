@@ -2,14 +2,19 @@ package com.khartec.waltz.service;
 
 
 import com.khartec.waltz.data.DBExecutorPool;
-import com.khartec.waltz.data.DBExecutorPoolInterface;
+import com.khartec.waltz.data.EntityNameCache;
+import com.khartec.waltz.data.application.ApplicationIdSelectionCache;
+import com.khartec.waltz.data.entity_search.EntitySearchIndex;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
 import org.jooq.DSLContext;
 import org.jooq.SQLDialect;
+import org.jooq.TransactionListener;
 import org.jooq.conf.Settings;
 import org.jooq.impl.DSL;
+import org.jooq.impl.DataSourceConnectionProvider;
 import org.jooq.impl.DefaultConfiguration;
+import org.jooq.impl.ThreadLocalTransactionProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -19,6 +24,8 @@ import org.springframework.context.annotation.PropertySource;
 
 import javax.sql.DataSource;
 
+import static com.khartec.waltz.schema.Tables.*;
+
 @Configuration
 @PropertySource(value = "classpath:waltz.properties", ignoreResourceNotFound = true)
 @PropertySource(value = "file:${user.home}/.waltz/waltz.properties", ignoreResourceNotFound = true)
@@ -54,6 +61,54 @@ public class DIBaseConfiguration {
     @Value("${database.performance.query.slow.threshold:10}")
     private int databasePerformanceQuerySlowThreshold;
 
+    @Value("${database.performance.query.metrics.enabled:true}")
+    private boolean queryMetricsEnabled;
+
+    @Value("${database.performance.query.metrics.max.fingerprints:1000}")
+    private int queryMetricsMaxFingerprints;
+
+    @Value("${database.performance.query.metrics.caller:true}")
+    private boolean queryMetricsCaptureCaller;
+
+    @Value("${database.performance.query.metrics.caller.sample.rate:0.01}")
+    private double queryMetricsCallerSampleRate;
+
+    @Value("${database.selector.cache.enabled:true}")
+    private boolean selectorCacheEnabled;
+
+    @Value("${database.selector.cache.ttl:300}")
+    private int selectorCacheTtlSeconds;
+
+    @Value("${database.selector.cache.max.entries:500}")
+    private int selectorCacheMaxEntries;
+
+    @Value("${database.selector.cache.max.ids:10000}")
+    private int selectorCacheMaxIds;
+
+    @Value("${database.name.resolver.cache.size:2000}")
+    private int nameCacheSize;
+
+    @Value("${database.name.resolver.cache.ttl:60}")
+    private int nameCacheTtlSeconds;
+
+    @Value("${database.search.index.enabled:false}")
+    private boolean searchIndexEnabled;
+
+    @Value("${database.executor.threads:0}")
+    private int dbExecutorThreads;
+
+    @Value("${database.executor.queue.size:500}")
+    private int dbExecutorQueueSize;
+
+    @Value("${database.executor.max.tasks.per.request:4}")
+    private int dbExecutorMaxTasksPerRequest;
+
+    @Value("${database.executor.task.timeout:60}")
+    private int dbExecutorTaskTimeoutSeconds;
+
+    @Value("${database.executor.rejection.policy:CALLER_RUNS}")
+    private DBExecutorPool.RejectionPolicy dbExecutorRejectionPolicy;
+
 
     @Bean
     public DataSource dataSource() {
@@ -70,14 +125,76 @@ public class DIBaseConfiguration {
 
 
     @Bean
-    public DBExecutorPoolInterface dbExecutorPool() {
-        return new DBExecutorPool(dbPoolMin, dbPoolMax);
+    public DBExecutorPool dbExecutorPool() {
+        // by default leave half the connections for request threads
+        int threads = dbExecutorThreads > 0
+                ? dbExecutorThreads
+                : Integer.max(dbPoolMax / 2, 1);
+
+        return new DBExecutorPool(
+                threads,
+                dbExecutorQueueSize,
+                dbExecutorMaxTasksPerRequest,
+                dbExecutorTaskTimeoutSeconds,
+                dbExecutorRejectionPolicy);
+    }
+
+
+    @Bean
+    public ApplicationIdSelectionCache applicationIdSelectionCache() {
+        return new ApplicationIdSelectionCache(
+                selectorCacheEnabled,
+                selectorCacheTtlSeconds,
+                selectorCacheMaxEntries,
+                selectorCacheMaxIds);
+    }
+
+
+    @Bean
+    public QueryMetricsRegistry queryMetricsRegistry() {
+        return new QueryMetricsRegistry(queryMetricsEnabled, queryMetricsMaxFingerprints);
+    }
+
+
+    @Bean
+    public EntityNameCache entityNameCache() {
+        return new EntityNameCache(nameCacheSize, nameCacheTtlSeconds);
+    }
+
+
+    @Bean
+    public EntitySearchIndex entitySearchIndex() {
+        return new EntitySearchIndex(searchIndexEnabled);
+    }
+
+
+    @Bean
+    public DataVersionListener dataVersionListener() {
+        return new DataVersionListener(
+                ACCESS_LOG,
+                EMAIL_MESSAGE,
+                EMAIL_OUTBOX,
+                RECALC_QUEUE,
+                SCHEDULED_JOB_LOG,
+                USER_AGENT_INFO);
+    }
+
+
+    @Bean
+    public AfterCommitListener afterCommitListener() {
+        return new AfterCommitListener();
     }
 
 
     @Bean
     @Autowired
-    public DSLContext dsl(DataSource dataSource) {
+    public DSLContext dsl(DataSource dataSource,
+                          AfterCommitListener afterCommitListener,
+                          DataVersionListener dataVersionListener,
+                          ApplicationIdSelectionCache applicationIdSelectionCache,
+                          EntityNameCache entityNameCache,
+                          EntitySearchIndex entitySearchIndex,
+                          QueryMetricsRegistry queryMetricsRegistry) {
         try {
             SQLDialect.valueOf(dialect);
         } catch (IllegalArgumentException iae) {
@@ -92,11 +209,34 @@ public class DIBaseConfiguration {
                     .withExecuteLogging(true);
         }
 
+        TableWriteListener selectionCacheInvalidationListener =
+                new SelectionCacheInvalidationListener(applicationIdSelectionCache);
+        TableWriteListener nameCacheInvalidationListener =
+                new NameCacheInvalidationListener(entityNameCache);
+        TableWriteListener searchIndexInvalidationListener =
+                new SearchIndexInvalidationListener(entitySearchIndex);
+
+        // thread bound transactions allow a service to group the writes of several daos,
+        // the connection provider falls back to the data source outside of a transaction
         org.jooq.Configuration configuration = new DefaultConfiguration()
-                .set(dataSource)
+                .set(new ThreadLocalTransactionProvider(new DataSourceConnectionProvider(dataSource)))
                 .set(SQLDialect.valueOf(dialect))
                 .set(dslSettings)
-                .set(new SlowQueryListener(databasePerformanceQuerySlowThreshold));
+                .set(new QueryMetricsListener(
+                                queryMetricsRegistry,
+                                databasePerformanceQuerySlowThreshold,
+                                queryMetricsCaptureCaller,
+                                queryMetricsCallerSampleRate),
+                        new QueryTimeoutListener(),
+                        selectionCacheInvalidationListener,
+                        nameCacheInvalidationListener,
+                        searchIndexInvalidationListener,
+                        dataVersionListener)
+                .set((TransactionListener) selectionCacheInvalidationListener,
+                        (TransactionListener) nameCacheInvalidationListener,
+                        (TransactionListener) searchIndexInvalidationListener,
+                        dataVersionListener,
+                        afterCommitListener);
 
         return DSL.using(configuration);
     }
@@ -19,13 +19,21 @@
 
 package com.khartec.waltz.service;
 
+import com.khartec.waltz.data.DBExecutorPool;
+import com.khartec.waltz.data.access_log.AccessLogDao;
 import com.khartec.waltz.model.ImmutableWaltzVersionInfo;
 import com.khartec.waltz.model.WaltzVersionInfo;
 import com.khartec.waltz.model.settings.ImmutableSetting;
 import com.khartec.waltz.model.settings.Setting;
+import com.khartec.waltz.service.access_log.AccessLogBuffer;
 import com.khartec.waltz.service.email.DummyJavaMailSender;
+import com.khartec.waltz.service.jmx.AccessLogBufferMaintenance;
+import com.khartec.waltz.service.jmx.DBExecutorPoolMaintenance;
 import com.khartec.waltz.service.jmx.PersonMaintenance;
+import com.khartec.waltz.service.jmx.QueryMetricsMaintenance;
+import com.khartec.waltz.service.jmx.UserRoleCacheMaintenance;
 import com.khartec.waltz.service.person_hierarchy.PersonHierarchyService;
+import com.khartec.waltz.service.user.UserRoleCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.*;
@@ -75,6 +83,34 @@ public class DIConfiguration implements SchedulingConfigurer {
     @Value("${settings.override:#{null}}")
     private String settingsOverrideStr;
 
+    // -- CACHES ---
+
+    @Value("${waltz.user.role.cache.enabled:true}")
+    private boolean userRoleCacheEnabled;
+
+    @Value("${waltz.user.role.cache.ttl:30}")
+    private int userRoleCacheTtlSeconds;
+
+    // -- ACCESS LOG ---
+
+    @Value("${waltz.access.log.buffer.enabled:true}")
+    private boolean accessLogBufferEnabled;
+
+    @Value("${waltz.access.log.buffer.capacity:10000}")
+    private int accessLogBufferCapacity;
+
+    @Value("${waltz.access.log.buffer.batch.size:200}")
+    private int accessLogBufferBatchSize;
+
+    @Value("${waltz.access.log.buffer.flush.interval:2000}")
+    private long accessLogBufferFlushIntervalMillis;
+
+    // -- SCHEDULING ---
+
+    @Value("${waltz.scheduler.pool.size:8}")
+    private int schedulerPoolSize;
+
+
     @Bean
     public WaltzVersionInfo waltzBuildInfo() {
         return ImmutableWaltzVersionInfo.builder()
@@ -120,6 +156,54 @@ public class DIConfiguration implements SchedulingConfigurer {
     }
 
 
+    @Bean
+    @Autowired
+    public DBExecutorPoolMaintenance dbExecutorPoolMaintenance(DBExecutorPool dbExecutorPool) {
+        return new DBExecutorPoolMaintenance(dbExecutorPool);
+    }
+
+
+    @Bean
+    @Autowired
+    public QueryMetricsMaintenance queryMetricsMaintenance(QueryMetricsRegistry queryMetricsRegistry) {
+        return new QueryMetricsMaintenance(queryMetricsRegistry);
+    }
+
+
+    @Bean
+    public UserRoleCache userRoleCache() {
+        return new UserRoleCache(userRoleCacheEnabled, userRoleCacheTtlSeconds);
+    }
+
+
+    @Bean
+    @Autowired
+    public UserRoleCacheMaintenance userRoleCacheMaintenance(UserRoleCache userRoleCache) {
+        return new UserRoleCacheMaintenance(userRoleCache);
+    }
+
+
+    @Bean(destroyMethod = "close")
+    @Autowired
+    public AccessLogBuffer accessLogBuffer(AccessLogDao accessLogDao) {
+        AccessLogBuffer buffer = new AccessLogBuffer(
+                accessLogDao::write,
+                accessLogBufferEnabled,
+                accessLogBufferCapacity,
+                accessLogBufferBatchSize,
+                accessLogBufferFlushIntervalMillis);
+        buffer.start();
+        return buffer;
+    }
+
+
+    @Bean
+    @Autowired
+    public AccessLogBufferMaintenance accessLogBufferMaintenance(AccessLogBuffer accessLogBuffer) {
+        return new AccessLogBufferMaintenance(accessLogBuffer);
+    }
+
+
     @Bean
     public JavaMailSender mailSender() {
         if (smtpHost == null) {
@@ -136,6 +220,8 @@ public class DIConfiguration implements SchedulingConfigurer {
     @Bean
     public TaskScheduler taskScheduler() {
         ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(schedulerPoolSize);
+        scheduler.setThreadNamePrefix("WaltzScheduler-");
         scheduler.setDaemon(true);
         return scheduler;
     }
@@ -0,0 +1,70 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.khartec.waltz.service;
+
+
+import org.jooq.Table;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+
+/**
+ * Counts the writes made via the shared `DSLContext`.  The count is a
+ * cheap version token for data served by this node: if it has not moved
+ * then nothing has been written (by this node) since it was last read.
+ *
+ * Writes made directly against the database (e.g. by external loaders) or
+ * by other nodes are not seen.
+ */
+public class DataVersionListener extends TableWriteListener {
+
+    private final AtomicLong version = new AtomicLong();
+    private final Set<String> ignoredTableNames;
+
+
+    /**
+     * @param ignoredTables  bookkeeping tables (e.g. the access log) whose
+     *                       writes do not change any served data
+     */
+    public DataVersionListener(Table<?>... ignoredTables) {
+        this.ignoredTableNames = Stream
+                .of(ignoredTables)
+                .map(t -> t.getName().toLowerCase())
+                .collect(Collectors.toSet());
+    }
+
+
+    public long current() {
+        return version.get();
+    }
+
+
+    @Override
+    protected void onWrite(Set<String> tableNames) {
+        if (! ignoredTableNames.containsAll(tableNames)) {
+            version.incrementAndGet();
+        }
+    }
+
+}
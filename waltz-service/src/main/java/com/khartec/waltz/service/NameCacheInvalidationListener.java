@@ -0,0 +1,65 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.khartec.waltz.service;
+
+
+import com.khartec.waltz.data.EntityNameCache;
+import com.khartec.waltz.data.InlineSelectFieldFactory;
+import com.khartec.waltz.model.EntityKind;
+import org.jooq.Table;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+
+
+/**
+ * Drops the cached names of an entity kind from the {@link EntityNameCache}
+ * whenever the table its names are read from is written to.  Every write
+ * counts, not just renames, as the statement text does not tell us which
+ * columns or rows changed.
+ */
+public class NameCacheInvalidationListener extends TableWriteListener {
+
+    private static final Map<EntityKind, Table<?>> NAME_TABLES = InlineSelectFieldFactory.findNameTables();
+
+    private final Map<String, EntityKind> kindsByTableName = new HashMap<>();
+    private final EntityNameCache nameCache;
+
+
+    public NameCacheInvalidationListener(EntityNameCache nameCache) {
+        super(NAME_TABLES.values().toArray(new Table<?>[0]));
+        NAME_TABLES.forEach((kind, table) -> kindsByTableName.put(table.getName().toLowerCase(), kind));
+        checkNotNull(nameCache, "nameCache cannot be null");
+        this.nameCache = nameCache;
+    }
+
+
+    @Override
+    protected void onWrite(Set<String> tableNames) {
+        tableNames
+                .stream()
+                .map(kindsByTableName::get)
+                .forEach(nameCache::invalidate);
+    }
+
+}
@@ -0,0 +1,298 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.khartec.waltz.service;
+
+
+import org.jooq.ExecuteContext;
+import org.jooq.conf.Settings;
+import org.jooq.impl.DSL;
+import org.jooq.impl.DefaultExecuteListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.Checks.checkTrue;
+
+
+/**
+ * Times every query executed via jOOQ and records the result in a
+ * {@link QueryMetricsRegistry}, queries exceeding the slow query threshold
+ * are also written to the performance log.
+ *
+ * A single listener instance is shared by every thread using the dsl
+ * context, therefore all per-execution state is kept in the
+ * {@link ExecuteContext#data()} map rather than in fields.
+ *
+ * Finding the calling dao method needs a stack walk, which is too costly
+ * to do for every query.  Callers are therefore sampled: a fingerprint's
+ * caller is found the first time it is seen, on every slow query and on
+ * a random fraction (the sample rate) of the remaining executions.  All
+ * other executions are attributed to the caller last found for their
+ * fingerprint.  The trade-off is that a statement issued by more than one
+ * dao method has its unsampled executions credited to whichever of them
+ * was sampled most recently.
+ */
+public class QueryMetricsListener extends DefaultExecuteListener {
+
+    private static final String PERFORMANCE_APPENDER = "WALTZ.PERFORMANCE";
+    private static final Logger LOG = LoggerFactory.getLogger(PERFORMANCE_APPENDER);
+
+    private static final String WALTZ_PACKAGE_PREFIX = "com.khartec.waltz.";
+    private static final String DATA_PACKAGE_PREFIX = "com.khartec.waltz.data.";
+
+    private static final String START_KEY = QueryMetricsListener.class.getName() + ".start";
+    private static final String ELAPSED_KEY = QueryMetricsListener.class.getName() + ".elapsed";
+    private static final String ROWS_KEY = QueryMetricsListener.class.getName() + ".rows";
+    private static final String FAILED_KEY = QueryMetricsListener.class.getName() + ".failed";
+
+    // bounded like the registry's statement cache, fingerprints seen after the limit are always sampled
+    private static final int MAX_REMEMBERED_CALLERS = 5_000;
+
+    private final QueryMetricsRegistry registry;
+    private final long slowQueryThresholdInNanos;
+    private final boolean captureCaller;
+    private final double callerSampleRate;
+    private final Supplier<String> callerFinder;
+    private final DoubleSupplier random;
+    private final Map<String, String> callersByFingerprint = new ConcurrentHashMap<>();
+
+
+    public QueryMetricsListener(QueryMetricsRegistry registry,
+                                int slowQueryThresholdSeconds,
+                                boolean captureCaller,
+                                double callerSampleRate) {
+        this(registry,
+                slowQueryThresholdSeconds,
+                captureCaller,
+                callerSampleRate,
+                QueryMetricsListener::findCaller,
+                () -> ThreadLocalRandom.current().nextDouble());
+    }
+
+
+    QueryMetricsListener(QueryMetricsRegistry registry,
+                         int slowQueryThresholdSeconds,
+                         boolean captureCaller,
+                         double callerSampleRate,
+                         Supplier<String> callerFinder,
+                         DoubleSupplier random) {
+        checkNotNull(registry, "registry cannot be null");
+        checkTrue(callerSampleRate >= 0 && callerSampleRate <= 1, "callerSampleRate must be between 0 and 1");
+        checkNotNull(callerFinder, "callerFinder cannot be null");
+        checkNotNull(random, "random cannot be null");
+
+        LOG.info("Initialising with {} second slow query threshold, metrics enabled: {}, caller capture: {} (sample rate: {})",
+                slowQueryThresholdSeconds,
+                registry.isEnabled(),
+                captureCaller,
+                callerSampleRate);
+
+        this.registry = registry;
+        this.slowQueryThresholdInNanos = TimeUnit.SECONDS.toNanos(slowQueryThresholdSeconds);
+        this.captureCaller = captureCaller;
+        this.callerSampleRate = callerSampleRate;
+        this.callerFinder = callerFinder;
+        this.random = random;
+    }
+
+
+    @Override
+    public void executeStart(ExecuteContext ctx) {
+        ctx.data(START_KEY, System.nanoTime());
+    }
+
+
+    @Override
+    public void executeEnd(ExecuteContext ctx) {
+        Long start = (Long) ctx.data(START_KEY);
+        if (start != null) {
+            ctx.data(ELAPSED_KEY, System.nanoTime() - start);
+        }
+    }
+
+
+    @Override
+    public void recordEnd(ExecuteContext ctx) {
+        long[] rows = (long[]) ctx.data(ROWS_KEY);
+        if (rows == null) {
+            rows = new long[1];
+            ctx.data(ROWS_KEY, rows);
+        }
+        rows[0]++;
+    }
+
+
+    @Override
+    public void exception(ExecuteContext ctx) {
+        ctx.data(FAILED_KEY, Boolean.TRUE);
+    }
+
+
+    @Override
+    public void end(ExecuteContext ctx) {
+        Long start = (Long) ctx.data(START_KEY);
+        if (start == null) {
+            // failed before the statement was executed (e.g. whilst rendering)
+            return;
+        }
+
+        Long elapsed = (Long) ctx.data(ELAPSED_KEY);
+        long elapsedNanos = elapsed == null
+                ? System.nanoTime() - start
+                : elapsed;
+        long[] rows = (long[]) ctx.data(ROWS_KEY);
+        boolean failed = ctx.data(FAILED_KEY) != null;
+        boolean slow = elapsedNanos > slowQueryThresholdInNanos;
+
+        if (! registry.isEnabled() && ! slow) {
+            return;
+        }
+
+        String fingerprint = registry.isEnabled()
+                ? registry.fingerprint(getSql(ctx))
+                : null;
+        String caller = resolveCaller(fingerprint, slow);
+
+        if (registry.isEnabled()) {
+            registry.record(
+                    fingerprint,
+                    caller,
+                    elapsedNanos,
+                    rows == null ? 0 : rows[0],
+                    failed);
+        }
+
+        if (slow) {
+            logSlowQuery(ctx, caller, elapsedNanos);
+        }
+    }
+
+
+    // -- HELPERS ---
+
+    /**
+     * @param fingerprint  fingerprint of the query, or null if not known (metrics disabled)
+     * @param slow  slow queries are always attributed to their actual caller
+     */
+    String resolveCaller(String fingerprint, boolean slow) {
+        if (! captureCaller) {
+            return null;
+        }
+
+        String remembered = fingerprint == null
+                ? null
+                : callersByFingerprint.get(fingerprint);
+
+        if (remembered != null && ! slow && random.getAsDouble() >= callerSampleRate) {
+            return remembered;
+        }
+
+        String caller = callerFinder.get();
+        if (fingerprint != null
+                && caller != null
+                && (remembered != null || callersByFingerprint.size() < MAX_REMEMBERED_CALLERS)) {
+            callersByFingerprint.put(fingerprint, caller);
+        }
+        return caller;
+    }
+
+
+    private void logSlowQuery(ExecuteContext ctx, String caller, long elapsedNanos) {
+        String sql = ctx.query() == null
+                ? getSql(ctx)
+                : DSL.using(ctx.dialect(), new Settings().withRenderFormatted(true)).renderInlined(ctx.query());
+
+        LOG.warn(
+                "Slow SQL executed in {} ms (caller: {})\n{}",
+                TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                caller == null ? "unknown" : caller,
+                sql);
+    }
+
+
+    private static String getSql(ExecuteContext ctx) {
+        if (ctx.sql() != null) {
+            return ctx.sql();
+        }
+        String[] batchSql = ctx.batchSQL();
+        return batchSql.length > 0
+                ? batchSql[0]
+                : null;
+    }
+
+
+    /**
+     * Walks the current stack looking for the dao method which issued
+     * the query.  If no dao is present (e.g. queries issued directly by a
+     * service or extractor) the first waltz frame outside of this
+     * listener is used.
+     */
+    private static String findCaller() {
+        StackTraceElement fallback = null;
+        for (StackTraceElement frame : new Throwable().getStackTrace()) {
+            String className = frame.getClassName();
+            if (! className.startsWith(WALTZ_PACKAGE_PREFIX)
+                    || className.startsWith(QueryMetricsListener.class.getName())) {
+                continue;
+            }
+            if (className.startsWith(DATA_PACKAGE_PREFIX) && isDao(className)) {
+                return toCaller(frame);
+            }
+            if (fallback == null) {
+                fallback = frame;
+            }
+        }
+        return fallback == null
+                ? null
+                : toCaller(fallback);
+    }
+
+
+    private static boolean isDao(String className) {
+        return toOuterClassName(className).endsWith("Dao");
+    }
+
+
+    private static String toOuterClassName(String className) {
+        int innerIdx = className.indexOf('$');
+        return innerIdx == -1
+                ? className
+                : className.substring(0, innerIdx);
+    }
+
+
+    private static String toCaller(StackTraceElement frame) {
+        String outerName = toOuterClassName(frame.getClassName());
+        String simpleName = outerName.substring(outerName.lastIndexOf('.') + 1);
+        String methodName = frame.getMethodName().startsWith("lambda$")
+                ? frame.getMethodName().split("\\$")[1]
+                : frame.getMethodName();
+        return simpleName + "." + methodName;
+    }
+
+}
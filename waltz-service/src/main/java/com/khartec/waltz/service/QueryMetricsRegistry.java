@@ -0,0 +1,312 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.khartec.waltz.service;
+
+import com.khartec.waltz.model.query_metric.ImmutableQueryMetric;
+import com.khartec.waltz.model.query_metric.QueryMetric;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.Checks.checkTrue;
+import static java.util.stream.Collectors.toList;
+
+
+/**
+ * Aggregates query execution timings, keyed by a normalized sql
+ * fingerprint and the calling dao method.  All recording is lock free
+ * so it is safe to share a single registry between every thread using
+ * the dsl context.
+ *
+ * The number of distinct keys is capped, once the cap is reached any
+ * new fingerprints are folded into a single overflow entry.
+ */
+public class QueryMetricsRegistry {
+
+    public static final String OVERFLOW_FINGERPRINT = "(other)";
+
+    private static final int MAX_FINGERPRINT_LENGTH = 4000;
+
+    // statements using bind variables render identical sql on every execution,
+    // statements with inlined values are not cached once the limit is reached
+    private static final int MAX_CACHED_STATEMENTS = 5_000;
+
+    // upper bounds (ms) of the latency histogram buckets, the last bucket is unbounded
+    private static final long[] BUCKET_BOUNDS_MILLIS = {
+            1, 2, 5, 10, 25, 50, 100, 250, 500,
+            1_000, 2_500, 5_000, 10_000, 30_000, 60_000, Long.MAX_VALUE };
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMERIC_LITERAL = Pattern.compile("(?<![\\w\"$.])-?\\d+(?:\\.\\d+)?(?![\\w\"$])");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern VALUE_LIST = Pattern.compile("\\?(?: ?, ?\\?)+");
+    private static final Pattern ROW_LIST = Pattern.compile("\\((\\?|\\?, \\.\\.\\.)\\)(?: ?, ?\\((?:\\?|\\?, \\.\\.\\.)\\))+");
+
+    private final boolean enabled;
+    private final int maxFingerprints;
+    private final Map<Key, Accumulator> accumulators = new ConcurrentHashMap<>();
+    private final LongAdder overflowCount = new LongAdder();
+    private final Map<String, String> fingerprintsBySql = new ConcurrentHashMap<>();
+
+
+    public QueryMetricsRegistry(boolean enabled, int maxFingerprints) {
+        checkTrue(maxFingerprints > 0, "maxFingerprints must be positive");
+        this.enabled = enabled;
+        this.maxFingerprints = maxFingerprints;
+    }
+
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+
+    public void record(String fingerprint,
+                       String caller,
+                       long elapsedNanos,
+                       long rowsFetched,
+                       boolean failed) {
+        if (! enabled) {
+            return;
+        }
+        checkNotNull(fingerprint, "fingerprint cannot be null");
+
+        Key key = new Key(fingerprint, caller);
+        Accumulator accumulator = accumulators.get(key);
+        if (accumulator == null) {
+            if (accumulators.size() >= maxFingerprints) {
+                overflowCount.increment();
+                key = new Key(OVERFLOW_FINGERPRINT, null);
+            }
+            accumulator = accumulators.computeIfAbsent(key, k -> new Accumulator());
+        }
+        accumulator.record(elapsedNanos, rowsFetched, failed);
+    }
+
+
+    public List<QueryMetric> findSlowest(int limit) {
+        return findTop(
+                Comparator.comparingLong(QueryMetric::totalMillis)
+                        .thenComparingLong(QueryMetric::maxMillis),
+                limit);
+    }
+
+
+    public List<QueryMetric> findMostFrequent(int limit) {
+        return findTop(
+                Comparator.comparingLong(QueryMetric::executionCount)
+                        .thenComparingLong(QueryMetric::totalMillis),
+                limit);
+    }
+
+
+    public int getTrackedCount() {
+        return accumulators.size();
+    }
+
+
+    /**
+     * @return number of executions recorded against the overflow entry
+     * because the fingerprint limit had been reached
+     */
+    public long getOverflowCount() {
+        return overflowCount.sum();
+    }
+
+
+    public void reset() {
+        accumulators.clear();
+        overflowCount.reset();
+    }
+
+
+    /**
+     * Cached version of {@link #mkFingerprint(String)}, most queries are
+     * issued many times with the same sql so the normalization is only
+     * performed the first time a statement is seen.
+     */
+    public String fingerprint(String sql) {
+        if (sql == null) {
+            return mkFingerprint(null);
+        }
+
+        String fingerprint = fingerprintsBySql.get(sql);
+        if (fingerprint == null) {
+            fingerprint = mkFingerprint(sql);
+            if (fingerprintsBySql.size() < MAX_CACHED_STATEMENTS) {
+                fingerprintsBySql.put(sql, fingerprint);
+            }
+        }
+        return fingerprint;
+    }
+
+
+    /**
+     * Reduces a sql statement to a fingerprint shared by all executions
+     * of the same logical query.  String and numeric literals become
+     * <code>?</code>, whitespace is collapsed, and variable length
+     * value lists (e.g. <code>IN (?, ?, ?)</code> or multi-row inserts)
+     * are reduced to a single placeholder so they do not produce a
+     * new fingerprint for every list size.
+     */
+    public static String mkFingerprint(String sql) {
+        if (sql == null) {
+            return "";
+        }
+
+        String fingerprint = STRING_LITERAL.matcher(sql).replaceAll("?");
+        fingerprint = NUMERIC_LITERAL.matcher(fingerprint).replaceAll("?");
+        fingerprint = WHITESPACE.matcher(fingerprint).replaceAll(" ").trim();
+        fingerprint = VALUE_LIST.matcher(fingerprint).replaceAll("?, ...");
+        fingerprint = ROW_LIST.matcher(fingerprint).replaceAll("($1), ...");
+
+        return fingerprint.length() > MAX_FINGERPRINT_LENGTH
+                ? fingerprint.substring(0, MAX_FINGERPRINT_LENGTH)
+                : fingerprint;
+    }
+
+
+    // -- HELPERS ---
+
+    private List<QueryMetric> findTop(Comparator<QueryMetric> comparator, int limit) {
+        checkTrue(limit >= 0, "limit cannot be negative");
+        return accumulators
+                .entrySet()
+                .stream()
+                .map(e -> e.getValue().toMetric(e.getKey()))
+                .sorted(comparator.reversed())
+                .limit(limit)
+                .collect(toList());
+    }
+
+
+    private static int toBucket(long elapsedMillis) {
+        for (int i = 0; i < BUCKET_BOUNDS_MILLIS.length; i++) {
+            if (elapsedMillis <= BUCKET_BOUNDS_MILLIS[i]) {
+                return i;
+            }
+        }
+        return BUCKET_BOUNDS_MILLIS.length - 1;
+    }
+
+
+    private static class Key {
+
+        private final String fingerprint;
+        private final String caller;
+
+        private Key(String fingerprint, String caller) {
+            this.fingerprint = fingerprint;
+            this.caller = caller;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return fingerprint.equals(key.fingerprint) && Objects.equals(caller, key.caller);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(fingerprint, caller);
+        }
+    }
+
+
+    private static class Accumulator {
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS_MILLIS.length);
+
+
+        private void record(long elapsedNanos, long rowsFetched, boolean failed) {
+            count.increment();
+            totalNanos.add(elapsedNanos);
+            rows.add(rowsFetched);
+            if (failed) {
+                errors.increment();
+            }
+            maxNanos.accumulateAndGet(elapsedNanos, Math::max);
+            buckets.incrementAndGet(toBucket(TimeUnit.NANOSECONDS.toMillis(elapsedNanos)));
+        }
+
+
+        private QueryMetric toMetric(Key key) {
+            long[] histogram = new long[buckets.length()];
+            long histogramTotal = 0;
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] = buckets.get(i);
+                histogramTotal += histogram[i];
+            }
+
+            long executionCount = count.sum();
+            long totalMillis = TimeUnit.NANOSECONDS.toMillis(totalNanos.sum());
+            long maxMillis = TimeUnit.NANOSECONDS.toMillis(maxNanos.get());
+
+            return ImmutableQueryMetric.builder()
+                    .fingerprint(key.fingerprint)
+                    .caller(Optional.ofNullable(key.caller))
+                    .executionCount(executionCount)
+                    .errorCount(errors.sum())
+                    .totalMillis(totalMillis)
+                    .meanMillis(executionCount == 0 ? 0 : (double) totalMillis / executionCount)
+                    .maxMillis(maxMillis)
+                    .p50Millis(percentile(histogram, histogramTotal, 0.50, maxMillis))
+                    .p95Millis(percentile(histogram, histogramTotal, 0.95, maxMillis))
+                    .p99Millis(percentile(histogram, histogramTotal, 0.99, maxMillis))
+                    .rowsFetched(rows.sum())
+                    .build();
+        }
+
+
+        private static long percentile(long[] histogram, long total, double fraction, long maxMillis) {
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(total * fraction);
+            long seen = 0;
+            for (int i = 0; i < histogram.length; i++) {
+                seen += histogram[i];
+                if (seen >= rank) {
+                    return Math.min(BUCKET_BOUNDS_MILLIS[i], maxMillis);
+                }
+            }
+            return maxMillis;
+        }
+    }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.khartec.waltz.service;
+
+import com.khartec.waltz.data.DBExecutorPool;
+import org.jooq.ExecuteContext;
+import org.jooq.exception.DataAccessException;
+import org.jooq.impl.DefaultExecuteListener;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Applies the remaining time of a task running on the {@link DBExecutorPool}
+ * as the statement timeout of any query it executes, so a query started late
+ * in a task's life cannot outlive the task's deadline.  Queries executed
+ * outside of the pool are unaffected.
+ */
+public class QueryTimeoutListener extends DefaultExecuteListener {
+
+    @Override
+    public void prepareEnd(ExecuteContext ctx) {
+        super.prepareEnd(ctx);
+
+        Statement statement = ctx.statement();
+        if (statement == null) {
+            return;
+        }
+
+        DBExecutorPool
+                .remainingMillis()
+                .ifPresent(remaining -> applyTimeout(statement, remaining));
+    }
+
+
+    private void applyTimeout(Statement statement, long remainingMillis) {
+        // jdbc timeouts are in whole seconds, zero means no timeout
+        int seconds = (int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(remainingMillis));
+        try {
+            int current = statement.getQueryTimeout();
+            if (current == 0 || seconds < current) {
+                statement.setQueryTimeout(seconds);
+            }
+        } catch (SQLException e) {
+            throw new DataAccessException("Could not set query timeout", e);
+        }
+    }
+
+}
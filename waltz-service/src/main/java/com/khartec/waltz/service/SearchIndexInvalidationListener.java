@@ -0,0 +1,77 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.khartec.waltz.service;
+
+
+import com.khartec.waltz.data.entity_search.EntitySearchIndex;
+import com.khartec.waltz.model.EntityKind;
+import org.jooq.Table;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.schema.Tables.*;
+
+
+/**
+ * Marks entity kinds as stale in the {@link EntitySearchIndex} whenever
+ * their underlying tables are written to.
+ */
+public class SearchIndexInvalidationListener extends TableWriteListener {
+
+    private static final Map<Table<?>, EntityKind> KINDS_BY_TABLE = new LinkedHashMap<>();
+
+    static {
+        KINDS_BY_TABLE.put(ACTOR, EntityKind.ACTOR);
+        KINDS_BY_TABLE.put(APPLICATION, EntityKind.APPLICATION);
+        KINDS_BY_TABLE.put(CHANGE_INITIATIVE, EntityKind.CHANGE_INITIATIVE);
+        KINDS_BY_TABLE.put(DATA_TYPE, EntityKind.DATA_TYPE);
+        KINDS_BY_TABLE.put(LOGICAL_DATA_ELEMENT, EntityKind.LOGICAL_DATA_ELEMENT);
+        KINDS_BY_TABLE.put(MEASURABLE, EntityKind.MEASURABLE);
+        KINDS_BY_TABLE.put(ORGANISATIONAL_UNIT, EntityKind.ORG_UNIT);
+        KINDS_BY_TABLE.put(PERSON, EntityKind.PERSON);
+        KINDS_BY_TABLE.put(ROADMAP, EntityKind.ROADMAP);
+        KINDS_BY_TABLE.put(SERVER_INFORMATION, EntityKind.SERVER);
+    }
+
+    private final Map<String, EntityKind> kindsByTableName = new HashMap<>();
+    private final EntitySearchIndex searchIndex;
+
+
+    public SearchIndexInvalidationListener(EntitySearchIndex searchIndex) {
+        super(KINDS_BY_TABLE.keySet().toArray(new Table<?>[0]));
+        KINDS_BY_TABLE.forEach((table, kind) -> kindsByTableName.put(table.getName().toLowerCase(), kind));
+        checkNotNull(searchIndex, "searchIndex cannot be null");
+        this.searchIndex = searchIndex;
+    }
+
+
+    @Override
+    protected void onWrite(Set<String> tableNames) {
+        tableNames
+                .stream()
+                .map(kindsByTableName::get)
+                .forEach(searchIndex::markStale);
+    }
+
+}
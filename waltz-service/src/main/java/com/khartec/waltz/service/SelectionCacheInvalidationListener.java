@@ -0,0 +1,56 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.khartec.waltz.service;
+
+
+import com.khartec.waltz.data.application.ApplicationIdSelectionCache;
+
+import java.util.Set;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.schema.Tables.*;
+
+
+/**
+ * Invalidates the {@link ApplicationIdSelectionCache} whenever a write
+ * touches one of the tables the application id selectors are derived from.
+ */
+public class SelectionCacheInvalidationListener extends TableWriteListener {
+
+    private final ApplicationIdSelectionCache selectionCache;
+
+
+    public SelectionCacheInvalidationListener(ApplicationIdSelectionCache selectionCache) {
+        super(APPLICATION,
+                APPLICATION_GROUP_ENTRY,
+                APPLICATION_GROUP_OU_ENTRY,
+                ENTITY_HIERARCHY,
+                MEASURABLE_RATING);
+        checkNotNull(selectionCache, "selectionCache cannot be null");
+        this.selectionCache = selectionCache;
+    }
+
+
+    @Override
+    protected void onWrite(Set<String> tableNames) {
+        selectionCache.invalidate();
+    }
+
+}
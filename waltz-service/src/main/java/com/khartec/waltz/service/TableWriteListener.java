@@ -0,0 +1,180 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.khartec.waltz.service;
+
+
+import org.jooq.ExecuteContext;
+import org.jooq.ExecuteType;
+import org.jooq.Table;
+import org.jooq.TransactionContext;
+import org.jooq.TransactionListener;
+import org.jooq.impl.DefaultExecuteListener;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.khartec.waltz.common.Checks.checkNotEmpty;
+import static com.khartec.waltz.common.StreamUtilities.ofNullableArray;
+
+
+/**
+ * Watches statements executed via the shared `DSLContext` and notifies
+ * subclasses whenever a write touches one of the watched tables (or any
+ * table, if none are given).
+ *
+ * Only the table being written to counts, tables which are merely read by
+ * the statement (e.g. the select of an insert-select) are ignored.  Writes
+ * made inside a transaction are reported immediately <em>and</em> again on
+ * commit (or rollback), so readers cannot repopulate derived state with
+ * pre-commit data.
+ */
+public abstract class TableWriteListener extends DefaultExecuteListener implements TransactionListener {
+
+    private static final String IDENTIFIER = "(?:[\"\\[`][^\"\\]`]+[\"\\]`]|[\\w$]+)";
+
+    private static final Pattern WRITE_TARGET = Pattern.compile(
+            "^\\s*(?:insert\\s+into|update|delete\\s+from|delete|merge\\s+into|truncate\\s+table)\\s+"
+                    + "(" + IDENTIFIER + "(?:\\s*\\.\\s*" + IDENTIFIER + ")*)",
+            Pattern.CASE_INSENSITIVE);
+
+    private static final String UNKNOWN_TABLE = "(unknown)";
+
+    private final ThreadLocal<Set<String>> tablesWritten = ThreadLocal.withInitial(HashSet::new);
+    private final Pattern watchedTables;
+
+
+    protected TableWriteListener(Table<?>... tables) {
+        checkNotEmpty(tables, "must watch at least one table");
+        this.watchedTables = mkTablePattern(tables);
+    }
+
+
+    /**
+     * Watches writes to every table
+     */
+    protected TableWriteListener() {
+        this.watchedTables = null;
+    }
+
+
+    /**
+     * @param tableNames  lower cased names of the watched tables which were written to
+     */
+    protected abstract void onWrite(Set<String> tableNames);
+
+
+    @Override
+    public void executeEnd(ExecuteContext ctx) {
+        super.executeEnd(ctx);
+
+        if (ctx.type() == ExecuteType.READ) {
+            return;
+        }
+
+        Set<String> touched = Stream
+                .concat(Stream.of(ctx.sql()), ofNullableArray(ctx.batchSQL()))
+                .flatMap(this::findWatchedTables)
+                .collect(Collectors.toSet());
+
+        if (! touched.isEmpty()) {
+            tablesWritten.get().addAll(touched);
+            onWrite(touched);
+        }
+    }
+
+
+    // -- TRANSACTION LISTENER ---
+
+    @Override
+    public void commitEnd(TransactionContext ctx) {
+        flushTransaction();
+    }
+
+
+    @Override
+    public void rollbackEnd(TransactionContext ctx) {
+        flushTransaction();
+    }
+
+
+    @Override public void beginStart(TransactionContext ctx) { }
+    @Override public void beginEnd(TransactionContext ctx) { }
+    @Override public void commitStart(TransactionContext ctx) { }
+    @Override public void rollbackStart(TransactionContext ctx) { }
+
+
+    // -- HELPERS ---
+
+    private void flushTransaction() {
+        Set<String> touched = tablesWritten.get();
+        tablesWritten.remove();
+        if (! touched.isEmpty()) {
+            onWrite(touched);
+        }
+    }
+
+
+    private Stream<String> findWatchedTables(String sql) {
+        if (sql == null) {
+            return Stream.empty();
+        }
+
+        // statements we cannot parse a target from are checked in full, erring on the side of reporting a write
+        Matcher targetMatcher = WRITE_TARGET.matcher(sql);
+        boolean targetFound = targetMatcher.find();
+        String target = targetFound
+                ? targetMatcher.group(1)
+                : sql;
+
+        if (watchedTables == null) {
+            return Stream.of(targetFound
+                    ? target.replaceAll("[\"\\[\\]`]", "").toLowerCase()
+                    : UNKNOWN_TABLE);
+        }
+
+        Set<String> found = new HashSet<>();
+        Matcher matcher = watchedTables.matcher(target);
+        while (matcher.find()) {
+            found.add(matcher.group(1).toLowerCase());
+        }
+        return found.stream();
+    }
+
+
+    /**
+     * Matches any of the table names when rendered as a quoted identifier,
+     * regardless of dialect (e.g. "application", [application], `application`)
+     */
+    private static Pattern mkTablePattern(Table<?>... tables) {
+        String names = Stream
+                .of(tables)
+                .map(t -> Pattern.quote(t.getName()))
+                .collect(Collectors.joining("|"));
+
+        return Pattern.compile(
+                "[\"\\[`](" + names + ")[\"\\]`]",
+                Pattern.CASE_INSENSITIVE);
+    }
+
+}
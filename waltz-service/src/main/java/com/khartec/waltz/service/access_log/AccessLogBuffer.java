@@ -0,0 +1,235 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.khartec.waltz.service.access_log;
+
+import com.khartec.waltz.model.accesslog.AccessLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.Checks.checkTrue;
+
+
+/**
+ * Buffers access log entries in a bounded queue and writes them in
+ * multi-row inserts from a background thread.  Entries are written once
+ * a batch fills or the flush interval passes, whichever comes first.
+ *
+ * If the queue is full (e.g. the database is slow or unavailable) new
+ * entries are dropped rather than blocking the request thread.  On
+ * shutdown the queue is drained before the writer stops.
+ *
+ * When disabled entries are written immediately on the caller's thread.
+ *
+ * Batches are handed to a writer, normally <code>AccessLogDao::write</code>.
+ */
+public class AccessLogBuffer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AccessLogBuffer.class);
+    private static final long POLL_MILLIS = 100;
+    private static final long SHUTDOWN_GRACE_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    private final Consumer<List<AccessLog>> batchWriter;
+    private final boolean enabled;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final BlockingQueue<AccessLog> queue;
+
+    private final AtomicLong flushed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    private volatile boolean running = false;
+    private Thread writer;
+
+
+    public AccessLogBuffer(Consumer<List<AccessLog>> batchWriter,
+                           boolean enabled,
+                           int capacity,
+                           int batchSize,
+                           long flushIntervalMillis) {
+        checkNotNull(batchWriter, "batchWriter cannot be null");
+        checkTrue(capacity > 0, "capacity must be positive");
+        checkTrue(batchSize > 0, "batchSize must be positive");
+        checkTrue(flushIntervalMillis > 0, "flushIntervalMillis must be positive");
+
+        this.batchWriter = batchWriter;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+
+    public synchronized void start() {
+        if (! enabled || running) {
+            return;
+        }
+
+        running = true;
+        writer = new Thread(this::writeLoop, "WaltzAccessLogWriter");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+
+    /**
+     * Stops accepting entries into the buffer, waits for the writer to
+     * drain it and then writes anything left over directly.
+     */
+    public synchronized void close() {
+        if (! running) {
+            return;
+        }
+
+        running = false;
+        try {
+            writer.join(SHUTDOWN_GRACE_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        flushNow();
+        LOG.info("Access log writer stopped, flushed: {}, dropped: {}, failed: {}", flushed.get(), dropped.get(), failed.get());
+    }
+
+
+    /**
+     * @return true if the entry was accepted, false if it was dropped
+     */
+    public boolean offer(AccessLog logEntry) {
+        checkNotNull(logEntry, "logEntry cannot be null");
+
+        if (! running) {
+            write(Collections.singletonList(logEntry));
+            return true;
+        }
+
+        if (queue.offer(logEntry)) {
+            return true;
+        } else {
+            dropped.incrementAndGet();
+            return false;
+        }
+    }
+
+
+    /**
+     * Writes everything currently queued on the caller's thread.
+     */
+    public void flushNow() {
+        List<AccessLog> batch = new ArrayList<>(batchSize);
+        while (queue.drainTo(batch, batchSize) > 0) {
+            write(batch);
+            batch.clear();
+        }
+    }
+
+
+    public int queuedCount() {
+        return queue.size();
+    }
+
+
+    public long flushedCount() {
+        return flushed.get();
+    }
+
+
+    public long droppedCount() {
+        return dropped.get();
+    }
+
+
+    public long failedCount() {
+        return failed.get();
+    }
+
+
+    public boolean isRunning() {
+        return running;
+    }
+
+
+    // -- HELPERS ---
+
+    /**
+     * Waits are done in short polls so the writer notices promptly when
+     * it is asked to stop.
+     */
+    private void writeLoop() {
+        List<AccessLog> batch = new ArrayList<>(batchSize);
+
+        while (running || ! queue.isEmpty()) {
+            try {
+                AccessLog first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+
+                batch.add(first);
+                long deadline = System.currentTimeMillis() + flushIntervalMillis;
+
+                while (running && batch.size() < batchSize && System.currentTimeMillis() < deadline) {
+                    AccessLog next = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (next != null) {
+                        batch.add(next);
+                        queue.drainTo(batch, batchSize - batch.size());
+                    }
+                }
+
+                queue.drainTo(batch, batchSize - batch.size());
+                write(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                // entries already taken from the queue would otherwise be lost
+                write(batch);
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+
+    private void write(List<AccessLog> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            batchWriter.accept(batch);
+            flushed.addAndGet(batch.size());
+        } catch (Exception e) {
+            failed.addAndGet(batch.size());
+            LOG.warn("Failed to write {} access log entries: {}", batch.size(), e.getMessage());
+        }
+    }
+
+}
@@ -39,16 +39,26 @@ import static com.khartec.waltz.common.DateTimeUtilities.nowUtc;
 public class AccessLogService {
 
     private final AccessLogDao accessLogDao;
+    private final AccessLogBuffer accessLogBuffer;
 
     @Autowired
-    public AccessLogService(AccessLogDao accessLogDao) {
+    public AccessLogService(AccessLogDao accessLogDao,
+                            AccessLogBuffer accessLogBuffer) {
+        checkNotNull(accessLogDao, "accessLogDao cannot be null");
+        checkNotNull(accessLogBuffer, "accessLogBuffer cannot be null");
         this.accessLogDao = accessLogDao;
+        this.accessLogBuffer = accessLogBuffer;
     }
 
 
-    public int write(AccessLog logEntry) {
+    /**
+     * Queues the entry to be written in the background, see {@link AccessLogBuffer}.
+     *
+     * @return true if the entry was accepted, false if it was dropped because the buffer is full
+     */
+    public boolean write(AccessLog logEntry) {
         checkNotNull(logEntry, "logEntry must not be null");
-        return accessLogDao.write(logEntry);
+        return accessLogBuffer.offer(logEntry);
     }
 
 
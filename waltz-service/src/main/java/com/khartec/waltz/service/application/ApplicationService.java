@@ -30,6 +30,7 @@ import com.khartec.waltz.model.ImmutableEntityReference;
 import com.khartec.waltz.model.application.*;
 import com.khartec.waltz.model.entity_search.EntitySearchOptions;
 import com.khartec.waltz.model.tally.Tally;
+import com.khartec.waltz.service.entity_statistic.EntityStatisticRollupService;
 import org.jooq.Record1;
 import org.jooq.Select;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -56,6 +57,7 @@ public class ApplicationService {
     private final EntityAliasDao entityAliasDao;
     private final ApplicationSearchDao appSearchDao;
     private final ApplicationIdSelectorFactory appIdSelectorFactory;
+    private final EntityStatisticRollupService entityStatisticRollupService;
 
 
     @Autowired
@@ -63,18 +65,21 @@ public class ApplicationService {
                               EntityTagDao entityTagDao,
                               EntityAliasDao entityAliasDao,
                               ApplicationSearchDao appSearchDao,
-                              ApplicationIdSelectorFactory appIdSelectorFactory) {
+                              ApplicationIdSelectorFactory appIdSelectorFactory,
+                              EntityStatisticRollupService entityStatisticRollupService) {
         checkNotNull(appDao, "appDao must not be null");
         checkNotNull(entityTagDao, "entityTagDao must not be null");
         checkNotNull(entityAliasDao, "entityAliasDao must not be null");
         checkNotNull(appSearchDao, "appSearchDao must not be null");
         checkNotNull(appIdSelectorFactory, "appIdSelectorFactory cannot be null");
+        checkNotNull(entityStatisticRollupService, "entityStatisticRollupService cannot be null");
 
         this.applicationDao = appDao;
         this.entityTagDao = entityTagDao;
         this.entityAliasDao = entityAliasDao;
         this.appSearchDao = appSearchDao;
         this.appIdSelectorFactory = appIdSelectorFactory;
+        this.entityStatisticRollupService = entityStatisticRollupService;
     }
 
 
@@ -134,8 +139,23 @@ public class ApplicationService {
     }
 
 
+    /**
+     * Updates the application, if it has moved to another org unit the
+     * statistic rollup of both org units is refreshed.
+     */
     public Integer update(Application application) {
-        return applicationDao.update(application);
+        Application existing = applicationDao.getById(application.id().get());
+        int updated = applicationDao.update(application);
+
+        if (existing != null
+                && updated > 0
+                && ! existing.organisationalUnitId().equals(application.organisationalUnitId())) {
+            entityStatisticRollupService.applicationMoved(
+                    existing.organisationalUnitId(),
+                    application.organisationalUnitId());
+        }
+
+        return updated;
     }
 
 
@@ -33,19 +33,33 @@ import com.khartec.waltz.model.person.Person;
 import com.khartec.waltz.service.email.EmailService;
 import org.jooq.Record1;
 import org.jooq.Select;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.Checks.checkTrue;
+import static com.khartec.waltz.common.DateTimeUtilities.nowUtc;
+import static com.khartec.waltz.common.ListUtilities.newArrayList;
+import static com.khartec.waltz.common.ListUtilities.partition;
 import static com.khartec.waltz.model.EntityReference.mkRef;
-import static java.util.stream.Collectors.groupingBy;
-import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.*;
 
 @Service
 public class AttestationRunService {
 
+    private static final Logger LOG = LoggerFactory.getLogger(AttestationRunService.class);
+    private static final int ISSUANCE_BATCH_SIZE = 1000;
+
     private final AttestationInstanceDao attestationInstanceDao;
     private final AttestationInstanceRecipientDao attestationInstanceRecipientDao;
     private final AttestationRunDao attestationRunDao;
@@ -53,19 +67,26 @@ public class AttestationRunService {
     private final GenericSelectorFactory genericSelectorFactory;
     private final InvolvementDao involvementDao;
 
+    private final ExecutorService issuanceExecutor;
+    private final int staleIssuanceInMinutes;
+
     @Autowired
     public AttestationRunService(AttestationInstanceDao attestationInstanceDao,
                                  AttestationInstanceRecipientDao attestationInstanceRecipientDao,
                                  AttestationRunDao attestationRunDao,
                                  EmailService emailService,
                                  GenericSelectorFactory genericSelectorFactory,
-                                 InvolvementDao involvementDao) {
+                                 InvolvementDao involvementDao,
+                                 @Value("${waltz.attestation.run.issuance.threads:1}") int issuanceThreads,
+                                 @Value("${waltz.attestation.run.issuance.stale:30}") int staleIssuanceInMinutes) {
         checkNotNull(attestationInstanceRecipientDao, "attestationInstanceRecipientDao cannot be null");
         checkNotNull(attestationInstanceDao, "attestationInstanceDao cannot be null");
         checkNotNull(attestationRunDao, "attestationRunDao cannot be null");
         checkNotNull(emailService, "emailService cannot be null");
         checkNotNull(genericSelectorFactory, "genericSelectorFactory cannot be null");
         checkNotNull(involvementDao, "involvementDao cannot be null");
+        checkTrue(issuanceThreads > 0, "issuanceThreads must be positive");
+        checkTrue(staleIssuanceInMinutes > 0, "staleIssuanceInMinutes must be positive");
 
         this.attestationInstanceDao = attestationInstanceDao;
         this.attestationInstanceRecipientDao = attestationInstanceRecipientDao;
@@ -73,6 +94,8 @@ public class AttestationRunService {
         this.emailService = emailService;
         this.genericSelectorFactory = genericSelectorFactory;
         this.involvementDao = involvementDao;
+        this.issuanceExecutor = mkExecutorPool(issuanceThreads);
+        this.staleIssuanceInMinutes = staleIssuanceInMinutes;
     }
 
 
@@ -134,22 +157,149 @@ public class AttestationRunService {
 
     }
 
-    
-    public IdCommandResponse create(String userId, AttestationRunCreateCommand command) {
-        // create run
-        Long runId = attestationRunDao.create(userId, command);
 
-        // generate instances and recipients
-        List<AttestationInstanceRecipient> instanceRecipients = generateAttestationInstanceRecipients(runId, command.attestedEntityKind());
+    /**
+     * Creates the run and queues the issuance of its instances and
+     * recipients, which happens in the background.  Recipients are notified
+     * once the run has been issued.
+     * @return the issuance progress of the new run, initially pending
+     */
+    public AttestationRunIssuance create(String userId, AttestationRunCreateCommand command) {
+        checkNotNull(userId, "userId cannot be null");
+        checkNotNull(command, "command cannot be null");
+
+        long runId = attestationRunDao.create(userId, command);
+        issuanceExecutor.submit(() -> issue(runId));
 
-        // store
-        createAttestationInstancesAndRecipients(instanceRecipients);
+        return attestationRunDao.getIssuance(runId);
+    }
 
-        emailService.sendEmailNotification(mkRef(EntityKind.ATTESTATION_RUN, runId));
 
-        return ImmutableIdCommandResponse.builder()
-                .id(runId)
-                .build();
+    public AttestationRunIssuance getIssuance(long attestationRunId) {
+        return attestationRunDao.getIssuance(attestationRunId);
+    }
+
+
+    /**
+     * Queues another attempt at issuing a run whose issuance failed.
+     * @return the issuance progress of the run, pending if it will be re-issued
+     */
+    public AttestationRunIssuance reissue(long attestationRunId) {
+        if (attestationRunDao.resetFailedIssuance(attestationRunId)) {
+            issuanceExecutor.submit(() -> issue(attestationRunId));
+        }
+
+        return attestationRunDao.getIssuance(attestationRunId);
+    }
+
+
+    /**
+     * Queues the issuance of runs which are still pending (e.g. the server
+     * was restarted before they were picked up) or whose issuance has been
+     * abandoned part way through.
+     */
+    @Scheduled(
+            initialDelayString = "${waltz.attestation.run.issuance.interval:60000}",
+            fixedDelayString = "${waltz.attestation.run.issuance.interval:60000}")
+    public void issuePendingRuns() {
+        try {
+            attestationRunDao
+                    .findIssuableRunIds(mkStaleIssuanceCutoff())
+                    .forEach(runId -> issuanceExecutor.submit(() -> issue(runId)));
+        } catch (Exception e) {
+            LOG.error("Failed to find attestation runs waiting to be issued, will retry on next pass", e);
+        }
+    }
+
+
+    /**
+     * Issues the instances and recipients of the run, provided it can be
+     * claimed.  Anything left behind by an abandoned attempt is removed first,
+     * then instances are written in batches, each batch with its recipients in
+     * a single transaction.  If a batch fails the batches already written are
+     * removed and the run is marked as FAILED, ready to be re-issued.
+     * @return true if the run was issued by this call
+     */
+    boolean issue(long runId) {
+        if (! attestationRunDao.claimIssuance(runId, mkStaleIssuanceCutoff())) {
+            return false;
+        }
+
+        try {
+            AttestationRun attestationRun = attestationRunDao.getById(runId);
+            checkNotNull(attestationRun, "attestationRun " + runId + " not found");
+
+            attestationInstanceRecipientDao.deleteForRun(runId);
+            attestationInstanceDao.deleteForRun(runId);
+
+            Map<EntityReference, Set<String>> recipientsByEntity = groupRecipientsByEntity(
+                    generateAttestationInstanceRecipients(runId, attestationRun.attestedEntityKind()));
+
+            int totalCount = recipientsByEntity
+                    .values()
+                    .stream()
+                    .mapToInt(Set::size)
+                    .sum();
+
+            int processedCount = 0;
+            attestationRunDao.updateIssuanceProgress(runId, totalCount, processedCount);
+
+            for (Map<EntityReference, Set<String>> batchRecipients : mkIssuanceBatches(recipientsByEntity, ISSUANCE_BATCH_SIZE)) {
+                processedCount += attestationInstanceDao.createInstancesWithRecipients(runId, batchRecipients);
+                attestationRunDao.updateIssuanceProgress(runId, totalCount, processedCount);
+            }
+
+            attestationRunDao.completeIssuance(runId, AttestationRunIssuanceStatus.ISSUED, null);
+
+            LOG.info("Issued {} instances with {} recipients for attestation run: {}",
+                    recipientsByEntity.size(),
+                    processedCount,
+                    runId);
+        } catch (Exception e) {
+            LOG.error("Issuance of attestation run: {} failed", runId, e);
+            removeIssued(runId);
+            attestationRunDao.completeIssuance(runId, AttestationRunIssuanceStatus.FAILED, e.getMessage());
+            return false;
+        }
+
+        sendNotification(runId);
+        return true;
+    }
+
+
+    /**
+     * @return the distinct user ids of the recipients, by the entity they are to attest
+     */
+    static Map<EntityReference, Set<String>> groupRecipientsByEntity(Collection<AttestationInstanceRecipient> recipients) {
+        return recipients
+                .stream()
+                .collect(groupingBy(
+                        r -> r.attestationInstance().parentEntity(),
+                        mapping(AttestationInstanceRecipient::userId, toSet())));
+    }
+
+
+    /**
+     * @return the recipients split into batches of at most <code>batchSize</code> entities
+     */
+    static List<Map<EntityReference, Set<String>>> mkIssuanceBatches(Map<EntityReference, Set<String>> recipientsByEntity,
+                                                                     int batchSize) {
+        return partition(newArrayList(recipientsByEntity.keySet()), batchSize)
+                .stream()
+                .map(batch -> batch
+                        .stream()
+                        .collect(toMap(ref -> ref, recipientsByEntity::get)))
+                .collect(toList());
+    }
+
+
+    private void removeIssued(long runId) {
+        try {
+            attestationInstanceRecipientDao.deleteForRun(runId);
+            attestationInstanceDao.deleteForRun(runId);
+        } catch (Exception e) {
+            LOG.error("Failed to remove partially issued attestation run: {}, it will be removed if the run is re-issued", runId, e);
+        }
     }
 
 
@@ -208,27 +358,28 @@ public class AttestationRunService {
     }
 
 
-    private void createAttestationInstancesAndRecipients(List<AttestationInstanceRecipient> instanceRecipients) {
-        Map<AttestationInstance, List<AttestationInstanceRecipient>> instancesAndRecipientsToSave = instanceRecipients.stream()
-                .collect(groupingBy(
-                        AttestationInstanceRecipient::attestationInstance,
-                        toList()
-                ));
-
+    private void sendNotification(long runId) {
+        try {
+            emailService.sendEmailNotification(mkRef(EntityKind.ATTESTATION_RUN, runId));
+        } catch (Exception e) {
+            LOG.error("Failed to notify recipients of attestation run: {}", runId, e);
+        }
+    }
 
-        // insert new instances and recipients
-        instancesAndRecipientsToSave.forEach(
-                (k, v) -> {
-                    // create instance
-                    long instanceId = attestationInstanceDao.create(k);
 
-                    // create recipients for the instance
-                    v.stream()
-                            .forEach(r -> attestationInstanceRecipientDao.create(instanceId, r.userId()));
-                }
-        );
+    private LocalDateTime mkStaleIssuanceCutoff() {
+        return nowUtc().minusMinutes(staleIssuanceInMinutes);
     }
 
 
-
+    private static ExecutorService mkExecutorPool(int poolSize) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(
+                poolSize,
+                (runnable) -> {
+                    Thread t = new Thread(runnable, "WaltzAttestationRunIssuance-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
 }
@@ -20,28 +20,39 @@
 package com.khartec.waltz.service.authoritative_source;
 
 import com.khartec.waltz.common.SetUtilities;
+import com.khartec.waltz.data.application.ApplicationDao;
 import com.khartec.waltz.data.application.ApplicationIdSelectorFactory;
+import com.khartec.waltz.data.authoritative_source.AuthoritativeSourceDao;
 import com.khartec.waltz.data.data_flow_decorator.LogicalFlowDecoratorDao;
 import com.khartec.waltz.data.data_type.DataTypeDao;
+import com.khartec.waltz.data.logical_flow.LogicalFlowDao;
 import com.khartec.waltz.model.EntityKind;
 import com.khartec.waltz.model.EntityReference;
 import com.khartec.waltz.model.HierarchyQueryScope;
+import com.khartec.waltz.model.application.Application;
 import com.khartec.waltz.model.application.ApplicationIdSelectionOptions;
+import com.khartec.waltz.model.authoritativesource.AuthoritativeRatingVantagePoint;
+import com.khartec.waltz.model.data_flow_decorator.ImmutableLogicalFlowDecorator;
 import com.khartec.waltz.model.data_flow_decorator.LogicalFlowDecorator;
 import com.khartec.waltz.model.datatype.DataType;
+import com.khartec.waltz.model.rating.AuthoritativenessRating;
 import com.khartec.waltz.service.data_flow_decorator.LogicalFlowDecoratorRatingsCalculator;
 import org.jooq.Record1;
 import org.jooq.Select;
+import org.jooq.lambda.tuple.Tuple3;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.util.Collection;
-import java.util.Set;
+import java.util.*;
 
 import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.ListUtilities.partition;
+import static com.khartec.waltz.common.MapUtilities.indexBy;
 import static com.khartec.waltz.common.SetUtilities.fromCollection;
+import static com.khartec.waltz.model.EntityReference.mkRef;
+import static java.util.stream.Collectors.groupingBy;
 import static java.util.stream.Collectors.toList;
 
 
@@ -49,31 +60,99 @@ import static java.util.stream.Collectors.toList;
 public class AuthSourceRatingCalculator {
 
     private static final Logger LOG = LoggerFactory.getLogger(AuthSourceRatingCalculator.class);
+    private static final int MAX_IDS_PER_QUERY = 1000;
 
+    private final ApplicationDao applicationDao;
+    private final AuthoritativeSourceDao authoritativeSourceDao;
     private final DataTypeDao dataTypeDao;
     private final ApplicationIdSelectorFactory appIdSelectorFactory;
+    private final LogicalFlowDao logicalFlowDao;
     private final LogicalFlowDecoratorDao logicalFlowDecoratorDao;
     private final LogicalFlowDecoratorRatingsCalculator ratingsCalculator;
 
 
     @Autowired
-    public AuthSourceRatingCalculator(DataTypeDao dataTypeDao,
+    public AuthSourceRatingCalculator(ApplicationDao applicationDao,
+                                      AuthoritativeSourceDao authoritativeSourceDao,
+                                      DataTypeDao dataTypeDao,
                                       ApplicationIdSelectorFactory appIdSelectorFactory,
+                                      LogicalFlowDao logicalFlowDao,
                                       LogicalFlowDecoratorRatingsCalculator ratingsCalculator,
                                       LogicalFlowDecoratorDao logicalFlowDecoratorDao) {
 
+        checkNotNull(applicationDao, "applicationDao cannot be null");
+        checkNotNull(authoritativeSourceDao, "authoritativeSourceDao cannot be null");
         checkNotNull(dataTypeDao, "dataTypeDao cannot be null");
         checkNotNull(appIdSelectorFactory, "appIdSelectorFactory cannot be null");
+        checkNotNull(logicalFlowDao, "logicalFlowDao cannot be null");
         checkNotNull(ratingsCalculator, "ratingsCalculator cannot be null");
         checkNotNull(logicalFlowDecoratorDao, "logicalFlowDecoratorDao cannot be null");
 
+        this.applicationDao = applicationDao;
+        this.authoritativeSourceDao = authoritativeSourceDao;
         this.dataTypeDao = dataTypeDao;
+        this.logicalFlowDao = logicalFlowDao;
         this.logicalFlowDecoratorDao = logicalFlowDecoratorDao;
         this.appIdSelectorFactory = appIdSelectorFactory;
         this.ratingsCalculator = ratingsCalculator;
     }
 
 
+    /**
+     * Recalculates the rating of every logical flow decorator in a single pass.
+     *
+     * One resolver is built covering the org units of all flow targets, new
+     * ratings are computed in memory (in parallel, grouped by the target's
+     * org unit) and only decorators whose rating has changed are written
+     * back, in a single transaction.
+     *
+     * Decorators which cannot be rated (non data type decorators, flows not
+     * between applications, removed flows) are given a rating of
+     * <code>NO_OPINION</code>.
+     *
+     * @return the number of decorators whose rating changed
+     */
+    public int recalculateAll() {
+        long start = System.currentTimeMillis();
+
+        Map<Long, Tuple3<Long, Long, Long>> appToAppFlowsById = indexBy(
+                t -> t.v1,
+                logicalFlowDao.findAppToAppFlowIds());
+
+        Map<Long, Long> orgUnitIdsByAppId = findOrgUnitIdsByAppId(appToAppFlowsById
+                .values()
+                .stream()
+                .map(t -> t.v3)
+                .collect(toList()));
+
+        Map<Long, String> dataTypeCodesById = indexBy(
+                dt -> dt.id().get(),
+                DataType::code,
+                dataTypeDao.findAll());
+
+        AuthoritativeSourceResolver resolver = new AuthoritativeSourceResolver(
+                findVantagePoints(new HashSet<>(orgUnitIdsByAppId.values())));
+
+        List<LogicalFlowDecorator> decorators = logicalFlowDecoratorDao.findAll();
+
+        List<LogicalFlowDecorator> changedDecorators = findChangedRatings(
+                decorators,
+                appToAppFlowsById,
+                orgUnitIdsByAppId,
+                dataTypeCodesById,
+                resolver);
+
+        logicalFlowDecoratorDao.updateRatings(changedDecorators);
+
+        LOG.info("Recalculated flow ratings, {} of {} decorators changed, took {}ms",
+                changedDecorators.size(),
+                decorators.size(),
+                System.currentTimeMillis() - start);
+
+        return changedDecorators.size();
+    }
+
+
     // use dataTypeId variant, want to move away from codes
     @Deprecated
     public int[] update(String dataTypeCode, EntityReference vantageRef) {
@@ -134,6 +213,93 @@ public class AuthSourceRatingCalculator {
     }
 
 
+    /**
+     * Rates each decorator against the authoritative sources of the org unit
+     * owning the target of its flow, returning copies (with the new rating)
+     * of just the decorators whose rating has changed.  Decorators of flows
+     * which are not between applications, or which are not data types, have
+     * no opinion.
+     *
+     * @param appToAppFlowsById  (flow id, source app id, target app id) by flow id
+     * @param orgUnitIdsByAppId  org unit of each target application
+     * @param dataTypeCodesById  data type codes by data type id
+     */
+    static List<LogicalFlowDecorator> findChangedRatings(Collection<LogicalFlowDecorator> decorators,
+                                                         Map<Long, Tuple3<Long, Long, Long>> appToAppFlowsById,
+                                                         Map<Long, Long> orgUnitIdsByAppId,
+                                                         Map<Long, String> dataTypeCodesById,
+                                                         AuthoritativeSourceResolver resolver) {
+        Map<Optional<Long>, List<LogicalFlowDecorator>> decoratorsByTargetOrgUnit = decorators
+                .stream()
+                .collect(groupingBy(d -> Optional
+                        .ofNullable(appToAppFlowsById.get(d.dataFlowId()))
+                        .map(flow -> orgUnitIdsByAppId.get(flow.v3))));
+
+        return decoratorsByTargetOrgUnit
+                .entrySet()
+                .parallelStream()
+                .flatMap(e -> e.getValue()
+                        .stream()
+                        .map(decorator -> {
+                            AuthoritativenessRating rating = e.getKey()
+                                    .map(orgUnitId -> calculateRating(
+                                            resolver,
+                                            orgUnitId,
+                                            appToAppFlowsById.get(decorator.dataFlowId()).v2,
+                                            dataTypeCodesById,
+                                            decorator))
+                                    .orElse(AuthoritativenessRating.NO_OPINION);
+
+                            return rating == decorator.rating()
+                                    ? null
+                                    : ImmutableLogicalFlowDecorator.copyOf(decorator).withRating(rating);
+                        })
+                        .filter(Objects::nonNull))
+                .collect(toList());
+    }
+
+
+    private static AuthoritativenessRating calculateRating(AuthoritativeSourceResolver resolver,
+                                                          long targetOrgUnitId,
+                                                          long sourceAppId,
+                                                          Map<Long, String> dataTypeCodesById,
+                                                          LogicalFlowDecorator decorator) {
+        if (decorator.decoratorEntity().kind() != EntityKind.DATA_TYPE) {
+            return AuthoritativenessRating.NO_OPINION;
+        }
+
+        String dataTypeCode = dataTypeCodesById.get(decorator.decoratorEntity().id());
+        if (dataTypeCode == null) {
+            return AuthoritativenessRating.NO_OPINION;
+        }
+
+        return resolver.resolve(
+                mkRef(EntityKind.ORG_UNIT, targetOrgUnitId),
+                mkRef(EntityKind.APPLICATION, sourceAppId),
+                dataTypeCode);
+    }
+
+
+    private Map<Long, Long> findOrgUnitIdsByAppId(List<Long> appIds) {
+        Map<Long, Long> orgUnitIdsByAppId = new HashMap<>();
+        for (List<Long> batch : partition(new ArrayList<>(new HashSet<>(appIds)), MAX_IDS_PER_QUERY)) {
+            for (Application app : applicationDao.findByIds(batch)) {
+                orgUnitIdsByAppId.put(app.id().get(), app.organisationalUnitId());
+            }
+        }
+        return orgUnitIdsByAppId;
+    }
+
+
+    private List<AuthoritativeRatingVantagePoint> findVantagePoints(Set<Long> orgUnitIds) {
+        List<AuthoritativeRatingVantagePoint> vantagePoints = new ArrayList<>();
+        for (List<Long> batch : partition(new ArrayList<>(orgUnitIds), MAX_IDS_PER_QUERY)) {
+            vantagePoints.addAll(authoritativeSourceDao.findAuthoritativeRatingVantagePoints(new HashSet<>(batch)));
+        }
+        return vantagePoints;
+    }
+
+
     private int[] updateDecorators(Set<LogicalFlowDecorator> decorators) {
         checkNotNull(decorators, "decorators cannot be null");
         if (decorators.isEmpty()) return new int[] {};
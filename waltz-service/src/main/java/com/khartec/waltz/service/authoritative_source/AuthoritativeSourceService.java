@@ -24,7 +24,6 @@ import com.khartec.waltz.data.GenericSelectorFactory;
 import com.khartec.waltz.data.application.ApplicationDao;
 import com.khartec.waltz.data.application.ApplicationIdSelectorFactory;
 import com.khartec.waltz.data.authoritative_source.AuthoritativeSourceDao;
-import com.khartec.waltz.data.data_flow_decorator.LogicalFlowDecoratorDao;
 import com.khartec.waltz.data.data_type.DataTypeDao;
 import com.khartec.waltz.data.data_type.DataTypeIdSelectorFactory;
 import com.khartec.waltz.data.orgunit.OrganisationalUnitDao;
@@ -40,7 +39,6 @@ import com.khartec.waltz.model.changelog.ChangeLog;
 import com.khartec.waltz.model.changelog.ImmutableChangeLog;
 import com.khartec.waltz.model.datatype.DataType;
 import com.khartec.waltz.model.orgunit.OrganisationalUnit;
-import com.khartec.waltz.model.rating.AuthoritativenessRating;
 import com.khartec.waltz.service.changelog.ChangeLogService;
 import org.jooq.Condition;
 import org.jooq.Record1;
@@ -78,7 +76,6 @@ public class AuthoritativeSourceService {
     private final OrganisationalUnitIdSelectorFactory organisationalUnitIdSelectorFactory;
     private final ChangeLogService changeLogService;
     private final ApplicationIdSelectorFactory applicationIdSelectorFactory;
-    private final LogicalFlowDecoratorDao logicalFlowDecoratorDao;
     private final GenericSelectorFactory genericSelectorFactory;
 
 
@@ -92,8 +89,7 @@ public class AuthoritativeSourceService {
                                       DataTypeIdSelectorFactory dataTypeIdSelectorFactory,
                                       GenericSelectorFactory genericSelectorFactory,
                                       OrganisationalUnitIdSelectorFactory organisationalUnitIdSelectorFactory,
-                                      ChangeLogService changeLogService, 
-                                      LogicalFlowDecoratorDao logicalFlowDecoratorDao) {
+                                      ChangeLogService changeLogService) {
         checkNotNull(authoritativeSourceDao, "authoritativeSourceDao must not be null");
         checkNotNull(dataTypeDao, "dataTypeDao cannot be null");
         checkNotNull(organisationalUnitDao, "organisationalUnitDao cannot be null");
@@ -104,7 +100,6 @@ public class AuthoritativeSourceService {
         checkNotNull(genericSelectorFactory, "genericSelectorFactory cannot be null");
         checkNotNull(organisationalUnitIdSelectorFactory, "organisationalUnitIdSelectorFactory cannot be null");
         checkNotNull(changeLogService, "changeLogService cannot be null");
-        checkNotNull(logicalFlowDecoratorDao, "logicalFlowDecoratorDao cannot be null");
 
         this.authoritativeSourceDao = authoritativeSourceDao;
         this.dataTypeDao = dataTypeDao;
@@ -116,7 +111,6 @@ public class AuthoritativeSourceService {
         this.genericSelectorFactory = genericSelectorFactory;
         this.organisationalUnitIdSelectorFactory = organisationalUnitIdSelectorFactory;
         this.changeLogService = changeLogService;
-        this.logicalFlowDecoratorDao = logicalFlowDecoratorDao;
     }
 
 
@@ -173,12 +167,7 @@ public class AuthoritativeSourceService {
 
 
     public boolean recalculateAllFlowRatings() {
-        logicalFlowDecoratorDao.updateRatingsByCondition(AuthoritativenessRating.NO_OPINION, DSL.trueCondition());
-        findAll()
-                .forEach(authSource -> ratingCalculator.update(
-                        authSource.dataType(),
-                        authSource.parentReference()));
-
+        ratingCalculator.recalculateAll();
         return true;
     }
 
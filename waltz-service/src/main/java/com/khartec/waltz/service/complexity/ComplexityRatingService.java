@@ -29,25 +29,39 @@ import com.khartec.waltz.model.complexity.ComplexityScore;
 import com.khartec.waltz.schema.tables.records.ComplexityScoreRecord;
 import org.jooq.Record1;
 import org.jooq.Select;
-import org.jooq.SelectJoinStep;
 import org.jooq.impl.DSL;
+import org.jooq.lambda.tuple.Tuple;
+import org.jooq.lambda.tuple.Tuple3;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.DateTimeUtilities.nowUtc;
 import static com.khartec.waltz.common.ListUtilities.map;
 import static com.khartec.waltz.schema.tables.Application.APPLICATION;
+import static org.jooq.lambda.Unchecked.supplier;
 
 
 @Service
 public class ComplexityRatingService {
 
     private static final Logger LOG = LoggerFactory.getLogger(ComplexityRatingService.class);
+    private static final int CHANGE_DETECTION_MARGIN_IN_MINUTES = 1;
+
+    // larger change sets are rebuilt in full, keeping the id lists bound into the queries within driver limits
+    private static final int MAX_CHANGED_APPS = 2000;
 
     private final ComplexityScoreDao complexityScoreDao;
     private final MeasurableComplexityService measurableComplexityService;
@@ -56,13 +70,21 @@ public class ComplexityRatingService {
 
     private final ApplicationIdSelectorFactory appIdSelectorFactory;
 
+    // one thread per kind of score, the shared db executor pool is not used as its
+    // task deadline (applied as a statement timeout) is sized for request work
+    private final ExecutorService rebuildExecutor = mkExecutorPool(3);
+    private final int fullRebuildIntervalInHours;
+
+    private volatile RebuildState lastRebuild = null;
+
 
     @Autowired
     public ComplexityRatingService(ComplexityScoreDao complexityScoreDao,
                                    MeasurableComplexityService measurableComplexityService,
                                    ConnectionComplexityService connectionComplexityService,
                                    ServerComplexityService serverComplexityService,
-                                   ApplicationIdSelectorFactory appIdSelectorFactory) {
+                                   ApplicationIdSelectorFactory appIdSelectorFactory,
+                                   @Value("${waltz.complexity.full.rebuild.interval:24}") int fullRebuildIntervalInHours) {
 
         checkNotNull(complexityScoreDao, "complexityScoreDao cannot be null");
         checkNotNull(measurableComplexityService, "measurableComplexityService cannot be null");
@@ -75,6 +97,7 @@ public class ComplexityRatingService {
         this.connectionComplexityService = connectionComplexityService;
         this.serverComplexityService = serverComplexityService;
         this.appIdSelectorFactory = appIdSelectorFactory;
+        this.fullRebuildIntervalInHours = fullRebuildIntervalInHours;
     }
 
 
@@ -98,32 +121,104 @@ public class ComplexityRatingService {
     }
 
 
-    public int rebuild() {
-
+    /**
+     * Recomputes the scores of every application.  The three kinds of score
+     * are computed concurrently and then reconciled against the stored
+     * scores in a single transaction, so the table is never empty part way
+     * through a rebuild.
+     * @return number of score rows inserted, updated or deleted
+     */
+    public synchronized int rebuild() {
         LOG.info("Rebuild complexity score table");
-        SelectJoinStep<Record1<Long>> appIdSelector = DSL.select(APPLICATION.ID).from(APPLICATION);
+        LocalDateTime startedAt = nowUtc();
+        Tuple3<Integer, Integer, Double> baselines = calculateBaselines();
+
+        int changes = rebuild(null, baselines);
+
+        lastRebuild = new RebuildState(startedAt, baselines, startedAt);
+        return changes;
+    }
+
 
-        List<ComplexityScore> connectionScores = connectionComplexityService.findByAppIdSelector(appIdSelector);
-        List<ComplexityScore> serverScores = serverComplexityService.findByAppIdSelector(appIdSelector);
-        List<ComplexityScore> measurableScores = measurableComplexityService.findByAppIdSelector(appIdSelector);
+    /**
+     * Recomputes scores only for applications whose flows, server usages or
+     * measurable ratings have changed since the previous rebuild.  As scores
+     * are relative to a baseline a full rebuild is performed instead if any
+     * baseline has moved, if there has been no rebuild since startup or if
+     * the last full rebuild is older than the configured interval.
+     * @return number of score rows inserted, updated or deleted
+     */
+    public synchronized int rebuildChanged() {
+        RebuildState previous = lastRebuild;
+        LocalDateTime startedAt = nowUtc();
+        Tuple3<Integer, Integer, Double> baselines = calculateBaselines();
+
+        boolean fullRebuildRequired = previous == null
+                || previous.requiresFullRebuild(baselines, startedAt, fullRebuildIntervalInHours);
+
+        if (fullRebuildRequired) {
+            return rebuild();
+        }
+
+        LOG.info("Rebuild complexity scores for applications changed since: {}", previous.startedAt);
+
+        // resolved once so the scores computed and the rows reconciled cover exactly the same applications,
+        // allowing for clock differences between application and database servers
+        Set<Long> changedAppIds = complexityScoreDao
+                .findChangedAppIds(previous.startedAt.minusMinutes(CHANGE_DETECTION_MARGIN_IN_MINUTES));
+
+        if (changedAppIds.size() > MAX_CHANGED_APPS) {
+            LOG.info("{} applications have changed, performing a full rebuild", changedAppIds.size());
+            return rebuild();
+        }
+
+        int changes = rebuild(changedAppIds, baselines);
+
+        lastRebuild = new RebuildState(startedAt, baselines, previous.lastFullRebuildAt);
+        return changes;
+    }
+
+
+    // -- HELPERS ---
+
+    /**
+     * @param appIds  applications to rebuild, null for all applications
+     */
+    private int rebuild(Set<Long> appIds,
+                        Tuple3<Integer, Integer, Double> baselines) {
+        Select<Record1<Long>> scopeSelector = appIds == null
+                ? DSL.select(APPLICATION.ID).from(APPLICATION)
+                : DSL.select(APPLICATION.ID).from(APPLICATION).where(APPLICATION.ID.in(appIds));
+
+        Future<List<ComplexityScore>> connectionScores = rebuildExecutor.submit(
+                () -> connectionComplexityService.findByAppIdSelector(scopeSelector, baselines.v1));
+        Future<List<ComplexityScore>> serverScores = rebuildExecutor.submit(
+                () -> serverComplexityService.findByAppIdSelector(scopeSelector, baselines.v2));
+        Future<List<ComplexityScore>> measurableScores = rebuildExecutor.submit(
+                () -> measurableComplexityService.findByAppIdSelector(scopeSelector, baselines.v3));
 
         List<ComplexityScoreRecord> records = ListUtilities.concat(
-                map(serverScores, r -> buildComplexityScoreRecord(r, ComplexityKind.SERVER)),
-                map(connectionScores, r -> buildComplexityScoreRecord(r, ComplexityKind.CONNECTION)),
-                map(measurableScores, r -> buildComplexityScoreRecord(r, ComplexityKind.MEASURABLE)));
+                map(supplier(serverScores::get).get(), r -> buildComplexityScoreRecord(r, ComplexityKind.SERVER)),
+                map(supplier(connectionScores::get).get(), r -> buildComplexityScoreRecord(r, ComplexityKind.CONNECTION)),
+                map(supplier(measurableScores::get).get(), r -> buildComplexityScoreRecord(r, ComplexityKind.MEASURABLE)));
+
+        LOG.info("Reconciling {} computed records with the complexity score table", records.size());
+        int changes = complexityScoreDao.replaceScores(appIds, records);
 
-        LOG.info("Scrubbing existing complexity score table");
-        complexityScoreDao.deleteAll();
+        LOG.info("Completed complexity score rebuild, {} rows changed", changes);
+        return changes;
+    }
 
-        LOG.info("Inserting {} new records into complexity score table", records.size());
-        int[] results = complexityScoreDao.bulkInsert(records);
 
-        LOG.info("Completed insertion of new records, results: {}", results.length);
-        return results.length;
+    private Tuple3<Integer, Integer, Double> calculateBaselines() {
+        return Tuple.tuple(
+                connectionComplexityService.calculateBaseline(),
+                serverComplexityService.calculateBaseline(),
+                measurableComplexityService.calculateBaseline());
     }
 
 
-    private static ComplexityScoreRecord buildComplexityScoreRecord(ComplexityScore r, ComplexityKind kind) {
+    static ComplexityScoreRecord buildComplexityScoreRecord(ComplexityScore r, ComplexityKind kind) {
         ComplexityScoreRecord record = new ComplexityScoreRecord();
         record.setEntityKind(EntityKind.APPLICATION.name());
         record.setEntityId(r.id());
@@ -131,4 +226,46 @@ public class ComplexityRatingService {
         record.setScore(BigDecimal.valueOf(r.score()));
         return record;
     }
+
+
+    static ExecutorService mkExecutorPool(int poolSize) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(
+                poolSize,
+                (runnable) -> {
+                    Thread t = new Thread(runnable, "WaltzComplexityRebuild-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+
+    static class RebuildState {
+
+        private final LocalDateTime startedAt;
+        private final Tuple3<Integer, Integer, Double> baselines;
+        private final LocalDateTime lastFullRebuildAt;
+
+
+        RebuildState(LocalDateTime startedAt,
+                     Tuple3<Integer, Integer, Double> baselines,
+                     LocalDateTime lastFullRebuildAt) {
+            this.startedAt = startedAt;
+            this.baselines = baselines;
+            this.lastFullRebuildAt = lastFullRebuildAt;
+        }
+
+
+        /**
+         * Scores are relative to the baselines, so any movement invalidates
+         * them all.  Otherwise a full rebuild is only due once the interval
+         * since the last one has passed.
+         */
+        boolean requiresFullRebuild(Tuple3<Integer, Integer, Double> currentBaselines,
+                                    LocalDateTime now,
+                                    int fullRebuildIntervalInHours) {
+            return ! baselines.equals(currentBaselines)
+                    || lastFullRebuildAt.isBefore(now.minusHours(fullRebuildIntervalInHours));
+        }
+    }
 }
@@ -52,8 +52,13 @@ public class ConnectionComplexityService {
      * @param idSelector
      * @return
      */
+    public int calculateBaseline() {
+        return connectionComplexityDao.calculateBaseline();
+    }
+
+
     public List<ComplexityScore> findByAppIdSelector(Select<Record1<Long>> idSelector) {
-        int baseline = connectionComplexityDao.calculateBaseline();
+        int baseline = calculateBaseline();
         return findByAppIdSelector(idSelector, baseline);
     }
 
@@ -47,8 +47,13 @@ public class MeasurableComplexityService {
     }
 
 
+    public double calculateBaseline() {
+        return measurableComplexityDao.calculateBaseline();
+    }
+
+
     public List<ComplexityScore> findByAppIdSelector(Select<Record1<Long>> idSelector) {
-        Double baseline = measurableComplexityDao.calculateBaseline();
+        double baseline = calculateBaseline();
         return findByAppIdSelector(idSelector, baseline);
     }
 
@@ -44,8 +44,13 @@ public class ServerComplexityService {
     }
 
 
+    public int calculateBaseline() {
+        return serverComplexityDao.calculateBaseline();
+    }
+
+
     public List<ComplexityScore> findByAppIdSelector(Select<Record1<Long>> idSelector) {
-        int baseline = serverComplexityDao.calculateBaseline();
+        int baseline = calculateBaseline();
         return findByAppIdSelector(idSelector, baseline);
 
     }
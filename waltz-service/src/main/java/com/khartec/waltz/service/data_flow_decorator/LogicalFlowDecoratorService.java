@@ -36,6 +36,7 @@ import com.khartec.waltz.model.data_flow_decorator.UpdateDataFlowDecoratorsActio
 import com.khartec.waltz.model.logical_flow.LogicalFlow;
 import com.khartec.waltz.model.rating.AuthoritativenessRating;
 import com.khartec.waltz.service.changelog.ChangeLogService;
+import com.khartec.waltz.service.logical_flow.LogicalFlowGraphService;
 import com.khartec.waltz.service.usage_info.DataTypeUsageService;
 import org.jooq.Record1;
 import org.jooq.Select;
@@ -66,6 +67,7 @@ public class LogicalFlowDecoratorService {
     private final DataTypeUsageService dataTypeUsageService;
     private final LogicalFlowDao logicalFlowDao;
     private final ChangeLogService changeLogService;
+    private final LogicalFlowGraphService logicalFlowGraphService;
 
 
     @Autowired
@@ -75,7 +77,8 @@ public class LogicalFlowDecoratorService {
                                        DataTypeIdSelectorFactory dataTypeIdSelectorFactory,
                                        DataTypeUsageService dataTypeUsageService,
                                        LogicalFlowDao logicalFlowDao,
-                                       ChangeLogService changeLogService) {
+                                       ChangeLogService changeLogService,
+                                       LogicalFlowGraphService logicalFlowGraphService) {
 
         checkNotNull(logicalFlowDecoratorDao, "logicalFlowDecoratorDao cannot be null");
         checkNotNull(applicationIdSelectorFactory, "applicationIdSelectorFactory cannot be null");
@@ -84,6 +87,7 @@ public class LogicalFlowDecoratorService {
         checkNotNull(dataTypeUsageService, "dataTypeUsageService cannot be null");
         checkNotNull(logicalFlowDao, "logicalFlowDao cannot be null");
         checkNotNull(changeLogService, "changeLogService cannot be null");
+        checkNotNull(logicalFlowGraphService, "logicalFlowGraphService cannot be null");
 
         this.logicalFlowDecoratorDao = logicalFlowDecoratorDao;
         this.ratingsCalculator = ratingsCalculator;
@@ -92,6 +96,7 @@ public class LogicalFlowDecoratorService {
         this.dataTypeUsageService = dataTypeUsageService;
         this.logicalFlowDao = logicalFlowDao;
         this.changeLogService = changeLogService;
+        this.logicalFlowGraphService = logicalFlowGraphService;
     }
 
 
@@ -164,7 +169,11 @@ public class LogicalFlowDecoratorService {
     @Deprecated
     // Replace with a method that delete for a single flow id
     public int deleteAllDecoratorsForFlowIds(List<Long> flowIds) {
-        return logicalFlowDecoratorDao.removeAllDecoratorsForFlowIds(flowIds);
+        int removed = logicalFlowDecoratorDao.removeAllDecoratorsForFlowIds(flowIds);
+        if (removed > 0) {
+            logicalFlowGraphService.rebuild();
+        }
+        return removed;
     }
 
 
@@ -174,7 +183,8 @@ public class LogicalFlowDecoratorService {
         checkNotNull(decoratorReferences, "decoratorReferences cannot be null");
         LogicalFlow flow = logicalFlowDao.getByFlowId(flowId);
         int[] deleted = logicalFlowDecoratorDao.deleteDecorators(flowId, decoratorReferences);
-        dataTypeUsageService.recalculateForApplications(newArrayList(flow.source(), flow.target()));
+        logicalFlowGraphService.onDataTypesRemoved(flowId, toDataTypeIds(decoratorReferences));
+        dataTypeUsageService.enqueueRecalculation(newArrayList(flow.source(), flow.target()));
         audit("Removed", decoratorReferences, flow, username);
         return deleted;
     }
@@ -206,7 +216,8 @@ public class LogicalFlowDecoratorService {
                 : unrated;
 
         int[] added = logicalFlowDecoratorDao.addDecorators(decorators);
-        dataTypeUsageService.recalculateForApplications(newArrayList(flow.source(), flow.target()));
+        logicalFlowGraphService.onDataTypesAdded(flowId, toDataTypeIds(decoratorReferences));
+        dataTypeUsageService.enqueueRecalculation(newArrayList(flow.source(), flow.target()));
         audit("Added", decoratorReferences, flow, username);
 
         return added;
@@ -235,17 +246,33 @@ public class LogicalFlowDecoratorService {
                 )
                 .collect(Collectors.toList());
 
-        Collection decorators = ratingsCalculator.calculate(unrated);
-        int[] added = logicalFlowDecoratorDao.addDecorators(decorators);
-
         List<LogicalFlow> effectedFlows = logicalFlowDao.findByFlowIds(map(actions, a -> a.flowId()));
 
+        // only app to app flows can be rated, the calculator discards anything else
+        Set<Long> appToAppFlowIds = effectedFlows
+                .stream()
+                .filter(f -> f.source().kind() == APPLICATION && f.target().kind() == APPLICATION)
+                .map(f -> f.id().get())
+                .collect(Collectors.toSet());
+
+        Map<Boolean, List<LogicalFlowDecorator>> unratedByRequiresRating = unrated
+                .stream()
+                .collect(Collectors.partitioningBy(d -> appToAppFlowIds.contains(d.dataFlowId())));
+
+        List<LogicalFlowDecorator> decorators = new ArrayList<>(unratedByRequiresRating.get(false));
+        decorators.addAll(ratingsCalculator.calculate(unratedByRequiresRating.get(true)));
+
+        int[] added = logicalFlowDecoratorDao.addDecorators(decorators);
+        actions.forEach(a -> logicalFlowGraphService.onDataTypesAdded(
+                a.flowId(),
+                toDataTypeIds(a.addedDecorators())));
+
         List<EntityReference> effectedEntities = effectedFlows
                 .stream()
                 .flatMap(f -> Stream.of(f.source(), f.target()))
                 .collect(Collectors.toList());
 
-        dataTypeUsageService.recalculateForApplications(effectedEntities);
+        dataTypeUsageService.enqueueRecalculation(effectedEntities);
         bulkAudit(actions, username, effectedFlows);
 
         return added;
@@ -296,6 +323,15 @@ public class LogicalFlowDecoratorService {
     }
 
 
+    private static List<Long> toDataTypeIds(Collection<EntityReference> decoratorReferences) {
+        return decoratorReferences
+                .stream()
+                .filter(ref -> ref.kind() == DATA_TYPE)
+                .map(EntityReference::id)
+                .collect(Collectors.toList());
+    }
+
+
     private void audit(String verb,
                        Collection<EntityReference> decorators,
                        LogicalFlow flow,
@@ -0,0 +1,326 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.khartec.waltz.service.email;
+
+import com.khartec.waltz.common.SetUtilities;
+import com.khartec.waltz.data.email.EmailOutboxDao;
+import com.khartec.waltz.model.email.EmailMessage;
+import com.khartec.waltz.model.email.EmailOutboxEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.khartec.waltz.common.Checks.*;
+import static com.khartec.waltz.common.DateTimeUtilities.nowUtc;
+import static com.khartec.waltz.common.ListUtilities.map;
+import static com.khartec.waltz.common.ListUtilities.partition;
+import static com.khartec.waltz.common.MapUtilities.indexBy;
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.toList;
+import static org.jooq.lambda.tuple.Tuple.tuple;
+
+
+/**
+ * Sends emails via a durable outbox.  Callers enqueue messages and return
+ * straight away, a scheduled worker claims due entries and hands them to a
+ * small pool which sends them, one email (bcc'ing up to a batch of
+ * recipients) at a time subject to a rate limit.  Failed sends are retried
+ * with exponential backoff until the attempts are exhausted.
+ */
+@Service
+public class EmailOutboxService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EmailOutboxService.class);
+    private static final int MAX_BATCHES_IN_FLIGHT = 20;
+    private static final long CLEANUP_INTERVAL_IN_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final EmailOutboxDao emailOutboxDao;
+    private final WaltzEmailer waltzEmailer;
+    private final ExecutorService senderExecutor;
+    private final int batchSize;
+    private final long sendIntervalInMillis;
+    private final int maxAttempts;
+    private final int retryBackoffInSeconds;
+    private final int dedupeWindowInHours;
+    private final int staleClaimInMinutes;
+    private final int retentionInDays;
+
+    private final AtomicLong nextSendAt = new AtomicLong();
+    private final AtomicInteger batchesInFlight = new AtomicInteger();
+    private volatile long lastCleanupAt = 0;
+
+
+    @Autowired
+    public EmailOutboxService(EmailOutboxDao emailOutboxDao,
+                              WaltzEmailer waltzEmailer,
+                              @Value("${waltz.email.batchSize:50}") int batchSize,
+                              @Value("${waltz.email.outbox.threads:2}") int senderThreads,
+                              @Value("${waltz.email.outbox.rate:60}") int sendsPerMinute,
+                              @Value("${waltz.email.outbox.max.attempts:5}") int maxAttempts,
+                              @Value("${waltz.email.outbox.retry.backoff:60}") int retryBackoffInSeconds,
+                              @Value("${waltz.email.outbox.dedupe.window:24}") int dedupeWindowInHours,
+                              @Value("${waltz.email.outbox.stale:15}") int staleClaimInMinutes,
+                              @Value("${waltz.email.outbox.retention:30}") int retentionInDays) {
+        checkNotNull(emailOutboxDao, "emailOutboxDao cannot be null");
+        checkNotNull(waltzEmailer, "waltzEmailer cannot be null");
+        checkTrue(batchSize > 0, "batchSize must be positive");
+        checkTrue(senderThreads > 0, "senderThreads must be positive");
+        checkTrue(sendsPerMinute >= 0, "sendsPerMinute cannot be negative");
+        checkTrue(maxAttempts > 0, "maxAttempts must be positive");
+        checkTrue(retryBackoffInSeconds > 0, "retryBackoffInSeconds must be positive");
+        checkTrue(dedupeWindowInHours >= 0, "dedupeWindowInHours cannot be negative");
+        checkTrue(staleClaimInMinutes > 0, "staleClaimInMinutes must be positive");
+        checkTrue(retentionInDays > 0, "retentionInDays must be positive");
+
+        this.emailOutboxDao = emailOutboxDao;
+        this.waltzEmailer = waltzEmailer;
+        this.senderExecutor = mkExecutorPool(senderThreads);
+        this.batchSize = batchSize;
+        this.sendIntervalInMillis = sendsPerMinute == 0
+                ? 0
+                : TimeUnit.MINUTES.toMillis(1) / sendsPerMinute;
+        this.maxAttempts = maxAttempts;
+        this.retryBackoffInSeconds = retryBackoffInSeconds;
+        this.dedupeWindowInHours = dedupeWindowInHours;
+        this.staleClaimInMinutes = staleClaimInMinutes;
+        this.retentionInDays = retentionInDays;
+    }
+
+
+    /**
+     * Queues the email for each recipient.  Recipients who are still waiting
+     * for an identical email, queued within the dedupe window, are skipped.
+     * @return number of recipients queued
+     */
+    public int enqueue(String subject, String body, Collection<String> recipients) {
+        checkNotEmpty(subject, "subject cannot be empty");
+        checkNotEmpty(body, "body cannot be empty");
+        checkNotNull(recipients, "recipients cannot be null");
+
+        if (recipients.isEmpty()) {
+            return 0;
+        }
+
+        int queued = emailOutboxDao.enqueue(
+                subject,
+                body,
+                mkContentHash(subject, body),
+                recipients,
+                nowUtc().minusHours(dedupeWindowInHours));
+
+        LOG.info("Queued email: {} for {} of {} recipients", subject, queued, recipients.size());
+        return queued;
+    }
+
+
+    /**
+     * Claims due entries and hands them to the sender pool without waiting
+     * for them to be sent.  Only enough entries to top up the batches already
+     * in flight are claimed, so claims do not sit in the pool long enough to
+     * be released as stale.
+     */
+    @Scheduled(
+            initialDelayString = "${waltz.email.outbox.interval:10000}",
+            fixedDelayString = "${waltz.email.outbox.interval:10000}")
+    public void sendQueued() {
+        try {
+            removeCompleted();
+            emailOutboxDao.releaseStaleClaims(nowUtc().minusMinutes(staleClaimInMinutes));
+
+            int batchesAvailable = MAX_BATCHES_IN_FLIGHT - batchesInFlight.get();
+            if (batchesAvailable <= 0) {
+                return;
+            }
+
+            List<EmailOutboxEntry> claimed = emailOutboxDao.claimDue(
+                    UUID.randomUUID().toString(),
+                    batchSize * batchesAvailable);
+
+            if (claimed.isEmpty()) {
+                return;
+            }
+
+            Map<Long, EmailMessage> messagesById = indexBy(
+                    EmailMessage::id,
+                    emailOutboxDao.findMessagesByIds(SetUtilities.map(claimed, EmailOutboxEntry::messageId)));
+
+            mkBatches(claimed, batchSize)
+                    .forEach(batch -> submit(messagesById.get(batch.get(0).messageId()), batch));
+        } catch (Exception e) {
+            LOG.error("Failed to send queued emails, will retry on next pass", e);
+        }
+    }
+
+
+    // -- HELPERS ---
+
+    private void submit(EmailMessage message, List<EmailOutboxEntry> batch) {
+        batchesInFlight.incrementAndGet();
+        try {
+            senderExecutor.submit(() -> {
+                try {
+                    send(message, batch);
+                } finally {
+                    batchesInFlight.decrementAndGet();
+                }
+            });
+        } catch (RuntimeException e) {
+            batchesInFlight.decrementAndGet();
+            throw e;
+        }
+    }
+
+
+    /**
+     * Sends one email to the batch of recipients and records the outcome
+     * @return true if the email was sent
+     */
+    private boolean send(EmailMessage message, List<EmailOutboxEntry> batch) {
+        List<Long> entryIds = map(batch, EmailOutboxEntry::id);
+        try {
+            awaitSendSlot();
+            String[] to = batch
+                    .stream()
+                    .map(EmailOutboxEntry::recipient)
+                    .toArray(String[]::new);
+
+            waltzEmailer.sendEmail(message.subject(), message.body(), to);
+            emailOutboxDao.markSent(entryIds);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            emailOutboxDao.markForRetry(entryIds, "interrupted before sending", nowUtc());
+            return false;
+        } catch (Exception e) {
+            int attempts = batch.get(0).attempts() + 1;
+            String error = String.valueOf(e.getMessage());
+            if (attempts >= maxAttempts) {
+                LOG.error("Giving up on email: {} to {} recipients after {} attempts", message.subject(), batch.size(), attempts, e);
+                emailOutboxDao.markFailed(entryIds, error);
+            } else {
+                LocalDateTime nextAttemptAt = nowUtc().plusSeconds(mkRetryDelayInSeconds(retryBackoffInSeconds, attempts));
+                LOG.warn("Failed to send email: {} to {} recipients, will retry at {}", message.subject(), batch.size(), nextAttemptAt, e);
+                emailOutboxDao.markForRetry(entryIds, error, nextAttemptAt);
+            }
+            return false;
+        }
+    }
+
+
+    /**
+     * Spaces sends (across all sender threads) so the rate limit is not exceeded
+     */
+    private void awaitSendSlot() throws InterruptedException {
+        if (sendIntervalInMillis == 0) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        long slot = Math.max(
+                now,
+                nextSendAt.getAndAccumulate(now, (next, n) -> Math.max(next, n) + sendIntervalInMillis));
+
+        if (slot > now) {
+            Thread.sleep(slot - now);
+        }
+    }
+
+
+    private void removeCompleted() {
+        long now = System.currentTimeMillis();
+        if (now - lastCleanupAt < CLEANUP_INTERVAL_IN_MILLIS) {
+            return;
+        }
+
+        int removed = emailOutboxDao.removeCompleted(nowUtc().minusDays(retentionInDays));
+        if (removed > 0) {
+            LOG.info("Removed {} sent or failed email outbox entries", removed);
+        }
+        lastCleanupAt = now;
+    }
+
+
+    /**
+     * Entries in a batch share a message and attempt count, so they can be
+     * sent in one email and retried together
+     */
+    static List<List<EmailOutboxEntry>> mkBatches(Collection<EmailOutboxEntry> claimed, int batchSize) {
+        return claimed
+                .stream()
+                .collect(groupingBy(e -> tuple(e.messageId(), e.attempts())))
+                .values()
+                .stream()
+                .flatMap(entries -> partition(entries, batchSize).stream())
+                .collect(toList());
+    }
+
+
+    /**
+     * Doubles the backoff for each failed attempt
+     */
+    static long mkRetryDelayInSeconds(int retryBackoffInSeconds, int attempts) {
+        return (long) retryBackoffInSeconds << (attempts - 1);
+    }
+
+
+    static String mkContentHash(String subject, String body) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            sha.update(subject.getBytes(StandardCharsets.UTF_8));
+            sha.update((byte) 0);
+            sha.update(body.getBytes(StandardCharsets.UTF_8));
+
+            StringBuilder hex = new StringBuilder();
+            for (byte b : sha.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+
+    private static ExecutorService mkExecutorPool(int poolSize) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(
+                poolSize,
+                (runnable) -> {
+                    Thread t = new Thread(runnable, "WaltzEmailSender-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+}
@@ -38,7 +38,6 @@ import java.util.Collection;
 import java.util.List;
 
 import static com.khartec.waltz.common.Checks.checkNotNull;
-import static com.khartec.waltz.common.StreamUtilities.batchProcessingCollector;
 import static java.util.stream.Collectors.toList;
 
 
@@ -48,29 +47,26 @@ public class EmailService {
     private static final Logger LOG = LoggerFactory.getLogger(EmailService.class);
     private static final String MAIL_NEW_LINE = "<br/>";
 
-    private final WaltzEmailer waltzEmailer;
+    private final EmailOutboxService emailOutboxService;
     private final AttestationRunDao attestationRunDao;
     private final AttestationInstanceDao attestationInstanceDao;
     private final AttestationInstanceRecipientDao attestationInstanceRecipientDao;
 
-    @Value("${waltz.email.batchSize:50}")
-    private int batchSize;
-
     @Value("${waltz.base.url}")
     private String baseUrl;
 
 
     @Autowired
-    public EmailService(WaltzEmailer waltzEmailer,
+    public EmailService(EmailOutboxService emailOutboxService,
                         AttestationRunDao attestationRunDao,
                         AttestationInstanceDao attestationInstanceDao,
                         AttestationInstanceRecipientDao attestationInstanceRecipientDao) {
-        checkNotNull(waltzEmailer, "waltzEmailer cannot be null");
+        checkNotNull(emailOutboxService, "emailOutboxService cannot be null");
         checkNotNull(attestationRunDao, "attestationRunDao cannot be null");
         checkNotNull(attestationInstanceDao, "attestationInstanceDao cannot be null");
         checkNotNull(attestationInstanceRecipientDao, "attestationInstanceRecipientDao cannot be null");
 
-        this.waltzEmailer = waltzEmailer;
+        this.emailOutboxService = emailOutboxService;
         this.attestationRunDao = attestationRunDao;
         this.attestationInstanceDao = attestationInstanceDao;
         this.attestationInstanceRecipientDao = attestationInstanceRecipientDao;
@@ -134,11 +130,8 @@ public class EmailService {
 
 
     private void sendEmailNotification(String subject, String body, Collection<String> recipients) {
-        int count = recipients.stream().collect(batchProcessingCollector(batchSize, batch -> {
-            String[] to = batch.toArray(new String[0]);
-            waltzEmailer.sendEmail(subject, body, to);
-        }));
-        LOG.info(String.format("Sent email notification: %s to %s users", subject, count));
+        int count = emailOutboxService.enqueue(subject, body, recipients);
+        LOG.info(String.format("Queued email notification: %s to %s users", subject, count));
     }
 
 }
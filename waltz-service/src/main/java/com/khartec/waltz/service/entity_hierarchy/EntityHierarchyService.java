@@ -40,6 +40,8 @@ import com.khartec.waltz.model.tally.Tally;
 import com.khartec.waltz.schema.Tables;
 import com.khartec.waltz.service.person_hierarchy.PersonHierarchyService;
 import org.jooq.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -49,11 +51,20 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.SetUtilities.*;
 import static com.khartec.waltz.model.EntityKind.PERSON;
 
 @Service
 public class EntityHierarchyService {
 
+    private static final Logger LOG = LoggerFactory.getLogger(EntityHierarchyService.class);
+
+    /**
+     * If more than this proportion of nodes are affected by a change
+     * an incremental rebuild is abandoned in favour of a full rebuild
+     */
+    private static final double INCREMENTAL_REBUILD_THRESHOLD = 0.25;
+
     private final DSLContext dsl;
     private final ChangeInitiativeDao changeInitiativeDao;
     private final DataTypeDao dataTypeDao;
@@ -150,9 +161,68 @@ public class EntityHierarchyService {
     }
 
 
+    /**
+     * Incrementally updates the hierarchy for the given kind.  Only the closure
+     * rows for the subtrees rooted at the changed nodes are recomputed, these are
+     * compared with the stored rows and only the differences are written.
+     *
+     * Falls back to a full rebuild if a cycle is detected or if the affected
+     * subtrees make up a large proportion of the hierarchy.
+     *
+     * @param kind  the hierarchy to update
+     * @param changedIds  ids of nodes which have been added, removed or whose parent has changed
+     * @return  number of hierarchy rows removed or added
+     */
+    public int buildForChanged(EntityKind kind, Set<Long> changedIds) {
+        checkNotNull(kind, "kind cannot be null");
+        checkNotNull(changedIds, "changedIds cannot be null");
+
+        if (kind == PERSON) {
+            // people are keyed by employee id, changes are detected from their managers instead
+            return personHierarchyService.buildChanged();
+        }
+
+        Table table = determineTableToRebuild(kind);
+        Forest<Long, Long> forest = HierarchyUtilities.toForest(fetchFlatNodes(table));
+
+        if (HierarchyUtilities.hasCycle(forest)) {
+            LOG.warn("Cycle detected in hierarchy for kind: {}, performing full rebuild", kind);
+            return replaceHierarchy(kind, forest);
+        }
+
+        Set<Node<Long, Long>> affectedNodes = findAffectedNodes(forest, changedIds);
+        int nodeCount = forest.getAllNodes().size();
+
+        if (affectedNodes.size() > nodeCount * INCREMENTAL_REBUILD_THRESHOLD) {
+            LOG.info("Bulk change detected in hierarchy for kind: {} ({} of {} nodes), performing full rebuild",
+                    kind,
+                    affectedNodes.size(),
+                    nodeCount);
+            return replaceHierarchy(kind, forest);
+        }
+
+        // changed ids which are no longer in the forest have been removed, their rows are dropped
+        Set<Long> affectedIds = union(map(affectedNodes, Node::getId), changedIds);
+
+        Set<EntityHierarchyItem> requiredItems = fromCollection(mkHierarchyItems(kind, forest, affectedNodes));
+
+        Set<EntityHierarchyItem> existingItems = fromCollection(entityHierarchyDao.findByKindAndIds(kind, affectedIds));
+
+        return entityHierarchyDao.applyChanges(
+                kind,
+                minus(existingItems, requiredItems),
+                minus(requiredItems, existingItems));
+    }
+
+
     private int buildFor(Table table, EntityKind kind) {
-        Collection<FlatNode<Long, Long>> flatNodes = fetchFlatNodes(table);
-        List<EntityHierarchyItem> hierarchyItems = convertFlatNodesToHierarchyItems(kind, flatNodes);
+        Forest<Long, Long> forest = HierarchyUtilities.toForest(fetchFlatNodes(table));
+        return replaceHierarchy(kind, forest);
+    }
+
+
+    private int replaceHierarchy(EntityKind kind, Forest<Long, Long> forest) {
+        List<EntityHierarchyItem> hierarchyItems = convertForestToHierarchyItems(kind, forest);
 
         return entityHierarchyDao.replaceHierarchy(kind, hierarchyItems);
     }
@@ -174,27 +244,53 @@ public class EntityHierarchyService {
     }
 
 
-    private List<EntityHierarchyItem> convertFlatNodesToHierarchyItems(EntityKind kind, Collection<FlatNode<Long, Long>> flatNodes) {
-        Forest<Long, Long> forest = HierarchyUtilities.toForest(flatNodes);
-        Node<Long, Long> r = forest.getAllNodes().get(811L);
+    private List<EntityHierarchyItem> convertForestToHierarchyItems(EntityKind kind, Forest<Long, Long> forest) {
+        return mkHierarchyItems(kind, forest, forest.getAllNodes().values());
+    }
+
+
+    /**
+     * @return the changed nodes (ignoring any no longer in the forest) and all their descendants
+     */
+    static Set<Node<Long, Long>> findAffectedNodes(Forest<Long, Long> forest, Set<Long> changedIds) {
+        Map<Long, Node<Long, Long>> allNodes = forest.getAllNodes();
+
+        Set<Node<Long, Long>> affectedNodes = new HashSet<>();
+        changedIds
+                .stream()
+                .map(allNodes::get)
+                .filter(Objects::nonNull)
+                .forEach(n -> {
+                    affectedNodes.add(n);
+                    affectedNodes.addAll(HierarchyUtilities.descendants(n));
+                });
+        return affectedNodes;
+    }
+
+
+    /**
+     * @return the closure rows (self and one per ancestor) for each of the given nodes of the forest
+     */
+    static List<EntityHierarchyItem> mkHierarchyItems(EntityKind kind,
+                                                      Forest<Long, Long> forest,
+                                                      Collection<Node<Long, Long>> nodes) {
         Map<Long, Integer> idToLevel = HierarchyUtilities.assignDepths(forest);
 
-        return forest.getAllNodes()
-                .values()
+        return nodes
                 .stream()
                 .flatMap(streamItemsForNode(kind, idToLevel))
                 .collect(Collectors.toList());
     }
 
 
-    private Function<Node<Long, Long>, Stream<? extends EntityHierarchyItem>> streamItemsForNode(EntityKind kind, Map<Long, Integer> idToLevel) {
+    private static Function<Node<Long, Long>, Stream<? extends EntityHierarchyItem>> streamItemsForNode(EntityKind kind, Map<Long, Integer> idToLevel) {
         return node -> Stream.concat(
                 streamAncestors(kind, idToLevel, node),
                 streamSelf(kind, idToLevel, node));
     }
 
 
-    private Stream<EntityHierarchyItem> streamSelf(EntityKind kind, Map<Long, Integer> idToLevel, Node<Long, Long> node) {
+    private static Stream<EntityHierarchyItem> streamSelf(EntityKind kind, Map<Long, Integer> idToLevel, Node<Long, Long> node) {
         Long nodeId = node.getId();
         Integer level = idToLevel.get(nodeId);
         ImmutableEntityHierarchyItem selfAsEntityHierarchyItem = ImmutableEntityHierarchyItem.builder()
@@ -207,7 +303,7 @@ public class EntityHierarchyService {
     }
 
 
-    private Stream<EntityHierarchyItem> streamAncestors(EntityKind kind, Map<Long, Integer> idToLevel, Node<Long, Long> node) {
+    private static Stream<EntityHierarchyItem> streamAncestors(EntityKind kind, Map<Long, Integer> idToLevel, Node<Long, Long> node) {
         return HierarchyUtilities.parents(node)
             .stream()
             .map(p -> ImmutableEntityHierarchyItem.builder()
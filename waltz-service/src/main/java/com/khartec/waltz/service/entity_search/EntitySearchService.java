@@ -20,6 +20,8 @@
 package com.khartec.waltz.service.entity_search;
 
 import com.khartec.waltz.data.DBExecutorPoolInterface;
+import com.khartec.waltz.data.entity_search.EntitySearchIndex;
+import com.khartec.waltz.data.entity_search.EntitySearchIndexDao;
 import com.khartec.waltz.model.EntityKind;
 import com.khartec.waltz.model.EntityReference;
 import com.khartec.waltz.model.WaltzEntity;
@@ -36,13 +38,18 @@ import com.khartec.waltz.service.person.PersonService;
 import com.khartec.waltz.service.physical_specification.PhysicalSpecificationService;
 import com.khartec.waltz.service.roadmap.RoadmapService;
 import com.khartec.waltz.service.server_information.ServerInformationService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.util.Collection;
+import java.util.EnumMap;
 import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.Future;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
 
 import static com.khartec.waltz.common.Checks.checkNotNull;
 import static java.util.stream.Collectors.toList;
@@ -51,7 +58,14 @@ import static org.jooq.lambda.Unchecked.supplier;
 @Service
 public class EntitySearchService {
 
+    private static final Logger LOG = LoggerFactory.getLogger(EntitySearchService.class);
+
     private final DBExecutorPoolInterface dbExecutorPool;
+    private final EntitySearchIndex entitySearchIndex;
+    private final EntitySearchIndexDao entitySearchIndexDao;
+    private final Map<EntityKind, Object> indexRebuildLocks = new EnumMap<>(EntityKind.class);
+    private final Set<EntityKind> pendingIndexRebuilds = ConcurrentHashMap.newKeySet();
+    private final ExecutorService indexRebuildExecutor = mkIndexRebuildExecutor();
     private final ActorService actorService;
     private final ApplicationService applicationService;
     private final AppGroupService appGroupService;
@@ -68,6 +82,8 @@ public class EntitySearchService {
 
     @Autowired
     public EntitySearchService(DBExecutorPoolInterface dbExecutorPool,
+                               EntitySearchIndex entitySearchIndex,
+                               EntitySearchIndexDao entitySearchIndexDao,
                                ActorService actorService,
                                ApplicationService applicationService,
                                AppGroupService appGroupService,
@@ -81,6 +97,8 @@ public class EntitySearchService {
                                RoadmapService roadmapService,
                                ServerInformationService serverInformationService) {
         checkNotNull(dbExecutorPool, "dbExecutorPool cannot be null");
+        checkNotNull(entitySearchIndex, "entitySearchIndex cannot be null");
+        checkNotNull(entitySearchIndexDao, "entitySearchIndexDao cannot be null");
         checkNotNull(actorService, "actorService cannot be null");
         checkNotNull(applicationService, "applicationService cannot be null");
         checkNotNull(appGroupService, "appGroupService cannot be null");
@@ -96,6 +114,8 @@ public class EntitySearchService {
 
         this.actorService = actorService;
         this.dbExecutorPool = dbExecutorPool;
+        this.entitySearchIndex = entitySearchIndex;
+        this.entitySearchIndexDao = entitySearchIndexDao;
         this.applicationService = applicationService;
         this.appGroupService = appGroupService;
         this.changeInitiativeService = changeInitiativeService;
@@ -107,6 +127,8 @@ public class EntitySearchService {
         this.physicalSpecificationService = physicalSpecificationService;
         this.roadmapService = roadmapService;
         this.serverInformationService = serverInformationService;
+
+        EntitySearchIndexDao.INDEXED_KINDS.forEach(k -> indexRebuildLocks.put(k, new Object()));
     }
 
 
@@ -114,12 +136,114 @@ public class EntitySearchService {
         checkNotNull(query, "query cannot be null");
         checkNotNull(options, "options cannot be null");
 
-        List<Future<Collection<? extends WaltzEntity>>> futures = options.entityKinds().stream()
-                .map(ek -> dbExecutorPool.submit(mkCallable(ek, query, options)))
+        List<Future<List<EntityReference>>> futures = options.entityKinds().stream()
+                .map(ek -> submitSearch(ek, query, options))
                 .collect(toList());
 
         return futures.stream()
                 .flatMap(f -> supplier(f::get).get().stream())
+                .collect(toList());
+    }
+
+
+    /**
+     * Periodically rebuilds the whole in-memory search index (the first run
+     * happens at startup).  This picks up changes made directly in the
+     * database by external loaders, changes made via Waltz are picked up
+     * straight away as the affected kinds are marked as stale.
+     */
+    @Scheduled(fixedDelayString = "${database.search.index.rebuild.interval:3600000}")
+    public void rebuildSearchIndex() {
+        if (! entitySearchIndex.isEnabled()) {
+            return;
+        }
+
+        EntitySearchIndexDao.INDEXED_KINDS.forEach(kind -> {
+            try {
+                rebuildSearchIndex(kind);
+            } catch (Exception e) {
+                LOG.error("Failed to rebuild search index for kind: " + kind, e);
+            }
+        });
+    }
+
+
+    // -- HELPERS ---
+
+    /**
+     * Searches the index if the kind is indexed and up to date.  Kinds which
+     * are stale (or not yet loaded) are searched in the database whilst the
+     * index for the kind is rebuilt in the background, so a search request
+     * never waits on a rebuild.
+     */
+    private Future<List<EntityReference>> submitSearch(EntityKind kind,
+                                                       String query,
+                                                       EntitySearchOptions options) {
+        if (isIndexed(kind)) {
+            if (! entitySearchIndex.needsRebuild(kind)) {
+                return CompletableFuture.completedFuture(entitySearchIndex.search(kind, query, options));
+            }
+            requestIndexRebuild(kind);
+        }
+        return dbExecutorPool.submit(mkDatabaseCallable(kind, query, options));
+    }
+
+
+    private boolean isIndexed(EntityKind kind) {
+        return entitySearchIndex.isEnabled()
+                && EntitySearchIndexDao.INDEXED_KINDS.contains(kind);
+    }
+
+
+    private void requestIndexRebuild(EntityKind kind) {
+        // at most one outstanding rebuild per kind, any write made whilst it
+        // runs marks the kind as stale again and is picked up by a later request
+        if (! pendingIndexRebuilds.add(kind)) {
+            return;
+        }
+
+        try {
+            indexRebuildExecutor.execute(() -> {
+                try {
+                    rebuildSearchIndex(kind);
+                } catch (Exception e) {
+                    LOG.error("Failed to rebuild search index for kind: " + kind, e);
+                } finally {
+                    pendingIndexRebuilds.remove(kind);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pendingIndexRebuilds.remove(kind);
+            LOG.warn("Could not schedule search index rebuild for kind: {}", kind);
+        }
+    }
+
+
+    private void rebuildSearchIndex(EntityKind kind) {
+        synchronized (indexRebuildLocks.get(kind)) {
+            long start = System.currentTimeMillis();
+            entitySearchIndex.beginRebuild(kind);
+            try {
+                entitySearchIndex.replace(kind, entitySearchIndexDao.findDocuments(kind));
+            } catch (RuntimeException e) {
+                entitySearchIndex.markStale(kind);
+                throw e;
+            }
+            LOG.info("Indexed {} entities of kind: {} in {}ms",
+                    entitySearchIndex.size(kind),
+                    kind,
+                    System.currentTimeMillis() - start);
+        }
+    }
+
+
+    private Callable<List<EntityReference>> mkDatabaseCallable(EntityKind entityKind,
+                                                               String query,
+                                                               EntitySearchOptions options) {
+        Callable<Collection<? extends WaltzEntity>> callable = mkCallable(entityKind, query, options);
+        return () -> callable
+                .call()
+                .stream()
                 .map(WaltzEntity::entityReference)
                 .collect(toList());
     }
@@ -157,4 +281,14 @@ public class EntitySearchService {
                 throw new UnsupportedOperationException("no search service available for: " + entityKind);
         }
     }
+
+
+    private static ExecutorService mkIndexRebuildExecutor() {
+        return Executors.newSingleThreadExecutor(
+                (runnable) -> {
+                    Thread t = new Thread(runnable, "WaltzSearchIndexRebuild");
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
 }
@@ -0,0 +1,374 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.khartec.waltz.service.entity_statistic;
+
+import com.khartec.waltz.data.entity_hierarchy.EntityHierarchyDao;
+import com.khartec.waltz.data.entity_statistic.EntityStatisticRollupDao;
+import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.model.application.ApplicationIdSelectionOptions;
+import com.khartec.waltz.model.entity_hierarchy.EntityHierarchyItem;
+import com.khartec.waltz.model.entity_statistic.EntityStatisticRollupStatus;
+import com.khartec.waltz.model.tally.TallyPack;
+import org.jooq.lambda.tuple.Tuple2;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.DateTimeUtilities.nowUtc;
+import static com.khartec.waltz.common.ListUtilities.partition;
+import static com.khartec.waltz.common.MapUtilities.indexBy;
+import static org.jooq.lambda.tuple.Tuple.tuple;
+
+
+/**
+ * Keeps the precomputed statistic rollup in step with the statistic values.
+ *
+ * Statistic values are loaded directly into the database, so a scheduled
+ * pass compares a summary (count and latest creation time) of each
+ * statistic's current values with the summary recorded when its rollup was
+ * built, and only rebuilds the statistics which differ.
+ *
+ * Moving an application between org units does not alter the values, so
+ * moves are reported via {@link #applicationMoved(long, long)} and the
+ * next scheduled pass rebuilds the rollup at just the org units whose set
+ * of applications changed.  Other changes which leave the values alone
+ * (ratings, hierarchy restructures) are picked up by the periodic full
+ * rebuild, or on demand once the entity hierarchies have been rebuilt.
+ */
+@Service
+public class EntityStatisticRollupService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EntityStatisticRollupService.class);
+    private static final int REFRESH_BATCH_SIZE = 20;
+
+    // beyond this many org units a full refresh is cheaper than rebuilding them individually
+    private static final int MAX_MOVE_REFRESH_NODES = 500;
+
+    private final EntityStatisticRollupDao rollupDao;
+    private final EntityHierarchyDao entityHierarchyDao;
+    private final boolean enabled;
+    private final int fullRefreshIntervalInHours;
+
+    // (from, to) org unit ids of application moves not yet reflected in the rollup
+    private final Queue<Tuple2<Long, Long>> pendingMoves = new ConcurrentLinkedQueue<>();
+
+    // null until the first full refresh, so the first scheduled pass rebuilds everything
+    private volatile LocalDateTime lastFullRefreshAt = null;
+
+
+    @Autowired
+    public EntityStatisticRollupService(EntityStatisticRollupDao rollupDao,
+                                        EntityHierarchyDao entityHierarchyDao,
+                                        @Value("${waltz.entity.statistic.rollup.enabled:true}") boolean enabled,
+                                        @Value("${waltz.entity.statistic.rollup.full.refresh.interval:6}") int fullRefreshIntervalInHours) {
+        checkNotNull(rollupDao, "rollupDao cannot be null");
+        checkNotNull(entityHierarchyDao, "entityHierarchyDao cannot be null");
+
+        this.rollupDao = rollupDao;
+        this.entityHierarchyDao = entityHierarchyDao;
+        this.enabled = enabled;
+        this.fullRefreshIntervalInHours = fullRefreshIntervalInHours;
+    }
+
+
+    /**
+     * Answers tallies from the rollup where possible.  Nothing is returned
+     * if the rollup is disabled or the selection differs from the one the
+     * rollup was built for, and statistics which have not been rolled up yet
+     * are omitted, callers must calculate anything missing directly.
+     *
+     * @param statisticIds  statistics to tally, which must have a COUNT, SUM or AVG rollup kind
+     * @param options  application selection options
+     * @return tally packs for the statistics which could be answered from the rollup
+     */
+    public List<TallyPack<String>> findTallies(Collection<Long> statisticIds, ApplicationIdSelectionOptions options) {
+        checkNotNull(statisticIds, "statisticIds cannot be null");
+        checkNotNull(options, "options cannot be null");
+
+        if (! enabled || ! EntityStatisticRollupDao.isSupported(options)) {
+            return Collections.emptyList();
+        }
+
+        return rollupDao.findTallies(statisticIds, options.entityReference());
+    }
+
+
+    @Scheduled(
+            initialDelayString = "${waltz.entity.statistic.rollup.refresh.interval:60000}",
+            fixedDelayString = "${waltz.entity.statistic.rollup.refresh.interval:60000}")
+    public void refreshRollup() {
+        if (! enabled) {
+            return;
+        }
+
+        try {
+            if (isFullRefreshDue(lastFullRefreshAt, nowUtc(), fullRefreshIntervalInHours)) {
+                refreshAll();
+            } else {
+                refreshChanged();
+                refreshMoved();
+            }
+        } catch (Exception e) {
+            LOG.error("Failed to refresh entity statistic rollup, will retry on next pass", e);
+        }
+    }
+
+
+    /**
+     * Rebuilds the rollup of every statistic whose current values differ
+     * from those the rollup was last built from, and removes the rollup of
+     * statistics which can no longer be rolled up.
+     * @return number of rollup rows written, zero if the rollup is disabled
+     */
+    public synchronized int refreshChanged() {
+        if (! enabled) {
+            return 0;
+        }
+
+        Map<Long, EntityStatisticRollupStatus> rolledUp = indexBy(
+                EntityStatisticRollupStatus::statisticId,
+                rollupDao.findRollupStatuses());
+
+        List<EntityStatisticRollupStatus> statuses = rollupDao.findSourceStatuses();
+
+        List<EntityStatisticRollupStatus> changed = findChangedStatuses(statuses, rolledUp);
+
+        removeMissing(rolledUp.keySet(), statuses);
+
+        if (changed.isEmpty()) {
+            return 0;
+        }
+
+        LOG.info("Refreshing entity statistic rollup for {} changed statistics", changed.size());
+        return refresh(changed);
+    }
+
+
+    /**
+     * Records that an application has moved between org units, so the
+     * rollup of the affected org units is rebuilt on the next scheduled
+     * pass (see <code>waltz.entity.statistic.rollup.refresh.interval</code>).
+     */
+    public void applicationMoved(long fromOrgUnitId, long toOrgUnitId) {
+        if (! enabled || fromOrgUnitId == toOrgUnitId) {
+            return;
+        }
+        pendingMoves.add(tuple(fromOrgUnitId, toOrgUnitId));
+    }
+
+
+    /**
+     * Rebuilds the rollup of every statistic at the org units affected by
+     * the application moves recorded since the last pass.
+     * @return number of rollup rows written, zero if the rollup is disabled
+     */
+    public synchronized int refreshMoved() {
+        if (! enabled) {
+            return 0;
+        }
+
+        List<Tuple2<Long, Long>> moves = new ArrayList<>();
+        for (Tuple2<Long, Long> move = pendingMoves.poll(); move != null; move = pendingMoves.poll()) {
+            moves.add(move);
+        }
+
+        if (moves.isEmpty()) {
+            return 0;
+        }
+
+        Set<Long> movedBetween = moves
+                .stream()
+                .flatMap(m -> Stream.of(m.v1, m.v2))
+                .collect(Collectors.toSet());
+
+        Set<Long> affectedOrgUnitIds = findAffectedNodes(
+                moves,
+                entityHierarchyDao.findByKindAndIds(EntityKind.ORG_UNIT, movedBetween));
+
+        if (affectedOrgUnitIds.size() > MAX_MOVE_REFRESH_NODES) {
+            LOG.info("{} applications moved affecting {} org units, refreshing the full rollup instead",
+                    moves.size(),
+                    affectedOrgUnitIds.size());
+            return refreshAll();
+        }
+
+        long start = System.currentTimeMillis();
+        List<EntityStatisticRollupStatus> statuses = rollupDao.findRollupStatuses();
+
+        int rowsWritten = partition(statuses, REFRESH_BATCH_SIZE)
+                .stream()
+                .mapToInt(batch -> rollupDao.refreshNodes(batch, EntityKind.ORG_UNIT, affectedOrgUnitIds))
+                .sum();
+
+        LOG.info("Refreshed entity statistic rollup at {} org units after {} application moves, {} rows written in {}ms",
+                affectedOrgUnitIds.size(),
+                moves.size(),
+                rowsWritten,
+                System.currentTimeMillis() - start);
+
+        return rowsWritten;
+    }
+
+
+    /**
+     * Rebuilds the rollup of every statistic, picking up applications which
+     * have moved within the org unit or measurable hierarchies.
+     * @return number of rollup rows written, zero if the rollup is disabled
+     */
+    public synchronized int refreshAll() {
+        if (! enabled) {
+            return 0;
+        }
+
+        LocalDateTime startedAt = nowUtc();
+
+        // moves recorded so far are covered by this rebuild, any recorded whilst it runs stay queued for the next pass
+        pendingMoves.clear();
+
+        Set<Long> rolledUpIds = rollupDao
+                .findRollupStatuses()
+                .stream()
+                .map(EntityStatisticRollupStatus::statisticId)
+                .collect(Collectors.toSet());
+
+        List<EntityStatisticRollupStatus> statuses = rollupDao.findSourceStatuses();
+
+        removeMissing(rolledUpIds, statuses);
+
+        LOG.info("Refreshing entity statistic rollup for all {} statistics", statuses.size());
+        int rowsWritten = refresh(statuses);
+
+        lastFullRefreshAt = startedAt;
+        return rowsWritten;
+    }
+
+
+    // -- HELPERS ---
+
+    /**
+     * The first pass after startup is always a full refresh, as changes made
+     * whilst the server was down which leave the values alone (e.g. moves)
+     * would otherwise go unnoticed.
+     * @param lastFullRefreshAt  null if there has not been a full refresh since startup
+     */
+    static boolean isFullRefreshDue(LocalDateTime lastFullRefreshAt, LocalDateTime now, int fullRefreshIntervalInHours) {
+        return lastFullRefreshAt == null
+                || lastFullRefreshAt.isBefore(now.minusHours(fullRefreshIntervalInHours));
+    }
+
+
+    /**
+     * @return statuses of statistics whose values differ from those the rollup was last built from
+     */
+    static List<EntityStatisticRollupStatus> findChangedStatuses(Collection<EntityStatisticRollupStatus> sourceStatuses,
+                                                                 Map<Long, EntityStatisticRollupStatus> rolledUpById) {
+        return sourceStatuses
+                .stream()
+                .filter(s -> ! s.equals(rolledUpById.get(s.statisticId())))
+                .collect(Collectors.toList());
+    }
+
+
+    /**
+     * An application moving from one org unit to another changes the set
+     * of applications under every ancestor of one but not the other, the
+     * common ancestors still include it.  Each org unit counts as its own
+     * ancestor.
+     *
+     * @param moves  (from, to) org unit ids
+     * @param hierarchy  org unit hierarchy items (id, ancestor as parent id) of at least the moved between org units
+     * @return ids of the org units whose rollup must be rebuilt
+     */
+    static Set<Long> findAffectedNodes(Collection<Tuple2<Long, Long>> moves,
+                                       Collection<EntityHierarchyItem> hierarchy) {
+        Map<Long, Set<Long>> ancestorsById = new HashMap<>();
+        hierarchy.forEach(item -> item.parentId().ifPresent(ancestorId -> ancestorsById
+                .computeIfAbsent(item.id().get(), id -> new HashSet<>())
+                .add(ancestorId)));
+
+        Set<Long> affected = new HashSet<>();
+        moves.forEach(move -> {
+            Set<Long> fromAncestors = findAncestorsAndSelf(ancestorsById, move.v1);
+            Set<Long> toAncestors = findAncestorsAndSelf(ancestorsById, move.v2);
+            fromAncestors.stream().filter(id -> ! toAncestors.contains(id)).forEach(affected::add);
+            toAncestors.stream().filter(id -> ! fromAncestors.contains(id)).forEach(affected::add);
+        });
+        return affected;
+    }
+
+
+    private static Set<Long> findAncestorsAndSelf(Map<Long, Set<Long>> ancestorsById, long id) {
+        Set<Long> ancestors = new HashSet<>(ancestorsById.getOrDefault(id, Collections.emptySet()));
+        ancestors.add(id);
+        return ancestors;
+    }
+
+
+    /**
+     * Removes the rollup of statistics which have been deleted or can no
+     * longer be rolled up (e.g. their rollup kind is now NONE).
+     */
+    private void removeMissing(Set<Long> rolledUpIds, List<EntityStatisticRollupStatus> statuses) {
+        Set<Long> sourceIds = statuses
+                .stream()
+                .map(EntityStatisticRollupStatus::statisticId)
+                .collect(Collectors.toSet());
+
+        List<Long> missingIds = rolledUpIds
+                .stream()
+                .filter(id -> ! sourceIds.contains(id))
+                .collect(Collectors.toList());
+
+        if (! missingIds.isEmpty()) {
+            LOG.info("Removing entity statistic rollup for {} statistics", missingIds.size());
+            rollupDao.remove(missingIds);
+        }
+    }
+
+
+    private int refresh(List<EntityStatisticRollupStatus> statuses) {
+        long start = System.currentTimeMillis();
+
+        // statistics are refreshed in small batches so no single transaction holds the rollup for too long
+        int rowsWritten = partition(statuses, REFRESH_BATCH_SIZE)
+                .stream()
+                .mapToInt(rollupDao::refresh)
+                .sum();
+
+        LOG.info("Refreshed entity statistic rollup for {} statistics, {} rows written in {}ms",
+                statuses.size(),
+                rowsWritten,
+                System.currentTimeMillis() - start);
+
+        return rowsWritten;
+    }
+
+}
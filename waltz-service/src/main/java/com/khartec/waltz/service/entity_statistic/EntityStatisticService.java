@@ -23,6 +23,7 @@ import com.khartec.waltz.common.Checks;
 import com.khartec.waltz.data.application.ApplicationIdSelectorFactory;
 import com.khartec.waltz.data.entity_statistic.EntityStatisticDao;
 import com.khartec.waltz.data.entity_statistic.EntityStatisticDefinitionDao;
+import com.khartec.waltz.data.entity_statistic.EntityStatisticRollupDao;
 import com.khartec.waltz.data.entity_statistic.EntityStatisticSummaryDao;
 import com.khartec.waltz.data.entity_statistic.EntityStatisticValueDao;
 import com.khartec.waltz.model.Duration;
@@ -44,9 +45,12 @@ import org.springframework.stereotype.Service;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import static com.khartec.waltz.common.Checks.checkNotNull;
 import static com.khartec.waltz.common.ListUtilities.concat;
+import static com.khartec.waltz.common.ListUtilities.filter;
 import static com.khartec.waltz.common.MapUtilities.groupBy;
 import static java.util.Collections.emptyList;
 
@@ -58,6 +62,7 @@ public class EntityStatisticService {
     private final EntityStatisticDefinitionDao definitionDao;
     private final EntityStatisticSummaryDao summaryDao;
     private final EntityStatisticDao statisticDao;
+    private final EntityStatisticRollupService rollupService;
 
 
     @Autowired
@@ -65,20 +70,21 @@ public class EntityStatisticService {
                                   EntityStatisticValueDao valueDao,
                                   EntityStatisticDefinitionDao definitionDao,
                                   EntityStatisticSummaryDao summaryDao,
-                                  EntityStatisticDao statisticDao
-                                  ) {
+                                  EntityStatisticDao statisticDao,
+                                  EntityStatisticRollupService rollupService) {
         checkNotNull(factory, "factory cannot be null");
         checkNotNull(valueDao, "valueDao cannot be null");
         checkNotNull(definitionDao, "definitionDao cannot be null");
         checkNotNull(summaryDao, "summaryDao cannot be null");
         checkNotNull(statisticDao, "statisticDao cannot be null");
+        checkNotNull(rollupService, "rollupService cannot be null");
 
         this.factory = factory;
         this.valueDao = valueDao;
         this.definitionDao = definitionDao;
         this.summaryDao = summaryDao;
         this.statisticDao = statisticDao;
-
+        this.rollupService = rollupService;
     }
 
 
@@ -109,19 +115,43 @@ public class EntityStatisticService {
     }
 
 
+    /**
+     * Tallies for org units and measurables are answered from the
+     * precomputed rollup, any statistics it cannot answer (including those
+     * without a rollup) are calculated from the statistic values.
+     */
     public List<TallyPack<String>> findStatTallies(List<Long> statisticIds, ApplicationIdSelectionOptions options) {
         Checks.checkNotNull(statisticIds, "statisticIds cannot be null");
         Checks.checkNotNull(options, "options cannot be null");
 
-        Select<Record1<Long>> appIdSelector = factory.apply(options);
+        List<EntityStatisticDefinition> definitions = definitionDao.findByIds(statisticIds);
+
+        List<TallyPack<String>> rolledUpTallies = rollupService.findTallies(
+                definitions
+                        .stream()
+                        .filter(d -> EntityStatisticRollupDao.ROLLUP_KINDS.contains(d.rollupKind()))
+                        .map(d -> d.id().get())
+                        .collect(Collectors.toList()),
+                options);
+
+        Set<Long> rolledUpIds = rolledUpTallies
+                .stream()
+                .map(t -> t.entityReference().id())
+                .collect(Collectors.toSet());
 
         Map<RollupKind, Collection<Long>> definitionIdsByRollupKind = groupBy(
                 d -> d.rollupKind(),
                 d -> d.id().orElse(null),
-                definitionDao.findByIds(statisticIds));
+                filter(d -> ! rolledUpIds.contains(d.id().get()), definitions));
 
+        if (definitionIdsByRollupKind.isEmpty()) {
+            return rolledUpTallies;
+        }
+
+        Select<Record1<Long>> appIdSelector = factory.apply(options);
 
         return concat(
+                rolledUpTallies,
                 summaryDao.generateWithCountByEntity(
                         definitionIdsByRollupKind.getOrDefault(RollupKind.COUNT_BY_ENTITY, emptyList()),
                         appIdSelector),
@@ -50,6 +50,7 @@ import com.khartec.waltz.service.changelog.ChangeLogService;
 import org.jooq.Record1;
 import org.jooq.Select;
 import org.jooq.exception.InvalidResultException;
+import org.jooq.lambda.tuple.Tuple3;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -60,6 +61,7 @@ import static com.khartec.waltz.common.Checks.checkNotNull;
 import static com.khartec.waltz.common.DateTimeUtilities.nowUtc;
 import static com.khartec.waltz.common.ListUtilities.map;
 import static com.khartec.waltz.common.ListUtilities.newArrayList;
+import static com.khartec.waltz.common.MapUtilities.indexBy;
 import static com.khartec.waltz.common.StringUtilities.isEmpty;
 import static com.khartec.waltz.model.EntityKind.FLOW_DIAGRAM;
 import static com.khartec.waltz.model.EntityReference.mkRef;
@@ -68,11 +70,16 @@ import static java.lang.String.format;
 import static java.util.Collections.emptyList;
 import static java.util.stream.Collectors.joining;
 import static java.util.stream.Collectors.toList;
+import static org.jooq.lambda.tuple.Tuple.tuple;
 
 
 @Service
 public class FlowDiagramService {
 
+    private static final Set<EntityKind> EXPLICITLY_LINKED_KINDS = SetUtilities.asSet(
+            EntityKind.MEASURABLE,
+            EntityKind.CHANGE_INITIATIVE);
+
     private final ChangeLogService changeLogService;
     private final FlowDiagramDao flowDiagramDao;
     private final FlowDiagramEntityDao flowDiagramEntityDao;
@@ -171,33 +178,18 @@ public class FlowDiagramService {
                 .lastUpdatedAt(nowUtc())
                 .build();
 
-        Long diagramId;
-
-        List<EntityReference> existingEntities = newArrayList();
-
         if (diagram.id().isPresent()) {
-            // update
-            diagramId = diagram.id().get();
-
-            if(!flowDiagramDao.update(diagram)) {
-                throw new InvalidResultException("Could not update diagram with Id: " + diagramId);
-            }
-
-            existingEntities = map(flowDiagramEntityDao.findForDiagram(diagramId), fde -> fde.entityReference());
-            auditChange("updated", mkRef(FLOW_DIAGRAM, diagramId), username, Operation.UPDATE);
-            flowDiagramEntityDao.deleteForDiagram(diagramId);
-            flowDiagramAnnotationDao.deleteForDiagram(diagramId);
-        } else {
-            // create
-            diagramId = flowDiagramDao.create(diagram);
-            auditChange("added", mkRef(FLOW_DIAGRAM, diagramId), username, Operation.ADD);
+            return update(diagram, command, username);
         }
 
+        long diagramId = flowDiagramDao.create(diagram);
+        auditChange("added", mkRef(FLOW_DIAGRAM, diagramId), username, Operation.ADD);
+
         createEntities(diagramId, command.entities());
         createAnnotations(diagramId, command.annotations());
 
         List<EntityReference> newEntities = map(command.entities(), FlowDiagramEntity::entityReference);
-        auditEntityChange(mkRef(FLOW_DIAGRAM, diagramId), existingEntities, newEntities, username);
+        auditEntityChange(mkRef(FLOW_DIAGRAM, diagramId), emptyList(), newEntities, username);
         return diagramId;
     }
 
@@ -217,6 +209,164 @@ public class FlowDiagramService {
     }
 
 
+    /**
+     * Applies only what differs between the stored diagram and the
+     * command.  Entities are matched by kind and id, annotations by their
+     * id.  Measurables and change initiatives are explicitly linked to
+     * diagrams rather than being part of the picture, so they are never
+     * removed by a save.  If nothing differs nothing is written.
+     */
+    private long update(FlowDiagram diagram, SaveDiagramCommand command, String username) {
+        long diagramId = diagram.id().get();
+        EntityReference diagramRef = mkRef(FLOW_DIAGRAM, diagramId);
+
+        FlowDiagram existingDiagram = flowDiagramDao.getById(diagramId);
+        if (existingDiagram == null) {
+            throw new InvalidResultException("Could not update diagram with Id: " + diagramId);
+        }
+
+        Tuple3<List<FlowDiagramEntity>, List<FlowDiagramEntity>, List<EntityReference>> entityChanges = diffEntities(
+                flowDiagramEntityDao.findForDiagram(diagramId),
+                map(command.entities(), e -> ImmutableFlowDiagramEntity.copyOf(e).withDiagramId(diagramId)));
+        List<FlowDiagramEntity> entitiesToAdd = entityChanges.v1;
+        List<FlowDiagramEntity> entitiesToUpdate = entityChanges.v2;
+        List<EntityReference> entitiesToRemove = entityChanges.v3;
+
+        Tuple3<List<FlowDiagramAnnotation>, List<FlowDiagramAnnotation>, List<String>> annotationChanges = diffAnnotations(
+                flowDiagramAnnotationDao.findByDiagramId(diagramId),
+                map(command.annotations(), a -> ImmutableFlowDiagramAnnotation.copyOf(a).withDiagramId(diagramId)));
+        List<FlowDiagramAnnotation> annotationsToAdd = annotationChanges.v1;
+        List<FlowDiagramAnnotation> annotationsToUpdate = annotationChanges.v2;
+        List<String> annotationsToRemove = annotationChanges.v3;
+
+        boolean detailsChanged = ! Objects.equals(existingDiagram.name(), diagram.name())
+                || ! Objects.equals(existingDiagram.description(), diagram.description())
+                || ! Objects.equals(existingDiagram.layoutData(), diagram.layoutData());
+
+        boolean contentChanged = ! (entitiesToAdd.isEmpty()
+                && entitiesToUpdate.isEmpty()
+                && entitiesToRemove.isEmpty()
+                && annotationsToAdd.isEmpty()
+                && annotationsToUpdate.isEmpty()
+                && annotationsToRemove.isEmpty());
+
+        if (! detailsChanged && ! contentChanged) {
+            return diagramId;
+        }
+
+        if (! flowDiagramDao.update(diagram)) {
+            throw new InvalidResultException("Could not update diagram with Id: " + diagramId);
+        }
+        auditChange("updated", diagramRef, username, Operation.UPDATE);
+
+        if (! entitiesToRemove.isEmpty()) {
+            flowDiagramEntityDao.deleteEntities(diagramId, entitiesToRemove);
+        }
+        if (! entitiesToUpdate.isEmpty()) {
+            flowDiagramEntityDao.updateEntities(entitiesToUpdate);
+        }
+        if (! entitiesToAdd.isEmpty()) {
+            flowDiagramEntityDao.createEntities(entitiesToAdd);
+        }
+        if (! annotationsToRemove.isEmpty()) {
+            flowDiagramAnnotationDao.deleteAnnotations(diagramId, annotationsToRemove);
+        }
+        if (! annotationsToUpdate.isEmpty()) {
+            flowDiagramAnnotationDao.updateAnnotations(annotationsToUpdate);
+        }
+        if (! annotationsToAdd.isEmpty()) {
+            flowDiagramAnnotationDao.createAnnotations(annotationsToAdd);
+        }
+
+        auditEntityChange(
+                diagramRef,
+                entitiesToRemove,
+                map(entitiesToAdd, FlowDiagramEntity::entityReference),
+                username);
+
+        return diagramId;
+    }
+
+
+    /**
+     * Entities are matched by kind and id.  Explicitly linked entities
+     * (see {@link #EXPLICITLY_LINKED_KINDS}) are never removed.
+     * @return entities to add, entities whose notability has changed and references of entities to remove
+     */
+    static Tuple3<List<FlowDiagramEntity>, List<FlowDiagramEntity>, List<EntityReference>> diffEntities(
+            List<FlowDiagramEntity> existing,
+            List<FlowDiagramEntity> required) {
+        Map<EntityReference, FlowDiagramEntity> existingEntities = indexBy(e -> toKey(e.entityReference()), existing);
+        Map<EntityReference, FlowDiagramEntity> requiredEntities = indexBy(e -> toKey(e.entityReference()), required);
+
+        List<FlowDiagramEntity> toAdd = requiredEntities
+                .entrySet()
+                .stream()
+                .filter(e -> ! existingEntities.containsKey(e.getKey()))
+                .map(Map.Entry::getValue)
+                .collect(toList());
+        List<FlowDiagramEntity> toUpdate = requiredEntities
+                .entrySet()
+                .stream()
+                .filter(e -> existingEntities.containsKey(e.getKey()))
+                .filter(e -> existingEntities.get(e.getKey()).isNotable() != e.getValue().isNotable())
+                .map(Map.Entry::getValue)
+                .collect(toList());
+        List<EntityReference> toRemove = existingEntities
+                .keySet()
+                .stream()
+                .filter(ref -> ! requiredEntities.containsKey(ref))
+                .filter(ref -> ! EXPLICITLY_LINKED_KINDS.contains(ref.kind()))
+                .collect(toList());
+
+        return tuple(toAdd, toUpdate, toRemove);
+    }
+
+
+    /**
+     * Annotations are matched by their id.
+     * @return annotations to add, annotations whose note or subject has changed and ids of annotations to remove
+     */
+    static Tuple3<List<FlowDiagramAnnotation>, List<FlowDiagramAnnotation>, List<String>> diffAnnotations(
+            List<FlowDiagramAnnotation> existing,
+            List<FlowDiagramAnnotation> required) {
+        Map<String, FlowDiagramAnnotation> existingAnnotations = indexBy(FlowDiagramAnnotation::annotationId, existing);
+        Map<String, FlowDiagramAnnotation> requiredAnnotations = indexBy(FlowDiagramAnnotation::annotationId, required);
+
+        List<FlowDiagramAnnotation> toAdd = requiredAnnotations
+                .entrySet()
+                .stream()
+                .filter(e -> ! existingAnnotations.containsKey(e.getKey()))
+                .map(Map.Entry::getValue)
+                .collect(toList());
+        List<FlowDiagramAnnotation> toUpdate = requiredAnnotations
+                .entrySet()
+                .stream()
+                .filter(e -> existingAnnotations.containsKey(e.getKey()))
+                .filter(e -> ! sameAnnotation(existingAnnotations.get(e.getKey()), e.getValue()))
+                .map(Map.Entry::getValue)
+                .collect(toList());
+        List<String> toRemove = existingAnnotations
+                .keySet()
+                .stream()
+                .filter(id -> ! requiredAnnotations.containsKey(id))
+                .collect(toList());
+
+        return tuple(toAdd, toUpdate, toRemove);
+    }
+
+
+    private static EntityReference toKey(EntityReference ref) {
+        return mkRef(ref.kind(), ref.id());
+    }
+
+
+    private static boolean sameAnnotation(FlowDiagramAnnotation a, FlowDiagramAnnotation b) {
+        return Objects.equals(a.note(), b.note())
+                && toKey(a.entityReference()).equals(toKey(b.entityReference()));
+    }
+
+
     private int[] createEntities(long diagramId,
                                  List<FlowDiagramEntity> entities) {
         entities = entities
@@ -0,0 +1,89 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.khartec.waltz.service.jmx;
+
+import com.khartec.waltz.service.access_log.AccessLogBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+
+@ManagedResource(description = "Statistics and maintenance functions for the buffered access log writer")
+public class AccessLogBufferMaintenance {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AccessLogBufferMaintenance.class);
+
+    private final AccessLogBuffer accessLogBuffer;
+
+    @Autowired
+    public AccessLogBufferMaintenance(AccessLogBuffer accessLogBuffer) {
+        checkNotNull(accessLogBuffer, "accessLogBuffer cannot be null");
+        this.accessLogBuffer = accessLogBuffer;
+    }
+
+
+    @ManagedOperation(description = "Write all queued access log entries now")
+    public void flush() {
+        LOG.info("Flushing access log buffer (via jmx)");
+        accessLogBuffer.flushNow();
+    }
+
+
+    @ManagedAttribute(description = "Number of entries waiting to be written")
+    public int getQueuedCount() {
+        return accessLogBuffer.queuedCount();
+    }
+
+
+    @ManagedAttribute(description = "Number of entries written to the database")
+    public long getFlushedCount() {
+        return accessLogBuffer.flushedCount();
+    }
+
+
+    @ManagedAttribute(description = "Number of entries discarded because the buffer was full")
+    public long getDroppedCount() {
+        return accessLogBuffer.droppedCount();
+    }
+
+
+    @ManagedAttribute(description = "Number of entries lost because the database write failed")
+    public long getFailedCount() {
+        return accessLogBuffer.failedCount();
+    }
+
+
+    @ManagedAttribute(description = "Whether entries are being written by the background writer")
+    public boolean isRunning() {
+        return accessLogBuffer.isRunning();
+    }
+
+
+    @ManagedAttribute
+    public String getName() {
+        return "AccessLogBuffer";
+    }
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.khartec.waltz.service.jmx;
+
+import com.khartec.waltz.data.DBExecutorPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+
+@ManagedResource(description = "Statistics for the pool used to run database queries in parallel")
+public class DBExecutorPoolMaintenance {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DBExecutorPoolMaintenance.class);
+
+    private final DBExecutorPool dbExecutorPool;
+
+    @Autowired
+    public DBExecutorPoolMaintenance(DBExecutorPool dbExecutorPool) {
+        checkNotNull(dbExecutorPool, "dbExecutorPool cannot be null");
+        this.dbExecutorPool = dbExecutorPool;
+    }
+
+
+    @ManagedOperation(description = "Reset the wait time, timeout and rejection statistics")
+    public void resetStats() {
+        LOG.info("Resetting db executor statistics (via jmx)");
+        dbExecutorPool.resetStats();
+    }
+
+
+    @ManagedAttribute(description = "Number of threads in the pool")
+    public int getPoolSize() {
+        return dbExecutorPool.getPoolSize();
+    }
+
+
+    @ManagedAttribute(description = "Number of threads currently running tasks")
+    public int getActiveCount() {
+        return dbExecutorPool.getActiveCount();
+    }
+
+
+    @ManagedAttribute(description = "Number of tasks waiting for a thread")
+    public int getQueueDepth() {
+        return dbExecutorPool.getQueueDepth();
+    }
+
+
+    @ManagedAttribute(description = "Number of further tasks which can be queued before the rejection policy applies")
+    public int getQueueRemainingCapacity() {
+        return dbExecutorPool.getQueueRemainingCapacity();
+    }
+
+
+    @ManagedAttribute(description = "Maximum number of tasks a single request may have in flight")
+    public int getMaxTasksPerRequest() {
+        return dbExecutorPool.getMaxTasksPerRequest();
+    }
+
+
+    @ManagedAttribute(description = "Number of tasks submitted to the pool")
+    public long getSubmittedCount() {
+        return dbExecutorPool.getSubmittedCount();
+    }
+
+
+    @ManagedAttribute(description = "Number of tasks completed by the pool")
+    public long getCompletedCount() {
+        return dbExecutorPool.getCompletedCount();
+    }
+
+
+    @ManagedAttribute(description = "Number of tasks run on the submitting thread as the queue was full")
+    public long getCallerRunsCount() {
+        return dbExecutorPool.getCallerRunsCount();
+    }
+
+
+    @ManagedAttribute(description = "Number of tasks refused as the queue was full")
+    public long getRejectedCount() {
+        return dbExecutorPool.getRejectedCount();
+    }
+
+
+    @ManagedAttribute(description = "Number of tasks which exceeded their deadline before starting")
+    public long getTimedOutCount() {
+        return dbExecutorPool.getTimedOutCount();
+    }
+
+
+    @ManagedAttribute(description = "Average time (ms) tasks wait before starting")
+    public long getAverageWaitMillis() {
+        return dbExecutorPool.getAverageWaitMillis();
+    }
+
+
+    @ManagedAttribute(description = "Longest time (ms) a task has waited before starting")
+    public long getMaxWaitMillis() {
+        return dbExecutorPool.getMaxWaitMillis();
+    }
+
+
+    @ManagedAttribute
+    public String getName() {
+        return "DBExecutorPool";
+    }
+
+}
@@ -47,6 +47,13 @@ public class PersonMaintenance {
     }
 
 
+    @ManagedOperation(description = "Update the person hierarchy table for people whose manager has changed since the last build")
+    public int updateHierarchyTable() {
+        LOG.info("Update person hierarchy (via jmx)");
+        return personHierarchyService.buildChanged();
+    }
+
+
     @ManagedAttribute
     public String getName() {
         return "Person";
@@ -0,0 +1,112 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.khartec.waltz.service.jmx;
+
+import com.khartec.waltz.model.query_metric.QueryMetric;
+import com.khartec.waltz.service.QueryMetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedOperationParameter;
+import org.springframework.jmx.export.annotation.ManagedOperationParameters;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import java.util.List;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+
+@ManagedResource(description = "Latency statistics for database queries, grouped by normalized sql and calling dao method")
+public class QueryMetricsMaintenance {
+
+    private static final Logger LOG = LoggerFactory.getLogger(QueryMetricsMaintenance.class);
+
+    private final QueryMetricsRegistry queryMetricsRegistry;
+
+    @Autowired
+    public QueryMetricsMaintenance(QueryMetricsRegistry queryMetricsRegistry) {
+        checkNotNull(queryMetricsRegistry, "queryMetricsRegistry cannot be null");
+        this.queryMetricsRegistry = queryMetricsRegistry;
+    }
+
+
+    @ManagedOperation(description = "Discard all recorded query statistics")
+    public void resetStats() {
+        LOG.info("Resetting query metrics (via jmx)");
+        queryMetricsRegistry.reset();
+    }
+
+
+    @ManagedOperation(description = "Queries with the highest total execution time")
+    @ManagedOperationParameters({
+            @ManagedOperationParameter(name = "limit", description = "Number of queries to return")})
+    public String[] findSlowest(int limit) {
+        return toSummaries(queryMetricsRegistry.findSlowest(limit));
+    }
+
+
+    @ManagedOperation(description = "Queries executed most often")
+    @ManagedOperationParameters({
+            @ManagedOperationParameter(name = "limit", description = "Number of queries to return")})
+    public String[] findMostFrequent(int limit) {
+        return toSummaries(queryMetricsRegistry.findMostFrequent(limit));
+    }
+
+
+    @ManagedAttribute(description = "Whether query metrics are being recorded")
+    public boolean isEnabled() {
+        return queryMetricsRegistry.isEnabled();
+    }
+
+
+    @ManagedAttribute(description = "Number of distinct queries being tracked")
+    public int getTrackedCount() {
+        return queryMetricsRegistry.getTrackedCount();
+    }
+
+
+    @ManagedAttribute(description = "Number of executions grouped under '(other)' as the tracking limit was reached")
+    public long getOverflowCount() {
+        return queryMetricsRegistry.getOverflowCount();
+    }
+
+
+    // -- HELPERS ---
+
+    private static String[] toSummaries(List<QueryMetric> metrics) {
+        return metrics
+                .stream()
+                .map(m -> String.format(
+                        "%s | count: %d, total: %dms, mean: %.1fms, p95: %dms, max: %dms, rows: %d, errors: %d | %s",
+                        m.caller().orElse("unknown"),
+                        m.executionCount(),
+                        m.totalMillis(),
+                        m.meanMillis(),
+                        m.p95Millis(),
+                        m.maxMillis(),
+                        m.rowsFetched(),
+                        m.errorCount(),
+                        m.fingerprint()))
+                .toArray(String[]::new);
+    }
+
+}
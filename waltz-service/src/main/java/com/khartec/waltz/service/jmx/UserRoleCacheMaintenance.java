@@ -0,0 +1,82 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.khartec.waltz.service.jmx;
+
+import com.khartec.waltz.service.user.UserRoleCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+
+@ManagedResource(description = "Statistics and maintenance functions for the user role cache")
+public class UserRoleCacheMaintenance {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UserRoleCacheMaintenance.class);
+
+    private final UserRoleCache userRoleCache;
+
+    @Autowired
+    public UserRoleCacheMaintenance(UserRoleCache userRoleCache) {
+        checkNotNull(userRoleCache, "userRoleCache cannot be null");
+        this.userRoleCache = userRoleCache;
+    }
+
+
+    @ManagedOperation(description = "Remove all entries from the user role cache")
+    public void clear() {
+        LOG.warn("Clearing user role cache (via jmx)");
+        userRoleCache.invalidateAll();
+    }
+
+
+    @ManagedAttribute(description = "Number of users currently cached")
+    public int getSize() {
+        return userRoleCache.size();
+    }
+
+
+    @ManagedAttribute(description = "Number of role lookups served from the cache")
+    public long getHitCount() {
+        return userRoleCache.hitCount();
+    }
+
+
+    @ManagedAttribute(description = "Number of role lookups which went to the database")
+    public long getMissCount() {
+        return userRoleCache.missCount();
+    }
+
+
+    @ManagedAttribute(description = "Number of times entries have been explicitly invalidated")
+    public long getInvalidationCount() {
+        return userRoleCache.invalidationCount();
+    }
+
+
+    @ManagedAttribute
+    public String getName() {
+        return "UserRoleCache";
+    }
+
+}
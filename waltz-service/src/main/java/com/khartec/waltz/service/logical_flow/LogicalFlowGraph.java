@@ -0,0 +1,479 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.khartec.waltz.service.logical_flow;
+
+import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.model.EntityReference;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.Checks.checkTrue;
+import static com.khartec.waltz.model.EntityReference.mkRef;
+
+
+/**
+ * Compact, in-memory, directed graph of logical flows.
+ *
+ * Nodes (flow sources and targets) and edges (flows) are identified by
+ * int indexes into primitive arrays.  Each node holds arrays of the indexes
+ * of its outbound and inbound edges, edges hold their source and target
+ * node indexes.  Removed flows are flagged rather than unlinked so they can
+ * be cheaply restored.  Data type decorations are held as a bitset of edge
+ * indexes per data type.
+ *
+ * Reads may happen concurrently, updates take an exclusive lock.
+ */
+public class LogicalFlowGraph {
+
+    public enum Direction {
+        UPSTREAM,
+        DOWNSTREAM
+    }
+
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int[] NO_EDGES = new int[0];
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // -- nodes
+    private final Map<EntityKind, Map<Long, Integer>> nodeIndexes = new EnumMap<>(EntityKind.class);
+    private EntityKind[] nodeKinds = new EntityKind[INITIAL_CAPACITY];
+    private long[] nodeIds = new long[INITIAL_CAPACITY];
+    private int[][] outEdges = new int[INITIAL_CAPACITY][];
+    private int[] outDegrees = new int[INITIAL_CAPACITY];
+    private int[][] inEdges = new int[INITIAL_CAPACITY][];
+    private int[] inDegrees = new int[INITIAL_CAPACITY];
+    private int nodeCount = 0;
+
+    // -- edges
+    private final Map<Long, Integer> edgeIndexes = new HashMap<>();
+    private final Map<Long, BitSet> edgesByDataType = new HashMap<>();
+    private final BitSet removedEdges = new BitSet();
+    private long[] edgeFlowIds = new long[INITIAL_CAPACITY];
+    private int[] edgeSources = new int[INITIAL_CAPACITY];
+    private int[] edgeTargets = new int[INITIAL_CAPACITY];
+    private int edgeCount = 0;
+
+
+    /**
+     * Adds (or restores) a flow, along with any data types it is decorated
+     * with.  Restored flows keep their previously known data types.
+     */
+    public void addFlow(long flowId,
+                        EntityReference source,
+                        EntityReference target,
+                        Collection<Long> dataTypeIds) {
+        checkNotNull(source, "source cannot be null");
+        checkNotNull(target, "target cannot be null");
+        checkNotNull(dataTypeIds, "dataTypeIds cannot be null");
+
+        lock.writeLock().lock();
+        try {
+            Integer existing = edgeIndexes.get(flowId);
+            int edge = existing == null
+                    ? mkEdge(flowId, getOrCreateNode(source), getOrCreateNode(target))
+                    : existing;
+
+            removedEdges.clear(edge);
+
+            dataTypeIds.forEach(dt -> edgesByDataType
+                    .computeIfAbsent(dt, k -> new BitSet())
+                    .set(edge));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * Adds a data type decoration to a known flow, unknown flows are ignored.
+     */
+    public void addDataType(long flowId, long dataTypeId) {
+        lock.writeLock().lock();
+        try {
+            Integer edge = edgeIndexes.get(flowId);
+            if (edge != null) {
+                edgesByDataType
+                        .computeIfAbsent(dataTypeId, k -> new BitSet())
+                        .set(edge);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * Removes a data type decoration from a flow, unknown flows are ignored.
+     */
+    public void removeDataType(long flowId, long dataTypeId) {
+        lock.writeLock().lock();
+        try {
+            Integer edge = edgeIndexes.get(flowId);
+            BitSet edges = edgesByDataType.get(dataTypeId);
+            if (edge != null && edges != null) {
+                edges.clear(edge);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * Flags the flow as removed, it will no longer be traversed.
+     */
+    public void removeFlow(long flowId) {
+        lock.writeLock().lock();
+        try {
+            Integer edge = edgeIndexes.get(flowId);
+            if (edge != null) {
+                removedEdges.set(edge);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    public int flowCount() {
+        lock.readLock().lock();
+        try {
+            return edgeCount - removedEdges.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * Breadth first traversal from the start entity following flows in the
+     * given direction.
+     *
+     * @param start  entity to start from
+     * @param direction  UPSTREAM follows flows back to their sources, DOWNSTREAM forward to their targets
+     * @param maxDepth  maximum number of hops from the start entity
+     * @param dataTypeIds  if not empty only flows decorated with one of these data types are followed
+     * @param limit  maximum number of flows to return
+     * @return the flows visited, in order of increasing depth
+     */
+    public List<FlowHop> traverse(EntityReference start,
+                                  Direction direction,
+                                  int maxDepth,
+                                  Set<Long> dataTypeIds,
+                                  int limit) {
+        checkNotNull(start, "start cannot be null");
+        checkNotNull(direction, "direction cannot be null");
+        checkTrue(maxDepth > 0, "maxDepth must be positive");
+
+        lock.readLock().lock();
+        try {
+            List<FlowHop> hops = new ArrayList<>();
+            Integer startNode = findNode(start);
+            if (startNode == null) {
+                return hops;
+            }
+
+            boolean downstream = direction == Direction.DOWNSTREAM;
+            BitSet allowedEdges = mkAllowedEdges(dataTypeIds);
+            BitSet visited = new BitSet(nodeCount);
+            visited.set(startNode);
+
+            int[] frontier = { startNode };
+            int frontierSize = 1;
+
+            for (int depth = 1; depth <= maxDepth && frontierSize > 0; depth++) {
+                int[] next = new int[Math.max(frontierSize, 16)];
+                int nextSize = 0;
+
+                for (int i = 0; i < frontierSize; i++) {
+                    int node = frontier[i];
+                    int[] edges = downstream ? outEdges[node] : inEdges[node];
+                    int degree = downstream ? outDegrees[node] : inDegrees[node];
+
+                    for (int j = 0; j < degree; j++) {
+                        int edge = edges[j];
+                        if (! isTraversable(edge, allowedEdges)) {
+                            continue;
+                        }
+
+                        hops.add(mkHop(edge, depth));
+                        if (hops.size() >= limit) {
+                            return hops;
+                        }
+
+                        int other = downstream ? edgeTargets[edge] : edgeSources[edge];
+                        if (! visited.get(other)) {
+                            visited.set(other);
+                            if (nextSize == next.length) {
+                                next = Arrays.copyOf(next, nextSize * 2);
+                            }
+                            next[nextSize++] = other;
+                        }
+                    }
+                }
+
+                frontier = next;
+                frontierSize = nextSize;
+            }
+
+            return hops;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * Finds a route with the fewest hops from the source to the target entity.
+     *
+     * @return the flows making up the route (in order), empty if no route
+     * exists within <code>maxDepth</code> hops
+     */
+    public List<FlowHop> findShortestPath(EntityReference source,
+                                          EntityReference target,
+                                          int maxDepth,
+                                          Set<Long> dataTypeIds) {
+        checkNotNull(source, "source cannot be null");
+        checkNotNull(target, "target cannot be null");
+        checkTrue(maxDepth > 0, "maxDepth must be positive");
+
+        lock.readLock().lock();
+        try {
+            Integer sourceNode = findNode(source);
+            Integer targetNode = findNode(target);
+            if (sourceNode == null || targetNode == null || sourceNode.equals(targetNode)) {
+                return Collections.emptyList();
+            }
+
+            BitSet allowedEdges = mkAllowedEdges(dataTypeIds);
+
+            // edge used to first reach each node, -1 if not yet reached
+            int[] viaEdge = new int[nodeCount];
+            Arrays.fill(viaEdge, -1);
+
+            int[] queue = new int[nodeCount];
+            int[] depths = new int[nodeCount];
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = sourceNode;
+
+            while (head < tail) {
+                int node = queue[head++];
+                if (depths[node] >= maxDepth) {
+                    continue;
+                }
+
+                for (int j = 0; j < outDegrees[node]; j++) {
+                    int edge = outEdges[node][j];
+                    int next = edgeTargets[edge];
+                    if (next == sourceNode || viaEdge[next] != -1 || ! isTraversable(edge, allowedEdges)) {
+                        continue;
+                    }
+
+                    viaEdge[next] = edge;
+                    depths[next] = depths[node] + 1;
+
+                    if (next == targetNode) {
+                        return mkPath(viaEdge, sourceNode, targetNode);
+                    }
+
+                    queue[tail++] = next;
+                }
+            }
+
+            return Collections.emptyList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * A flow visited during a traversal along with the number of hops from
+     * the starting entity.
+     */
+    public static class FlowHop {
+
+        private final long flowId;
+        private final EntityReference source;
+        private final EntityReference target;
+        private final int depth;
+
+
+        private FlowHop(long flowId, EntityReference source, EntityReference target, int depth) {
+            this.flowId = flowId;
+            this.source = source;
+            this.target = target;
+            this.depth = depth;
+        }
+
+
+        public long flowId() {
+            return flowId;
+        }
+
+
+        public EntityReference source() {
+            return source;
+        }
+
+
+        public EntityReference target() {
+            return target;
+        }
+
+
+        public int depth() {
+            return depth;
+        }
+    }
+
+
+    // -- HELPERS ---
+
+    private List<FlowHop> mkPath(int[] viaEdge, int sourceNode, int targetNode) {
+        LinkedList<Integer> edges = new LinkedList<>();
+        int node = targetNode;
+        while (node != sourceNode) {
+            int edge = viaEdge[node];
+            edges.addFirst(edge);
+            node = edgeSources[edge];
+        }
+
+        List<FlowHop> path = new ArrayList<>(edges.size());
+        int depth = 1;
+        for (Integer edge : edges) {
+            path.add(mkHop(edge, depth++));
+        }
+        return path;
+    }
+
+
+    private FlowHop mkHop(int edge, int depth) {
+        return new FlowHop(
+                edgeFlowIds[edge],
+                toRef(edgeSources[edge]),
+                toRef(edgeTargets[edge]),
+                depth);
+    }
+
+
+    private EntityReference toRef(int node) {
+        return mkRef(nodeKinds[node], nodeIds[node]);
+    }
+
+
+    private boolean isTraversable(int edge, BitSet allowedEdges) {
+        return ! removedEdges.get(edge)
+                && (allowedEdges == null || allowedEdges.get(edge));
+    }
+
+
+    /**
+     * @return null if no data type restriction applies
+     */
+    private BitSet mkAllowedEdges(Set<Long> dataTypeIds) {
+        if (dataTypeIds == null || dataTypeIds.isEmpty()) {
+            return null;
+        }
+
+        BitSet allowed = new BitSet(edgeCount);
+        dataTypeIds
+                .stream()
+                .map(edgesByDataType::get)
+                .filter(Objects::nonNull)
+                .forEach(allowed::or);
+        return allowed;
+    }
+
+
+    private Integer findNode(EntityReference ref) {
+        Map<Long, Integer> indexesForKind = nodeIndexes.get(ref.kind());
+        return indexesForKind == null
+                ? null
+                : indexesForKind.get(ref.id());
+    }
+
+
+    private int getOrCreateNode(EntityReference ref) {
+        Integer existing = findNode(ref);
+        if (existing != null) {
+            return existing;
+        }
+
+        if (nodeCount == nodeIds.length) {
+            int capacity = nodeCount * 2;
+            nodeKinds = Arrays.copyOf(nodeKinds, capacity);
+            nodeIds = Arrays.copyOf(nodeIds, capacity);
+            outEdges = Arrays.copyOf(outEdges, capacity);
+            outDegrees = Arrays.copyOf(outDegrees, capacity);
+            inEdges = Arrays.copyOf(inEdges, capacity);
+            inDegrees = Arrays.copyOf(inDegrees, capacity);
+        }
+
+        int node = nodeCount++;
+        nodeKinds[node] = ref.kind();
+        nodeIds[node] = ref.id();
+        outEdges[node] = NO_EDGES;
+        inEdges[node] = NO_EDGES;
+
+        nodeIndexes
+                .computeIfAbsent(ref.kind(), k -> new HashMap<>())
+                .put(ref.id(), node);
+
+        return node;
+    }
+
+
+    private int mkEdge(long flowId, int sourceNode, int targetNode) {
+        if (edgeCount == edgeFlowIds.length) {
+            int capacity = edgeCount * 2;
+            edgeFlowIds = Arrays.copyOf(edgeFlowIds, capacity);
+            edgeSources = Arrays.copyOf(edgeSources, capacity);
+            edgeTargets = Arrays.copyOf(edgeTargets, capacity);
+        }
+
+        int edge = edgeCount++;
+        edgeFlowIds[edge] = flowId;
+        edgeSources[edge] = sourceNode;
+        edgeTargets[edge] = targetNode;
+        edgeIndexes.put(flowId, edge);
+
+        outEdges[sourceNode] = append(outEdges[sourceNode], outDegrees[sourceNode]++, edge);
+        inEdges[targetNode] = append(inEdges[targetNode], inDegrees[targetNode]++, edge);
+
+        return edge;
+    }
+
+
+    private static int[] append(int[] edges, int size, int edge) {
+        int[] result = size < edges.length
+                ? edges
+                : Arrays.copyOf(edges, Math.max(4, size * 2));
+        result[size] = edge;
+        return result;
+    }
+
+}
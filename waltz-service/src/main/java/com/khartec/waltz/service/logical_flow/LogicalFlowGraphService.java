@@ -0,0 +1,334 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.khartec.waltz.service.logical_flow;
+
+import com.khartec.waltz.data.EntityReferenceNameResolver;
+import com.khartec.waltz.data.logical_flow.LogicalFlowGraphDao;
+import com.khartec.waltz.model.EntityReference;
+import com.khartec.waltz.model.logical_flow.ImmutableLogicalFlowGraphLink;
+import com.khartec.waltz.model.logical_flow.LogicalFlow;
+import com.khartec.waltz.model.logical_flow.LogicalFlowGraphLink;
+import com.khartec.waltz.service.AfterCommitListener;
+import com.khartec.waltz.service.logical_flow.LogicalFlowGraph.Direction;
+import com.khartec.waltz.service.logical_flow.LogicalFlowGraph.FlowHop;
+import org.jooq.lambda.tuple.Tuple2;
+import org.jooq.lambda.tuple.Tuple3;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static java.util.Collections.emptyList;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
+
+
+/**
+ * Answers lineage and routing questions about the logical flow network
+ * using an in-memory {@link LogicalFlowGraph}.
+ *
+ * The graph is loaded on first use and then kept current by the
+ * <code>LogicalFlowService</code> as flows are added, removed and restored,
+ * and by the <code>LogicalFlowDecoratorService</code> as data types are
+ * added and removed.  Changes notified within a transaction are only
+ * applied once it commits.  Bulk changes made within Waltz (orphan cleanup, data
+ * type ripples) trigger a rebuild.  It is also periodically rebuilt from the
+ * database to pick up changes made by other means (e.g. bulk loads).
+ */
+@Service
+public class LogicalFlowGraphService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LogicalFlowGraphService.class);
+
+    public static final int MAX_DEPTH = 10;
+    public static final int MAX_LINKS = 10_000;
+
+    private final LogicalFlowGraphDao logicalFlowGraphDao;
+    private final EntityReferenceNameResolver nameResolver;
+    private final AfterCommitListener afterCommitListener;
+
+    private final Object rebuildLock = new Object();
+    private volatile LogicalFlowGraph graph = null;
+
+    // updates received whilst a rebuild is in progress, replayed onto the new graph
+    private List<Consumer<LogicalFlowGraph>> pendingUpdates = null;
+
+
+    @Autowired
+    public LogicalFlowGraphService(LogicalFlowGraphDao logicalFlowGraphDao,
+                                   EntityReferenceNameResolver nameResolver,
+                                   AfterCommitListener afterCommitListener) {
+        checkNotNull(logicalFlowGraphDao, "logicalFlowGraphDao cannot be null");
+        checkNotNull(nameResolver, "nameResolver cannot be null");
+        checkNotNull(afterCommitListener, "afterCommitListener cannot be null");
+
+        this.logicalFlowGraphDao = logicalFlowGraphDao;
+        this.nameResolver = nameResolver;
+        this.afterCommitListener = afterCommitListener;
+    }
+
+
+    public List<LogicalFlowGraphLink> findUpstream(EntityReference ref,
+                                                   int depth,
+                                                   Set<Long> dataTypeIds,
+                                                   int limit) {
+        return findLineage(ref, Direction.UPSTREAM, depth, dataTypeIds, limit);
+    }
+
+
+    public List<LogicalFlowGraphLink> findDownstream(EntityReference ref,
+                                                     int depth,
+                                                     Set<Long> dataTypeIds,
+                                                     int limit) {
+        return findLineage(ref, Direction.DOWNSTREAM, depth, dataTypeIds, limit);
+    }
+
+
+    /**
+     * @return the flows forming the route with fewest hops from source to
+     * target, empty if there is no such route within <code>depth</code> hops
+     */
+    public List<LogicalFlowGraphLink> findRoute(EntityReference source,
+                                                EntityReference target,
+                                                int depth,
+                                                Set<Long> dataTypeIds) {
+        checkNotNull(source, "source cannot be null");
+        checkNotNull(target, "target cannot be null");
+
+        List<FlowHop> hops = getGraph().findShortestPath(
+                source,
+                target,
+                bound(depth, MAX_DEPTH),
+                dataTypeIds);
+
+        return toLinks(hops);
+    }
+
+
+    public void onFlowsAdded(Collection<LogicalFlow> flows) {
+        checkNotNull(flows, "flows cannot be null");
+        flows.forEach(f -> onFlowAdded(f, emptyList()));
+    }
+
+
+    public void onFlowAdded(LogicalFlow flow, Collection<Long> dataTypeIds) {
+        checkNotNull(flow, "flow cannot be null");
+        checkNotNull(dataTypeIds, "dataTypeIds cannot be null");
+        List<Long> dataTypeIdsCopy = new ArrayList<>(dataTypeIds);
+        flow.id().ifPresent(flowId -> update(g -> g.addFlow(
+                flowId,
+                flow.source(),
+                flow.target(),
+                dataTypeIdsCopy)));
+    }
+
+
+    public void onDataTypesAdded(long flowId, Collection<Long> dataTypeIds) {
+        checkNotNull(dataTypeIds, "dataTypeIds cannot be null");
+        List<Long> dataTypeIdsCopy = new ArrayList<>(dataTypeIds);
+        update(g -> dataTypeIdsCopy.forEach(dt -> g.addDataType(flowId, dt)));
+    }
+
+
+    public void onDataTypesRemoved(long flowId, Collection<Long> dataTypeIds) {
+        checkNotNull(dataTypeIds, "dataTypeIds cannot be null");
+        List<Long> dataTypeIdsCopy = new ArrayList<>(dataTypeIds);
+        update(g -> dataTypeIdsCopy.forEach(dt -> g.removeDataType(flowId, dt)));
+    }
+
+
+    public void onFlowRemoved(long flowId) {
+        update(g -> g.removeFlow(flowId));
+    }
+
+
+    /**
+     * Reloads the graph from the database (if it has been loaded), used
+     * periodically and after bulk changes which cannot be applied
+     * incrementally.  When called within a transaction the reload happens
+     * once it commits.
+     */
+    @Scheduled(
+            initialDelayString = "${waltz.logical.flow.graph.rebuild.interval:3600000}",
+            fixedDelayString = "${waltz.logical.flow.graph.rebuild.interval:3600000}")
+    public void rebuild() {
+        afterCommitListener.runAfterCommit(this::reload);
+    }
+
+
+    // -- HELPERS ---
+
+    private void reload() {
+        if (graph == null) {
+            // not used yet, will be loaded on demand
+            return;
+        }
+
+        try {
+            loadGraph();
+        } catch (Exception e) {
+            LOG.error("Failed to rebuild logical flow graph", e);
+        }
+    }
+
+
+    private List<LogicalFlowGraphLink> findLineage(EntityReference ref,
+                                                   Direction direction,
+                                                   int depth,
+                                                   Set<Long> dataTypeIds,
+                                                   int limit) {
+        checkNotNull(ref, "ref cannot be null");
+
+        List<FlowHop> hops = getGraph().traverse(
+                ref,
+                direction,
+                bound(depth, MAX_DEPTH),
+                dataTypeIds,
+                bound(limit, MAX_LINKS));
+
+        return toLinks(hops);
+    }
+
+
+    private List<LogicalFlowGraphLink> toLinks(List<FlowHop> hops) {
+        List<EntityReference> refs = hops
+                .stream()
+                .flatMap(h -> Stream.of(h.source(), h.target()))
+                .distinct()
+                .collect(toList());
+
+        return toLinks(hops, nameResolver.resolve(refs));
+    }
+
+
+    /**
+     * @param namedRefs  references (with names) to the entities of the hops
+     * @return a link per hop, named where a named reference is available
+     */
+    static List<LogicalFlowGraphLink> toLinks(List<FlowHop> hops, Collection<EntityReference> namedRefs) {
+        Map<EntityReference, EntityReference> namedRefsByKey = namedRefs
+                .stream()
+                .collect(toMap(
+                        r -> EntityReference.mkRef(r.kind(), r.id()),
+                        r -> r,
+                        (a, b) -> a));
+
+        return hops
+                .stream()
+                .map(h -> ImmutableLogicalFlowGraphLink.builder()
+                        .logicalFlowId(h.flowId())
+                        .source(namedRefsByKey.getOrDefault(h.source(), h.source()))
+                        .target(namedRefsByKey.getOrDefault(h.target(), h.target()))
+                        .depth(h.depth())
+                        .build())
+                .collect(toList());
+    }
+
+
+    private LogicalFlowGraph getGraph() {
+        LogicalFlowGraph current = graph;
+        if (current != null) {
+            return current;
+        }
+
+        synchronized (rebuildLock) {
+            return graph == null
+                    ? loadGraph()
+                    : graph;
+        }
+    }
+
+
+    private LogicalFlowGraph loadGraph() {
+        synchronized (rebuildLock) {
+            synchronized (this) {
+                pendingUpdates = new ArrayList<>();
+            }
+
+            try {
+                long start = System.currentTimeMillis();
+
+                LogicalFlowGraph newGraph = mkGraph(
+                        logicalFlowGraphDao.findActiveFlows(),
+                        logicalFlowGraphDao.findActiveFlowDataTypes());
+
+                synchronized (this) {
+                    pendingUpdates.forEach(u -> u.accept(newGraph));
+                    graph = newGraph;
+                }
+
+                LOG.info(
+                        "Loaded logical flow graph with {} flows in {}ms",
+                        newGraph.flowCount(),
+                        System.currentTimeMillis() - start);
+
+                return newGraph;
+            } finally {
+                synchronized (this) {
+                    pendingUpdates = null;
+                }
+            }
+        }
+    }
+
+
+    /**
+     * @param flows  (flow id, source, target) of each flow
+     * @param flowDataTypes  (flow id, data type id) of each flow decoration
+     */
+    static LogicalFlowGraph mkGraph(Collection<Tuple3<Long, EntityReference, EntityReference>> flows,
+                                    Collection<Tuple2<Long, Long>> flowDataTypes) {
+        LogicalFlowGraph graph = new LogicalFlowGraph();
+        flows.forEach(t -> graph.addFlow(t.v1, t.v2, t.v3, emptyList()));
+        flowDataTypes.forEach(t -> graph.addDataType(t.v1, t.v2));
+        return graph;
+    }
+
+
+    /**
+     * Changes made within a transaction are held back until it commits,
+     * so readers never see flows which may yet be rolled back
+     */
+    private void update(Consumer<LogicalFlowGraph> update) {
+        afterCommitListener.runAfterCommit(() -> applyUpdate(update));
+    }
+
+
+    private synchronized void applyUpdate(Consumer<LogicalFlowGraph> update) {
+        if (graph != null) {
+            update.accept(graph);
+        }
+        if (pendingUpdates != null) {
+            pendingUpdates.add(update);
+        }
+    }
+
+
+    private static int bound(int value, int max) {
+        return Math.max(1, Math.min(value, max));
+    }
+
+}
@@ -78,6 +78,7 @@ public class LogicalFlowService {
     private final LogicalFlowIdSelectorFactory logicalFlowIdSelectorFactory;
     private final LogicalFlowStatsDao logicalFlowStatsDao;
     private final LogicalFlowDecoratorDao logicalFlowDecoratorDao;
+    private final LogicalFlowGraphService logicalFlowGraphService;
 
 
     @Autowired
@@ -88,6 +89,7 @@ public class LogicalFlowService {
                               DBExecutorPoolInterface dbExecutorPool,
                               LogicalFlowDecoratorDao logicalFlowDecoratorDao,
                               LogicalFlowDao logicalFlowDao,
+                              LogicalFlowGraphService logicalFlowGraphService,
                               LogicalFlowIdSelectorFactory logicalFlowIdSelectorFactory,
                               LogicalFlowStatsDao logicalFlowStatsDao) {
         checkNotNull(appIdSelectorFactory, "appIdSelectorFactory cannot be null");
@@ -97,6 +99,7 @@ public class LogicalFlowService {
         checkNotNull(dataTypeUsageService, "dataTypeUsageService cannot be null");
         checkNotNull(logicalFlowDao, "logicalFlowDao must not be null");
         checkNotNull(logicalFlowDecoratorDao, "logicalFlowDecoratorDao cannot be null");
+        checkNotNull(logicalFlowGraphService, "logicalFlowGraphService cannot be null");
         checkNotNull(logicalFlowIdSelectorFactory, "logicalFlowIdSelectorFactory cannot be null");
         checkNotNull(logicalFlowStatsDao, "logicalFlowStatsDao cannot be null");
 
@@ -107,6 +110,7 @@ public class LogicalFlowService {
         this.dbExecutorPool = dbExecutorPool;
         this.logicalFlowDao = logicalFlowDao;
         this.logicalFlowDecoratorDao = logicalFlowDecoratorDao;
+        this.logicalFlowGraphService = logicalFlowGraphService;
         this.logicalFlowIdSelectorFactory = logicalFlowIdSelectorFactory;
         this.logicalFlowStatsDao = logicalFlowStatsDao;
     }
@@ -172,14 +176,18 @@ public class LogicalFlowService {
                 .build();
 
         LogicalFlow logicalFlow = logicalFlowDao.addFlow(flowToAdd);
-        attemptToAddUnknownDecoration(logicalFlow, username);
+        List<Long> dataTypeIds = attemptToAddUnknownDecoration(logicalFlow, username);
+        logicalFlowGraphService.onFlowAdded(logicalFlow, dataTypeIds);
 
         return logicalFlow;
     }
 
 
-    private void attemptToAddUnknownDecoration(LogicalFlow logicalFlow, String username) {
-        dataTypeService
+    /**
+     * @return the ids of the data types the flow was decorated with
+     */
+    private List<Long> attemptToAddUnknownDecoration(LogicalFlow logicalFlow, String username) {
+        return dataTypeService
                 .getUnknownDataType()
                 .flatMap(IdProvider::id)
                 .flatMap(unknownDataTypeId -> logicalFlow.id()
@@ -193,7 +201,11 @@ public class LogicalFlowService {
                         .lastUpdatedBy(username)
                         .rating(AuthoritativenessRating.DISCOURAGED)
                         .build())
-                .map(decoration -> logicalFlowDecoratorDao.addDecorators(newArrayList(decoration)));
+                .map(decoration -> {
+                    logicalFlowDecoratorDao.addDecorators(newArrayList(decoration));
+                    return newArrayList(decoration.decoratorEntity().id());
+                })
+                .orElse(newArrayList());
     }
 
 
@@ -235,7 +247,10 @@ public class LogicalFlowService {
                         .build())
                 .collect(toList());
 
-        return logicalFlowDao.addFlows(flowsToAdd, username);
+        List<LogicalFlow> addedFlows = logicalFlowDao.addFlows(flowsToAdd, username);
+        logicalFlowGraphService.onFlowsAdded(addedFlows);
+
+        return addedFlows;
     }
 
 
@@ -263,6 +278,7 @@ public class LogicalFlowService {
         LogicalFlow logicalFlow = logicalFlowDao.getByFlowId(flowId);
 
         int deleted = logicalFlowDao.removeFlow(flowId, username);
+        logicalFlowGraphService.onFlowRemoved(flowId);
 
         Set<EntityReference> affectedEntityRefs = SetUtilities.fromArray(logicalFlow.source(), logicalFlow.target());
 
@@ -273,7 +289,7 @@ public class LogicalFlowService {
                 username,
                 Operation.REMOVE);
 
-        dataTypeUsageService.recalculateForApplications(affectedEntityRefs);
+        dataTypeUsageService.enqueueRecalculation(affectedEntityRefs);
 
         return deleted;
     }
@@ -346,17 +362,37 @@ public class LogicalFlowService {
 
 
     public boolean restoreFlow(long logicalFlowId, String username) {
-        return logicalFlowDao.restoreFlow(logicalFlowId, username);
+        boolean restored = logicalFlowDao.restoreFlow(logicalFlowId, username);
+        if (restored) {
+            List<Long> dataTypeIds = logicalFlowDecoratorDao
+                    .findByFlowIdsAndKind(newArrayList(logicalFlowId), DATA_TYPE)
+                    .stream()
+                    .map(d -> d.decoratorEntity().id())
+                    .collect(toList());
+
+            logicalFlowGraphService.onFlowAdded(
+                    logicalFlowDao.getByFlowId(logicalFlowId),
+                    dataTypeIds);
+        }
+        return restored;
     }
 
 
     public Integer cleanupOrphans() {
-        return logicalFlowDao.cleanupOrphans();
+        int cleaned = logicalFlowDao.cleanupOrphans();
+        if (cleaned > 0) {
+            logicalFlowGraphService.rebuild();
+        }
+        return cleaned;
     }
 
 
     public int cleanupSelfReferencingFlows() {
-        return logicalFlowDao.cleanupSelfReferencingFlows();
+        int cleaned = logicalFlowDao.cleanupSelfReferencingFlows();
+        if (cleaned > 0) {
+            logicalFlowGraphService.rebuild();
+        }
+        return cleaned;
     }
 
 
@@ -16,7 +16,6 @@
  * You should have received a copy of the GNU Lesser General Public License
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
-
 package com.khartec.waltz.service.person_hierarchy;
 
 import com.khartec.waltz.common.ListUtilities;
@@ -27,27 +26,41 @@ import com.khartec.waltz.common.hierarchy.Node;
 import com.khartec.waltz.data.person.PersonDao;
 import com.khartec.waltz.model.person.Person;
 import com.khartec.waltz.schema.tables.records.PersonHierarchyRecord;
+import com.khartec.waltz.schema.tables.records.PersonHierarchySnapshotRecord;
 import org.jooq.DSLContext;
+import org.jooq.Query;
 import org.jooq.Record1;
 import org.jooq.SelectConditionStep;
 import org.jooq.impl.DSL;
+import org.jooq.lambda.tuple.Tuple2;
+import org.jooq.lambda.tuple.Tuple3;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.util.LinkedList;
-import java.util.List;
+import java.util.*;
 import java.util.stream.Collectors;
 
+import static com.khartec.waltz.common.ListUtilities.partition;
 import static com.khartec.waltz.schema.tables.PersonHierarchy.PERSON_HIERARCHY;
+import static com.khartec.waltz.schema.tables.PersonHierarchySnapshot.PERSON_HIERARCHY_SNAPSHOT;
 import static java.util.stream.Collectors.toList;
+import static org.jooq.lambda.tuple.Tuple.tuple;
 
 @Service
 public class PersonHierarchyService {
 
     private static final Logger LOG = LoggerFactory.getLogger(PersonHierarchyService.class);
 
+    /**
+     * If more than this proportion of people are affected by manager changes
+     * an incremental build is abandoned in favour of a full build
+     */
+    private static final double INCREMENTAL_BUILD_THRESHOLD = 0.25;
+
+    private static final int BATCH_SIZE = 1000;
+
     private final PersonDao personDao;
     private final DSLContext dsl;
 
@@ -65,20 +78,103 @@ public class PersonHierarchyService {
 
         Forest<Person, String> forest = toForest(all);
 
-        List<PersonHierarchyRecord> records = toHierarchyRecords(forest);
+        List<PersonHierarchyRecord> records = toHierarchyRecords(mkLevelsByKey(forest.getAllNodes().values()));
+        List<PersonHierarchySnapshotRecord> snapshotRecords = toSnapshotRecords(all);
 
-        return dsl.transactionResult(configuration -> {
-            DSLContext txDsl = DSL.using(configuration);
-            txDsl.deleteFrom(PERSON_HIERARCHY).execute();
-            return txDsl.batchStore(records).execute();
-        });
+        return replaceAll(records, snapshotRecords);
+    }
+
+
+    /**
+     * Incrementally updates the person hierarchy.  People whose manager has
+     * changed (or who have been added or removed) since the last build are
+     * found by comparing against a snapshot taken at that build.  Hierarchy
+     * rows are only recomputed for the subtrees beneath those people, in
+     * both their old and new positions, and only the differences are
+     * written.
+     *
+     * Falls back to a full build if there is no snapshot or if a large
+     * proportion of people are affected.
+     *
+     * @return number of hierarchy rows removed, added or updated
+     */
+    public int buildChanged() {
+        List<Person> all = personDao.all();
+        Map<String, String> previousManagers = fetchSnapshot();
+
+        if (previousManagers.isEmpty()) {
+            LOG.info("No person hierarchy snapshot found, performing full build");
+            return build().length;
+        }
+
+        Map<String, String> currentManagers = toManagersByEmployeeId(all);
+        Set<String> changedIds = findChangedEmployeeIds(previousManagers, currentManagers);
+
+        if (changedIds.isEmpty()) {
+            LOG.info("No manager changes detected, person hierarchy is up to date");
+            return 0;
+        }
+
+        Forest<Person, String> forest = toForest(all);
+        Map<String, Node<Person, String>> allNodes = forest.getAllNodes();
+
+        Set<String> affectedIds = findAffectedIds(changedIds, allNodes, findStoredDescendantIds(changedIds));
+
+        if (affectedIds.size() > allNodes.size() * INCREMENTAL_BUILD_THRESHOLD) {
+            LOG.info("Bulk manager change detected ({} of {} people affected), performing full build",
+                    affectedIds.size(),
+                    allNodes.size());
+            return build().length;
+        }
+
+        List<Node<Person, String>> affectedNodes = affectedIds
+                .stream()
+                .map(allNodes::get)
+                .filter(Objects::nonNull)
+                .collect(toList());
+
+        Tuple3<Set<Tuple2<String, String>>, Map<Tuple2<String, String>, Integer>, Map<Tuple2<String, String>, Integer>> changes = diffLevels(
+                toLevelsByKey(findStoredHierarchyRecords(affectedIds)),
+                mkLevelsByKey(affectedNodes));
+
+        Set<Tuple2<String, String>> deletes = changes.v1;
+        Map<Tuple2<String, String>, Integer> updates = changes.v2;
+        List<PersonHierarchyRecord> inserts = toHierarchyRecords(changes.v3);
+
+        List<PersonHierarchySnapshotRecord> snapshotRecords = toSnapshotRecords(all
+                .stream()
+                .filter(p -> changedIds.contains(p.employeeId()))
+                .collect(toList()));
+
+        LOG.info("Applying person hierarchy changes for {} changed and {} affected people, removing: #{}, adding: #{}, updating: #{}",
+                changedIds.size(),
+                affectedIds.size(),
+                deletes.size(),
+                inserts.size(),
+                updates.size());
+
+        applyChanges(deletes, updates, inserts, changedIds, snapshotRecords);
+
+        return deletes.size() + inserts.size() + updates.size();
+    }
+
+
+    private static List<PersonHierarchyRecord> toHierarchyRecords(Map<Tuple2<String, String>, Integer> levelsByKey) {
+        return levelsByKey
+                .entrySet()
+                .stream()
+                .map(e -> new PersonHierarchyRecord(e.getKey().v1, e.getKey().v2, e.getValue()))
+                .collect(toList());
     }
 
 
-    private List<PersonHierarchyRecord> toHierarchyRecords(Forest<Person, String> forest) {
-        List<PersonHierarchyRecord> records = new LinkedList<>();
+    /**
+     * @return level of each (manager id, employee id) pair above the given nodes
+     */
+    static Map<Tuple2<String, String>, Integer> mkLevelsByKey(Collection<Node<Person, String>> nodes) {
+        Map<Tuple2<String, String>, Integer> levelsByKey = new HashMap<>();
 
-        for (Node<Person, String> node : forest.getAllNodes().values()) {
+        for (Node<Person, String> node : nodes) {
             List<Person> ancestors =
                     ListUtilities.reverse(
                             HierarchyUtilities.parents(node)
@@ -89,15 +185,14 @@ public class PersonHierarchyService {
             for (int i = 0; i < ancestors.size(); i++) {
                 String ancestorId = ancestors.get(i).employeeId();
                 String selfId = node.getData().employeeId();
-                PersonHierarchyRecord record = new PersonHierarchyRecord(ancestorId, selfId, i + 1);
-                records.add(record);
+                levelsByKey.put(tuple(ancestorId, selfId), i + 1);
             }
         }
-        return records;
+        return levelsByKey;
     }
 
 
-    private Forest<Person, String> toForest(List<Person> all) {
+    static Forest<Person, String> toForest(List<Person> all) {
         List<FlatNode<Person, String>> allFlatNodes = all.stream()
                 .map(p -> new FlatNode<>(p.employeeId(), p.managerEmployeeId(), p))
                 .collect(toList());
@@ -119,4 +214,201 @@ public class PersonHierarchyService {
 
         return dsl.fetchCount(rootSelector);
     }
+
+
+    // -- HELPERS ---
+
+    private int[] replaceAll(List<PersonHierarchyRecord> records,
+                             List<PersonHierarchySnapshotRecord> snapshotRecords) {
+        return dsl.transactionResult(configuration -> {
+            DSLContext txDsl = DSL.using(configuration);
+            txDsl.deleteFrom(PERSON_HIERARCHY).execute();
+            txDsl.deleteFrom(PERSON_HIERARCHY_SNAPSHOT).execute();
+            partition(snapshotRecords, BATCH_SIZE)
+                    .forEach(batch -> txDsl.batchInsert(batch).execute());
+            return txDsl.batchStore(records).execute();
+        });
+    }
+
+
+    /**
+     * @param deletes  (manager id, employee id) rows to remove
+     * @param updates  (manager id, employee id) rows to update, with their new level
+     * @param inserts  rows to add
+     * @param changedIds  people whose snapshot entries are replaced by <code>snapshotRecords</code>
+     */
+    private void applyChanges(Collection<Tuple2<String, String>> deletes,
+                              Map<Tuple2<String, String>, Integer> updates,
+                              List<PersonHierarchyRecord> inserts,
+                              Set<String> changedIds,
+                              List<PersonHierarchySnapshotRecord> snapshotRecords) {
+        List<Query> deleteQueries = deletes
+                .stream()
+                .map(k -> DSL
+                        .deleteFrom(PERSON_HIERARCHY)
+                        .where(PERSON_HIERARCHY.MANAGER_ID.eq(k.v1))
+                        .and(PERSON_HIERARCHY.EMPLOYEE_ID.eq(k.v2)))
+                .collect(toList());
+
+        List<Query> updateQueries = updates
+                .entrySet()
+                .stream()
+                .map(e -> DSL
+                        .update(PERSON_HIERARCHY)
+                        .set(PERSON_HIERARCHY.LEVEL, e.getValue())
+                        .where(PERSON_HIERARCHY.MANAGER_ID.eq(e.getKey().v1))
+                        .and(PERSON_HIERARCHY.EMPLOYEE_ID.eq(e.getKey().v2)))
+                .collect(toList());
+
+        dsl.transaction(configuration -> {
+            DSLContext txDsl = DSL.using(configuration);
+            partition(deleteQueries, BATCH_SIZE)
+                    .forEach(batch -> txDsl.batch(batch).execute());
+            partition(updateQueries, BATCH_SIZE)
+                    .forEach(batch -> txDsl.batch(batch).execute());
+            partition(inserts, BATCH_SIZE)
+                    .forEach(batch -> txDsl.batchInsert(batch).execute());
+
+            partition(new ArrayList<>(changedIds), BATCH_SIZE)
+                    .forEach(batch -> txDsl
+                            .deleteFrom(PERSON_HIERARCHY_SNAPSHOT)
+                            .where(PERSON_HIERARCHY_SNAPSHOT.EMPLOYEE_ID.in(batch))
+                            .execute());
+            partition(snapshotRecords, BATCH_SIZE)
+                    .forEach(batch -> txDsl.batchInsert(batch).execute());
+        });
+    }
+
+
+    private Map<String, String> fetchSnapshot() {
+        // manager ids may be null so cannot use Collectors.toMap
+        Map<String, String> managersByEmployeeId = new HashMap<>();
+        dsl.selectFrom(PERSON_HIERARCHY_SNAPSHOT)
+                .fetch()
+                .forEach(r -> managersByEmployeeId.put(r.getEmployeeId(), r.getManagerEmployeeId()));
+        return managersByEmployeeId;
+    }
+
+
+    private Set<String> findStoredDescendantIds(Set<String> employeeIds) {
+        return partition(new ArrayList<>(employeeIds), BATCH_SIZE)
+                .stream()
+                .flatMap(batch -> dsl
+                        .selectDistinct(PERSON_HIERARCHY.EMPLOYEE_ID)
+                        .from(PERSON_HIERARCHY)
+                        .where(PERSON_HIERARCHY.MANAGER_ID.in(batch))
+                        .fetch(PERSON_HIERARCHY.EMPLOYEE_ID)
+                        .stream())
+                .collect(Collectors.toSet());
+    }
+
+
+    private List<PersonHierarchyRecord> findStoredHierarchyRecords(Set<String> employeeIds) {
+        return partition(new ArrayList<>(employeeIds), BATCH_SIZE)
+                .stream()
+                .flatMap(batch -> dsl
+                        .selectFrom(PERSON_HIERARCHY)
+                        .where(PERSON_HIERARCHY.EMPLOYEE_ID.in(batch))
+                        .fetch()
+                        .stream())
+                .collect(toList());
+    }
+
+
+    static Map<String, String> toManagersByEmployeeId(List<Person> people) {
+        Map<String, String> managersByEmployeeId = new HashMap<>();
+        people.forEach(p -> managersByEmployeeId.put(p.employeeId(), p.managerEmployeeId().orElse(null)));
+        return managersByEmployeeId;
+    }
+
+
+    /**
+     * @return ids of people who have been added, removed or have a different manager
+     */
+    static Set<String> findChangedEmployeeIds(Map<String, String> previousManagers,
+                                              Map<String, String> currentManagers) {
+        Set<String> changedIds = new HashSet<>();
+
+        currentManagers.forEach((employeeId, managerId) -> {
+            if (! previousManagers.containsKey(employeeId)
+                    || ! Objects.equals(previousManagers.get(employeeId), managerId)) {
+                changedIds.add(employeeId);
+            }
+        });
+
+        previousManagers
+                .keySet()
+                .stream()
+                .filter(employeeId -> ! currentManagers.containsKey(employeeId))
+                .forEach(changedIds::add);
+
+        return changedIds;
+    }
+
+
+    /**
+     * People affected by a change are those who changed along with their
+     * descendants, both in their new position (via the forest) and in their
+     * old position (via the stored hierarchy)
+     */
+    static Set<String> findAffectedIds(Set<String> changedIds,
+                                       Map<String, Node<Person, String>> allNodes,
+                                       Set<String> storedDescendantIds) {
+        Set<String> affectedIds = new HashSet<>(changedIds);
+        changedIds
+                .stream()
+                .map(allNodes::get)
+                .filter(Objects::nonNull)
+                .flatMap(n -> HierarchyUtilities.descendants(n).stream())
+                .forEach(n -> affectedIds.add(n.getId()));
+        affectedIds.addAll(storedDescendantIds);
+        return affectedIds;
+    }
+
+
+    /**
+     * @return (rows to remove, rows to update with their new level, rows to add)
+     */
+    static Tuple3<Set<Tuple2<String, String>>, Map<Tuple2<String, String>, Integer>, Map<Tuple2<String, String>, Integer>> diffLevels(
+            Map<Tuple2<String, String>, Integer> existing,
+            Map<Tuple2<String, String>, Integer> required) {
+
+        Set<Tuple2<String, String>> deletes = existing
+                .keySet()
+                .stream()
+                .filter(k -> ! required.containsKey(k))
+                .collect(Collectors.toSet());
+
+        Map<Tuple2<String, String>, Integer> updates = required
+                .entrySet()
+                .stream()
+                .filter(e -> existing.containsKey(e.getKey()) && ! existing.get(e.getKey()).equals(e.getValue()))
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+
+        Map<Tuple2<String, String>, Integer> inserts = required
+                .entrySet()
+                .stream()
+                .filter(e -> ! existing.containsKey(e.getKey()))
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+
+        return tuple(deletes, updates, inserts);
+    }
+
+
+    private static Map<Tuple2<String, String>, Integer> toLevelsByKey(Collection<PersonHierarchyRecord> records) {
+        return records
+                .stream()
+                .collect(Collectors.toMap(
+                        r -> tuple(r.getManagerId(), r.getEmployeeId()),
+                        PersonHierarchyRecord::getLevel,
+                        (l1, l2) -> l1));
+    }
+
+
+    private static List<PersonHierarchySnapshotRecord> toSnapshotRecords(List<Person> people) {
+        return people
+                .stream()
+                .map(p -> new PersonHierarchySnapshotRecord(p.employeeId(), p.managerEmployeeId().orElse(null)))
+                .collect(toList());
+    }
 }
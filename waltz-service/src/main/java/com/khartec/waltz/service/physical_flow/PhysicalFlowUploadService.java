@@ -2,12 +2,12 @@ package com.khartec.waltz.service.physical_flow;
 
 import com.khartec.waltz.common.Aliases;
 import com.khartec.waltz.common.MapUtilities;
-import com.khartec.waltz.common.SetUtilities;
 import com.khartec.waltz.data.actor.ActorDao;
 import com.khartec.waltz.data.application.ApplicationDao;
 import com.khartec.waltz.data.data_type.DataTypeDao;
 import com.khartec.waltz.data.logical_flow.LogicalFlowDao;
 import com.khartec.waltz.data.physical_flow.PhysicalFlowDao;
+import com.khartec.waltz.data.physical_flow.PhysicalFlowUploadJobDao;
 import com.khartec.waltz.data.physical_specification.PhysicalSpecificationDao;
 import com.khartec.waltz.model.Criticality;
 import com.khartec.waltz.model.EntityKind;
@@ -16,45 +16,67 @@ import com.khartec.waltz.model.UserTimestamp;
 import com.khartec.waltz.model.actor.Actor;
 import com.khartec.waltz.model.application.Application;
 import com.khartec.waltz.model.command.CommandOutcome;
-import com.khartec.waltz.model.data_flow_decorator.LogicalFlowDecorator;
+import com.khartec.waltz.model.data_flow_decorator.ImmutableUpdateDataFlowDecoratorsAction;
+import com.khartec.waltz.model.data_flow_decorator.UpdateDataFlowDecoratorsAction;
 import com.khartec.waltz.model.datatype.DataType;
 import com.khartec.waltz.model.enum_value.EnumValueKind;
-import com.khartec.waltz.model.logical_flow.ImmutableLogicalFlow;
+import com.khartec.waltz.model.logical_flow.AddLogicalFlowCommand;
+import com.khartec.waltz.model.logical_flow.ImmutableAddLogicalFlowCommand;
 import com.khartec.waltz.model.logical_flow.LogicalFlow;
 import com.khartec.waltz.model.physical_flow.*;
 import com.khartec.waltz.model.physical_specification.DataFormatKind;
 import com.khartec.waltz.model.physical_specification.ImmutablePhysicalSpecification;
 import com.khartec.waltz.model.physical_specification.PhysicalSpecification;
-import com.khartec.waltz.model.physical_specification_data_type.PhysicalSpecificationDataType;
+import com.khartec.waltz.model.scheduled_job.JobLifecycleStatus;
 import com.khartec.waltz.service.data_flow_decorator.LogicalFlowDecoratorService;
 import com.khartec.waltz.service.enum_value.EnumValueAliasService;
+import com.khartec.waltz.service.logical_flow.LogicalFlowService;
 import com.khartec.waltz.service.physical_specification_data_type.PhysicalSpecDataTypeService;
+import org.jooq.DSLContext;
+import org.jooq.lambda.tuple.Tuple;
+import org.jooq.lambda.tuple.Tuple2;
+import org.jooq.lambda.tuple.Tuple3;
+import org.jooq.lambda.tuple.Tuple6;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Optional;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.Checks.checkTrue;
 import static com.khartec.waltz.common.DateTimeUtilities.nowUtc;
+import static com.khartec.waltz.common.ListUtilities.map;
+import static com.khartec.waltz.common.ListUtilities.partition;
 import static com.khartec.waltz.common.StringUtilities.isEmpty;
 import static com.khartec.waltz.common.StringUtilities.lower;
+import static com.khartec.waltz.model.EntityReference.mkRef;
 import static java.util.function.Function.identity;
-import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.*;
 
 
 @Service
 public class PhysicalFlowUploadService {
 
+    private static final Logger LOG = LoggerFactory.getLogger(PhysicalFlowUploadService.class);
+
+    /** rows resolved and created together, also bounds the size of IN lists and batches */
+    private static final int BATCH_SIZE = 1000;
+
     private final ActorDao actorDao;
     private final ApplicationDao applicationDao;
     private final DataTypeDao dataTypeDao;
     private final LogicalFlowDao logicalFlowDao;
     private final LogicalFlowDecoratorService logicalFlowDecoratorService;
+    private final LogicalFlowService logicalFlowService;
     private final PhysicalSpecDataTypeService physicalSpecDataTypeService;
     private final PhysicalFlowDao physicalFlowDao;
     private final PhysicalSpecificationDao physicalSpecificationDao;
@@ -62,34 +84,54 @@ public class PhysicalFlowUploadService {
 
     private final Pattern basisOffsetRegex = Pattern.compile("T?(?<offset>[\\+\\-]?\\d+)");
 
+    private final DSLContext dsl;
+    private final PhysicalFlowUploadJobDao uploadJobDao;
+    private final ExecutorService uploadExecutor;
+    private final int jobRetentionInMinutes;
 
-    public PhysicalFlowUploadService(ActorDao actorDao,
+
+    public PhysicalFlowUploadService(DSLContext dsl,
+                                     ActorDao actorDao,
                                      ApplicationDao applicationDao,
                                      DataTypeDao dataTypeDao,
                                      LogicalFlowDao logicalFlowDao,
                                      LogicalFlowDecoratorService logicalFlowDecoratorService,
+                                     LogicalFlowService logicalFlowService,
                                      PhysicalSpecDataTypeService physicalSpecDataTypeService,
                                      PhysicalFlowDao physicalFlowDao,
                                      PhysicalSpecificationDao physicalSpecificationDao,
-                                     EnumValueAliasService enumValueAliasService) {
+                                     EnumValueAliasService enumValueAliasService,
+                                     PhysicalFlowUploadJobDao uploadJobDao,
+                                     @Value("${waltz.physical.flow.upload.threads:1}") int uploadThreads,
+                                     @Value("${waltz.physical.flow.upload.job.retention:60}") int jobRetentionInMinutes) {
+        checkNotNull(dsl, "dsl cannot be null");
         checkNotNull(actorDao, "actorDao cannot be null");
         checkNotNull(applicationDao, "applicationDao cannot be null");
         checkNotNull(dataTypeDao, "dataTypeDao cannot be null");
         checkNotNull(logicalFlowDecoratorService, "logicalFlowDecoratorService cannot be null");
         checkNotNull(logicalFlowDao, "logicalFlowDao cannot be null");
+        checkNotNull(logicalFlowService, "logicalFlowService cannot be null");
         checkNotNull(physicalSpecDataTypeService, "physicalSpecDataTypeService cannot be null");
         checkNotNull(physicalFlowDao, "physicalFlowDao cannot be null");
         checkNotNull(physicalSpecificationDao, "physicalSpecificationDao cannot be null");
         checkNotNull(enumValueAliasService, "enumValueAliasService cannot be null");
+        checkNotNull(uploadJobDao, "uploadJobDao cannot be null");
+        checkTrue(uploadThreads > 0, "uploadThreads must be positive");
+        checkTrue(jobRetentionInMinutes > 0, "jobRetentionInMinutes must be positive");
+        this.dsl = dsl;
         this.actorDao = actorDao;
         this.applicationDao = applicationDao;
         this.dataTypeDao = dataTypeDao;
         this.logicalFlowDao = logicalFlowDao;
         this.logicalFlowDecoratorService = logicalFlowDecoratorService;
+        this.logicalFlowService = logicalFlowService;
         this.physicalSpecDataTypeService = physicalSpecDataTypeService;
         this.physicalFlowDao = physicalFlowDao;
         this.physicalSpecificationDao = physicalSpecificationDao;
         this.enumValueAliasService = enumValueAliasService;
+        this.uploadJobDao = uploadJobDao;
+        this.uploadExecutor = mkExecutorPool(uploadThreads);
+        this.jobRetentionInMinutes = jobRetentionInMinutes;
     }
 
 
@@ -121,9 +163,12 @@ public class PhysicalFlowUploadService {
             return parsedFlows;
         }
 
-        // no parse errors - check for duplicates
+        // no parse errors - check for duplicates, resolved in batches rather than row by row
+        Map<PhysicalFlowParsed, PhysicalFlow> existingFlows = physicalFlowDao.findByParsedFlows(
+                map(parsedFlows, f -> f.parsedFlow()));
+
         List<PhysicalFlowUploadCommandResponse> responses = parsedFlows.stream()
-                .map(f -> Optional.ofNullable(physicalFlowDao.getByParsedFlow(f.parsedFlow()))
+                .map(f -> Optional.ofNullable(existingFlows.get(f.parsedFlow()))
                     .map(m -> (PhysicalFlowUploadCommandResponse) ImmutablePhysicalFlowUploadCommandResponse
                             .copyOf(f)
                             .withEntityReference(m.entityReference()))
@@ -133,54 +178,53 @@ public class PhysicalFlowUploadService {
         return responses;
     }
 
-    
+
     public List<PhysicalFlowUploadCommandResponse> upload(String username,
                                                           List<PhysicalFlowUploadCommand> cmds) throws Exception {
-        checkNotNull(cmds, "cmds cannot be empty");
-
-        // load application and actor maps
-        List<PhysicalFlowUploadCommandResponse> validated = validate(cmds);
+        return upload(username, cmds, (stage, processed) -> {});
+    }
 
-        if(validated.stream().anyMatch(v -> v.outcome() == CommandOutcome.FAILURE)) {
-            throw new IllegalArgumentException("Cannot upload flows which contain parse errors, please validate");
-        }
 
-        List<PhysicalFlowUploadCommandResponse> newFlowCmds = validated.stream()
-                .filter(v -> v.outcome() == CommandOutcome.SUCCESS && v.entityReference() == null)
-                .collect(toList());
+    /**
+     * Queues the upload to run in the background, use {@link #getUploadJob(String, String)}
+     * to follow its progress and collect the results once it has finished.
+     * @param username  user performing the upload
+     * @param cmds  rows to upload
+     * @return the newly queued job
+     */
+    public PhysicalFlowUploadJob submitUpload(String username,
+                                              List<PhysicalFlowUploadCommand> cmds) {
+        checkNotNull(username, "username cannot be null");
+        checkNotNull(cmds, "cmds cannot be null");
+
+        removeExpiredJobs();
+
+        PhysicalFlowUploadJob job = ImmutablePhysicalFlowUploadJob.builder()
+                .id(UUID.randomUUID().toString())
+                .submittedBy(username)
+                .submittedAt(nowUtc())
+                .status(JobLifecycleStatus.RUNNABLE)
+                .stage("queued")
+                .totalCount(cmds.size())
+                .processedCount(0)
+                .build();
 
-        // create physical flow with ids from the above two
-        List<PhysicalFlowUploadCommandResponse> created = newFlowCmds.stream()
-                .map(v -> {
-                    if (!(v.outcome() == CommandOutcome.SUCCESS && v.entityReference() == null)) {
-                        return v;
-                    }
-
-                    PhysicalFlowParsed flow = v.parsedFlow();
-                    LogicalFlow logicalFlow = getOrCreateLogicalFlow(flow.source(), flow.target(), flow.dataType(), username);
-                    PhysicalSpecification specification = getOrCreatePhysicalSpec(flow, username);
-
-                    PhysicalFlow newFlow = ImmutablePhysicalFlow.builder()
-                            .logicalFlowId(logicalFlow.id().get())
-                            .specificationId(specification.id().get())
-                            .basisOffset(flow.basisOffset())
-                            .frequency(flow.frequency())
-                            .transport(flow.transport())
-                            .criticality(flow.criticality())
-                            .description(flow.description())
-                            .externalId(Optional.ofNullable(flow.externalId()))
-                            .lastUpdatedBy(username)
-                            .lastUpdatedAt(nowUtc())
-                            .build();
+        uploadJobDao.create(job);
+        uploadExecutor.submit(() -> runUploadJob(job.id(), username, cmds));
 
-                    long id = getOrCreatePhysicalFlow(newFlow);
+        return job;
+    }
 
-                    return ImmutablePhysicalFlowUploadCommandResponse.copyOf(v)
-                            .withEntityReference(EntityReference.mkRef(EntityKind.PHYSICAL_FLOW, id));
-                })
-                .collect(toList());
 
-        return created;
+    /**
+     * @param jobId  identifier returned by {@link #submitUpload(String, List)}
+     * @param username  user requesting the job, only the submitter may see it
+     * @return the current state of the job or null if it is unknown, has expired or belongs to another user
+     */
+    public PhysicalFlowUploadJob getUploadJob(String jobId, String username) {
+        checkNotNull(jobId, "jobId cannot be null");
+        checkNotNull(username, "username cannot be null");
+        return uploadJobDao.getByIdAndSubmitter(jobId, username);
     }
 
 
@@ -349,91 +393,326 @@ public class PhysicalFlowUploadService {
     }
 
 
-    private LogicalFlow getOrCreateLogicalFlow(EntityReference source,
-                                               EntityReference target,
-                                               EntityReference dataType,
-                                               String username) {
 
-        LogicalFlow flow = logicalFlowDao.getBySourceAndTarget(source, target);
 
-        if (flow == null) {
-            LocalDateTime now = nowUtc();
+    /**
+     * Existing flows are found by {@link #validate(List)}, the remaining rows
+     * are created in chunks.  Each chunk resolves its logical flows,
+     * specifications and physical flows with a handful of set based queries
+     * and creates anything missing with batch inserts.  Each chunk is written
+     * in its own transaction, a failure leaves earlier chunks in place (a
+     * re-upload will find them) but nothing from the failing chunk.
+     */
+    private List<PhysicalFlowUploadCommandResponse> upload(String username,
+                                                           List<PhysicalFlowUploadCommand> cmds,
+                                                           BiConsumer<String, Integer> progressListener) {
+        checkNotNull(cmds, "cmds cannot be empty");
 
-            LogicalFlow flowToAdd = ImmutableLogicalFlow.builder()
-                    .source(source)
-                    .target(target)
-                    .lastUpdatedBy(username)
-                    .lastUpdatedAt(now)
-                    .provenance("waltz")
-                    .created(UserTimestamp.mkForUser(username, now))
-                    .build();
+        progressListener.accept("validating", 0);
+        List<PhysicalFlowUploadCommandResponse> validated = validate(cmds);
 
-            flow = logicalFlowDao.addFlow(flowToAdd);
+        if(validated.stream().anyMatch(v -> v.outcome() == CommandOutcome.FAILURE)) {
+            throw new IllegalArgumentException("Cannot upload flows which contain parse errors, please validate");
         }
 
-        LogicalFlowDecorator existingDecorator = logicalFlowDecoratorService
-                .getByFlowIdAndDecoratorRef(flow.id().get(), dataType);
+        List<PhysicalFlowUploadCommandResponse> newFlowCmds = validated.stream()
+                .filter(v -> v.outcome() == CommandOutcome.SUCCESS && v.entityReference() == null)
+                .collect(toList());
+
+        int processed = validated.size() - newFlowCmds.size();
+        progressListener.accept("creating", processed);
 
-        if(existingDecorator == null) {
-            logicalFlowDecoratorService.addDecorators(flow.id().get(), SetUtilities.fromArray(dataType), username);
+        Map<PhysicalFlowParsed, EntityReference> createdRefs = new HashMap<>();
+        for (List<PhysicalFlowUploadCommandResponse> chunk : partition(newFlowCmds, BATCH_SIZE)) {
+            List<PhysicalFlowParsed> flows = map(chunk, v -> v.parsedFlow());
+            createdRefs.putAll(dsl.transactionResult(() -> getOrCreatePhysicalFlows(
+                    flows,
+                    getOrCreateLogicalFlows(flows, username),
+                    getOrCreatePhysicalSpecs(flows, username),
+                    username)));
+
+            processed += chunk.size();
+            progressListener.accept("creating", processed);
         }
-        return flow;
+
+        return newFlowCmds
+                .stream()
+                .map(v -> (PhysicalFlowUploadCommandResponse) ImmutablePhysicalFlowUploadCommandResponse
+                        .copyOf(v)
+                        .withEntityReference(createdRefs.get(v.parsedFlow())))
+                .collect(toList());
     }
 
 
-    private PhysicalSpecification getOrCreatePhysicalSpec(PhysicalFlowParsed flow,
-                                                          String username) {
-        EntityReference owner = flow.owner();
-        DataFormatKind format = flow.format();
-        String name = flow.name();
+    /**
+     * Finds or creates (or restores) the logical flows for the given rows and
+     * ensures each carries the row's data type as a decoration.
+     * @return logical flows keyed by (source, target)
+     */
+    private Map<Tuple2<EntityReference, EntityReference>, LogicalFlow> getOrCreateLogicalFlows(List<PhysicalFlowParsed> flows,
+                                                                                               String username) {
+        List<Tuple2<EntityReference, EntityReference>> sourceAndTargets = flows
+                .stream()
+                .map(f -> mkLogicalFlowKey(f.source(), f.target()))
+                .distinct()
+                .collect(toList());
 
+        Map<Tuple2<EntityReference, EntityReference>, LogicalFlow> logicalFlows = indexLogicalFlows(
+                logicalFlowDao.findBySourcesAndTargets(sourceAndTargets));
 
-        // check database
-        PhysicalSpecification spec = physicalSpecificationDao.getByParsedFlow(flow);
-        if (spec == null) {
+        List<AddLogicalFlowCommand> addCmds = sourceAndTargets
+                .stream()
+                .filter(t -> !logicalFlows.containsKey(t))
+                .map(t -> ImmutableAddLogicalFlowCommand.builder()
+                        .source(t.v1)
+                        .target(t.v2)
+                        .build())
+                .collect(toList());
 
-            // create
-            LocalDateTime now = nowUtc();
-            PhysicalSpecification specToAdd = ImmutablePhysicalSpecification.builder()
-                    .owningEntity(owner)
-                    .format(format)
-                    .name(name)
-                    .externalId(Optional.ofNullable(flow.specExternalId()).orElse(""))
-                    .description(Optional.ofNullable(flow.specDescription()).orElse(""))
-                    .lastUpdatedBy(username)
-                    .lastUpdatedAt(now)
-                    .provenance("waltz")
-                    .created(UserTimestamp.mkForUser(username, now))
-                    .build();
-
-            Long id = physicalSpecificationDao.create(specToAdd);
-            spec = ImmutablePhysicalSpecification
-                    .copyOf(specToAdd)
-                    .withId(id);
+        if (!addCmds.isEmpty()) {
+            logicalFlows.putAll(indexLogicalFlows(logicalFlowService.addFlows(addCmds, username)));
         }
 
-        EntityReference dataType = flow.dataType();
-        Long specId = spec.id().get();
-        PhysicalSpecificationDataType existingDataType = physicalSpecDataTypeService.getBySpecIdAndDataTypeID(specId, dataType.id());
-        if(existingDataType == null) {
-            physicalSpecDataTypeService.addDataTypes(username, specId, SetUtilities.fromArray(dataType.id()));
+        Set<Tuple2<Long, Long>> existingDecorations = logicalFlowDecoratorService
+                .findByFlowIds(map(logicalFlows.values(), f -> f.id().get()))
+                .stream()
+                .filter(d -> d.decoratorEntity().kind() == EntityKind.DATA_TYPE)
+                .map(d -> Tuple.tuple(d.dataFlowId(), d.decoratorEntity().id()))
+                .collect(toSet());
+
+        Map<Long, Set<EntityReference>> missingDataTypesByFlowId = flows
+                .stream()
+                .map(f -> Tuple.tuple(
+                        logicalFlows.get(mkLogicalFlowKey(f.source(), f.target())).id().get(),
+                        f.dataType().id()))
+                .filter(t -> !existingDecorations.contains(t))
+                .collect(groupingBy(
+                        t -> t.v1,
+                        mapping(t -> mkRef(EntityKind.DATA_TYPE, t.v2), toSet())));
+
+        List<UpdateDataFlowDecoratorsAction> actions = missingDataTypesByFlowId
+                .entrySet()
+                .stream()
+                .map(e -> ImmutableUpdateDataFlowDecoratorsAction.builder()
+                        .flowId(e.getKey())
+                        .addedDecorators(e.getValue())
+                        .build())
+                .collect(toList());
+
+        logicalFlowDecoratorService.addDecoratorsBatch(actions, username);
+
+        return logicalFlows;
+    }
+
+
+    /**
+     * Finds or creates the specifications for the given rows and ensures each
+     * is associated with the row's data type.
+     */
+    private Map<PhysicalFlowParsed, PhysicalSpecification> getOrCreatePhysicalSpecs(List<PhysicalFlowParsed> flows,
+                                                                                    String username) {
+        Map<PhysicalFlowParsed, PhysicalSpecification> specs = physicalSpecificationDao.findByParsedFlows(flows);
+
+        List<PhysicalFlowParsed> withoutSpec = flows
+                .stream()
+                .filter(f -> !specs.containsKey(f))
+                .collect(toList());
+
+        if (!withoutSpec.isEmpty()) {
+            LocalDateTime now = nowUtc();
+
+            Collection<PhysicalSpecification> specsToAdd = withoutSpec
+                    .stream()
+                    .collect(toMap(
+                            f -> mkSpecKey(f),
+                            f -> mkSpecification(f, username, now),
+                            (s1, s2) -> s1,
+                            LinkedHashMap::new))
+                    .values();
+
+            physicalSpecificationDao.createAll(specsToAdd);
+            specs.putAll(physicalSpecificationDao.findByParsedFlows(withoutSpec));
         }
-        return spec;
+
+        Set<Tuple2<Long, Long>> existingDataTypes = physicalSpecDataTypeService
+                .findBySpecificationIds(map(specs.values(), s -> s.id().get()))
+                .stream()
+                .map(sdt -> Tuple.tuple(sdt.specificationId(), sdt.dataTypeId()))
+                .collect(toSet());
+
+        Map<Long, Set<Long>> missingDataTypesBySpecId = flows
+                .stream()
+                .map(f -> Tuple.tuple(specs.get(f).id().get(), f.dataType().id()))
+                .filter(t -> !existingDataTypes.contains(t))
+                .collect(groupingBy(
+                        t -> t.v1,
+                        mapping(t -> t.v2, toSet())));
+
+        physicalSpecDataTypeService.addDataTypesBatch(username, missingDataTypesBySpecId);
+
+        return specs;
     }
 
 
-    private long getOrCreatePhysicalFlow(PhysicalFlow newFlow) {
-        PhysicalFlow existing = physicalFlowDao.matchPhysicalFlow(newFlow);
-        if (existing != null) {
-            return existing.id().get();
-        } else {
-            return physicalFlowDao.create(newFlow);
+    /**
+     * With logical flows, specifications and data types in place a row may
+     * now match an existing physical flow, only rows which still do not are
+     * created.  Rows sharing all flow attributes share a single new flow.
+     */
+    private Map<PhysicalFlowParsed, EntityReference> getOrCreatePhysicalFlows(List<PhysicalFlowParsed> flows,
+                                                                             Map<Tuple2<EntityReference, EntityReference>, LogicalFlow> logicalFlows,
+                                                                             Map<PhysicalFlowParsed, PhysicalSpecification> specs,
+                                                                             String username) {
+        Map<PhysicalFlowParsed, PhysicalFlow> physicalFlows = physicalFlowDao.findByParsedFlows(flows);
+
+        List<PhysicalFlowParsed> withoutFlow = flows
+                .stream()
+                .filter(f -> !physicalFlows.containsKey(f))
+                .collect(toList());
+
+        if (!withoutFlow.isEmpty()) {
+            LocalDateTime now = nowUtc();
+
+            Collection<PhysicalFlow> flowsToAdd = withoutFlow
+                    .stream()
+                    .map(f -> ImmutablePhysicalFlow.builder()
+                            .logicalFlowId(logicalFlows.get(mkLogicalFlowKey(f.source(), f.target())).id().get())
+                            .specificationId(specs.get(f).id().get())
+                            .basisOffset(f.basisOffset())
+                            .frequency(f.frequency())
+                            .transport(f.transport())
+                            .criticality(f.criticality())
+                            .description(f.description())
+                            .externalId(Optional.ofNullable(f.externalId()))
+                            .lastUpdatedBy(username)
+                            .lastUpdatedAt(now)
+                            .build())
+                    .collect(toMap(
+                            PhysicalFlowUploadService::mkPhysicalFlowKey,
+                            identity(),
+                            (f1, f2) -> f1,
+                            LinkedHashMap::new))
+                    .values();
+
+            physicalFlowDao.createAll(flowsToAdd);
+            physicalFlows.putAll(physicalFlowDao.findByParsedFlows(withoutFlow));
         }
+
+        return flows
+                .stream()
+                .collect(toMap(
+                        identity(),
+                        f -> Optional
+                                .ofNullable(physicalFlows.get(f))
+                                .map(pf -> mkRef(EntityKind.PHYSICAL_FLOW, pf.id().get()))
+                                .orElseThrow(() -> new IllegalStateException("Physical flow was not created for: " + f)),
+                        (r1, r2) -> r1));
+    }
+
+
+    private PhysicalSpecification mkSpecification(PhysicalFlowParsed flow,
+                                                  String username,
+                                                  LocalDateTime now) {
+        return ImmutablePhysicalSpecification.builder()
+                .owningEntity(flow.owner())
+                .format(flow.format())
+                .name(flow.name())
+                .externalId(Optional.ofNullable(flow.specExternalId()).orElse(""))
+                .description(Optional.ofNullable(flow.specDescription()).orElse(""))
+                .lastUpdatedBy(username)
+                .lastUpdatedAt(now)
+                .provenance("waltz")
+                .created(UserTimestamp.mkForUser(username, now))
+                .build();
+    }
+
+
+    private static Map<Tuple2<EntityReference, EntityReference>, LogicalFlow> indexLogicalFlows(Collection<LogicalFlow> flows) {
+        return flows
+                .stream()
+                .collect(toMap(
+                        f -> mkLogicalFlowKey(f.source(), f.target()),
+                        identity(),
+                        (f1, f2) -> f1,
+                        HashMap::new));
     }
 
+
+    /**
+     * Name-less references so that the parsed rows line up with the flows read back from the database
+     */
+    private static Tuple2<EntityReference, EntityReference> mkLogicalFlowKey(EntityReference source,
+                                                                            EntityReference target) {
+        return Tuple.tuple(
+                mkRef(source.kind(), source.id()),
+                mkRef(target.kind(), target.id()));
+    }
+
+
+    private static Tuple3<EntityReference, DataFormatKind, String> mkSpecKey(PhysicalFlowParsed flow) {
+        return Tuple.tuple(
+                mkRef(flow.owner().kind(), flow.owner().id()),
+                flow.format(),
+                flow.name());
+    }
+
+
+    /**
+     * The attributes {@link PhysicalFlowDao#matchPhysicalFlow(PhysicalFlow)} compares
+     */
+    private static Tuple6<Long, Long, Integer, FrequencyKind, String, Criticality> mkPhysicalFlowKey(PhysicalFlow flow) {
+        return Tuple.tuple(
+                flow.logicalFlowId(),
+                flow.specificationId(),
+                flow.basisOffset(),
+                flow.frequency(),
+                flow.transport(),
+                flow.criticality());
+    }
+
+
     private Aliases<String> loadTransportAliases() {
         return enumValueAliasService.mkAliases(EnumValueKind.TRANSPORT_KIND);
     }
 
 
+    private void runUploadJob(String jobId,
+                              String username,
+                              List<PhysicalFlowUploadCommand> cmds) {
+        try {
+            List<PhysicalFlowUploadCommandResponse> results = upload(
+                    username,
+                    cmds,
+                    (stage, processed) -> uploadJobDao.updateProgress(
+                            jobId,
+                            JobLifecycleStatus.RUNNING,
+                            stage,
+                            processed));
+
+            uploadJobDao.markCompleted(jobId, results);
+        } catch (Exception e) {
+            LOG.error("Physical flow upload job: {} failed", jobId, e);
+            uploadJobDao.markErrored(
+                    jobId,
+                    Optional.ofNullable(e.getMessage()).orElse(e.getClass().getSimpleName()));
+        }
+    }
+
+
+    private void removeExpiredJobs() {
+        uploadJobDao.removeExpired(nowUtc().minusMinutes(jobRetentionInMinutes));
+    }
+
+
+    private static ExecutorService mkExecutorPool(int poolSize) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(
+                poolSize,
+                (runnable) -> {
+                    Thread t = new Thread(runnable, "WaltzPhysicalFlowUpload-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
 }
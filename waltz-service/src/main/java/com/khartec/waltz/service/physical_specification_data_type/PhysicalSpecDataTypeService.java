@@ -22,12 +22,15 @@ package com.khartec.waltz.service.physical_specification_data_type;
 import com.khartec.waltz.data.physical_specification.PhysicalSpecificationIdSelectorFactory;
 import com.khartec.waltz.data.physical_specification_data_type.PhysicalSpecDataTypeDao;
 import com.khartec.waltz.model.*;
+import com.khartec.waltz.model.changelog.ChangeLog;
 import com.khartec.waltz.model.changelog.ImmutableChangeLog;
 import com.khartec.waltz.model.physical_specification_data_type.ImmutablePhysicalSpecificationDataType;
 import com.khartec.waltz.model.physical_specification_data_type.PhysicalSpecificationDataType;
 import com.khartec.waltz.service.changelog.ChangeLogService;
 import com.khartec.waltz.service.data_flow_decorator.LogicalFlowDecoratorService;
+import com.khartec.waltz.service.logical_flow.LogicalFlowGraphService;
 import com.khartec.waltz.service.physical_flow.PhysicalFlowService;
+import com.khartec.waltz.service.usage_info.DataTypeUsageService;
 import org.jooq.Record1;
 import org.jooq.Select;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -35,6 +38,7 @@ import org.springframework.stereotype.Service;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static com.khartec.waltz.common.Checks.checkNotNull;
@@ -48,7 +52,9 @@ import static java.util.stream.Collectors.toSet;
 public class PhysicalSpecDataTypeService {
 
     private final ChangeLogService changeLogService;
+    private final DataTypeUsageService dataTypeUsageService;
     private final LogicalFlowDecoratorService logicalFlowDecoratorService;
+    private final LogicalFlowGraphService logicalFlowGraphService;
     private final PhysicalFlowService physicalFlowService;
     private final PhysicalSpecDataTypeDao physicalSpecDataTypeDao;
     private final PhysicalSpecificationIdSelectorFactory specificationIdSelectorFactory;
@@ -56,18 +62,24 @@ public class PhysicalSpecDataTypeService {
 
     @Autowired
     public PhysicalSpecDataTypeService(ChangeLogService changeLogService,
+                                       DataTypeUsageService dataTypeUsageService,
                                        LogicalFlowDecoratorService logicalFlowDecoratorService,
+                                       LogicalFlowGraphService logicalFlowGraphService,
                                        PhysicalFlowService physicalFlowService,
                                        PhysicalSpecDataTypeDao physicalSpecDataTypeDao,
                                        PhysicalSpecificationIdSelectorFactory specificationIdSelectorFactory) {
         checkNotNull(changeLogService, "changeLogService cannot be null");
+        checkNotNull(dataTypeUsageService, "dataTypeUsageService cannot be null");
         checkNotNull(logicalFlowDecoratorService, "logicalFlowDecoratorService cannot be null");
+        checkNotNull(logicalFlowGraphService, "logicalFlowGraphService cannot be null");
         checkNotNull(physicalFlowService, "physicalFlowService cannot be null");
         checkNotNull(physicalSpecDataTypeDao, "physicalSpecDataTypeDao cannot be null");
         checkNotNull(specificationIdSelectorFactory, "specificationIdSelectorFactory cannot be null");
 
         this.changeLogService = changeLogService;
+        this.dataTypeUsageService = dataTypeUsageService;
         this.logicalFlowDecoratorService = logicalFlowDecoratorService;
+        this.logicalFlowGraphService = logicalFlowGraphService;
         this.physicalFlowService = physicalFlowService;
         this.physicalSpecDataTypeDao = physicalSpecDataTypeDao;
         this.specificationIdSelectorFactory = specificationIdSelectorFactory;
@@ -84,6 +96,11 @@ public class PhysicalSpecDataTypeService {
     }
 
 
+    public List<PhysicalSpecificationDataType> findBySpecificationIds(Collection<Long> specIds) {
+        return physicalSpecDataTypeDao.findBySpecificationIds(specIds);
+    }
+
+
     public List<PhysicalSpecificationDataType> findBySpecificationIdSelector(IdSelectionOptions selectionOptions) {
         checkNotNull(selectionOptions, "selectionOptions cannot be null");
 
@@ -121,6 +138,42 @@ public class PhysicalSpecDataTypeService {
     }
 
 
+    /**
+     * Bulk form of {@link #addDataTypes(String, long, Set)}, all associations are
+     * written with one batch insert and audited with one batch of change log
+     * entries.  Data types are <b>not</b> rippled to the logical flows of
+     * existing physical flows, callers are expected to decorate the logical
+     * flows they are working with and the scheduled ripple job covers the rest.
+     * @param userName  user performing the change
+     * @param dataTypeIdsBySpecId  data type ids to add, keyed by specification id
+     * @return batch insert counts
+     */
+    public int[] addDataTypesBatch(String userName, Map<Long, Set<Long>> dataTypeIdsBySpecId) {
+        checkNotNull(userName, "userName cannot be null");
+        checkNotNull(dataTypeIdsBySpecId, "dataTypeIdsBySpecId cannot be null");
+
+        if (dataTypeIdsBySpecId.isEmpty()) return new int[0];
+
+        List<PhysicalSpecificationDataType> specificationDataTypes = dataTypeIdsBySpecId
+                .entrySet()
+                .stream()
+                .flatMap(e -> mkSpecificationDataTypes(userName, e.getKey(), e.getValue()).stream())
+                .collect(toList());
+
+        int[] result = physicalSpecDataTypeDao.addDataTypes(specificationDataTypes);
+
+        List<ChangeLog> logEntries = dataTypeIdsBySpecId
+                .entrySet()
+                .stream()
+                .map(e -> mkChangeLog("Added", e.getValue(), e.getKey(), userName))
+                .collect(toList());
+
+        changeLogService.write(logEntries);
+
+        return result;
+    }
+
+
     public int[] removeDataTypes(String userName, long specificationId, Set<Long> dataTypeIds) {
         checkNotNull(userName, "userName cannot be null");
         checkNotNull(dataTypeIds, "dataTypeIds cannot be null");
@@ -137,7 +190,13 @@ public class PhysicalSpecDataTypeService {
 
 
     public int rippleDataTypesToLogicalFlows() {
-        return physicalSpecDataTypeDao.rippleDataTypesToLogicalFlows();
+        Set<EntityReference> affectedEntities = physicalSpecDataTypeDao.findEntitiesAffectedByRipple();
+        int rippled = physicalSpecDataTypeDao.rippleDataTypesToLogicalFlows();
+        if (rippled > 0) {
+            logicalFlowGraphService.rebuild();
+        }
+        dataTypeUsageService.enqueueRecalculation(affectedEntities);
+        return rippled;
     }
 
 
@@ -160,8 +219,15 @@ public class PhysicalSpecDataTypeService {
                        Set<Long> dataTypeIds,
                        long specificationId,
                        String username) {
+        changeLogService.write(mkChangeLog(verb, dataTypeIds, specificationId, username));
+    }
 
-        ImmutableChangeLog logEntry = ImmutableChangeLog.builder()
+
+    private ChangeLog mkChangeLog(String verb,
+                                  Set<Long> dataTypeIds,
+                                  long specificationId,
+                                  String username) {
+        return ImmutableChangeLog.builder()
                 .parentReference(mkRef(EntityKind.PHYSICAL_SPECIFICATION, specificationId))
                 .userId(username)
                 .severity(Severity.INFORMATION)
@@ -172,7 +238,5 @@ public class PhysicalSpecDataTypeService {
                 .childKind(EntityKind.DATA_TYPE)
                 .operation(Operation.UPDATE)
                 .build();
-
-        changeLogService.write(logEntry);
     }
 }
@@ -0,0 +1,149 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.khartec.waltz.service.scheduled_job;
+
+import com.khartec.waltz.model.scheduled_job.JobKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.Checks.checkTrue;
+
+
+/**
+ * Dependency graph of scheduled jobs.  Each job only starts once all of its
+ * prerequisites have finished, jobs without outstanding prerequisites run
+ * concurrently.  If a prerequisite fails (or was itself skipped because one
+ * of its prerequisites failed) the job is skipped.
+ */
+class JobGraph {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JobGraph.class);
+
+    enum Outcome {
+        COMPLETED,
+        NOT_RUNNABLE,
+        FAILED,
+        SKIPPED;
+
+        boolean blocksDependents() {
+            return this == FAILED || this == SKIPPED;
+        }
+    }
+
+    private final Map<JobKey, Set<JobKey>> prerequisites = new LinkedHashMap<>();
+
+
+    /**
+     * Registers a job and the jobs which must complete before it may start.
+     * Prerequisites must already be registered, which guarantees the
+     * resulting graph is acyclic.
+     */
+    void register(JobKey jobKey, JobKey... jobPrerequisites) {
+        checkNotNull(jobKey, "jobKey cannot be null");
+
+        Set<JobKey> requires = EnumSet.noneOf(JobKey.class);
+        requires.addAll(Arrays.asList(jobPrerequisites));
+
+        checkTrue(
+                prerequisites.keySet().containsAll(requires),
+                "Prerequisites for job: %s must be registered before the job itself",
+                jobKey);
+
+        prerequisites.put(jobKey, requires);
+    }
+
+
+    Set<JobKey> jobKeys() {
+        return Collections.unmodifiableSet(prerequisites.keySet());
+    }
+
+
+    /**
+     * Runs every job in the graph, waiting for all of them to finish.
+     * @param runner  runs a single job and reports its outcome
+     * @return the outcome of each job
+     */
+    Map<JobKey, Outcome> run(Executor executor, Function<JobKey, Outcome> runner) {
+        checkNotNull(executor, "executor cannot be null");
+        checkNotNull(runner, "runner cannot be null");
+
+        Map<JobKey, CompletableFuture<Outcome>> scheduled = new EnumMap<>(JobKey.class);
+        prerequisites.keySet().forEach(jobKey -> schedule(jobKey, scheduled, executor, runner));
+
+        Map<JobKey, Outcome> outcomes = new EnumMap<>(JobKey.class);
+        scheduled.forEach((jobKey, future) -> outcomes.put(jobKey, future.join()));
+        return outcomes;
+    }
+
+
+    // -- HELPERS ---
+
+    private CompletableFuture<Outcome> schedule(JobKey jobKey,
+                                                Map<JobKey, CompletableFuture<Outcome>> scheduled,
+                                                Executor executor,
+                                                Function<JobKey, Outcome> runner) {
+        CompletableFuture<Outcome> existing = scheduled.get(jobKey);
+        if (existing != null) {
+            return existing;
+        }
+
+        List<CompletableFuture<Outcome>> requiredFutures = new ArrayList<>();
+        prerequisites
+                .get(jobKey)
+                .forEach(prerequisite -> requiredFutures.add(schedule(prerequisite, scheduled, executor, runner)));
+
+        CompletableFuture<Outcome> future = CompletableFuture
+                .allOf(requiredFutures.toArray(new CompletableFuture[0]))
+                .thenApplyAsync(
+                        ignored -> {
+                            boolean blocked = requiredFutures
+                                    .stream()
+                                    .anyMatch(f -> f.join().blocksDependents());
+
+                            if (blocked) {
+                                LOG.warn("Skipping job: {} as one of its prerequisites failed", jobKey);
+                                return Outcome.SKIPPED;
+                            }
+
+                            return runSafely(jobKey, runner);
+                        },
+                        executor);
+
+        scheduled.put(jobKey, future);
+        return future;
+    }
+
+
+    private static Outcome runSafely(JobKey jobKey, Function<JobKey, Outcome> runner) {
+        try {
+            return runner.apply(jobKey);
+        } catch (Exception e) {
+            LOG.error("Failed to run job: " + jobKey, e);
+            return Outcome.FAILED;
+        }
+    }
+}
@@ -22,113 +22,258 @@ package com.khartec.waltz.service.scheduled_job;
 
 import com.khartec.waltz.data.scheduled_job.ScheduledJobDao;
 import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.model.scheduled_job.ImmutableScheduledJobRun;
 import com.khartec.waltz.model.scheduled_job.JobKey;
 import com.khartec.waltz.model.scheduled_job.JobLifecycleStatus;
+import com.khartec.waltz.model.scheduled_job.ScheduledJobRun;
 import com.khartec.waltz.service.authoritative_source.AuthoritativeSourceService;
 import com.khartec.waltz.service.complexity.ComplexityRatingService;
 import com.khartec.waltz.service.entity_hierarchy.EntityHierarchyService;
+import com.khartec.waltz.service.entity_statistic.EntityStatisticRollupService;
 import com.khartec.waltz.service.logical_flow.LogicalFlowService;
+import com.khartec.waltz.service.person_hierarchy.PersonHierarchyService;
 import com.khartec.waltz.service.physical_specification_data_type.PhysicalSpecDataTypeService;
 import com.khartec.waltz.service.usage_info.DataTypeUsageService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import java.util.function.Consumer;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.Checks.checkTrue;
+import static com.khartec.waltz.common.DateTimeUtilities.nowUtc;
+import static com.khartec.waltz.common.StringUtilities.limit;
+import static com.khartec.waltz.model.scheduled_job.JobKey.*;
 
+
+/**
+ * Runs the scheduled jobs as a dependency graph. Each job only starts once all
+ * of its prerequisites have finished, jobs without outstanding prerequisites
+ * run concurrently on a bounded pool.  Jobs whose prerequisites failed are
+ * skipped (and left runnable for the next pass).  The timings of every job
+ * which actually executes are recorded in the scheduled job log.
+ */
 @Service
 public class ScheduledJobService {
 
     private static final Logger LOG = LoggerFactory.getLogger(ScheduledJobService.class);
+    private static final int MAX_MESSAGE_LENGTH = 4000;
 
     private final AuthoritativeSourceService authoritativeSourceService;
     private final ComplexityRatingService complexityRatingService;
     private final DataTypeUsageService dataTypeUsageService;
     private final EntityHierarchyService entityHierarchyService;
+    private final EntityStatisticRollupService entityStatisticRollupService;
     private final LogicalFlowService logicalFlowService;
+    private final PersonHierarchyService personHierarchyService;
     private final PhysicalSpecDataTypeService physicalSpecDataTypeService;
     private final ScheduledJobDao scheduledJobDao;
 
+    private final Map<JobKey, Supplier<Integer>> jobs = new EnumMap<>(JobKey.class);
+    private final JobGraph jobGraph = new JobGraph();
+    private final ExecutorService jobExecutorPool;
+
 
     @Autowired
     public ScheduledJobService(AuthoritativeSourceService authoritativeSourceService,
                                ComplexityRatingService complexityRatingService,
                                DataTypeUsageService dataTypeUsageService,
                                EntityHierarchyService entityHierarchyService,
+                               EntityStatisticRollupService entityStatisticRollupService,
                                LogicalFlowService logicalFlowService,
+                               PersonHierarchyService personHierarchyService,
                                PhysicalSpecDataTypeService physicalSpecDataTypeService,
-                               ScheduledJobDao scheduledJobDao) {
+                               ScheduledJobDao scheduledJobDao,
+                               @Value("${waltz.scheduled.jobs.pool.size:4}") int poolSize) {
         checkNotNull(authoritativeSourceService, "authoritativeSourceService cannot be null");
         checkNotNull(complexityRatingService, "complexityRatingService cannot be null");
         checkNotNull(dataTypeUsageService, "dataTypeUsageService cannot be null");
+        checkNotNull(entityHierarchyService, "entityHierarchyService cannot be null");
+        checkNotNull(entityStatisticRollupService, "entityStatisticRollupService cannot be null");
         checkNotNull(logicalFlowService, "logicalFlowService cannot be null");
+        checkNotNull(personHierarchyService, "personHierarchyService cannot be null");
         checkNotNull(physicalSpecDataTypeService, "physicalSpecDataTypeService cannot be null");
         checkNotNull(scheduledJobDao, "scheduledJobDao cannot be null");
+        checkTrue(poolSize > 0, "poolSize must be positive");
 
         this.authoritativeSourceService = authoritativeSourceService;
         this.complexityRatingService = complexityRatingService;
         this.dataTypeUsageService = dataTypeUsageService;
         this.entityHierarchyService = entityHierarchyService;
+        this.entityStatisticRollupService = entityStatisticRollupService;
         this.logicalFlowService = logicalFlowService;
+        this.personHierarchyService = personHierarchyService;
         this.physicalSpecDataTypeService = physicalSpecDataTypeService;
         this.scheduledJobDao = scheduledJobDao;
+
+        this.jobExecutorPool = mkExecutorPool(poolSize);
+        registerJobs();
     }
 
 
     @Scheduled(fixedRate = 300_000)
     public void run() {
-        Thread.currentThread().setName("WaltzScheduledJobService");
-        runIfNeeded(JobKey.HIERARCHY_REBUILD_CHANGE_INITIATIVE,
-                (jk) -> entityHierarchyService.buildFor(EntityKind.CHANGE_INITIATIVE));
+        // runs on a shared scheduler thread, so only borrow its name for the duration
+        Thread thread = Thread.currentThread();
+        String threadName = thread.getName();
+        thread.setName("WaltzScheduledJobService");
+
+        try {
+            // waits for the whole graph so that runs never overlap
+            jobGraph.run(jobExecutorPool, this::runIfNeeded);
+        } finally {
+            thread.setName(threadName);
+        }
+    }
 
-        runIfNeeded(JobKey.HIERARCHY_REBUILD_DATA_TYPE,
-                (jk) -> entityHierarchyService.buildFor(EntityKind.DATA_TYPE));
 
-        runIfNeeded(JobKey.HIERARCHY_REBUILD_ENTITY_STATISTICS,
-                (jk) -> entityHierarchyService.buildFor(EntityKind.ENTITY_STATISTIC));
+    public List<ScheduledJobRun> findRecentRuns(int limit) {
+        return scheduledJobDao.findRecentRuns(limit);
+    }
+
 
-        runIfNeeded(JobKey.HIERARCHY_REBUILD_MEASURABLE,
-                (jk) -> entityHierarchyService.buildFor(EntityKind.MEASURABLE));
+    // -- HELPERS ---
 
-        runIfNeeded(JobKey.HIERARCHY_REBUILD_ORG_UNIT,
-                (jk) -> entityHierarchyService.buildFor(EntityKind.ORG_UNIT));
+    private void registerJobs() {
+        registerJob(HIERARCHY_REBUILD_CHANGE_INITIATIVE,
+                () -> entityHierarchyService.buildFor(EntityKind.CHANGE_INITIATIVE));
 
-        runIfNeeded(JobKey.HIERARCHY_REBUILD_PERSON,
-                (jk) -> entityHierarchyService.buildFor(EntityKind.PERSON));
+        registerJob(HIERARCHY_REBUILD_DATA_TYPE,
+                () -> entityHierarchyService.buildFor(EntityKind.DATA_TYPE));
 
-        runIfNeeded(JobKey.DATA_TYPE_RIPPLE_PHYSICAL_TO_LOGICAL,
-                (jk) -> physicalSpecDataTypeService.rippleDataTypesToLogicalFlows());
+        registerJob(HIERARCHY_REBUILD_ENTITY_STATISTICS,
+                () -> entityHierarchyService.buildFor(EntityKind.ENTITY_STATISTIC));
 
-        runIfNeeded(JobKey.DATA_TYPE_USAGE_RECALC_APPLICATION,
-                (jk) -> dataTypeUsageService.recalculateForAllApplications());
+        registerJob(HIERARCHY_REBUILD_MEASURABLE,
+                () -> entityHierarchyService.buildFor(EntityKind.MEASURABLE));
 
-        runIfNeeded(JobKey.COMPLEXITY_REBUILD,
-                (jk) -> complexityRatingService.rebuild());
+        registerJob(HIERARCHY_REBUILD_ORG_UNIT,
+                () -> entityHierarchyService.buildFor(EntityKind.ORG_UNIT));
 
-        runIfNeeded(JobKey.AUTH_SOURCE_RECALC_FLOW_RATINGS,
-                (jk) -> authoritativeSourceService.recalculateAllFlowRatings());
+        registerJob(HIERARCHY_REBUILD_PERSON,
+                () -> personHierarchyService.buildChanged());
 
-        runIfNeeded(JobKey.LOGICAL_FLOW_CLEANUP_ORPHANS,
-                (jk) -> logicalFlowService.cleanupOrphans());
+        registerJob(DATA_TYPE_RIPPLE_PHYSICAL_TO_LOGICAL,
+                () -> physicalSpecDataTypeService.rippleDataTypesToLogicalFlows());
+
+        registerJob(LOGICAL_FLOW_CLEANUP_ORPHANS,
+                () -> logicalFlowService.cleanupOrphans());
+
+        registerJob(DATA_TYPE_USAGE_RECALC_APPLICATION,
+                () -> withoutRowCount(dataTypeUsageService.recalculateForAllApplications(), DATA_TYPE_USAGE_RECALC_APPLICATION),
+                HIERARCHY_REBUILD_DATA_TYPE,
+                DATA_TYPE_RIPPLE_PHYSICAL_TO_LOGICAL,
+                LOGICAL_FLOW_CLEANUP_ORPHANS);
+
+        registerJob(COMPLEXITY_REBUILD,
+                () -> complexityRatingService.rebuildChanged(),
+                HIERARCHY_REBUILD_MEASURABLE,
+                LOGICAL_FLOW_CLEANUP_ORPHANS);
+
+        registerJob(ENTITY_STATISTIC_ROLLUP_REBUILD,
+                () -> entityStatisticRollupService.refreshAll(),
+                HIERARCHY_REBUILD_MEASURABLE,
+                HIERARCHY_REBUILD_ORG_UNIT);
+
+        registerJob(AUTH_SOURCE_RECALC_FLOW_RATINGS,
+                () -> withoutRowCount(authoritativeSourceService.recalculateAllFlowRatings(), AUTH_SOURCE_RECALC_FLOW_RATINGS),
+                HIERARCHY_REBUILD_DATA_TYPE,
+                HIERARCHY_REBUILD_ORG_UNIT,
+                DATA_TYPE_RIPPLE_PHYSICAL_TO_LOGICAL,
+                LOGICAL_FLOW_CLEANUP_ORPHANS);
     }
 
 
-    private void runIfNeeded(JobKey jobKey, Consumer<JobKey> jobExecutor) {
+    /**
+     * Registers a job and the jobs which must complete before it may start.
+     * Prerequisites must already be registered, which guarantees the
+     * resulting graph is acyclic.
+     */
+    private void registerJob(JobKey jobKey, Supplier<Integer> job, JobKey... jobPrerequisites) {
+        jobGraph.register(jobKey, jobPrerequisites);
+        jobs.put(jobKey, job);
+    }
+
+
+    private JobGraph.Outcome runIfNeeded(JobKey jobKey) {
         try {
             if (scheduledJobDao.isJobRunnable(jobKey)
                     && scheduledJobDao.markJobAsRunning(jobKey)) {
-                jobExecutor
-                        .andThen((jk) -> scheduledJobDao.updateJobStatus(jk, JobLifecycleStatus.COMPLETED))
-                        .accept(jobKey);
+                return execute(jobKey);
+            } else {
+                return JobGraph.Outcome.NOT_RUNNABLE;
             }
         } catch (Exception e) {
             LOG.error("Failed to run job: " + jobKey, e);
             scheduledJobDao.updateJobStatus(jobKey, JobLifecycleStatus.ERRORED);
+            return JobGraph.Outcome.FAILED;
         }
     }
 
+
+    private JobGraph.Outcome execute(JobKey jobKey) {
+        ImmutableScheduledJobRun.Builder run = ImmutableScheduledJobRun
+                .builder()
+                .jobKey(jobKey)
+                .startedAt(nowUtc());
+
+        JobGraph.Outcome outcome;
+        long start = System.currentTimeMillis();
+        try {
+            Integer rowsAffected = jobs.get(jobKey).get();
+            scheduledJobDao.updateJobStatus(jobKey, JobLifecycleStatus.COMPLETED);
+            run.status(JobLifecycleStatus.COMPLETED)
+                    .rowsAffected(Optional.ofNullable(rowsAffected));
+            outcome = JobGraph.Outcome.COMPLETED;
+        } catch (Exception e) {
+            LOG.error("Failed to run job: " + jobKey, e);
+            scheduledJobDao.updateJobStatus(jobKey, JobLifecycleStatus.ERRORED);
+            run.status(JobLifecycleStatus.ERRORED)
+                    .message(Optional.ofNullable(limit(e.getMessage(), MAX_MESSAGE_LENGTH)));
+            outcome = JobGraph.Outcome.FAILED;
+        }
+        long duration = System.currentTimeMillis() - start;
+
+        LOG.info("Job: {} finished in {}ms", jobKey, duration);
+
+        scheduledJobDao.recordRun(run
+                .completedAt(nowUtc())
+                .durationMillis(duration)
+                .build());
+
+        return outcome;
+    }
+
+
+    /**
+     * For jobs which only report success, a failure is raised so the job is
+     * recorded as errored and its dependents are skipped
+     */
+    private static Integer withoutRowCount(boolean result, JobKey jobKey) {
+        if (! result) {
+            throw new IllegalStateException("Job: " + jobKey + " reported that it did not succeed");
+        }
+        return null;
+    }
+
+
+    private static ExecutorService mkExecutorPool(int poolSize) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(
+                poolSize,
+                (runnable) -> {
+                    Thread t = new Thread(runnable, "WaltzScheduledJob-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
 }
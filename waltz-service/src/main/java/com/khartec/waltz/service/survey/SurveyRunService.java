@@ -31,28 +31,44 @@ import com.khartec.waltz.data.survey.SurveyTemplateDao;
 import com.khartec.waltz.model.*;
 import com.khartec.waltz.model.changelog.ImmutableChangeLog;
 import com.khartec.waltz.model.person.Person;
+import com.khartec.waltz.model.scheduled_job.JobLifecycleStatus;
 import com.khartec.waltz.model.survey.*;
 import com.khartec.waltz.service.changelog.ChangeLogService;
 import org.jooq.Record1;
 import org.jooq.Select;
+import org.jooq.lambda.tuple.Tuple2;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDate;
-import java.util.List;
-import java.util.Map;
-import java.util.Objects;
-import java.util.Set;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 import static com.khartec.waltz.common.Checks.checkNotNull;
 import static com.khartec.waltz.common.Checks.checkTrue;
+import static com.khartec.waltz.common.DateTimeUtilities.nowUtc;
+import static com.khartec.waltz.common.ListUtilities.newArrayList;
+import static com.khartec.waltz.common.ListUtilities.partition;
 import static com.khartec.waltz.common.SetUtilities.fromCollection;
-import static java.util.stream.Collectors.groupingBy;
-import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.*;
+import static org.jooq.lambda.tuple.Tuple.tuple;
 
 @Service
 public class SurveyRunService {
 
+    private static final Logger LOG = LoggerFactory.getLogger(SurveyRunService.class);
+    private static final int INSTANCE_BATCH_SIZE = 1000;
+
     private final ChangeLogService changeLogService;
     private final GenericSelectorFactory genericSelectorFactory;
     private final InvolvementDao involvementDao;
@@ -64,6 +80,10 @@ public class SurveyRunService {
 
     private final SurveyInstanceIdSelectorFactory surveyInstanceIdSelectorFactory;
 
+    private final Map<Long, SurveyInstanceCreationJob> creationJobs = new ConcurrentHashMap<>();
+    private final ExecutorService creationExecutor;
+    private final int jobRetentionInMinutes;
+
 
     @Autowired
     public SurveyRunService(ChangeLogService changeLogService,
@@ -74,7 +94,9 @@ public class SurveyRunService {
                             SurveyInstanceRecipientDao surveyInstanceRecipientDao,
                             SurveyRunDao surveyRunDao,
                             SurveyTemplateDao surveyTemplateDao,
-                            SurveyInstanceIdSelectorFactory surveyInstanceIdSelectorFactory) {
+                            SurveyInstanceIdSelectorFactory surveyInstanceIdSelectorFactory,
+                            @Value("${waltz.survey.instance.creation.threads:1}") int creationThreads,
+                            @Value("${waltz.survey.instance.creation.job.retention:60}") int jobRetentionInMinutes) {
         checkNotNull(changeLogService, "changeLogService cannot be null");
         checkNotNull(genericSelectorFactory, "genericSelectorFactory cannot be null");
         checkNotNull(involvementDao, "involvementDao cannot be null");
@@ -84,6 +106,8 @@ public class SurveyRunService {
         checkNotNull(surveyRunDao, "surveyRunDao cannot be null");
         checkNotNull(surveyTemplateDao, "surveyTemplateDao cannot be null");
         checkNotNull(surveyInstanceIdSelectorFactory, "surveyInstanceIdSelectorFactory cannot be null");
+        checkTrue(creationThreads > 0, "creationThreads must be positive");
+        checkTrue(jobRetentionInMinutes > 0, "jobRetentionInMinutes must be positive");
 
         this.changeLogService = changeLogService;
         this.genericSelectorFactory = genericSelectorFactory;
@@ -94,6 +118,8 @@ public class SurveyRunService {
         this.surveyRunDao = surveyRunDao;
         this.surveyTemplateDao = surveyTemplateDao;
         this.surveyInstanceIdSelectorFactory = surveyInstanceIdSelectorFactory;
+        this.creationExecutor = mkExecutorPool(creationThreads);
+        this.jobRetentionInMinutes = jobRetentionInMinutes;
     }
 
 
@@ -225,63 +251,196 @@ public class SurveyRunService {
         SurveyRun surveyRun = surveyRunDao.getById(surveyRunId);
         checkNotNull(surveyRun, "surveyRun " + surveyRunId + " not found");
 
-        Set<SurveyInstanceRecipient> excludedRecipientSet = fromCollection(excludedRecipients);
-        List<SurveyInstanceRecipient> surveyInstanceRecipients = generateSurveyInstanceRecipients(surveyRunId).stream()
-                .filter(r -> !excludedRecipientSet.contains(r))
-                .collect(toList());
+        List<Tuple2<EntityReference, List<Long>>> instancesToCreate = mkInstancesToCreate(surveyRun, excludedRecipients);
+        replaceSurveyInstancesAndRecipients(surveyRun, instancesToCreate, (stage, processed) -> {});
+        return true;
+    }
 
-        Map<SurveyInstance, List<SurveyInstanceRecipient>> instancesAndRecipientsToSave = surveyInstanceRecipients.stream()
-                .collect(groupingBy(
-                        SurveyInstanceRecipient::surveyInstance,
-                        toList()
-                ));
+
+    /**
+     * Queues the (re)creation of the instances and recipients of a survey
+     * run to run in the background, use {@link #getSurveyInstanceCreationJob(long)}
+     * to follow its progress.  Only one creation job may be in progress for
+     * a survey run at a time.
+     * @param userName  user requesting the creation
+     * @param surveyRunId  survey run to create instances for
+     * @param excludedRecipients  generated recipients which should not receive the survey
+     * @return the newly queued job
+     */
+    public SurveyInstanceCreationJob submitSurveyInstancesAndRecipients(String userName,
+                                                                        long surveyRunId,
+                                                                        List<SurveyInstanceRecipient> excludedRecipients) {
+        checkNotNull(userName, "userName cannot be null");
+        checkNotNull(excludedRecipients, "excludedRecipients cannot be null");
+
+        removeExpiredJobs();
+
+        SurveyInstanceCreationJob job = ImmutableSurveyInstanceCreationJob.builder()
+                .surveyRunId(surveyRunId)
+                .submittedBy(userName)
+                .submittedAt(nowUtc())
+                .status(JobLifecycleStatus.RUNNABLE)
+                .stage("queued")
+                .totalCount(0)
+                .processedCount(0)
+                .build();
+
+        creationJobs.compute(surveyRunId, (id, existing) -> {
+            checkTrue(
+                    existing == null || existing.completedAt().isPresent(),
+                    "survey instances are already being created for survey run: %d",
+                    surveyRunId);
+            return job;
+        });
+
+        creationExecutor.submit(() -> runCreationJob(surveyRunId, excludedRecipients));
+
+        return job;
+    }
+
+
+    /**
+     * @param surveyRunId  survey run passed to {@link #submitSurveyInstancesAndRecipients(String, long, List)}
+     * @return the current state of the latest creation job for the run or null if there is none (or it has expired)
+     */
+    public SurveyInstanceCreationJob getSurveyInstanceCreationJob(long surveyRunId) {
+        removeExpiredJobs();
+        return creationJobs.get(surveyRunId);
+    }
 
 
+    /**
+     * Replaces the instances and recipients of the survey run.  Instances are
+     * written in batches, each batch with its recipients in a single
+     * transaction.
+     * @return number of recipients created
+     */
+    private int replaceSurveyInstancesAndRecipients(SurveyRun surveyRun,
+                                                    List<Tuple2<EntityReference, List<Long>>> instancesToCreate,
+                                                    BiConsumer<String, Integer> progressListener) {
+        long surveyRunId = surveyRun.id().get();
+
         // delete existing instances and recipients
+        progressListener.accept("removing existing instances", 0);
         deleteSurveyInstancesAndRecipients(surveyRunId);
 
         // insert new instances and recipients
-        instancesAndRecipientsToSave.forEach(
-                (k,v) -> {
-                    if (surveyRun.issuanceKind() == SurveyIssuanceKind.GROUP) {
+        int processed = 0;
+        progressListener.accept("creating instances", processed);
+        for (List<Tuple2<EntityReference, List<Long>>> batch : partition(instancesToCreate, INSTANCE_BATCH_SIZE)) {
+            processed += surveyInstanceDao.createInstancesWithRecipients(surveyRunId, surveyRun.dueDate(), batch);
+            progressListener.accept("creating instances", processed);
+        }
+
+        LOG.info("Created {} instances with {} recipients for survey run: {}",
+                instancesToCreate.size(),
+                processed,
+                surveyRunId);
+
+        return processed;
+    }
+
+
+    /**
+     * Generates the recipients of the survey run and determines the
+     * instances to create for them, each instance is paired with the ids of
+     * its recipients.
+     */
+    private List<Tuple2<EntityReference, List<Long>>> mkInstancesToCreate(SurveyRun surveyRun,
+                                                                          List<SurveyInstanceRecipient> excludedRecipients) {
+        Set<SurveyInstanceRecipient> excludedRecipientSet = fromCollection(excludedRecipients);
+
+        Map<EntityReference, List<Long>> personIdsByEntity = generateSurveyInstanceRecipients(surveyRun.id().get())
+                .stream()
+                .filter(r -> !excludedRecipientSet.contains(r))
+                .collect(groupingBy(
+                        r -> r.surveyInstance().surveyEntity(),
+                        LinkedHashMap::new,
+                        mapping(r -> r.person().id().get(), toList())));
+
+        return mkInstancesToCreate(surveyRun.issuanceKind(), personIdsByEntity);
+    }
+
+
+    private static List<Tuple2<EntityReference, List<Long>>> mkInstancesToCreate(SurveyIssuanceKind issuanceKind,
+                                                                                  Map<EntityReference, List<Long>> personIdsByEntity) {
+        return personIdsByEntity
+                .entrySet()
+                .stream()
+                .flatMap(e -> issuanceKind == SurveyIssuanceKind.GROUP
                         // one instance per group
-                        long instanceId = createSurveyInstance(k);
-                        v.forEach(r -> createSurveyInstanceRecipient(instanceId, r));
-                    } else {
+                        ? Stream.of(mkInstanceToCreate(e.getKey(), e.getValue()))
                         // one instance for each individual
-                        v.forEach(r -> {
-                            long instanceId = createSurveyInstance(k);
-                            createSurveyInstanceRecipient(instanceId, r);
-                        });
-                    }
-                }
-        );
+                        : e.getValue().stream().map(personId -> mkInstanceToCreate(e.getKey(), newArrayList(personId))))
+                .collect(toList());
+    }
 
-        return true;
+
+    private static Tuple2<EntityReference, List<Long>> mkInstanceToCreate(EntityReference entityRef, List<Long> personIds) {
+        return tuple(entityRef, personIds);
     }
 
 
-    private void deleteSurveyInstancesAndRecipients(long surveyRunId) {
-        surveyInstanceRecipientDao.deleteForSurveyRun(surveyRunId);
-        surveyInstanceDao.deleteForSurveyRun(surveyRunId);
+    private void runCreationJob(long surveyRunId,
+                                List<SurveyInstanceRecipient> excludedRecipients) {
+        updateJob(surveyRunId, job -> job
+                .withStatus(JobLifecycleStatus.RUNNING)
+                .withStage("generating recipients"));
+        try {
+            SurveyRun surveyRun = surveyRunDao.getById(surveyRunId);
+            checkNotNull(surveyRun, "surveyRun " + surveyRunId + " not found");
+
+            List<Tuple2<EntityReference, List<Long>>> instancesToCreate = mkInstancesToCreate(surveyRun, excludedRecipients);
+            int recipientCount = instancesToCreate
+                    .stream()
+                    .mapToInt(t -> t.v2().size())
+                    .sum();
+
+            updateJob(surveyRunId, job -> job.withTotalCount(recipientCount));
+
+            replaceSurveyInstancesAndRecipients(
+                    surveyRun,
+                    instancesToCreate,
+                    (stage, processed) -> updateJob(surveyRunId, job -> job
+                            .withStage(stage)
+                            .withProcessedCount(processed)));
+
+            updateJob(surveyRunId, job -> job
+                    .withStatus(JobLifecycleStatus.COMPLETED)
+                    .withStage("completed")
+                    .withProcessedCount(job.totalCount())
+                    .withCompletedAt(nowUtc()));
+        } catch (Exception e) {
+            LOG.error("Survey instance creation for survey run: {} failed", surveyRunId, e);
+            updateJob(surveyRunId, job -> job
+                    .withStatus(JobLifecycleStatus.ERRORED)
+                    .withCompletedAt(nowUtc())
+                    .withMessage(Optional.ofNullable(e.getMessage()).orElse(e.getClass().getSimpleName())));
+        }
+    }
+
+
+    private void updateJob(long surveyRunId,
+                           Function<ImmutableSurveyInstanceCreationJob, SurveyInstanceCreationJob> updater) {
+        creationJobs.computeIfPresent(
+                surveyRunId,
+                (id, job) -> updater.apply(ImmutableSurveyInstanceCreationJob.copyOf(job)));
     }
 
 
-    private long createSurveyInstance(SurveyInstance surveyInstance) {
-        return surveyInstanceDao.create(ImmutableSurveyInstanceCreateCommand.builder()
-                .surveyRunId(surveyInstance.surveyRunId())
-                .entityReference(surveyInstance.surveyEntity())
-                .status(surveyInstance.status())
-                .dueDate(surveyInstance.dueDate())
-                .build());
+    private void removeExpiredJobs() {
+        LocalDateTime cutoff = nowUtc().minusMinutes(jobRetentionInMinutes);
+        creationJobs
+                .values()
+                .removeIf(job -> job.completedAt()
+                        .map(completedAt -> completedAt.isBefore(cutoff))
+                        .orElse(false));
     }
 
 
-    private long createSurveyInstanceRecipient(long surveyInstanceId, SurveyInstanceRecipient surveyInstanceRecipient) {
-        return surveyInstanceRecipientDao.create(ImmutableSurveyInstanceRecipientCreateCommand.builder()
-                .surveyInstanceId(surveyInstanceId)
-                .personId(surveyInstanceRecipient.person().id().get())
-                .build());
+    private void deleteSurveyInstancesAndRecipients(long surveyRunId) {
+        surveyInstanceRecipientDao.deleteForSurveyRun(surveyRunId);
+        surveyInstanceDao.deleteForSurveyRun(surveyRunId);
     }
 
 
@@ -322,10 +481,8 @@ public class SurveyRunService {
 
         switch (run.issuanceKind()) {
             case INDIVIDUAL:
-                ListUtilities.map(personIds, p -> mkSurveyInstance(
-                        subjectRef,
-                        run,
-                        ListUtilities.newArrayList(p)));
+                partition(ListUtilities.map(personIds, p -> mkInstanceToCreate(subjectRef, newArrayList(p))), INSTANCE_BATCH_SIZE)
+                        .forEach(batch -> surveyInstanceDao.createInstancesWithRecipients(runId, run.dueDate(), batch));
                 return true;
             case GROUP:
                 mkSurveyInstance(
@@ -353,5 +510,16 @@ public class SurveyRunService {
                 instanceId,
                 personIds);
     }
-}
 
+
+    private static ExecutorService mkExecutorPool(int poolSize) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return Executors.newFixedThreadPool(
+                poolSize,
+                (runnable) -> {
+                    Thread t = new Thread(runnable, "WaltzSurveyInstanceCreation-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+}
@@ -5,6 +5,7 @@ import com.khartec.waltz.common.SetUtilities;
 import com.khartec.waltz.model.EntityKind;
 import com.khartec.waltz.model.measurable.Measurable;
 import com.khartec.waltz.model.taxonomy_management.*;
+import com.khartec.waltz.service.entity_hierarchy.EntityHierarchyService;
 import com.khartec.waltz.service.measurable.MeasurableService;
 import com.khartec.waltz.service.taxonomy_management.TaxonomyCommandProcessor;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -18,12 +19,16 @@ import static com.khartec.waltz.service.taxonomy_management.TaxonomyManagementUt
 @Service
 public class MoveMeasurableCommandProcessor implements TaxonomyCommandProcessor {
 
+    private final EntityHierarchyService entityHierarchyService;
     private final MeasurableService measurableService;
 
 
     @Autowired
-    public MoveMeasurableCommandProcessor(MeasurableService measurableService) {
+    public MoveMeasurableCommandProcessor(EntityHierarchyService entityHierarchyService,
+                                          MeasurableService measurableService) {
+        checkNotNull(entityHierarchyService, "entityHierarchyService cannot be null");
         checkNotNull(measurableService, "measurableService cannot be null");
+        this.entityHierarchyService = entityHierarchyService;
         this.measurableService = measurableService;
     }
 
@@ -56,11 +61,19 @@ public class MoveMeasurableCommandProcessor implements TaxonomyCommandProcessor
         Measurable measurableToMove = validate(cmd);
         TaxonomyChangeLifecycleStatus outcome = measurableToMove
                 .id()
-                .map(id -> measurableService
-                    .updateParentId(
-                        id,
-                        getDestination(cmd),
-                        userId))
+                .map(id -> {
+                    boolean moved = measurableService
+                        .updateParentId(
+                            id,
+                            getDestination(cmd),
+                            userId);
+                    if (moved) {
+                        entityHierarchyService.buildForChanged(
+                                EntityKind.MEASURABLE,
+                                SetUtilities.asSet(id));
+                    }
+                    return moved;
+                })
                 .map(success -> success
                         ? TaxonomyChangeLifecycleStatus.EXECUTED
                         : TaxonomyChangeLifecycleStatus.FAILED)
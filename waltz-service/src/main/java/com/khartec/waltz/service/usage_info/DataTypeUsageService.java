@@ -24,11 +24,13 @@ import com.khartec.waltz.common.SetUtilities;
 import com.khartec.waltz.data.application.ApplicationIdSelectorFactory;
 import com.khartec.waltz.data.data_type.DataTypeIdSelectorFactory;
 import com.khartec.waltz.data.data_type_usage.DataTypeUsageDao;
+import com.khartec.waltz.data.recalc_queue.RecalcQueueDao;
 import com.khartec.waltz.model.EntityKind;
 import com.khartec.waltz.model.EntityReference;
 import com.khartec.waltz.model.IdSelectionOptions;
 import com.khartec.waltz.model.application.ApplicationIdSelectionOptions;
 import com.khartec.waltz.model.data_type_usage.DataTypeUsage;
+import com.khartec.waltz.model.recalc_queue.RecalcKind;
 import com.khartec.waltz.model.system.SystemChangeSet;
 import com.khartec.waltz.model.tally.Tally;
 import com.khartec.waltz.model.usage_info.UsageInfo;
@@ -36,39 +38,58 @@ import com.khartec.waltz.model.usage_info.UsageKind;
 import org.jooq.Record1;
 import org.jooq.Select;
 import org.jooq.impl.DSL;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import java.util.Collection;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
 import java.util.stream.Collectors;
 
 import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.Checks.checkTrue;
 import static com.khartec.waltz.common.CollectionUtilities.isEmpty;
+import static com.khartec.waltz.common.ListUtilities.partition;
 import static com.khartec.waltz.model.usage_info.UsageInfoUtilities.mkChangeSet;
+import static com.khartec.waltz.schema.tables.Actor.ACTOR;
 import static com.khartec.waltz.schema.tables.Application.APPLICATION;
 
 @Service
 public class DataTypeUsageService {
 
+    private static final Logger LOG = LoggerFactory.getLogger(DataTypeUsageService.class);
+
+    private static final Set<EntityKind> RECALCULABLE_KINDS = EnumSet.of(EntityKind.APPLICATION, EntityKind.ACTOR);
+
     private final DataTypeUsageDao dataTypeUsageDao;
     private final ApplicationIdSelectorFactory appIdSelectorFactor;
     private final DataTypeIdSelectorFactory dataTypeIdSelectorFactory;
+    private final RecalcQueueDao recalcQueueDao;
+    private final int recalcBatchSize;
+    private final int fullRecalcThreshold;
 
 
     @Autowired
     public DataTypeUsageService(DataTypeUsageDao dataTypeUsageDao,
                                 ApplicationIdSelectorFactory selectorFactory,
-                                DataTypeIdSelectorFactory dataTypeIdSelectorFactory) {
+                                DataTypeIdSelectorFactory dataTypeIdSelectorFactory,
+                                RecalcQueueDao recalcQueueDao,
+                                @Value("${waltz.data.type.usage.recalc.batch.size:500}") int recalcBatchSize,
+                                @Value("${waltz.data.type.usage.recalc.full.threshold:5000}") int fullRecalcThreshold) {
         checkNotNull(dataTypeUsageDao, "dataTypeUsageDao cannot be null");
         checkNotNull(selectorFactory, "appIdSelectorFactor cannot be null");
         checkNotNull(dataTypeIdSelectorFactory, "dataTypeIdSelectorFactory cannot be null");
+        checkNotNull(recalcQueueDao, "recalcQueueDao cannot be null");
+        checkTrue(recalcBatchSize > 0, "recalcBatchSize must be positive");
 
         this.dataTypeUsageDao = dataTypeUsageDao;
         this.appIdSelectorFactor = selectorFactory;
         this.dataTypeIdSelectorFactory = dataTypeIdSelectorFactory;
+        this.recalcQueueDao = recalcQueueDao;
+        this.recalcBatchSize = recalcBatchSize;
+        this.fullRecalcThreshold = fullRecalcThreshold;
     }
 
 
@@ -143,7 +164,56 @@ public class DataTypeUsageService {
 
 
     public boolean recalculateForAllApplications() {
-        return dataTypeUsageDao.recalculateForAllApplications();
+        // anything already queued is covered by the full recalculation
+        Set<Long> queuedEntryIds = recalcQueueDao.findQueuedEntries(RecalcKind.DATA_TYPE_USAGE).keySet();
+        boolean result = dataTypeUsageDao.recalculateForAllApplications();
+        recalcQueueDao.dequeue(RecalcKind.DATA_TYPE_USAGE, queuedEntryIds);
+        return result;
+    }
+
+
+    /**
+     * Queues the given applications and actors for usage recalculation,
+     * other entity kinds are ignored.  The queue is drained by
+     * {@link #processRecalcQueue()}, so callers do not pay for the
+     * recalculation themselves.
+     * @param refs  entities whose flows or flow decorators have changed
+     * @return number of entries queued
+     */
+    public int enqueueRecalculation(Collection<EntityReference> refs) {
+        checkNotNull(refs, "refs cannot be null");
+
+        Set<EntityReference> recalculable = refs
+                .stream()
+                .filter(r -> RECALCULABLE_KINDS.contains(r.kind()))
+                .collect(Collectors.toSet());
+
+        return recalcQueueDao.enqueue(RecalcKind.DATA_TYPE_USAGE, recalculable);
+    }
+
+
+    /**
+     * Drains the recalc queue.  Entities queued repeatedly since the last
+     * pass are only recalculated once, and are processed in batches.  If
+     * the queue holds more entities than the full recalc threshold then a
+     * full recalculation is performed instead.
+     *
+     * Entries are only removed once processed, and only the entries read
+     * by this pass are removed.  A failed pass (or a restart) is picked up
+     * again by the next pass.
+     */
+    @Scheduled(
+            initialDelayString = "${waltz.data.type.usage.recalc.interval:30000}",
+            fixedDelayString = "${waltz.data.type.usage.recalc.interval:30000}")
+    public void processRecalcQueue() {
+        try {
+            Map<Long, EntityReference> queuedEntries = recalcQueueDao.findQueuedEntries(RecalcKind.DATA_TYPE_USAGE);
+            if (! queuedEntries.isEmpty()) {
+                processRecalcQueue(queuedEntries);
+            }
+        } catch (Exception e) {
+            LOG.error("Failed to process data type usage recalc queue, will retry on next pass", e);
+        }
     }
 
 
@@ -164,7 +234,57 @@ public class DataTypeUsageService {
     }
 
 
-    private Select<Record1<Long>> convertApplicationIdsToIdSelector(Set<Long> appIds) {
+    // -- HELPERS ---
+
+    private void processRecalcQueue(Map<Long, EntityReference> queuedEntries) {
+        Set<EntityReference> queued = new HashSet<>(queuedEntries.values());
+
+        if (queued.size() > fullRecalcThreshold) {
+            LOG.info("{} entities queued for data type usage recalculation, recalculating all", queued.size());
+            dataTypeUsageDao.recalculateForAllApplications();
+        } else {
+            long start = System.currentTimeMillis();
+            mkRecalcBatches(queued, recalcBatchSize)
+                    .forEach((kind, batches) -> batches
+                            .forEach(batch -> dataTypeUsageDao.recalculateForIdSelector(
+                                    kind,
+                                    convertIdsToIdSelector(kind, batch))));
+            LOG.debug("Recalculated data type usages for {} entities in {}ms", queued.size(), System.currentTimeMillis() - start);
+        }
+
+        recalcQueueDao.dequeue(RecalcKind.DATA_TYPE_USAGE, queuedEntries.keySet());
+    }
+
+
+    /**
+     * @return batches of (at most <code>batchSize</code>) ids of the given entities, by kind
+     */
+    static Map<EntityKind, List<List<Long>>> mkRecalcBatches(Set<EntityReference> refs, int batchSize) {
+        return refs
+                .stream()
+                .collect(Collectors.groupingBy(
+                        EntityReference::kind,
+                        Collectors.collectingAndThen(
+                                Collectors.mapping(EntityReference::id, Collectors.toList()),
+                                ids -> partition(ids, batchSize))));
+    }
+
+
+    private Select<Record1<Long>> convertIdsToIdSelector(EntityKind kind, Collection<Long> ids) {
+        switch (kind) {
+            case APPLICATION:
+                return convertApplicationIdsToIdSelector(ids);
+            case ACTOR:
+                return DSL.select(ACTOR.ID)
+                        .from(ACTOR)
+                        .where(ACTOR.ID.in(ids));
+            default:
+                throw new IllegalArgumentException("Cannot recalculate data type usages for kind: " + kind);
+        }
+    }
+
+
+    private Select<Record1<Long>> convertApplicationIdsToIdSelector(Collection<Long> appIds) {
         return DSL.select(APPLICATION.ID)
                 .from(APPLICATION)
                 .where(APPLICATION.ID.in(appIds));
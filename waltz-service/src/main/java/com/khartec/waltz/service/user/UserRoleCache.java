@@ -0,0 +1,151 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.khartec.waltz.service.user;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.Checks.checkTrue;
+import static com.khartec.waltz.common.SetUtilities.fromCollection;
+
+
+/**
+ * Short lived cache of the roles held by each user.  Role checks happen
+ * several times per request so even a ttl of a few seconds removes most of
+ * the `user_role` lookups.
+ *
+ * User names are matched case insensitively, mirroring `UserRoleDao`.
+ * Entries are dropped explicitly whenever roles are updated via Waltz,
+ * the ttl bounds how long changes made directly in the database take to
+ * be seen.
+ */
+public class UserRoleCache {
+
+    private static class CachedRoles {
+
+        private final Set<String> roles;
+        private final long loadedAt;
+
+
+        private CachedRoles(Set<String> roles) {
+            this.roles = roles;
+            this.loadedAt = System.currentTimeMillis();
+        }
+    }
+
+
+    private final Map<String, CachedRoles> rolesByUser = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final boolean enabled;
+    private final long ttlInMillis;
+
+
+    public UserRoleCache(boolean enabled, int ttlInSeconds) {
+        checkTrue(ttlInSeconds >= 0, "ttlInSeconds cannot be negative");
+        this.enabled = enabled;
+        this.ttlInMillis = TimeUnit.SECONDS.toMillis(ttlInSeconds);
+    }
+
+
+    /**
+     * Returns the (unmodifiable) roles for the user, invoking the loader if
+     * they are not cached or the cached entry has expired.
+     */
+    public Set<String> getRoles(String userName, Function<String, Set<String>> loader) {
+        checkNotNull(loader, "loader cannot be null");
+
+        if (! enabled || userName == null) {
+            return loader.apply(userName);
+        }
+
+        String key = userName.toLowerCase();
+        CachedRoles cached = rolesByUser.get(key);
+        if (cached != null && ! isExpired(cached)) {
+            hits.incrementAndGet();
+            return cached.roles;
+        }
+
+        misses.incrementAndGet();
+        long generationAtStart = generation.get();
+        Set<String> roles = Collections.unmodifiableSet(fromCollection(loader.apply(userName)));
+
+        // don't cache if the roles were invalidated whilst being loaded
+        if (generationAtStart == generation.get()) {
+            rolesByUser.put(key, new CachedRoles(roles));
+        }
+
+        return roles;
+    }
+
+
+    public void invalidate(String userName) {
+        if (userName == null) {
+            return;
+        }
+        generation.incrementAndGet();
+        invalidations.incrementAndGet();
+        rolesByUser.remove(userName.toLowerCase());
+    }
+
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        invalidations.incrementAndGet();
+        rolesByUser.clear();
+    }
+
+
+    public int size() {
+        return rolesByUser.size();
+    }
+
+
+    public long hitCount() {
+        return hits.get();
+    }
+
+
+    public long missCount() {
+        return misses.get();
+    }
+
+
+    public long invalidationCount() {
+        return invalidations.get();
+    }
+
+
+    // -- HELPERS ---
+
+    private boolean isExpired(CachedRoles cached) {
+        return System.currentTimeMillis() - cached.loadedAt > ttlInMillis;
+    }
+
+}
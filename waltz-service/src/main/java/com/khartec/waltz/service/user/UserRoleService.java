@@ -60,15 +60,21 @@ public class UserRoleService {
 
     private final PersonService personService;
 
+    private final UserRoleCache userRoleCache;
+
 
     @Autowired
     public UserRoleService(UserRoleDao userRoleDao,
-                           ChangeLogService changeLogService, PersonService personService) {
+                           ChangeLogService changeLogService,
+                           PersonService personService,
+                           UserRoleCache userRoleCache) {
         this.personService = personService;
         checkNotNull(userRoleDao, "userRoleDao must not be null");
+        checkNotNull(userRoleCache, "userRoleCache must not be null");
 
         this.userRoleDao = userRoleDao;
         this.changeLogService = changeLogService;
+        this.userRoleCache = userRoleCache;
     }
 
 
@@ -84,7 +90,7 @@ public class UserRoleService {
 
 
     public boolean hasRole(String userName, Set<String> requiredRoles) {
-        Set<String> userRoles = userRoleDao.getUserRoles(userName);
+        Set<String> userRoles = lookupRoles(userName);
         return userRoles.containsAll(requiredRoles);
     }
 
@@ -99,7 +105,7 @@ public class UserRoleService {
     }
 
     public boolean hasAnyRole(String userName, Set<String> requiredRoles) {
-        Set<String> userRoles = userRoleDao.getUserRoles(userName);
+        Set<String> userRoles = lookupRoles(userName);
         return ! SetUtilities.intersection(userRoles, requiredRoles)
                     .isEmpty();
     }
@@ -113,7 +119,7 @@ public class UserRoleService {
     public User getByUserId(String userId) {
         return ImmutableUser.builder()
                 .userName(userId)
-                .addAllRoles(userRoleDao.getUserRoles(userId))
+                .addAllRoles(lookupRoles(userId))
                 .build();
     }
 
@@ -140,12 +146,19 @@ public class UserRoleService {
             changeLogService.write(logEntry);
         }
 
-        return userRoleDao.updateRoles(targetUserName, newRoles);
+        boolean updated = userRoleDao.updateRoles(targetUserName, newRoles);
+        userRoleCache.invalidate(targetUserName);
+        return updated;
     }
 
 
     public Set<String> getUserRoles(String userName) {
-        return userRoleDao.getUserRoles(userName);
+        return lookupRoles(userName);
+    }
+
+
+    private Set<String> lookupRoles(String userName) {
+        return userRoleCache.getRoles(userName, userRoleDao::getUserRoles);
     }
 
 }
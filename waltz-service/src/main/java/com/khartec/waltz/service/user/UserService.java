@@ -49,22 +49,26 @@ public class UserService {
     private final PasswordService passwordService;
     private final UserRoleDao userRoleDao;
     private SettingsService settingsService;
+    private final UserRoleCache userRoleCache;
 
 
     @Autowired
     public UserService(UserDao userDao,
                        UserRoleDao userRoleDao,
                        PasswordService passwordService,
-                       SettingsService settingsService) {
+                       SettingsService settingsService,
+                       UserRoleCache userRoleCache) {
         checkNotNull(userDao, "userDao must not be null");
         checkNotNull(userRoleDao, "userRoleDao cannot be null");
         checkNotNull(passwordService, "passwordService must not be null");
         checkNotNull(settingsService, "settingsService cannot be null");
+        checkNotNull(userRoleCache, "userRoleCache cannot be null");
 
         this.userDao = userDao;
         this.userRoleDao = userRoleDao;
         this.passwordService = passwordService;
         this.settingsService = settingsService;
+        this.userRoleCache = userRoleCache;
     }
 
 
@@ -89,6 +93,7 @@ public class UserService {
     public boolean deleteUser(String userName) {
         LOG.info("Deleting user: " + userName);
         userDao.deleteUser(userName);
+        userRoleCache.invalidate(userName);
         LOG.info("Deleted user: " + userName);
         return true;
     }
@@ -135,7 +140,10 @@ public class UserService {
         if (setting != null ) {
             setting.value()
                     .map(s -> StringUtilities.tokenise(s, ","))
-                    .ifPresent(roles -> userRoleDao.updateRoles(username, SetUtilities.fromCollection(roles)));
+                    .ifPresent(roles -> {
+                        userRoleDao.updateRoles(username, SetUtilities.fromCollection(roles));
+                        userRoleCache.invalidate(username);
+                    });
 
         }
     }
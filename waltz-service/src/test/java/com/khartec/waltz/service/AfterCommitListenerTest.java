@@ -0,0 +1,109 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.khartec.waltz.service;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.khartec.waltz.common.ListUtilities.newArrayList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AfterCommitListenerTest {
+
+    private final AfterCommitListener listener = new AfterCommitListener();
+    private final List<String> ran = new ArrayList<>();
+
+
+    @Test
+    public void workOutsideATransactionRunsImmediately() {
+        listener.runAfterCommit(() -> ran.add("a"));
+        assertEquals(newArrayList("a"), ran);
+    }
+
+
+    @Test
+    public void workInsideATransactionWaitsForTheCommit() {
+        listener.beginEnd(null);
+        listener.runAfterCommit(() -> ran.add("a"));
+
+        assertTrue(ran.isEmpty());
+
+        listener.commitEnd(null);
+        assertEquals(newArrayList("a"), ran);
+    }
+
+
+    @Test
+    public void workIsDiscardedOnRollback() {
+        listener.beginEnd(null);
+        listener.runAfterCommit(() -> ran.add("a"));
+        listener.rollbackEnd(null);
+
+        assertTrue(ran.isEmpty());
+
+        listener.runAfterCommit(() -> ran.add("b"));
+        assertEquals("later work is unaffected", newArrayList("b"), ran);
+    }
+
+
+    @Test
+    public void nestedCommitWaitsForTheOuterTransaction() {
+        listener.beginEnd(null);
+        listener.beginEnd(null);
+        listener.runAfterCommit(() -> ran.add("inner"));
+        listener.commitEnd(null);
+
+        assertTrue(ran.isEmpty());
+
+        listener.commitEnd(null);
+        assertEquals(newArrayList("inner"), ran);
+    }
+
+
+    @Test
+    public void nestedRollbackOnlyDiscardsItsOwnWork() {
+        listener.beginEnd(null);
+        listener.runAfterCommit(() -> ran.add("outer"));
+        listener.beginEnd(null);
+        listener.runAfterCommit(() -> ran.add("inner"));
+        listener.rollbackEnd(null);
+        listener.commitEnd(null);
+
+        assertEquals(newArrayList("outer"), ran);
+    }
+
+
+    @Test
+    public void transactionsAreTrackedPerThread() throws InterruptedException {
+        listener.beginEnd(null);
+
+        Thread other = new Thread(() -> listener.runAfterCommit(() -> ran.add("other")));
+        other.start();
+        other.join();
+
+        assertEquals(newArrayList("other"), ran);
+        listener.rollbackEnd(null);
+    }
+
+}
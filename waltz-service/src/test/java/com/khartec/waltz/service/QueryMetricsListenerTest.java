@@ -0,0 +1,140 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.khartec.waltz.service;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+
+public class QueryMetricsListenerTest {
+
+    private final AtomicInteger walks = new AtomicInteger();
+
+
+    @Test
+    public void firstExecutionOfAFingerprintFindsTheCaller() {
+        QueryMetricsListener listener = mkListener(true, 0.0, 0.5);
+
+        assertEquals("Dao.method1", listener.resolveCaller("select a", false));
+        assertEquals("Dao.method2", listener.resolveCaller("select b", false));
+        assertEquals(2, walks.get());
+    }
+
+
+    @Test
+    public void unsampledExecutionsReuseTheRememberedCaller() {
+        QueryMetricsListener listener = mkListener(true, 0.01, 0.5);
+
+        listener.resolveCaller("select a", false);
+        for (int i = 0; i < 10; i++) {
+            assertEquals("Dao.method1", listener.resolveCaller("select a", false));
+        }
+        assertEquals(1, walks.get());
+    }
+
+
+    @Test
+    public void sampledExecutionsFindTheCallerAgainAndAreRemembered() {
+        double[] randomValues = { 0.9, 0.1, 0.9 };
+        AtomicInteger next = new AtomicInteger();
+        QueryMetricsListener listener = new QueryMetricsListener(
+                new QueryMetricsRegistry(true, 100),
+                10,
+                true,
+                0.5,
+                () -> "Dao.method" + walks.incrementAndGet(),
+                () -> randomValues[next.getAndIncrement()]);
+
+        assertEquals("Dao.method1", listener.resolveCaller("select a", false));  // first sighting, no random draw
+        assertEquals("Dao.method1", listener.resolveCaller("select a", false));  // 0.9, not sampled
+        assertEquals("Dao.method2", listener.resolveCaller("select a", false));  // 0.1, sampled
+        assertEquals("Dao.method2", listener.resolveCaller("select a", false));  // 0.9, not sampled
+        assertEquals(2, walks.get());
+    }
+
+
+    @Test
+    public void slowQueriesAlwaysFindTheCaller() {
+        QueryMetricsListener listener = mkListener(true, 0.0, 0.5);
+
+        listener.resolveCaller("select a", false);
+        assertEquals("Dao.method2", listener.resolveCaller("select a", true));
+        assertEquals(2, walks.get());
+    }
+
+
+    @Test
+    public void aSampleRateOfOneFindsEveryCaller() {
+        QueryMetricsListener listener = mkListener(true, 1.0, 0.999);
+
+        for (int i = 0; i < 5; i++) {
+            listener.resolveCaller("select a", false);
+        }
+        assertEquals(5, walks.get());
+    }
+
+
+    @Test
+    public void withoutAFingerprintEveryCallWalksTheStack() {
+        QueryMetricsListener listener = mkListener(true, 0.0, 0.5);
+
+        listener.resolveCaller(null, false);
+        listener.resolveCaller(null, false);
+        assertEquals(2, walks.get());
+    }
+
+
+    @Test
+    public void disabledCaptureNeverWalksTheStack() {
+        QueryMetricsListener listener = mkListener(false, 1.0, 0.0);
+
+        assertNull(listener.resolveCaller("select a", true));
+        assertEquals(0, walks.get());
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sampleRateAboveOneIsRejected() {
+        mkListener(true, 1.5, 0.0);
+    }
+
+
+    // -- HELPERS ---
+
+    /**
+     * The caller finder returns a new caller on every walk, so tests can
+     * tell which walk a caller came from.  The random source always
+     * returns the given value.
+     */
+    private QueryMetricsListener mkListener(boolean captureCaller, double sampleRate, double randomValue) {
+        return new QueryMetricsListener(
+                new QueryMetricsRegistry(true, 100),
+                10,
+                captureCaller,
+                sampleRate,
+                () -> "Dao.method" + walks.incrementAndGet(),
+                () -> randomValue);
+    }
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.khartec.waltz.service;
+
+import com.khartec.waltz.model.query_metric.QueryMetric;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.khartec.waltz.service.QueryMetricsRegistry.mkFingerprint;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+
+public class QueryMetricsRegistryTest {
+
+    @Test
+    public void fingerprintReplacesLiterals() {
+        assertEquals(
+                "select * from app where name = ? and id = ? and t1.x = ?",
+                mkFingerprint("select * from app where name = 'it''s' and id = 42 and t1.x = -1.5"));
+    }
+
+
+    @Test
+    public void fingerprintCollapsesWhitespace() {
+        assertEquals(
+                "select a from b where c = ?",
+                mkFingerprint("select a\n    from b\n\twhere c = ?  "));
+    }
+
+
+    @Test
+    public void fingerprintIgnoresInListSize() {
+        assertEquals(
+                "select a from b where c in (?, ...)",
+                mkFingerprint("select a from b where c in (?, ?)"));
+        assertEquals(
+                "select a from b where c in (?, ...)",
+                mkFingerprint("select a from b where c in (1, 2, 3, 4, 5)"));
+    }
+
+
+    @Test
+    public void fingerprintIgnoresMultiRowInsertSize() {
+        assertEquals(
+                "insert into t (a, b) values (?, ...), ...",
+                mkFingerprint("insert into t (a, b) values (?, ?), (?, ?)"));
+        assertEquals(
+                "insert into t (a, b) values (?, ...), ...",
+                mkFingerprint("insert into t (a, b) values (?, ?), (?, ?), (?, ?)"));
+    }
+
+
+    @Test
+    public void fingerprintOfNullIsEmpty() {
+        assertEquals("", mkFingerprint(null));
+    }
+
+
+    @Test
+    public void cachedFingerprintMatchesUncached() {
+        QueryMetricsRegistry registry = new QueryMetricsRegistry(true, 10);
+        String sql = "select a from b where c in (1, 2, 3) and d = 'x'";
+
+        assertEquals(mkFingerprint(sql), registry.fingerprint(sql));
+        assertSame(registry.fingerprint(sql), registry.fingerprint(new String(sql)));
+        assertEquals("", registry.fingerprint(null));
+    }
+
+
+    @Test
+    public void metricsAreAggregatedByFingerprintAndCaller() {
+        QueryMetricsRegistry registry = new QueryMetricsRegistry(true, 10);
+        registry.record("q1", "ADao.find", TimeUnit.MILLISECONDS.toNanos(3), 5, false);
+        registry.record("q1", "ADao.find", TimeUnit.MILLISECONDS.toNanos(7), 1, true);
+        registry.record("q1", "BDao.find", TimeUnit.MILLISECONDS.toNanos(1), 0, false);
+
+        List<QueryMetric> slowest = registry.findSlowest(10);
+        assertEquals(2, slowest.size());
+
+        QueryMetric top = slowest.get(0);
+        assertEquals("ADao.find", top.caller().get());
+        assertEquals(2, top.executionCount());
+        assertEquals(1, top.errorCount());
+        assertEquals(10, top.totalMillis());
+        assertEquals(7, top.maxMillis());
+        assertEquals(6, top.rowsFetched());
+        assertEquals(5, top.p50Millis());
+        assertEquals(7, top.p99Millis());
+    }
+
+
+    @Test
+    public void newFingerprintsOverflowOnceLimitReached() {
+        QueryMetricsRegistry registry = new QueryMetricsRegistry(true, 2);
+        registry.record("q1", null, 1, 0, false);
+        registry.record("q2", null, 1, 0, false);
+        registry.record("q3", null, 1, 0, false);
+        registry.record("q1", null, 1, 0, false);
+
+        assertEquals(3, registry.getTrackedCount());
+        assertEquals(1, registry.getOverflowCount());
+        assertTrue(registry
+                .findMostFrequent(3)
+                .stream()
+                .anyMatch(m -> m.fingerprint().equals(QueryMetricsRegistry.OVERFLOW_FINGERPRINT)));
+    }
+
+
+    @Test
+    public void disabledRegistryRecordsNothing() {
+        QueryMetricsRegistry registry = new QueryMetricsRegistry(false, 10);
+        registry.record("q1", null, 1, 0, false);
+        assertEquals(0, registry.getTrackedCount());
+        assertFalse(registry.isEnabled());
+    }
+
+}
@@ -0,0 +1,186 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.khartec.waltz.service.access_log;
+
+import com.khartec.waltz.model.accesslog.AccessLog;
+import com.khartec.waltz.model.accesslog.ImmutableAccessLog;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+public class AccessLogBufferTest {
+
+    private static class RecordingWriter implements Consumer<List<AccessLog>> {
+
+        private final List<List<AccessLog>> batches = new ArrayList<>();
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private final CountDownLatch release;
+
+        private RecordingWriter(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public void accept(List<AccessLog> logEntries) {
+            entered.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (batches) {
+                batches.add(new ArrayList<>(logEntries));
+            }
+        }
+
+        private int writtenCount() {
+            synchronized (batches) {
+                return batches.stream().mapToInt(List::size).sum();
+            }
+        }
+    }
+
+
+    @Test
+    public void writesImmediatelyWhenDisabled() {
+        RecordingWriter writer = new RecordingWriter(new CountDownLatch(0));
+        AccessLogBuffer buffer = new AccessLogBuffer(writer, false, 10, 10, 1000);
+        buffer.start();
+
+        assertTrue(buffer.offer(mkEntry("a")));
+
+        assertFalse(buffer.isRunning());
+        assertEquals(1, writer.writtenCount());
+        assertEquals(1, buffer.flushedCount());
+    }
+
+
+    @Test
+    public void closeDrainsQueuedEntriesInBatches() {
+        RecordingWriter writer = new RecordingWriter(new CountDownLatch(0));
+        AccessLogBuffer buffer = new AccessLogBuffer(writer, true, 100, 2, 60_000);
+        buffer.start();
+
+        for (int i = 0; i < 5; i++) {
+            buffer.offer(mkEntry("s" + i));
+        }
+        buffer.close();
+
+        assertEquals(5, writer.writtenCount());
+        assertEquals(5, buffer.flushedCount());
+        assertEquals(0, buffer.queuedCount());
+        writer.batches.forEach(b -> assertTrue(b.size() <= 2));
+    }
+
+
+    @Test
+    public void entriesAreDroppedWhenFull() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingWriter writer = new RecordingWriter(release);
+        AccessLogBuffer buffer = new AccessLogBuffer(writer, true, 2, 1, 10);
+        buffer.start();
+
+        buffer.offer(mkEntry("first"));
+        assertTrue("writer should pick up the first entry", writer.entered.await(5, TimeUnit.SECONDS));
+
+        assertTrue(buffer.offer(mkEntry("second")));
+        assertTrue(buffer.offer(mkEntry("third")));
+        assertFalse(buffer.offer(mkEntry("fourth")));
+
+        assertEquals(2, buffer.queuedCount());
+        assertEquals(1, buffer.droppedCount());
+
+        release.countDown();
+        buffer.close();
+
+        assertEquals(3, writer.writtenCount());
+        assertEquals(3, buffer.flushedCount());
+    }
+
+
+    @Test
+    public void interruptedWriterWritesItsPendingBatch() throws InterruptedException {
+        RecordingWriter writer = new RecordingWriter(new CountDownLatch(0));
+        AccessLogBuffer buffer = new AccessLogBuffer(writer, true, 100, 10, 60_000);
+        buffer.start();
+
+        for (int i = 0; i < 3; i++) {
+            buffer.offer(mkEntry("s" + i));
+        }
+
+        // the writer holds the entries whilst it waits for the batch to fill
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (buffer.queuedCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, buffer.queuedCount());
+
+        Thread writerThread = Thread.getAllStackTraces()
+                .keySet()
+                .stream()
+                .filter(t -> t.getName().equals("WaltzAccessLogWriter") && t.isAlive())
+                .findFirst()
+                .get();
+        writerThread.interrupt();
+        writerThread.join(5_000);
+
+        assertFalse(writerThread.isAlive());
+        assertEquals(3, writer.writtenCount());
+        assertEquals(3, buffer.flushedCount());
+    }
+
+
+    @Test
+    public void failedWritesAreCounted() {
+        AccessLogBuffer buffer = new AccessLogBuffer(
+                logEntries -> {
+                    throw new IllegalStateException("database unavailable");
+                },
+                false,
+                10,
+                10,
+                1000);
+
+        buffer.offer(mkEntry("a"));
+
+        assertEquals(1, buffer.failedCount());
+        assertEquals(0, buffer.flushedCount());
+    }
+
+
+    private static AccessLog mkEntry(String state) {
+        return ImmutableAccessLog.builder()
+                .userId("bob")
+                .state(state)
+                .params("{}")
+                .build();
+    }
+
+}
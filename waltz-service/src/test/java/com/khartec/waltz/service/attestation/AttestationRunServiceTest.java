@@ -0,0 +1,97 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.khartec.waltz.service.attestation;
+
+import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.model.EntityReference;
+import com.khartec.waltz.model.attestation.AttestationInstanceRecipient;
+import com.khartec.waltz.model.attestation.ImmutableAttestationInstance;
+import com.khartec.waltz.model.attestation.ImmutableAttestationInstanceRecipient;
+import org.junit.Test;
+
+import java.util.*;
+
+import static com.khartec.waltz.common.ListUtilities.newArrayList;
+import static com.khartec.waltz.common.SetUtilities.asSet;
+import static com.khartec.waltz.model.EntityReference.mkRef;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AttestationRunServiceTest {
+
+    private static final long RUN_ID = 1L;
+
+    private static final EntityReference APP_A = mkRef(EntityKind.APPLICATION, 1L);
+    private static final EntityReference APP_B = mkRef(EntityKind.APPLICATION, 2L);
+
+
+    @Test
+    public void recipientsAreGroupedByEntityOnce() {
+        Map<EntityReference, Set<String>> recipientsByEntity = AttestationRunService.groupRecipientsByEntity(newArrayList(
+                mkRecipient(APP_A, "a@example.com"),
+                mkRecipient(APP_A, "b@example.com"),
+                mkRecipient(APP_A, "a@example.com"),
+                mkRecipient(APP_B, "a@example.com")));
+
+        Map<EntityReference, Set<String>> expected = new HashMap<>();
+        expected.put(APP_A, asSet("a@example.com", "b@example.com"));
+        expected.put(APP_B, asSet("a@example.com"));
+        assertEquals(expected, recipientsByEntity);
+    }
+
+
+    @Test
+    public void issuanceBatchesCoverEveryEntityOnce() {
+        Map<EntityReference, Set<String>> recipientsByEntity = new HashMap<>();
+        for (long appId = 1; appId <= 1500; appId++) {
+            recipientsByEntity.put(mkRef(EntityKind.APPLICATION, appId), asSet("person" + appId + "@example.com"));
+        }
+
+        List<Map<EntityReference, Set<String>>> batches = AttestationRunService.mkIssuanceBatches(recipientsByEntity, 1000);
+
+        assertEquals(2, batches.size());
+        Map<EntityReference, Set<String>> issued = new HashMap<>();
+        batches.forEach(batch -> {
+            assertTrue(batch.size() <= 1000);
+            issued.putAll(batch);
+        });
+        assertEquals(recipientsByEntity, issued);
+    }
+
+
+    @Test
+    public void noRecipientsMeansNoBatches() {
+        assertTrue(AttestationRunService.mkIssuanceBatches(new HashMap<>(), 1000).isEmpty());
+    }
+
+
+    // -- HELPERS ---
+
+    private static AttestationInstanceRecipient mkRecipient(EntityReference ref, String userId) {
+        return ImmutableAttestationInstanceRecipient.builder()
+                .attestationInstance(ImmutableAttestationInstance.builder()
+                        .attestationRunId(RUN_ID)
+                        .parentEntity(ref)
+                        .build())
+                .userId(userId)
+                .build();
+    }
+
+}
@@ -0,0 +1,164 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.khartec.waltz.service.authoritative_source;
+
+import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.model.authoritativesource.ImmutableAuthoritativeRatingVantagePoint;
+import com.khartec.waltz.model.data_flow_decorator.ImmutableLogicalFlowDecorator;
+import com.khartec.waltz.model.data_flow_decorator.LogicalFlowDecorator;
+import com.khartec.waltz.model.rating.AuthoritativenessRating;
+import org.jooq.lambda.tuple.Tuple2;
+import org.jooq.lambda.tuple.Tuple3;
+import org.junit.Test;
+
+import java.util.*;
+
+import static com.khartec.waltz.common.ListUtilities.newArrayList;
+import static com.khartec.waltz.model.EntityReference.mkRef;
+import static com.khartec.waltz.model.rating.AuthoritativenessRating.*;
+import static java.util.stream.Collectors.toMap;
+import static org.jooq.lambda.tuple.Tuple.tuple;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AuthSourceRatingCalculatorTest {
+
+    private static final long TRADE = 1L;
+    private static final long PII = 2L;
+
+    private static final long OU_SOURCE = 100L;
+    private static final long OU_TARGET = 200L;
+
+    private static final long AUTH_APP = 10L;
+    private static final long TARGET_APP = 20L;
+    private static final long OTHER_APP = 30L;
+
+    private static final long AUTH_FLOW = 1000L;
+    private static final long NON_AUTH_FLOW = 1001L;
+    private static final long NON_APP_FLOW = 1002L;
+
+    /**
+     * AUTH_APP is the primary source of TRADE for OU_TARGET, OTHER_APP is not
+     */
+    private static final AuthoritativeSourceResolver RESOLVER = new AuthoritativeSourceResolver(newArrayList(
+            ImmutableAuthoritativeRatingVantagePoint.builder()
+                    .vantagePoint(mkRef(EntityKind.ORG_UNIT, OU_TARGET))
+                    .rank(1)
+                    .dataTypeCode("TRADE")
+                    .applicationId(AUTH_APP)
+                    .rating(PRIMARY)
+                    .build()));
+
+
+    @Test
+    public void onlyChangedRatingsAreReturned() {
+        List<LogicalFlowDecorator> changed = findChangedRatings(
+                mkDecorator(AUTH_FLOW, TRADE, NO_OPINION),
+                mkDecorator(AUTH_FLOW, PII, PRIMARY),
+                mkDecorator(NON_AUTH_FLOW, TRADE, DISCOURAGED),
+                mkDecorator(NON_APP_FLOW, TRADE, SECONDARY));
+
+        // keyed by (flow id, data type id)
+        Map<Tuple2<Long, Long>, AuthoritativenessRating> updated = changed
+                .stream()
+                .collect(toMap(
+                        d -> tuple(d.dataFlowId(), d.decoratorEntity().id()),
+                        LogicalFlowDecorator::rating));
+
+        Map<Tuple2<Long, Long>, AuthoritativenessRating> expected = new HashMap<>();
+        expected.put(tuple(AUTH_FLOW, TRADE), PRIMARY);
+        expected.put(tuple(AUTH_FLOW, PII), NO_OPINION);
+        expected.put(tuple(NON_APP_FLOW, TRADE), NO_OPINION);
+        assertEquals(expected, updated);
+    }
+
+
+    @Test
+    public void nothingIsReturnedWhenRatingsAreCurrent() {
+        List<LogicalFlowDecorator> changed = findChangedRatings(
+                mkDecorator(AUTH_FLOW, TRADE, PRIMARY),
+                mkDecorator(NON_AUTH_FLOW, TRADE, DISCOURAGED),
+                mkDecorator(NON_APP_FLOW, PII, NO_OPINION));
+
+        assertTrue(changed.isEmpty());
+    }
+
+
+    @Test
+    public void nonDataTypeDecoratorsHaveNoOpinion() {
+        List<LogicalFlowDecorator> changed = findChangedRatings(
+                ImmutableLogicalFlowDecorator.copyOf(mkDecorator(AUTH_FLOW, TRADE, PRIMARY))
+                        .withDecoratorEntity(mkRef(EntityKind.MEASURABLE, TRADE)));
+
+        assertEquals(1, changed.size());
+        assertEquals(NO_OPINION, changed.get(0).rating());
+    }
+
+
+    @Test
+    public void unknownDataTypesHaveNoOpinion() {
+        List<LogicalFlowDecorator> changed = findChangedRatings(mkDecorator(AUTH_FLOW, 99L, PRIMARY));
+
+        assertEquals(1, changed.size());
+        assertEquals(NO_OPINION, changed.get(0).rating());
+    }
+
+
+    // -- HELPERS ---
+
+    /**
+     * AUTH_FLOW and NON_AUTH_FLOW go to TARGET_APP (in OU_TARGET) from
+     * AUTH_APP and OTHER_APP respectively.  NON_APP_FLOW is not between
+     * applications.
+     */
+    private static List<LogicalFlowDecorator> findChangedRatings(LogicalFlowDecorator... decorators) {
+        Map<Long, Tuple3<Long, Long, Long>> appToAppFlowsById = new HashMap<>();
+        appToAppFlowsById.put(AUTH_FLOW, tuple(AUTH_FLOW, AUTH_APP, TARGET_APP));
+        appToAppFlowsById.put(NON_AUTH_FLOW, tuple(NON_AUTH_FLOW, OTHER_APP, TARGET_APP));
+
+        Map<Long, Long> orgUnitIdsByAppId = new HashMap<>();
+        orgUnitIdsByAppId.put(AUTH_APP, OU_SOURCE);
+        orgUnitIdsByAppId.put(TARGET_APP, OU_TARGET);
+        orgUnitIdsByAppId.put(OTHER_APP, OU_TARGET);
+
+        Map<Long, String> dataTypeCodesById = new HashMap<>();
+        dataTypeCodesById.put(TRADE, "TRADE");
+        dataTypeCodesById.put(PII, "PII");
+
+        return AuthSourceRatingCalculator.findChangedRatings(
+                Arrays.asList(decorators),
+                appToAppFlowsById,
+                orgUnitIdsByAppId,
+                dataTypeCodesById,
+                RESOLVER);
+    }
+
+
+    private static LogicalFlowDecorator mkDecorator(long flowId, long dataTypeId, AuthoritativenessRating rating) {
+        return ImmutableLogicalFlowDecorator.builder()
+                .dataFlowId(flowId)
+                .decoratorEntity(mkRef(EntityKind.DATA_TYPE, dataTypeId))
+                .rating(rating)
+                .lastUpdatedBy("test")
+                .build();
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.khartec.waltz.service.complexity;
+
+import com.khartec.waltz.data.DBExecutorPool;
+import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.model.complexity.ComplexityKind;
+import com.khartec.waltz.model.complexity.ImmutableComplexityScore;
+import com.khartec.waltz.schema.tables.records.ComplexityScoreRecord;
+import com.khartec.waltz.service.complexity.ComplexityRatingService.RebuildState;
+import org.jooq.lambda.tuple.Tuple3;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+
+import static org.jooq.lambda.tuple.Tuple.tuple;
+import static org.junit.Assert.*;
+
+public class ComplexityRatingServiceTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2019, 6, 1, 12, 0);
+    private static final Tuple3<Integer, Integer, Double> BASELINES = tuple(10, 5, 2.5);
+
+
+    @Test
+    public void changedAppsAreRebuiltWithinTheIntervalWhenBaselinesAreUnchanged() {
+        RebuildState previous = new RebuildState(NOW.minusMinutes(5), BASELINES, NOW.minusHours(23));
+
+        assertFalse(previous.requiresFullRebuild(tuple(10, 5, 2.5), NOW, 24));
+    }
+
+
+    @Test
+    public void movingAnyBaselineRequiresAFullRebuild() {
+        RebuildState previous = new RebuildState(NOW.minusMinutes(5), BASELINES, NOW.minusMinutes(5));
+
+        assertTrue(previous.requiresFullRebuild(tuple(11, 5, 2.5), NOW, 24));
+        assertTrue(previous.requiresFullRebuild(tuple(10, 4, 2.5), NOW, 24));
+        assertTrue(previous.requiresFullRebuild(tuple(10, 5, 3.0), NOW, 24));
+    }
+
+
+    @Test
+    public void fullRebuildIsRequiredOnceTheIntervalHasPassed() {
+        RebuildState previous = new RebuildState(NOW.minusMinutes(5), BASELINES, NOW.minusHours(25));
+
+        assertTrue(previous.requiresFullRebuild(BASELINES, NOW, 24));
+    }
+
+
+    @Test
+    public void scoresAreRecordedAgainstApplications() {
+        ComplexityScoreRecord record = ComplexityRatingService.buildComplexityScoreRecord(
+                ImmutableComplexityScore.builder()
+                        .id(1L)
+                        .score(0.5)
+                        .kind(ComplexityKind.SERVER)
+                        .build(),
+                ComplexityKind.SERVER);
+
+        assertEquals(EntityKind.APPLICATION.name(), record.getEntityKind());
+        assertEquals(Long.valueOf(1L), record.getEntityId());
+        assertEquals(ComplexityKind.SERVER.name(), record.getComplexityKind());
+        assertEquals(0, BigDecimal.valueOf(0.5).compareTo(record.getScore()));
+    }
+
+
+    @Test
+    public void rebuildThreadsAreNotSubjectToTheDbExecutorDeadline() throws Exception {
+        ExecutorService executor = ComplexityRatingService.mkExecutorPool(1);
+        try {
+            Optional<Long> deadline = executor.submit(DBExecutorPool::remainingMillis).get();
+            boolean daemon = executor.submit(() -> Thread.currentThread().isDaemon()).get();
+
+            assertFalse(deadline.isPresent());
+            assertTrue(daemon);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.khartec.waltz.service.email;
+
+import com.khartec.waltz.model.email.EmailDeliveryStatus;
+import com.khartec.waltz.model.email.EmailOutboxEntry;
+import com.khartec.waltz.model.email.ImmutableEmailOutboxEntry;
+import org.junit.Test;
+
+import java.util.List;
+
+import static com.khartec.waltz.common.DateTimeUtilities.nowUtc;
+import static com.khartec.waltz.common.ListUtilities.newArrayList;
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.*;
+
+public class EmailOutboxServiceTest {
+
+    @Test
+    public void claimedEntriesAreSentInBatches() {
+        List<List<EmailOutboxEntry>> batches = EmailOutboxService.mkBatches(
+                newArrayList(
+                        mkEntry(1L, 10L, 0),
+                        mkEntry(2L, 10L, 0),
+                        mkEntry(3L, 10L, 0)),
+                2);
+
+        assertEquals("three recipients with a batch size of two", 2, batches.size());
+        assertEquals(newArrayList(1L, 2L, 3L), entryIds(batches));
+    }
+
+
+    @Test
+    public void batchesShareAMessageAndAttemptCount() {
+        List<List<EmailOutboxEntry>> batches = EmailOutboxService.mkBatches(
+                newArrayList(
+                        mkEntry(1L, 10L, 0),
+                        mkEntry(2L, 20L, 0),
+                        mkEntry(3L, 10L, 1),
+                        mkEntry(4L, 10L, 0)),
+                50);
+
+        assertEquals(3, batches.size());
+        for (List<EmailOutboxEntry> batch : batches) {
+            EmailOutboxEntry first = batch.get(0);
+            assertTrue(batch
+                    .stream()
+                    .allMatch(e -> e.messageId() == first.messageId() && e.attempts() == first.attempts()));
+        }
+        assertEquals(newArrayList(1L, 2L, 3L, 4L), entryIds(batches));
+    }
+
+
+    @Test
+    public void retriesBackOffExponentially() {
+        assertEquals(60, EmailOutboxService.mkRetryDelayInSeconds(60, 1));
+        assertEquals(120, EmailOutboxService.mkRetryDelayInSeconds(60, 2));
+        assertEquals(240, EmailOutboxService.mkRetryDelayInSeconds(60, 3));
+    }
+
+
+    @Test
+    public void identicalEmailsShareAContentHash() {
+        assertEquals(
+                EmailOutboxService.mkContentHash("subject", "body"),
+                EmailOutboxService.mkContentHash("subject", "body"));
+        assertNotEquals(
+                EmailOutboxService.mkContentHash("subject", "body"),
+                EmailOutboxService.mkContentHash("subject", "other body"));
+        assertNotEquals(
+                "moving text between subject and body changes the hash",
+                EmailOutboxService.mkContentHash("ab", "c"),
+                EmailOutboxService.mkContentHash("a", "bc"));
+    }
+
+
+    // -- HELPERS ---
+
+    private static EmailOutboxEntry mkEntry(long id, long messageId, int attempts) {
+        return ImmutableEmailOutboxEntry.builder()
+                .id(id)
+                .messageId(messageId)
+                .recipient("person" + id + "@example.com")
+                .status(EmailDeliveryStatus.SENDING)
+                .attempts(attempts)
+                .nextAttemptAt(nowUtc())
+                .build();
+    }
+
+
+    private static List<Long> entryIds(List<List<EmailOutboxEntry>> batches) {
+        return batches
+                .stream()
+                .flatMap(List::stream)
+                .map(EmailOutboxEntry::id)
+                .sorted()
+                .collect(toList());
+    }
+
+}
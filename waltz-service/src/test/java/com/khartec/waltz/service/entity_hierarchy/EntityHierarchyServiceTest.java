@@ -0,0 +1,164 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.khartec.waltz.service.entity_hierarchy;
+
+import com.khartec.waltz.common.hierarchy.FlatNode;
+import com.khartec.waltz.common.hierarchy.Forest;
+import com.khartec.waltz.common.hierarchy.HierarchyUtilities;
+import com.khartec.waltz.common.hierarchy.Node;
+import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.model.entity_hierarchy.EntityHierarchyItem;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static com.khartec.waltz.common.SetUtilities.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EntityHierarchyServiceTest {
+
+    /**
+     * Maps node id to parent id (null for roots), a single chain 1 <- 2 <- ... <- 10
+     */
+    private final Map<Long, Long> measurables = new LinkedHashMap<>();
+
+    /**
+     * Rows as stored by a full rebuild of the chain
+     */
+    private Set<EntityHierarchyItem> stored;
+
+
+    @Before
+    public void setUp() {
+        measurables.clear();
+        for (long id = 1; id <= 10; id++) {
+            measurables.put(id, id == 1 ? null : id - 1);
+        }
+
+        stored = buildFull();
+    }
+
+
+    @Test
+    public void affectedNodesIncludeDescendantsOfChangedNodes() {
+        Set<Node<Long, Long>> affected = EntityHierarchyService.findAffectedNodes(mkForest(), asSet(8L));
+
+        assertEquals(asSet(8L, 9L, 10L), map(affected, Node::getId));
+    }
+
+
+    @Test
+    public void changedNodesNoLongerInTheForestAreNotAffected() {
+        measurables.remove(10L);
+
+        assertTrue(EntityHierarchyService.findAffectedNodes(mkForest(), asSet(10L)).isEmpty());
+    }
+
+
+    @Test
+    public void incrementalBuildLeavesTreeUnchangedWhenNothingHasChanged() {
+        Set<EntityHierarchyItem> before = new HashSet<>(stored);
+
+        assertEquals(0, applyIncremental(asSet(9L, 10L)));
+        assertEquals(before, stored);
+    }
+
+
+    @Test
+    public void incrementalBuildWithNoChangedIdsDoesNothing() {
+        Set<EntityHierarchyItem> before = new HashSet<>(stored);
+
+        assertEquals(0, applyIncremental(Collections.emptySet()));
+        assertEquals(before, stored);
+    }
+
+
+    @Test
+    public void incrementalBuildMatchesFullRebuildAfterAMove() {
+        measurables.put(10L, 1L);
+
+        applyIncremental(asSet(10L));
+
+        assertEquals(buildFull(), stored);
+    }
+
+
+    @Test
+    public void incrementalBuildMatchesFullRebuildAfterARemoval() {
+        measurables.remove(10L);
+
+        applyIncremental(asSet(10L));
+
+        assertEquals(buildFull(), stored);
+    }
+
+
+    // -- HELPERS ---
+
+    private Forest<Long, Long> mkForest() {
+        List<FlatNode<Long, Long>> flatNodes = measurables
+                .entrySet()
+                .stream()
+                .map(e -> new FlatNode<>(e.getKey(), Optional.ofNullable(e.getValue()), e.getKey()))
+                .collect(Collectors.toList());
+        return HierarchyUtilities.toForest(flatNodes);
+    }
+
+
+    private Set<EntityHierarchyItem> buildFull() {
+        Forest<Long, Long> forest = mkForest();
+        return fromCollection(EntityHierarchyService.mkHierarchyItems(
+                EntityKind.MEASURABLE,
+                forest,
+                forest.getAllNodes().values()));
+    }
+
+
+    /**
+     * Applies the differences for the changed ids to the stored rows, as
+     * {@link EntityHierarchyService#buildForChanged} does.
+     * @return number of rows removed or added
+     */
+    private int applyIncremental(Set<Long> changedIds) {
+        Forest<Long, Long> forest = mkForest();
+        Set<Node<Long, Long>> affectedNodes = EntityHierarchyService.findAffectedNodes(forest, changedIds);
+        Set<Long> affectedIds = union(map(affectedNodes, Node::getId), changedIds);
+
+        Set<EntityHierarchyItem> requiredItems = fromCollection(EntityHierarchyService.mkHierarchyItems(
+                EntityKind.MEASURABLE,
+                forest,
+                affectedNodes));
+
+        Set<EntityHierarchyItem> existingItems = stored
+                .stream()
+                .filter(item -> affectedIds.contains(item.id().get()))
+                .collect(Collectors.toSet());
+
+        Set<EntityHierarchyItem> toRemove = minus(existingItems, requiredItems);
+        Set<EntityHierarchyItem> toAdd = minus(requiredItems, existingItems);
+        stored.removeAll(toRemove);
+        stored.addAll(toAdd);
+        return toRemove.size() + toAdd.size();
+    }
+}
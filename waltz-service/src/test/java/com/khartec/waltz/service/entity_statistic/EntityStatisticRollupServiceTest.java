@@ -0,0 +1,151 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.khartec.waltz.service.entity_statistic;
+
+import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.model.entity_hierarchy.EntityHierarchyItem;
+import com.khartec.waltz.model.entity_hierarchy.ImmutableEntityHierarchyItem;
+import com.khartec.waltz.model.entity_statistic.EntityStatisticRollupStatus;
+import com.khartec.waltz.model.entity_statistic.ImmutableEntityStatisticRollupStatus;
+import com.khartec.waltz.model.entity_statistic.RollupKind;
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static com.khartec.waltz.common.ListUtilities.newArrayList;
+import static com.khartec.waltz.common.SetUtilities.asSet;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.jooq.lambda.tuple.Tuple.tuple;
+import static org.junit.Assert.*;
+
+public class EntityStatisticRollupServiceTest {
+
+    private static final EntityStatisticRollupStatus STATUS = ImmutableEntityStatisticRollupStatus.builder()
+            .statisticId(1L)
+            .rollupKind(RollupKind.COUNT_BY_ENTITY)
+            .valueCount(10)
+            .maxCreatedAt(Optional.empty())
+            .build();
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2019, 6, 1, 12, 0);
+
+
+    @Test
+    public void firstPassAfterStartupIsAFullRefresh() {
+        assertTrue(EntityStatisticRollupService.isFullRefreshDue(null, NOW, 6));
+    }
+
+
+    @Test
+    public void fullRefreshIsOnlyDueOnceTheIntervalHasPassed() {
+        assertFalse(EntityStatisticRollupService.isFullRefreshDue(NOW.minusHours(5), NOW, 6));
+        assertTrue(EntityStatisticRollupService.isFullRefreshDue(NOW.minusHours(7), NOW, 6));
+    }
+
+
+    @Test
+    public void onlyStatisticsWhoseValuesDifferAreChanged() {
+        EntityStatisticRollupStatus moreValues = ImmutableEntityStatisticRollupStatus.copyOf(STATUS).withValueCount(11);
+        EntityStatisticRollupStatus notRolledUp = ImmutableEntityStatisticRollupStatus.copyOf(STATUS).withStatisticId(2L);
+
+        Map<Long, EntityStatisticRollupStatus> rolledUp = new HashMap<>();
+        rolledUp.put(1L, STATUS);
+
+        assertEquals(
+                emptyList(),
+                EntityStatisticRollupService.findChangedStatuses(singletonList(STATUS), rolledUp));
+        assertEquals(
+                newArrayList(moreValues, notRolledUp),
+                EntityStatisticRollupService.findChangedStatuses(newArrayList(moreValues, notRolledUp), rolledUp));
+    }
+
+
+    @Test
+    public void moveBetweenSiblingsOnlyAffectsTheTwoSiblings() {
+        // 1 is the root, 2 and 3 are its children, 4 is a child of 2
+        List<EntityHierarchyItem> hierarchy = newArrayList(
+                mkItem(2, 1), mkItem(2, 2),
+                mkItem(3, 1), mkItem(3, 3));
+
+        assertEquals(
+                asSet(2L, 3L),
+                EntityStatisticRollupService.findAffectedNodes(singletonList(tuple(2L, 3L)), hierarchy));
+    }
+
+
+    @Test
+    public void moveIntoADeeperBranchAffectsTheUncommonAncestors() {
+        List<EntityHierarchyItem> hierarchy = newArrayList(
+                mkItem(3, 1), mkItem(3, 3),
+                mkItem(4, 1), mkItem(4, 2), mkItem(4, 4));
+
+        assertEquals(
+                asSet(2L, 3L, 4L),
+                EntityStatisticRollupService.findAffectedNodes(singletonList(tuple(3L, 4L)), hierarchy));
+    }
+
+
+    @Test
+    public void moveToADescendantLeavesTheOriginalOrgUnitAlone() {
+        List<EntityHierarchyItem> hierarchy = newArrayList(
+                mkItem(2, 1), mkItem(2, 2),
+                mkItem(4, 1), mkItem(4, 2), mkItem(4, 4));
+
+        assertEquals(
+                asSet(4L),
+                EntityStatisticRollupService.findAffectedNodes(singletonList(tuple(2L, 4L)), hierarchy));
+    }
+
+
+    @Test
+    public void orgUnitsMissingFromTheHierarchyAreStillAffected() {
+        assertEquals(
+                asSet(7L, 8L),
+                EntityStatisticRollupService.findAffectedNodes(singletonList(tuple(7L, 8L)), emptyList()));
+    }
+
+
+    @Test
+    public void affectedNodesOfSeveralMovesAreCombined() {
+        List<EntityHierarchyItem> hierarchy = newArrayList(
+                mkItem(2, 1), mkItem(2, 2),
+                mkItem(3, 1), mkItem(3, 3),
+                mkItem(4, 1), mkItem(4, 2), mkItem(4, 4));
+
+        assertEquals(
+                asSet(2L, 3L, 4L),
+                EntityStatisticRollupService.findAffectedNodes(newArrayList(tuple(2L, 3L), tuple(4L, 2L)), hierarchy));
+    }
+
+
+    // -- HELPERS ---
+
+    private static EntityHierarchyItem mkItem(long id, long ancestorId) {
+        return ImmutableEntityHierarchyItem.builder()
+                .kind(EntityKind.ORG_UNIT)
+                .id(id)
+                .parentId(ancestorId)
+                .level(0)
+                .build();
+    }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.khartec.waltz.service.flow_diagram;
+
+import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.model.EntityReference;
+import com.khartec.waltz.model.flow_diagram.FlowDiagramAnnotation;
+import com.khartec.waltz.model.flow_diagram.FlowDiagramEntity;
+import com.khartec.waltz.model.flow_diagram.ImmutableFlowDiagramAnnotation;
+import com.khartec.waltz.model.flow_diagram.ImmutableFlowDiagramEntity;
+import org.jooq.lambda.tuple.Tuple3;
+import org.junit.Test;
+
+import java.util.*;
+
+import static com.khartec.waltz.common.ListUtilities.map;
+import static com.khartec.waltz.common.ListUtilities.newArrayList;
+import static com.khartec.waltz.model.EntityReference.mkRef;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FlowDiagramServiceTest {
+
+    private static final long DIAGRAM_ID = 1L;
+
+    private static final EntityReference APP = mkRef(EntityKind.APPLICATION, 10L);
+    private static final EntityReference NEW_APP = mkRef(EntityKind.APPLICATION, 11L);
+    private static final EntityReference ACTOR = mkRef(EntityKind.ACTOR, 40L);
+    private static final EntityReference MEASURABLE = mkRef(EntityKind.MEASURABLE, 20L);
+    private static final EntityReference CHANGE_INITIATIVE = mkRef(EntityKind.CHANGE_INITIATIVE, 30L);
+
+    private static final List<FlowDiagramEntity> STORED_ENTITIES = map(
+            newArrayList(APP, ACTOR, MEASURABLE, CHANGE_INITIATIVE),
+            FlowDiagramServiceTest::mkEntity);
+
+
+    @Test
+    public void explicitlyLinkedEntitiesAreKept() {
+        // measurables and change initiatives are linked to the diagram, not drawn on it
+        Tuple3<List<FlowDiagramEntity>, List<FlowDiagramEntity>, List<EntityReference>> changes = FlowDiagramService
+                .diffEntities(STORED_ENTITIES, mkEntities(APP, NEW_APP));
+
+        assertEquals(Collections.singletonList(NEW_APP), map(changes.v1, FlowDiagramEntity::entityReference));
+        assertTrue(changes.v2.isEmpty());
+        assertEquals(Collections.singletonList(ACTOR), changes.v3);
+    }
+
+
+    @Test
+    public void unchangedEntitiesAreNotWritten() {
+        Tuple3<List<FlowDiagramEntity>, List<FlowDiagramEntity>, List<EntityReference>> changes = FlowDiagramService
+                .diffEntities(STORED_ENTITIES, mkEntities(APP, ACTOR));
+
+        assertTrue(changes.v1.isEmpty());
+        assertTrue(changes.v2.isEmpty());
+        assertTrue(changes.v3.isEmpty());
+    }
+
+
+    @Test
+    public void entitiesWhoseNotabilityChangesAreUpdated() {
+        FlowDiagramEntity notableApp = ImmutableFlowDiagramEntity.copyOf(mkEntity(APP)).withIsNotable(true);
+
+        Tuple3<List<FlowDiagramEntity>, List<FlowDiagramEntity>, List<EntityReference>> changes = FlowDiagramService
+                .diffEntities(STORED_ENTITIES, newArrayList(notableApp, mkEntity(ACTOR)));
+
+        assertTrue(changes.v1.isEmpty());
+        assertEquals(Collections.singletonList(notableApp), changes.v2);
+        assertTrue(changes.v3.isEmpty());
+    }
+
+
+    @Test
+    public void annotationsAreMatchedById() {
+        List<FlowDiagramAnnotation> stored = newArrayList(
+                mkAnnotation("kept", APP, "note"),
+                mkAnnotation("edited", APP, "note"),
+                mkAnnotation("removed", ACTOR, "note"));
+
+        FlowDiagramAnnotation edited = mkAnnotation("edited", APP, "new note");
+        FlowDiagramAnnotation added = mkAnnotation("added", ACTOR, "note");
+
+        Tuple3<List<FlowDiagramAnnotation>, List<FlowDiagramAnnotation>, List<String>> changes = FlowDiagramService
+                .diffAnnotations(stored, newArrayList(mkAnnotation("kept", APP, "note"), edited, added));
+
+        assertEquals(Collections.singletonList(added), changes.v1);
+        assertEquals(Collections.singletonList(edited), changes.v2);
+        assertEquals(Collections.singletonList("removed"), changes.v3);
+    }
+
+
+    // -- HELPERS ---
+
+    private static List<FlowDiagramEntity> mkEntities(EntityReference... refs) {
+        return map(Arrays.asList(refs), FlowDiagramServiceTest::mkEntity);
+    }
+
+
+    private static FlowDiagramEntity mkEntity(EntityReference ref) {
+        return ImmutableFlowDiagramEntity.builder()
+                .diagramId(DIAGRAM_ID)
+                .entityReference(ref)
+                .build();
+    }
+
+
+    private static FlowDiagramAnnotation mkAnnotation(String id, EntityReference ref, String note) {
+        return ImmutableFlowDiagramAnnotation.builder()
+                .annotationId(id)
+                .diagramId(DIAGRAM_ID)
+                .entityReference(ref)
+                .note(note)
+                .build();
+    }
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.khartec.waltz.service.logical_flow;
+
+import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.model.EntityReference;
+import com.khartec.waltz.model.logical_flow.LogicalFlowGraphLink;
+import com.khartec.waltz.service.logical_flow.LogicalFlowGraph.Direction;
+import com.khartec.waltz.service.logical_flow.LogicalFlowGraph.FlowHop;
+import org.jooq.lambda.tuple.Tuple2;
+import org.jooq.lambda.tuple.Tuple3;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static com.khartec.waltz.common.ListUtilities.newArrayList;
+import static com.khartec.waltz.common.SetUtilities.asSet;
+import static com.khartec.waltz.model.EntityReference.mkRef;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptySet;
+import static java.util.stream.Collectors.toList;
+import static org.jooq.lambda.tuple.Tuple.tuple;
+import static org.junit.Assert.assertEquals;
+
+public class LogicalFlowGraphServiceTest {
+
+    private static final long PII = 100L;
+
+    private static final EntityReference A = app(1);
+    private static final EntityReference B = app(2);
+    private static final EntityReference C = app(3);
+
+    /**
+     * A -> B (no data types), B -> C (PII)
+     */
+    private static final List<Tuple3<Long, EntityReference, EntityReference>> FLOWS = newArrayList(
+            tuple(1L, A, B),
+            tuple(2L, B, C));
+
+    private static final List<Tuple2<Long, Long>> FLOW_DATA_TYPES = newArrayList(tuple(2L, PII));
+
+
+    @Test
+    public void loadedFlowsCarryTheirDataTypes() {
+        LogicalFlowGraph graph = LogicalFlowGraphService.mkGraph(FLOWS, FLOW_DATA_TYPES);
+
+        assertEquals(2, graph.flowCount());
+        assertEquals(newArrayList(1L, 2L), flowIds(downstreamOf(graph, A, emptySet())));
+        assertEquals(newArrayList(), flowIds(downstreamOf(graph, A, asSet(PII))));
+        assertEquals(newArrayList(2L), flowIds(downstreamOf(graph, B, asSet(PII))));
+    }
+
+
+    @Test
+    public void linksCarryResolvedNames() {
+        LogicalFlowGraph graph = LogicalFlowGraphService.mkGraph(FLOWS, FLOW_DATA_TYPES);
+
+        List<LogicalFlowGraphLink> links = LogicalFlowGraphService.toLinks(
+                downstreamOf(graph, A, emptySet()),
+                newArrayList(mkRef(EntityKind.APPLICATION, 1L, "App A"), mkRef(EntityKind.APPLICATION, 2L, "App B")));
+
+        assertEquals(2, links.size());
+        assertEquals(Optional.of("App A"), links.get(0).source().name());
+        assertEquals(Optional.of("App B"), links.get(0).target().name());
+        assertEquals(1, links.get(0).depth());
+        assertEquals(2, links.get(1).depth());
+    }
+
+
+    @Test
+    public void unresolvedEntitiesKeepTheirReference() {
+        LogicalFlowGraph graph = LogicalFlowGraphService.mkGraph(FLOWS, FLOW_DATA_TYPES);
+
+        List<LogicalFlowGraphLink> links = LogicalFlowGraphService.toLinks(
+                downstreamOf(graph, B, emptySet()),
+                emptyList());
+
+        assertEquals(1, links.size());
+        assertEquals(B, links.get(0).source());
+        assertEquals(C, links.get(0).target());
+    }
+
+
+    // -- HELPERS ---
+
+    private static List<FlowHop> downstreamOf(LogicalFlowGraph graph, EntityReference ref, Set<Long> dataTypeIds) {
+        return graph.traverse(ref, Direction.DOWNSTREAM, 5, dataTypeIds, 100);
+    }
+
+
+    private static List<Long> flowIds(List<FlowHop> hops) {
+        return hops
+                .stream()
+                .map(FlowHop::flowId)
+                .collect(toList());
+    }
+
+
+    private static EntityReference app(long id) {
+        return mkRef(EntityKind.APPLICATION, id);
+    }
+
+}
@@ -0,0 +1,157 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.khartec.waltz.service.logical_flow;
+
+import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.model.EntityReference;
+import com.khartec.waltz.service.logical_flow.LogicalFlowGraph.Direction;
+import com.khartec.waltz.service.logical_flow.LogicalFlowGraph.FlowHop;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static com.khartec.waltz.common.ListUtilities.newArrayList;
+import static com.khartec.waltz.common.SetUtilities.asSet;
+import static com.khartec.waltz.model.EntityReference.mkRef;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptySet;
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LogicalFlowGraphTest {
+
+    private static final long PII = 100L;
+    private static final long TRADE = 200L;
+
+    private static final EntityReference A = app(1);
+    private static final EntityReference B = app(2);
+    private static final EntityReference C = app(3);
+    private static final EntityReference D = app(4);
+    private static final EntityReference E = mkRef(EntityKind.ACTOR, 1);
+
+    private LogicalFlowGraph graph;
+
+
+    /**
+     * A -> B -> C -> D, A -> C (trade only), E -> A
+     */
+    @Before
+    public void setUp() {
+        graph = new LogicalFlowGraph();
+        graph.addFlow(10, A, B, newArrayList(PII));
+        graph.addFlow(11, B, C, newArrayList(PII, TRADE));
+        graph.addFlow(12, C, D, newArrayList(PII));
+        graph.addFlow(13, A, C, newArrayList(TRADE));
+        graph.addFlow(14, E, A, emptyList());
+    }
+
+
+    @Test
+    public void downstreamIsBoundedByDepth() {
+        assertEquals(newArrayList(10L, 13L), flowIds(graph.traverse(A, Direction.DOWNSTREAM, 1, emptySet(), 100)));
+        assertEquals(newArrayList(10L, 13L, 11L, 12L), flowIds(graph.traverse(A, Direction.DOWNSTREAM, 2, emptySet(), 100)));
+    }
+
+
+    @Test
+    public void upstreamFollowsFlowsBackwards() {
+        List<FlowHop> hops = graph.traverse(C, Direction.UPSTREAM, 5, emptySet(), 100);
+        assertEquals(asSet(11L, 13L, 10L, 14L), asSet(flowIds(hops).toArray(new Long[0])));
+        assertEquals(1, hops.get(0).depth());
+        assertEquals(2, hops.get(hops.size() - 1).depth());
+    }
+
+
+    @Test
+    public void dataTypesRestrictTraversal() {
+        assertEquals(newArrayList(13L), flowIds(graph.traverse(A, Direction.DOWNSTREAM, 1, asSet(TRADE), 100)));
+        assertEquals(newArrayList(10L, 11L, 12L), flowIds(graph.traverse(A, Direction.DOWNSTREAM, 5, asSet(PII), 100)));
+    }
+
+
+    @Test
+    public void limitTruncatesResults() {
+        assertEquals(2, graph.traverse(A, Direction.DOWNSTREAM, 5, emptySet(), 2).size());
+    }
+
+
+    @Test
+    public void unknownEntityHasNoLineage() {
+        assertTrue(graph.traverse(app(99), Direction.DOWNSTREAM, 5, emptySet(), 100).isEmpty());
+    }
+
+
+    @Test
+    public void shortestPathPrefersFewestHops() {
+        List<FlowHop> path = graph.findShortestPath(E, D, 5, emptySet());
+        assertEquals(newArrayList(14L, 13L, 12L), flowIds(path));
+        assertEquals(E, path.get(0).source());
+        assertEquals(D, path.get(2).target());
+    }
+
+
+    @Test
+    public void shortestPathHonoursDepthAndDataTypes() {
+        assertTrue(graph.findShortestPath(E, D, 2, emptySet()).isEmpty());
+        assertEquals(newArrayList(10L, 11L, 12L), flowIds(graph.findShortestPath(A, D, 5, asSet(PII))));
+        assertTrue(graph.findShortestPath(D, A, 5, emptySet()).isEmpty());
+    }
+
+
+    @Test
+    public void removedFlowsAreSkippedAndCanBeRestored() {
+        graph.removeFlow(13);
+        assertEquals(newArrayList(10L, 11L, 12L), flowIds(graph.findShortestPath(A, D, 5, emptySet())));
+        assertEquals(4, graph.flowCount());
+
+        graph.addFlow(13, A, C, emptyList());
+        assertEquals(newArrayList(13L), flowIds(graph.traverse(A, Direction.DOWNSTREAM, 1, asSet(TRADE), 100)));
+        assertEquals(5, graph.flowCount());
+    }
+
+
+    @Test
+    public void graphGrowsBeyondInitialCapacity() {
+        for (int i = 0; i < 5000; i++) {
+            graph.addFlow(1000 + i, app(1000 + i), app(1001 + i), emptyList());
+        }
+        assertEquals(10, graph.findShortestPath(app(1000), app(1010), 10, emptySet()).size());
+        assertTrue(graph.findShortestPath(app(1000), app(1011), 10, emptySet()).isEmpty());
+        assertEquals(10, graph.traverse(app(6000), Direction.UPSTREAM, 10, emptySet(), 100).size());
+    }
+
+
+    // -- HELPERS ---
+
+    private static EntityReference app(long id) {
+        return mkRef(EntityKind.APPLICATION, id);
+    }
+
+
+    private static List<Long> flowIds(List<FlowHop> hops) {
+        return hops
+                .stream()
+                .map(FlowHop::flowId)
+                .collect(toList());
+    }
+
+}
@@ -0,0 +1,178 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.khartec.waltz.service.person_hierarchy;
+
+import com.khartec.waltz.common.hierarchy.Node;
+import com.khartec.waltz.model.person.ImmutablePerson;
+import com.khartec.waltz.model.person.Person;
+import com.khartec.waltz.model.person.PersonKind;
+import org.jooq.lambda.tuple.Tuple2;
+import org.jooq.lambda.tuple.Tuple3;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static com.khartec.waltz.common.SetUtilities.asSet;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+import static org.jooq.lambda.tuple.Tuple.tuple;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PersonHierarchyServiceTest {
+
+    // employee id -> manager employee id (null for roots)
+    private final Map<String, String> managers = new LinkedHashMap<>();
+
+
+    @Before
+    public void setUp() {
+        managers.put("ceo", null);
+        for (int m = 1; m <= 4; m++) {
+            managers.put("m" + m, "ceo");
+            for (int e = 1; e <= 5; e++) {
+                managers.put("e" + m + e, "m" + m);
+            }
+        }
+        managers.put("e11a", "e11");
+        managers.put("e11b", "e11");
+    }
+
+
+    @Test
+    public void levelIsTheManagersDepthBelowTheRoot() {
+        Map<Tuple2<String, String>, Integer> levels = mkFullLevels(mkPeople());
+
+        assertEquals(Integer.valueOf(1), levels.get(tuple("ceo", "e11a")));
+        assertEquals(Integer.valueOf(2), levels.get(tuple("m1", "e11a")));
+        assertEquals(Integer.valueOf(3), levels.get(tuple("e11", "e11a")));
+        assertEquals(Integer.valueOf(1), levels.get(tuple("ceo", "m1")));
+        assertEquals(3, levels.keySet().stream().filter(k -> k.v2.equals("e11a")).count());
+    }
+
+
+    @Test
+    public void changedPeopleIncludeMoversJoinersAndLeavers() {
+        Map<String, String> previousManagers = new HashMap<>(managers);
+
+        managers.put("e11", "m2");
+        managers.put("n1", "e31");
+        managers.remove("e45");
+
+        assertEquals(
+                asSet("e11", "n1", "e45"),
+                PersonHierarchyService.findChangedEmployeeIds(previousManagers, managers));
+        assertTrue(PersonHierarchyService
+                .findChangedEmployeeIds(managers, new HashMap<>(managers))
+                .isEmpty());
+    }
+
+
+    @Test
+    public void incrementalChangesMatchAFullBuild() {
+        List<Person> before = mkPeople();
+        Map<Tuple2<String, String>, Integer> stored = mkFullLevels(before);
+
+        managers.put("e11", "m2");  // moves with its two reports
+        managers.put("n1", "e31");  // joiner
+        managers.remove("e45");     // leaver
+        List<Person> after = mkPeople();
+
+        Set<String> changedIds = PersonHierarchyService.findChangedEmployeeIds(
+                PersonHierarchyService.toManagersByEmployeeId(before),
+                PersonHierarchyService.toManagersByEmployeeId(after));
+
+        Map<String, Node<Person, String>> allNodes = PersonHierarchyService.toForest(after).getAllNodes();
+        Set<String> storedDescendantIds = stored
+                .keySet()
+                .stream()
+                .filter(k -> changedIds.contains(k.v1))
+                .map(k -> k.v2)
+                .collect(toSet());
+
+        Set<String> affectedIds = PersonHierarchyService.findAffectedIds(changedIds, allNodes, storedDescendantIds);
+        assertEquals(asSet("e11", "e11a", "e11b", "n1", "e45"), affectedIds);
+
+        Map<Tuple2<String, String>, Integer> existing = new HashMap<>(stored);
+        existing.keySet().removeIf(k -> ! affectedIds.contains(k.v2));
+
+        Tuple3<Set<Tuple2<String, String>>, Map<Tuple2<String, String>, Integer>, Map<Tuple2<String, String>, Integer>> changes = PersonHierarchyService.diffLevels(
+                existing,
+                PersonHierarchyService.mkLevelsByKey(affectedIds
+                        .stream()
+                        .map(allNodes::get)
+                        .filter(Objects::nonNull)
+                        .collect(toList())));
+
+        changes.v1.forEach(stored::remove);
+        stored.putAll(changes.v2);
+        stored.putAll(changes.v3);
+
+        assertEquals(mkFullLevels(after), stored);
+    }
+
+
+    @Test
+    public void unchangedLevelsNeedNoWrites() {
+        Map<Tuple2<String, String>, Integer> levels = mkFullLevels(mkPeople());
+
+        Tuple3<Set<Tuple2<String, String>>, Map<Tuple2<String, String>, Integer>, Map<Tuple2<String, String>, Integer>> changes = PersonHierarchyService.diffLevels(
+                levels,
+                new HashMap<>(levels));
+
+        assertTrue(changes.v1.isEmpty());
+        assertTrue(changes.v2.isEmpty());
+        assertTrue(changes.v3.isEmpty());
+    }
+
+
+    // -- HELPERS ---
+
+    private List<Person> mkPeople() {
+        return managers
+                .entrySet()
+                .stream()
+                .map(e -> mkPerson(e.getKey(), e.getValue()))
+                .collect(toList());
+    }
+
+
+    private static Map<Tuple2<String, String>, Integer> mkFullLevels(List<Person> people) {
+        return PersonHierarchyService.mkLevelsByKey(PersonHierarchyService
+                .toForest(people)
+                .getAllNodes()
+                .values());
+    }
+
+
+    private static Person mkPerson(String employeeId, String managerEmployeeId) {
+        return ImmutablePerson.builder()
+                .employeeId(employeeId)
+                .managerEmployeeId(Optional.ofNullable(managerEmployeeId))
+                .displayName(employeeId)
+                .email(employeeId + "@example.com")
+                .isRemoved(false)
+                .personKind(PersonKind.EMPLOYEE)
+                .build();
+    }
+
+}
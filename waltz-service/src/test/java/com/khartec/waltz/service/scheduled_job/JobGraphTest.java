@@ -0,0 +1,153 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.khartec.waltz.service.scheduled_job;
+
+import com.khartec.waltz.model.scheduled_job.JobKey;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+import static com.khartec.waltz.model.scheduled_job.JobKey.*;
+import static com.khartec.waltz.service.scheduled_job.JobGraph.Outcome.*;
+import static org.junit.Assert.*;
+
+
+public class JobGraphTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+
+    @Test
+    public void prerequisitesRunBeforeDependents() {
+        JobGraph graph = new JobGraph();
+        graph.register(HIERARCHY_REBUILD_DATA_TYPE);
+        graph.register(HIERARCHY_REBUILD_ORG_UNIT);
+        graph.register(DATA_TYPE_RIPPLE_PHYSICAL_TO_LOGICAL, HIERARCHY_REBUILD_DATA_TYPE);
+        graph.register(AUTH_SOURCE_RECALC_FLOW_RATINGS, DATA_TYPE_RIPPLE_PHYSICAL_TO_LOGICAL, HIERARCHY_REBUILD_ORG_UNIT);
+
+        List<JobKey> order = Collections.synchronizedList(new ArrayList<>());
+        Map<JobKey, JobGraph.Outcome> outcomes = graph.run(executor, record(order, Collections.emptySet()));
+
+        assertEquals(4, order.size());
+        assertBefore(order, HIERARCHY_REBUILD_DATA_TYPE, DATA_TYPE_RIPPLE_PHYSICAL_TO_LOGICAL);
+        assertBefore(order, DATA_TYPE_RIPPLE_PHYSICAL_TO_LOGICAL, AUTH_SOURCE_RECALC_FLOW_RATINGS);
+        assertBefore(order, HIERARCHY_REBUILD_ORG_UNIT, AUTH_SOURCE_RECALC_FLOW_RATINGS);
+        assertTrue(outcomes.values().stream().allMatch(o -> o == COMPLETED));
+    }
+
+
+    @Test
+    public void failureSkipsDependentsTransitively() {
+        JobGraph graph = new JobGraph();
+        graph.register(HIERARCHY_REBUILD_DATA_TYPE);
+        graph.register(HIERARCHY_REBUILD_ORG_UNIT);
+        graph.register(DATA_TYPE_RIPPLE_PHYSICAL_TO_LOGICAL, HIERARCHY_REBUILD_DATA_TYPE);
+        graph.register(DATA_TYPE_USAGE_RECALC_APPLICATION, DATA_TYPE_RIPPLE_PHYSICAL_TO_LOGICAL);
+        graph.register(COMPLEXITY_REBUILD, HIERARCHY_REBUILD_ORG_UNIT);
+
+        List<JobKey> order = Collections.synchronizedList(new ArrayList<>());
+        Map<JobKey, JobGraph.Outcome> outcomes = graph.run(
+                executor,
+                record(order, EnumSet.of(HIERARCHY_REBUILD_DATA_TYPE)));
+
+        assertEquals(FAILED, outcomes.get(HIERARCHY_REBUILD_DATA_TYPE));
+        assertEquals(SKIPPED, outcomes.get(DATA_TYPE_RIPPLE_PHYSICAL_TO_LOGICAL));
+        assertEquals(SKIPPED, outcomes.get(DATA_TYPE_USAGE_RECALC_APPLICATION));
+        assertEquals(COMPLETED, outcomes.get(HIERARCHY_REBUILD_ORG_UNIT));
+        assertEquals(COMPLETED, outcomes.get(COMPLEXITY_REBUILD));
+
+        assertFalse(order.contains(DATA_TYPE_RIPPLE_PHYSICAL_TO_LOGICAL));
+        assertFalse(order.contains(DATA_TYPE_USAGE_RECALC_APPLICATION));
+    }
+
+
+    @Test
+    public void exceptionsAreTreatedAsFailures() {
+        JobGraph graph = new JobGraph();
+        graph.register(HIERARCHY_REBUILD_DATA_TYPE);
+        graph.register(DATA_TYPE_RIPPLE_PHYSICAL_TO_LOGICAL, HIERARCHY_REBUILD_DATA_TYPE);
+
+        Map<JobKey, JobGraph.Outcome> outcomes = graph.run(
+                executor,
+                jobKey -> {
+                    if (jobKey == HIERARCHY_REBUILD_DATA_TYPE) {
+                        throw new IllegalStateException("boom");
+                    }
+                    return COMPLETED;
+                });
+
+        assertEquals(FAILED, outcomes.get(HIERARCHY_REBUILD_DATA_TYPE));
+        assertEquals(SKIPPED, outcomes.get(DATA_TYPE_RIPPLE_PHYSICAL_TO_LOGICAL));
+    }
+
+
+    @Test
+    public void notRunnablePrerequisiteDoesNotBlockDependents() {
+        JobGraph graph = new JobGraph();
+        graph.register(HIERARCHY_REBUILD_DATA_TYPE);
+        graph.register(DATA_TYPE_RIPPLE_PHYSICAL_TO_LOGICAL, HIERARCHY_REBUILD_DATA_TYPE);
+
+        Map<JobKey, JobGraph.Outcome> outcomes = graph.run(
+                executor,
+                jobKey -> jobKey == HIERARCHY_REBUILD_DATA_TYPE
+                        ? NOT_RUNNABLE
+                        : COMPLETED);
+
+        assertEquals(NOT_RUNNABLE, outcomes.get(HIERARCHY_REBUILD_DATA_TYPE));
+        assertEquals(COMPLETED, outcomes.get(DATA_TYPE_RIPPLE_PHYSICAL_TO_LOGICAL));
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void prerequisitesMustBeRegisteredFirst() {
+        JobGraph graph = new JobGraph();
+        graph.register(DATA_TYPE_RIPPLE_PHYSICAL_TO_LOGICAL, HIERARCHY_REBUILD_DATA_TYPE);
+    }
+
+
+    // -- HELPERS ---
+
+    private static Function<JobKey, JobGraph.Outcome> record(List<JobKey> order, Set<JobKey> failing) {
+        return jobKey -> {
+            order.add(jobKey);
+            return failing.contains(jobKey)
+                    ? FAILED
+                    : COMPLETED;
+        };
+    }
+
+
+    private static void assertBefore(List<JobKey> order, JobKey first, JobKey second) {
+        assertTrue(
+                first + " should run before " + second,
+                order.indexOf(first) < order.indexOf(second));
+    }
+}
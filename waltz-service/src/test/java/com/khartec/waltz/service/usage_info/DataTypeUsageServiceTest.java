@@ -0,0 +1,73 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.khartec.waltz.service.usage_info;
+
+import com.khartec.waltz.model.EntityKind;
+import com.khartec.waltz.model.EntityReference;
+import org.junit.Test;
+
+import java.util.*;
+
+import static com.khartec.waltz.common.ListUtilities.newArrayList;
+import static com.khartec.waltz.common.SetUtilities.asSet;
+import static com.khartec.waltz.model.EntityReference.mkRef;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DataTypeUsageServiceTest {
+
+    @Test
+    public void batchesAreMadePerKind() {
+        Map<EntityKind, List<List<Long>>> batches = DataTypeUsageService.mkRecalcBatches(
+                asSet(mkRef(EntityKind.APPLICATION, 10L), mkRef(EntityKind.ACTOR, 10L)),
+                500);
+
+        assertEquals(newArrayList(newArrayList(10L)), batches.get(EntityKind.APPLICATION));
+        assertEquals(newArrayList(newArrayList(10L)), batches.get(EntityKind.ACTOR));
+    }
+
+
+    @Test
+    public void largeKindsAreSplitIntoBatches() {
+        Set<EntityReference> refs = new HashSet<>();
+        for (long id = 1; id <= 5; id++) {
+            refs.add(mkRef(EntityKind.APPLICATION, id));
+        }
+
+        List<List<Long>> batches = DataTypeUsageService
+                .mkRecalcBatches(refs, 2)
+                .get(EntityKind.APPLICATION);
+
+        assertEquals(3, batches.size());
+        Set<Long> ids = new HashSet<>();
+        batches.forEach(batch -> {
+            assertTrue(batch.size() <= 2);
+            ids.addAll(batch);
+        });
+        assertEquals(asSet(1L, 2L, 3L, 4L, 5L), ids);
+    }
+
+
+    @Test
+    public void nothingQueuedMeansNoBatches() {
+        assertTrue(DataTypeUsageService.mkRecalcBatches(new HashSet<>(), 500).isEmpty());
+    }
+
+}
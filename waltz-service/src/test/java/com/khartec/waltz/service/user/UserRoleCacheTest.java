@@ -0,0 +1,104 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.khartec.waltz.service.user;
+
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static com.khartec.waltz.common.SetUtilities.asSet;
+import static org.junit.Assert.assertEquals;
+
+
+public class UserRoleCacheTest {
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private final Function<String, Set<String>> loader = userName -> {
+        loads.incrementAndGet();
+        return asSet("ADMIN", userName);
+    };
+
+
+    @Test
+    public void repeatedLookupsAreServedFromCache() {
+        UserRoleCache cache = new UserRoleCache(true, 60);
+
+        assertEquals(asSet("ADMIN", "bob"), cache.getRoles("bob", loader));
+        assertEquals(asSet("ADMIN", "bob"), cache.getRoles("bob", loader));
+
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.hitCount());
+        assertEquals(1, cache.missCount());
+    }
+
+
+    @Test
+    public void userNamesAreCaseInsensitive() {
+        UserRoleCache cache = new UserRoleCache(true, 60);
+
+        cache.getRoles("Bob", loader);
+        cache.getRoles("bob", loader);
+
+        assertEquals(1, loads.get());
+    }
+
+
+    @Test
+    public void invalidationForcesReload() {
+        UserRoleCache cache = new UserRoleCache(true, 60);
+
+        cache.getRoles("bob", loader);
+        cache.getRoles("alice", loader);
+        cache.invalidate("BOB");
+        cache.getRoles("bob", loader);
+        cache.getRoles("alice", loader);
+
+        assertEquals(3, loads.get());
+        assertEquals(1, cache.invalidationCount());
+    }
+
+
+    @Test
+    public void zeroTtlMeansEntriesExpireImmediately() throws InterruptedException {
+        UserRoleCache cache = new UserRoleCache(true, 0);
+
+        cache.getRoles("bob", loader);
+        Thread.sleep(5);
+        cache.getRoles("bob", loader);
+
+        assertEquals(2, loads.get());
+    }
+
+
+    @Test
+    public void disabledCacheAlwaysLoads() {
+        UserRoleCache cache = new UserRoleCache(false, 60);
+
+        cache.getRoles("bob", loader);
+        cache.getRoles("bob", loader);
+
+        assertEquals(2, loads.get());
+        assertEquals(0, cache.size());
+    }
+
+}
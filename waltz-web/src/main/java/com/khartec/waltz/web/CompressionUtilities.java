@@ -0,0 +1,265 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.khartec.waltz.web;
+
+import spark.Request;
+import spark.Response;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.Checks.checkTrue;
+
+
+/**
+ * Gzip compression of responses which are written by Waltz itself (json
+ * produced by the endpoint helpers, extracts, static resources) rather than
+ * left to Spark.  Unlike Spark's built in support this honours the client's
+ * `Accept-Encoding` header, allows the compression level to be configured
+ * and works for routes which write straight to the servlet output stream.
+ *
+ * Configuration is applied once at startup via `configure`.
+ */
+public class CompressionUtilities {
+
+    public static final String GZIP = "gzip";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static volatile boolean enabled = false;
+    private static volatile int minimumSize = 8192;
+    private static volatile int level = Deflater.DEFAULT_COMPRESSION;
+
+
+    public static void configure(boolean enabled, int minimumSize, int level) {
+        checkTrue(minimumSize >= 0, "minimumSize cannot be negative");
+        checkTrue(
+                level == Deflater.DEFAULT_COMPRESSION || (level >= Deflater.NO_COMPRESSION && level <= Deflater.BEST_COMPRESSION),
+                "level must be between 0 and 9 (or -1 for the default), not: %d",
+                level);
+
+        CompressionUtilities.enabled = enabled;
+        CompressionUtilities.minimumSize = minimumSize;
+        CompressionUtilities.level = level;
+    }
+
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+
+    public static int getMinimumSize() {
+        return minimumSize;
+    }
+
+
+    /**
+     * Checks the `Accept-Encoding` request header for gzip, ignoring any
+     * encodings explicitly refused via `q=0`.
+     */
+    public static boolean acceptsGzip(Request request) {
+        checkNotNull(request, "request cannot be null");
+
+        String acceptEncoding = request.headers("Accept-Encoding");
+        if (acceptEncoding == null) {
+            return false;
+        }
+
+        return Stream
+                .of(acceptEncoding.split(","))
+                .map(String::trim)
+                .anyMatch(encoding -> {
+                    String[] parts = encoding.split(";");
+                    String name = parts[0].trim();
+                    boolean refused = parts.length > 1 && parts[1].replace(" ", "").matches("q=0(\\.0*)?");
+                    return ! refused && (name.equalsIgnoreCase(GZIP) || name.equals("*"));
+                });
+    }
+
+
+    /**
+     * @param length  the (approximate) uncompressed size of the body, or -1 if not known
+     */
+    public static boolean shouldCompress(Request request, long length) {
+        return enabled
+                && (length < 0 || length >= minimumSize)
+                && acceptsGzip(request);
+    }
+
+
+    /**
+     * Opens the response stream, wrapped in a gzip stream if the response
+     * should be compressed.  Callers must close the returned stream.
+     *
+     * @param length  the (approximate) uncompressed size of the body, or -1 if not known
+     */
+    public static OutputStream openOutputStream(Request request,
+                                                Response response,
+                                                long length) throws IOException {
+        return openOutputStream(response, shouldCompress(request, length));
+    }
+
+
+    private static OutputStream openOutputStream(Response response,
+                                                 boolean compress) throws IOException {
+        HttpServletResponse httpResponse = response.raw();
+
+        if (enabled) {
+            httpResponse.addHeader("Vary", "Accept-Encoding");
+        }
+
+        if (compress) {
+            httpResponse.setHeader("Content-Encoding", GZIP);
+            return new LeveledGZIPOutputStream(httpResponse.getOutputStream(), level);
+        } else {
+            return httpResponse.getOutputStream();
+        }
+    }
+
+
+    /**
+     * Writes the given bytes to the response, compressing if appropriate,
+     * and closes the response stream.
+     */
+    public static void write(Request request,
+                             Response response,
+                             byte[] body) throws IOException {
+        checkNotNull(body, "body cannot be null");
+
+        try (OutputStream out = openOutputStream(request, response, body.length)) {
+            out.write(body);
+        }
+    }
+
+
+    /**
+     * Opens a stream for a body whose length is not known up front (e.g.
+     * json written by a serializer).  Nothing reaches the response until
+     * `minimumSize` bytes have been written: shorter bodies are sent as is,
+     * longer ones switch the response to gzip and the remainder of the body
+     * is compressed as it is written.  Callers must close the returned stream.
+     */
+    public static OutputStream openDeferredOutputStream(Request request,
+                                                        Response response) {
+        boolean compressible = shouldCompress(request, -1);
+        return new DeferredOutputStream(
+                compressible ? minimumSize : -1,
+                compress -> openOutputStream(response, compress));
+    }
+
+
+    @FunctionalInterface
+    interface OutputStreamOpener {
+        /**
+         * @param compress  true if the body reached the compression threshold
+         */
+        OutputStream open(boolean compress) throws IOException;
+    }
+
+
+    /**
+     * Buffers output until the threshold is reached (or the stream is
+     * closed) and only then opens the underlying stream.  A negative
+     * threshold means the body is never compressed.
+     */
+    static class DeferredOutputStream extends OutputStream {
+
+        private final int threshold;
+        private final OutputStreamOpener opener;
+        private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private OutputStream target;
+        private boolean closed = false;
+
+
+        DeferredOutputStream(int threshold, OutputStreamOpener opener) {
+            checkNotNull(opener, "opener cannot be null");
+            this.threshold = threshold;
+            this.opener = opener;
+        }
+
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            checkTrue(! closed, "stream is closed");
+
+            if (target == null) {
+                buffer.write(b, off, len);
+                if (threshold >= 0 && buffer.size() >= threshold) {
+                    open(true);
+                }
+            } else {
+                target.write(b, off, len);
+            }
+        }
+
+
+        @Override
+        public void flush() throws IOException {
+            // deliberately not flushed until the encoding is decided
+            if (target != null) {
+                target.flush();
+            }
+        }
+
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+
+            if (target == null) {
+                open(false);
+            }
+            target.close();
+        }
+
+
+        private void open(boolean compress) throws IOException {
+            target = opener.open(compress);
+            buffer.writeTo(target);
+            buffer = null;
+        }
+    }
+
+
+    private static class LeveledGZIPOutputStream extends GZIPOutputStream {
+
+        private LeveledGZIPOutputStream(OutputStream out, int level) throws IOException {
+            super(out, BUFFER_SIZE);
+            def.setLevel(level);
+        }
+    }
+
+}
@@ -23,8 +23,10 @@ import com.khartec.waltz.common.LoggingUtilities;
 import com.khartec.waltz.common.exception.DuplicateKeyException;
 import com.khartec.waltz.common.exception.InsufficientPrivelegeException;
 import com.khartec.waltz.service.DIConfiguration;
+import com.khartec.waltz.service.DataVersionListener;
 import com.khartec.waltz.service.settings.SettingsService;
 import com.khartec.waltz.web.endpoints.Endpoint;
+import com.khartec.waltz.web.endpoints.EndpointUtilities;
 import com.khartec.waltz.web.endpoints.api.StaticResourcesEndpoint;
 import com.khartec.waltz.web.endpoints.extracts.BaseDataExtractor;
 import org.slf4j.Logger;
@@ -35,6 +37,8 @@ import spark.Response;
 import spark.Spark;
 
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
 
 import static com.khartec.waltz.web.WebUtilities.reportException;
 import static spark.Spark.*;
@@ -44,6 +48,8 @@ public class Main {
     private static final Logger LOG = LoggerFactory.getLogger(Main.class);
     private final static String GZIP_ENABLED_NAME = "server.gzip.enabled";
     private final static String GZIP_MIN_SIZE_NAME = "server.gzip.minimum-size";
+    private final static String GZIP_LEVEL_NAME = "server.gzip.level";
+    private final static String ETAG_MAX_AGE_NAME = "server.etag.max-age";
 
     private static AnnotationConfigApplicationContext ctx;
 
@@ -121,6 +127,7 @@ public class Main {
 
         registerExceptionHandlers();
         enableGZIP();
+        enableETags();
         enableCORS();
 
     }
@@ -165,6 +172,22 @@ public class Main {
     }
 
 
+    private void enableETags() {
+        SettingsService settingsService = ctx.getBean(SettingsService.class);
+
+        int maxAgeInSeconds = settingsService
+                .getValue(ETAG_MAX_AGE_NAME)
+                .map(Integer::parseInt)
+                .orElse(300);
+
+        EndpointUtilities.configureVersioning(
+                ctx.getBean(DataVersionListener.class)::current,
+                TimeUnit.SECONDS.toMillis(maxAgeInSeconds));
+
+        LOG.info("Enabled versioned ETags (max age: " + maxAgeInSeconds + "s)");
+    }
+
+
     private void enableGZIP() {
         SettingsService settingsService = ctx.getBean(SettingsService.class);
 
@@ -175,19 +198,34 @@ public class Main {
 
         if(gzipEnabled) {
 
-            //now fetch the minimum size
+            //now fetch the minimum size and compression level
             int minimumLength = settingsService
                     .getValue(GZIP_MIN_SIZE_NAME)
                     .map(Integer::parseInt)
                     .orElse(8192);
 
+            int level = settingsService
+                    .getValue(GZIP_LEVEL_NAME)
+                    .map(Integer::parseInt)
+                    .orElse(Deflater.DEFAULT_COMPRESSION);
+
+            CompressionUtilities.configure(true, minimumLength, level);
+
+            // routes not registered via EndpointUtilities are left to Spark, which
+            // gzips any body marked as such (provided the client accepts it)
             after(((request, response) -> {
-                if(response.body() != null && response.body().length() >= minimumLength) {
-                    response.header("Content-Encoding", "gzip");
+                if (response.raw().isCommitted()
+                        || response.raw().containsHeader("Content-Encoding")) {
+                    return;
+                }
+                if (response.body() != null
+                        && CompressionUtilities.shouldCompress(request, response.body().length())) {
+                    response.header("Content-Encoding", CompressionUtilities.GZIP);
+                    response.header("Vary", "Accept-Encoding");
                 }
             }));
 
-            LOG.info("Enabled GZIP (size: " + minimumLength + ")");
+            LOG.info("Enabled GZIP (size: " + minimumLength + ", level: " + level + ")");
 
         } else {
             LOG.info("GZIP not enabled");
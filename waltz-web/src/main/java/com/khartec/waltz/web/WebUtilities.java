@@ -39,6 +39,7 @@ import spark.Response;
 import spark.ResponseTransformer;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.*;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -76,6 +77,16 @@ public class WebUtilities {
     public static final ResponseTransformer transformer = mapper::writeValueAsString;
 
 
+    /**
+     * Serializes the object straight to the given stream, avoiding the
+     * intermediate string produced by the `transformer`.  The stream is
+     * closed once written.
+     */
+    public static void writeJson(OutputStream out, Object obj) throws IOException {
+        mapper.writeValue(out, obj);
+    }
+
+
     /**
      * Given a vararg/array of path segments will join them
      * to make a string representing the path.  No starting or trailing
@@ -19,19 +19,57 @@
 
 package com.khartec.waltz.web.endpoints;
 
+import com.khartec.waltz.web.CompressionUtilities;
 import com.khartec.waltz.web.DatumRoute;
 import com.khartec.waltz.web.ListRoute;
 import com.khartec.waltz.web.WebUtilities;
-import spark.ResponseTransformer;
+import spark.Request;
+import spark.Response;
 import spark.Route;
 import spark.Spark;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.Checks.checkTrue;
 import static com.khartec.waltz.web.WebUtilities.TYPE_JSON;
 
 
 public class EndpointUtilities {
 
-    private static final ResponseTransformer transformer = WebUtilities.transformer;
+    private static final String GZIP_ETAG_SUFFIX = "--gzip\"";
+    private static final String WEAK_ETAG_PREFIX = "W/";
+
+    // a restart may follow a data load, so tags handed out by earlier runs are never matched
+    private static final long STARTED_AT = System.currentTimeMillis();
+
+    private static volatile LongSupplier dataVersion = null;
+    private static volatile long versionMaxAgeInMillis = TimeUnit.MINUTES.toMillis(5);
+
+
+    /**
+     * Enables etags for routes registered via `getForVersionedList` and
+     * `getForVersionedDatum`.  Until configured those routes behave like
+     * their unversioned counterparts.
+     *
+     * @param dataVersion  cheap token which moves on whenever data is written
+     * @param maxAgeInMillis  upper bound on how long a tag is honoured, limits
+     *                        how stale a response can be when data is changed
+     *                        outside of Waltz (e.g. by loaders)
+     */
+    public static void configureVersioning(LongSupplier dataVersion,
+                                           long maxAgeInMillis) {
+        checkNotNull(dataVersion, "dataVersion cannot be null");
+        checkTrue(maxAgeInMillis > 0, "maxAgeInMillis must be positive");
+
+        EndpointUtilities.dataVersion = dataVersion;
+        EndpointUtilities.versionMaxAgeInMillis = maxAgeInMillis;
+    }
 
 
     /**
@@ -42,7 +80,7 @@ public class EndpointUtilities {
      * @param <T>
      */
     public static <T> void getForList(String path, ListRoute<T> handler) {
-        Spark.get(path, wrapListHandler(handler), transformer);
+        Spark.get(path, wrapListHandler(handler, false));
     }
 
 
@@ -55,48 +93,191 @@ public class EndpointUtilities {
      * @param <T>
      */
     public static <T> void getForDatum(String path, DatumRoute<T> handler) {
-        Spark.get(path, wrapDatumHandler(handler), transformer);
+        Spark.get(path, wrapDatumHandler(handler, false));
+    }
+
+
+    /**
+     * As `getForList` but the response is tagged with the current data
+     * version.  Clients presenting the tag get a 304 without the handler
+     * being run.  Only suitable for handlers which purely read from the
+     * database (no side effects, no in-memory state).
+     * @param path
+     * @param handler
+     * @param <T>
+     */
+    public static <T> void getForVersionedList(String path, ListRoute<T> handler) {
+        Spark.get(path, wrapListHandler(handler, true));
+    }
+
+
+    /**
+     * As `getForDatum` but the response is tagged with the current data
+     * version, see `getForVersionedList`.
+     * @param path
+     * @param handler
+     * @param <T>
+     */
+    public static <T> void getForVersionedDatum(String path, DatumRoute<T> handler) {
+        Spark.get(path, wrapDatumHandler(handler, true));
     }
 
     public static <T> void postForDatum(String path, DatumRoute<T> handler) {
-        Spark.post(path, wrapDatumHandler(handler), transformer);
+        Spark.post(path, wrapDatumHandler(handler, false));
     }
 
     public static <T> void postForList(String path, ListRoute<T> handler) {
-        Spark.post(path, wrapListHandler(handler), transformer);
+        Spark.post(path, wrapListHandler(handler, false));
     }
 
     public static <T> void deleteForList(String path, ListRoute<T> handler) {
-        Spark.delete(path, wrapListHandler(handler), transformer);
+        Spark.delete(path, wrapListHandler(handler, false));
     }
 
     public static <T> void deleteForDatum(String path, DatumRoute<T> handler) {
-        Spark.delete(path, wrapDatumHandler(handler), transformer);
+        Spark.delete(path, wrapDatumHandler(handler, false));
     }
 
     public static <T> void putForDatum(String path, DatumRoute<T> handler) {
-        Spark.put(path, wrapDatumHandler(handler), transformer);
+        Spark.put(path, wrapDatumHandler(handler, false));
     }
 
     public static <T> void putForList(String path, ListRoute<T> handler) {
-        Spark.put(path, wrapListHandler(handler), transformer);
+        Spark.put(path, wrapListHandler(handler, false));
+    }
+
+
+    /**
+     * Tags are compared weakly (as required for `If-None-Match`), so a
+     * `W/` prefix is ignored, as is the suffix Jetty adds to tags of
+     * gzipped responses.
+     * @param ifNoneMatch  value of the `If-None-Match` request header (may be null)
+     * @param etag  current etag of the response
+     * @return true if any of the client supplied tags match
+     */
+    public static boolean matchesETag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || etag == null) {
+            return false;
+        }
+
+        String opaqueTag = toOpaqueTag(etag);
+
+        return Stream
+                .of(ifNoneMatch.split(","))
+                .map(String::trim)
+                .anyMatch(tag -> tag.equals("*")
+                        || toOpaqueTag(tag).equals(opaqueTag));
+    }
+
+
+    /**
+     * Only GET requests are answered with a 304, other methods always run
+     * their handler.
+     */
+    public static boolean isNotModified(String requestMethod,
+                                        String ifNoneMatch,
+                                        String etag) {
+        return "GET".equals(requestMethod)
+                && matchesETag(ifNoneMatch, etag);
+    }
+
+
+    /**
+     * Weak tag derived from the data version.  The user is included as
+     * some responses vary by user (e.g. permissions) and the time bucket
+     * bounds how long a tag is honoured.
+     */
+    public static String mkVersionETag(long startedAt,
+                                       long version,
+                                       long timeBucket,
+                                       String username) {
+        return String.format(
+                "%s\"%s-%s-%s-%s\"",
+                WEAK_ETAG_PREFIX,
+                Long.toString(startedAt, 36),
+                Long.toString(version, 36),
+                Long.toString(timeBucket, 36),
+                Integer.toHexString(Objects.hashCode(username)));
     }
 
 
     // -- helpers ---
 
-    private static <T> Route wrapListHandler(ListRoute<T> handler) {
+    private static <T> Route wrapListHandler(ListRoute<T> handler, boolean versioned) {
         return (request, response) -> {
             response.type(TYPE_JSON);
-            return handler.apply(request, response);
+            if (versioned && answerIfNotModified(request, response)) {
+                return "";
+            }
+            return writeJson(request, response, handler.apply(request, response));
         };
     }
 
-    private static <T> Route wrapDatumHandler(DatumRoute<T> handler) {
+
+    private static <T> Route wrapDatumHandler(DatumRoute<T> handler, boolean versioned) {
         return (request, response) -> {
             response.type(TYPE_JSON);
-            return handler.apply(request, response);
+            if (versioned && answerIfNotModified(request, response)) {
+                return "";
+            }
+            return writeJson(request, response, handler.apply(request, response));
         };
     }
 
+
+    /**
+     * Tags the response with the current data version and, if the client
+     * already holds it, sets a 304 status.  The version is read before the
+     * handler runs, so a write racing the handler can only make the tag
+     * too old (causing a needless refetch), never too new.
+     * @return true if the request has been answered
+     */
+    private static boolean answerIfNotModified(Request request, Response response) {
+        LongSupplier version = dataVersion;
+        if (version == null || ! request.requestMethod().equals("GET")) {
+            return false;
+        }
+
+        String etag = mkVersionETag(
+                STARTED_AT,
+                version.getAsLong(),
+                System.currentTimeMillis() / versionMaxAgeInMillis,
+                WebUtilities.getUsername(request));
+
+        response.header("ETag", etag);
+        response.header("Cache-Control", "no-cache");
+
+        if (isNotModified(request.requestMethod(), request.headers("If-None-Match"), etag)) {
+            response.status(304);
+            return true;
+        } else {
+            return false;
+        }
+    }
+
+
+    /**
+     * Serializes the result straight to the response, compressing once the
+     * body is large enough, and returns an empty body for Spark to write.
+     */
+    private static String writeJson(Request request,
+                                    Response response,
+                                    Object result) throws IOException {
+        try (OutputStream out = CompressionUtilities.openDeferredOutputStream(request, response)) {
+            WebUtilities.writeJson(out, result);
+        }
+        return "";
+    }
+
+
+    private static String toOpaqueTag(String tag) {
+        String strong = tag.startsWith(WEAK_ETAG_PREFIX)
+                ? tag.substring(WEAK_ETAG_PREFIX.length())
+                : tag;
+
+        return strong.endsWith(GZIP_ETAG_SUFFIX)
+                ? strong.substring(0, strong.length() - GZIP_ETAG_SUFFIX.length()) + "\""
+                : strong;
+    }
+
 }
@@ -31,6 +31,7 @@ import static com.khartec.waltz.web.WebUtilities.getId;
 import static com.khartec.waltz.web.WebUtilities.mkPath;
 import static com.khartec.waltz.web.endpoints.EndpointUtilities.getForDatum;
 import static com.khartec.waltz.web.endpoints.EndpointUtilities.getForList;
+import static com.khartec.waltz.web.endpoints.EndpointUtilities.getForVersionedList;
 
 
 @Service
@@ -65,7 +66,7 @@ public class AllocationSchemeEndpoint implements Endpoint {
                 -> allocationSchemesService.findByCategoryId(getId(request));
 
 
-        getForList(findAllPath, findAllRoute);
+        getForVersionedList(findAllPath, findAllRoute);
         getForDatum(getByIdPath, getByIdRoute);
         getForList(findByCategoryPath, findByCategoryRoute);
     }
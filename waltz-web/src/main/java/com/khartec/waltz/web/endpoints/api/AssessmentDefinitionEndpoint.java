@@ -31,6 +31,7 @@ import static com.khartec.waltz.common.Checks.checkNotNull;
 import static com.khartec.waltz.web.WebUtilities.*;
 import static com.khartec.waltz.web.endpoints.EndpointUtilities.getForDatum;
 import static com.khartec.waltz.web.endpoints.EndpointUtilities.getForList;
+import static com.khartec.waltz.web.endpoints.EndpointUtilities.getForVersionedList;
 
 @Service
 public class AssessmentDefinitionEndpoint implements Endpoint {
@@ -59,7 +60,7 @@ public class AssessmentDefinitionEndpoint implements Endpoint {
         ListRoute<AssessmentDefinition> findByKindRoute = (request, response) -> assessmentDefinitionService.findByEntityKind(getKind(request));
 
         getForDatum(getByIdPath, getByIdRoute);
-        getForList(findAllPath, findAllRoute);
+        getForVersionedList(findAllPath, findAllRoute);
         getForList(findByKind, findByKindRoute);
     }
 
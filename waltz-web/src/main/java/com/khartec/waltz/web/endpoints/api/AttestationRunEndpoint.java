@@ -20,11 +20,7 @@
 package com.khartec.waltz.web.endpoints.api;
 
 
-import com.khartec.waltz.model.IdCommandResponse;
-import com.khartec.waltz.model.attestation.AttestationCreateSummary;
-import com.khartec.waltz.model.attestation.AttestationRun;
-import com.khartec.waltz.model.attestation.AttestationRunCreateCommand;
-import com.khartec.waltz.model.attestation.AttestationRunResponseSummary;
+import com.khartec.waltz.model.attestation.*;
 import com.khartec.waltz.model.user.SystemRole;
 import com.khartec.waltz.service.attestation.AttestationRunService;
 import com.khartec.waltz.service.user.UserRoleService;
@@ -61,6 +57,7 @@ public class AttestationRunEndpoint implements Endpoint {
     @Override
     public void register() {
         String getByIdPath = mkPath(BASE_URL, "id", ":id");
+        String getIssuancePath = mkPath(BASE_URL, "id", ":id", "issuance");
         String findAllPath = mkPath(BASE_URL);
         String findByEntityRefPath = mkPath(BASE_URL, "entity", ":kind", ":id");
         String findByRecipientPath = mkPath(BASE_URL, "user");
@@ -71,6 +68,9 @@ public class AttestationRunEndpoint implements Endpoint {
         DatumRoute<AttestationRun> getByIdRoute = (req, res) ->
                 attestationRunService.getById(getId(req));
 
+        DatumRoute<AttestationRunIssuance> getIssuanceRoute = (req, res) ->
+                attestationRunService.getIssuance(getId(req));
+
         ListRoute<AttestationRun> findAllRoute = (req, res) ->
                 attestationRunService.findAll();
 
@@ -88,7 +88,12 @@ public class AttestationRunEndpoint implements Endpoint {
                 attestationRunService
                         .getCreateSummary(readCreateCommand(req));
 
-        DatumRoute<IdCommandResponse> attestationRunCreateRoute = (req, res) -> {
+        DatumRoute<AttestationRunIssuance> reissueRoute = (req, res) -> {
+            ensureUserHasAttestationAdminRights(req);
+            return attestationRunService.reissue(getId(req));
+        };
+
+        DatumRoute<AttestationRunIssuance> attestationRunCreateRoute = (req, res) -> {
             ensureUserHasAttestationAdminRights(req);
             return attestationRunService
                         .create(
@@ -97,10 +102,12 @@ public class AttestationRunEndpoint implements Endpoint {
         };
 
         getForDatum(getByIdPath, getByIdRoute);
+        getForDatum(getIssuancePath, getIssuanceRoute);
         getForList(findAllPath, findAllRoute);
         getForList(findByEntityRefPath, findByEntityRefRoute);
         getForList(findByRecipientPath, findByRecipientRoute);
         getForList(findResponseSummariesPath, findResponseSummariesRoute);
+        postForDatum(getIssuancePath, reissueRoute);
         postForDatum(BASE_URL, attestationRunCreateRoute);
         postForDatum(getCreateSummaryPath, getCreateSummaryRoute);
     }
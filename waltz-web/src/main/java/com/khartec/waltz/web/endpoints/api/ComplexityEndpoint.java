@@ -51,13 +51,16 @@ public class ComplexityEndpoint implements Endpoint {
         String getForAppPath = mkPath(BASE_URL, "application", ":id");
         String findForAppIdSelectorPath = BASE_URL;
         String rebuildPath = mkPath(BASE_URL, "rebuild");
+        String rebuildChangedPath = mkPath(BASE_URL, "rebuild", "changed");
 
         DatumRoute<ComplexityRating> getForAppRoute = (request, response) -> service.getForApp(getId(request));
         ListRoute<ComplexityRating> findForAppIdSelectorRoute = (request, response) -> service.findForAppIdSelector(readAppIdSelectionOptionsFromBody(request));
         DatumRoute<Integer> rebuildRoute = (request, response) -> service.rebuild();
+        DatumRoute<Integer> rebuildChangedRoute = (request, response) -> service.rebuildChanged();
 
         getForDatum(getForAppPath, getForAppRoute);
         postForList(findForAppIdSelectorPath, findForAppIdSelectorRoute);
         getForDatum(rebuildPath, rebuildRoute);
+        getForDatum(rebuildChangedPath, rebuildChangedRoute);
     }
 }
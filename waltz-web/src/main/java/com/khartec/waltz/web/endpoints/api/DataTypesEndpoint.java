@@ -30,6 +30,7 @@ import org.springframework.stereotype.Service;
 import static com.khartec.waltz.common.Checks.checkNotNull;
 import static com.khartec.waltz.web.WebUtilities.mkPath;
 import static com.khartec.waltz.web.endpoints.EndpointUtilities.getForList;
+import static com.khartec.waltz.web.endpoints.EndpointUtilities.getForVersionedList;
 
 
 @Service
@@ -53,7 +54,7 @@ public class DataTypesEndpoint implements Endpoint {
         ListRoute<DataType> searchRoute = (request, response) ->
                 service.search(request.params("query"));
 
-        getForList(BASE_URL, (request, response) -> service.findAll());
+        getForVersionedList(BASE_URL, (request, response) -> service.findAll());
         getForList(searchPath, searchRoute);
     }
 
@@ -28,7 +28,7 @@ import org.springframework.stereotype.Service;
 
 import static com.khartec.waltz.common.Checks.checkNotNull;
 import static com.khartec.waltz.web.WebUtilities.mkPath;
-import static com.khartec.waltz.web.endpoints.EndpointUtilities.getForList;
+import static com.khartec.waltz.web.endpoints.EndpointUtilities.getForVersionedList;
 
 @Service
 public class EnumValueEndpoint implements Endpoint {
@@ -50,6 +50,6 @@ public class EnumValueEndpoint implements Endpoint {
 
         ListRoute<EnumValue> findAllRoute = (req, resp) -> enumValueService.findAll();
 
-        getForList(findAllPath, findAllRoute);
+        getForVersionedList(findAllPath, findAllRoute);
     }
 }
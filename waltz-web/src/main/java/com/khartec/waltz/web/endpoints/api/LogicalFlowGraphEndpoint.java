@@ -0,0 +1,118 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.khartec.waltz.web.endpoints.api;
+
+import com.khartec.waltz.model.EntityReference;
+import com.khartec.waltz.model.logical_flow.LogicalFlowGraphLink;
+import com.khartec.waltz.service.logical_flow.LogicalFlowGraphService;
+import com.khartec.waltz.web.ListRoute;
+import com.khartec.waltz.web.endpoints.Endpoint;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import spark.Request;
+
+import java.util.Optional;
+import java.util.Set;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.StreamUtilities.ofNullableArray;
+import static com.khartec.waltz.web.WebUtilities.*;
+import static com.khartec.waltz.web.endpoints.EndpointUtilities.getForList;
+import static java.util.stream.Collectors.toSet;
+
+
+/**
+ * Lineage and routing over the logical flow network.  All routes accept
+ * optional query parameters:
+ * <ul>
+ *     <li><code>depth</code> - maximum number of hops (default 3, max 10)</li>
+ *     <li><code>dataType</code> - only follow flows carrying this data type, may be repeated</li>
+ *     <li><code>limit</code> - maximum number of flows to return (lineage only)</li>
+ * </ul>
+ */
+@Service
+public class LogicalFlowGraphEndpoint implements Endpoint {
+
+    private static final String BASE_URL = mkPath("api", "logical-flow-graph");
+    private static final int DEFAULT_DEPTH = 3;
+
+    private final LogicalFlowGraphService logicalFlowGraphService;
+
+
+    @Autowired
+    public LogicalFlowGraphEndpoint(LogicalFlowGraphService logicalFlowGraphService) {
+        checkNotNull(logicalFlowGraphService, "logicalFlowGraphService cannot be null");
+        this.logicalFlowGraphService = logicalFlowGraphService;
+    }
+
+
+    @Override
+    public void register() {
+        String findUpstreamPath = mkPath(BASE_URL, "upstream", ":kind", ":id");
+        String findDownstreamPath = mkPath(BASE_URL, "downstream", ":kind", ":id");
+        String findRoutePath = mkPath(BASE_URL, "route", ":sourceKind", ":sourceId", ":targetKind", ":targetId");
+
+        ListRoute<LogicalFlowGraphLink> findUpstreamRoute = (request, response)
+                -> logicalFlowGraphService.findUpstream(
+                        getEntityReference(request),
+                        getDepth(request),
+                        getDataTypeIds(request),
+                        getLimit(request).orElse(LogicalFlowGraphService.MAX_LINKS));
+
+        ListRoute<LogicalFlowGraphLink> findDownstreamRoute = (request, response)
+                -> logicalFlowGraphService.findDownstream(
+                        getEntityReference(request),
+                        getDepth(request),
+                        getDataTypeIds(request),
+                        getLimit(request).orElse(LogicalFlowGraphService.MAX_LINKS));
+
+        ListRoute<LogicalFlowGraphLink> findRouteRoute = (request, response) -> {
+            EntityReference source = getEntityReference(request, "sourceKind", "sourceId");
+            EntityReference target = getEntityReference(request, "targetKind", "targetId");
+            return logicalFlowGraphService.findRoute(
+                    source,
+                    target,
+                    getDepth(request),
+                    getDataTypeIds(request));
+        };
+
+        getForList(findUpstreamPath, findUpstreamRoute);
+        getForList(findDownstreamPath, findDownstreamRoute);
+        getForList(findRoutePath, findRouteRoute);
+    }
+
+
+    // -- HELPERS ---
+
+    private int getDepth(Request request) {
+        return Optional
+                .ofNullable(request.queryParams("depth"))
+                .map(Integer::valueOf)
+                .orElse(DEFAULT_DEPTH);
+    }
+
+
+    private Set<Long> getDataTypeIds(Request request) {
+        return ofNullableArray(request.queryParamsValues("dataType"))
+                .map(Long::valueOf)
+                .collect(toSet());
+    }
+
+}
@@ -30,7 +30,7 @@ import org.springframework.stereotype.Service;
 import static com.khartec.waltz.web.WebUtilities.getId;
 import static com.khartec.waltz.web.WebUtilities.mkPath;
 import static com.khartec.waltz.web.endpoints.EndpointUtilities.getForDatum;
-import static com.khartec.waltz.web.endpoints.EndpointUtilities.getForList;
+import static com.khartec.waltz.web.endpoints.EndpointUtilities.getForVersionedList;
 
 
 @Service
@@ -59,7 +59,7 @@ public class MeasurableCategoryEndpoint implements Endpoint {
         DatumRoute<MeasurableCategory> getByIdRoute = (request, response)
                 -> measurableCategoryService.getById(getId(request));
 
-        getForList(findAllPath, findAllRoute);
+        getForVersionedList(findAllPath, findAllRoute);
         getForDatum(getByIdPath, getByIdRoute);
     }
 
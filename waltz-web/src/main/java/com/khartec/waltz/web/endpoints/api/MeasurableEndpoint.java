@@ -30,6 +30,7 @@ import org.springframework.stereotype.Service;
 import static com.khartec.waltz.web.WebUtilities.*;
 import static com.khartec.waltz.web.endpoints.EndpointUtilities.getForDatum;
 import static com.khartec.waltz.web.endpoints.EndpointUtilities.getForList;
+import static com.khartec.waltz.web.endpoints.EndpointUtilities.getForVersionedList;
 import static com.khartec.waltz.web.endpoints.EndpointUtilities.postForList;
 
 
@@ -75,7 +76,7 @@ public class MeasurableEndpoint implements Endpoint {
         ListRoute<Measurable> findByExternalIdRoute = (request, response)
                 -> measurableService.findByExternalId(request.params("extId"));
 
-        getForList(findAllPath, findAllRoute);
+        getForVersionedList(findAllPath, findAllRoute);
         getForList(findMeasurablesRelatedToPath, findMeasurablesRelatedToEntityRoute);
         getForList(findByExternalIdPath, findByExternalIdRoute);
         postForList(findByMeasurableIdSelectorPath, findByMeasurableIdSelectorRoute);
@@ -83,7 +83,7 @@ public class OrganisationUnitEndpoint implements Endpoint {
         DatumRoute<OrganisationalUnit> getByIdRoute = (request, response) -> service.getById(getId(request));
 
 
-        getForList(findAllPath, findAllRoute);
+        getForVersionedList(findAllPath, findAllRoute);
         getForList(searchPath, searchRoute);
         getForList(findImmediateHierarchyPath, findImmediateHierarchyRoute);
         getForList(findDescendantsPath, findDescendantsRoute);
@@ -144,6 +144,17 @@ public class PhysicalFlowEndpoint implements Endpoint {
                 BASE_URL,
                 "upload");
 
+        String submitUploadJobPath = mkPath(
+                BASE_URL,
+                "upload",
+                "job");
+
+        String getUploadJobPath = mkPath(
+                BASE_URL,
+                "upload",
+                "job",
+                ":id");
+
         String cleanupOrphansPath = mkPath(BASE_URL, "cleanup-orphans");
 
 
@@ -192,6 +203,8 @@ public class PhysicalFlowEndpoint implements Endpoint {
         postForDatum(updateAttributePath, this::updateAttribute);
         postForDatum(validateUploadPath, this::validateUpload);
         postForDatum(uploadPath, this::upload);
+        postForDatum(submitUploadJobPath, this::submitUploadJob);
+        getForDatum(getUploadJobPath, this::getUploadJob);
 
         deleteForDatum(deletePath, this::deleteFlow);
         getForDatum(cleanupOrphansPath, this::cleanupOrphansRoute);
@@ -267,6 +280,22 @@ public class PhysicalFlowEndpoint implements Endpoint {
     }
 
 
+    private PhysicalFlowUploadJob submitUploadJob(Request request, Response response) throws IOException {
+        requireRole(userRoleService, request, SystemRole.LOGICAL_DATA_FLOW_EDITOR);
+        List<PhysicalFlowUploadCommand> commands = Arrays.asList(readBody(request, PhysicalFlowUploadCommand[].class));
+        String username = getUsername(request);
+
+        LOG.info("User: {}, submitted physical flow upload of {} rows", username, commands.size());
+        return physicalFlowUploadService.submitUpload(username, commands);
+    }
+
+
+    private PhysicalFlowUploadJob getUploadJob(Request request, Response response) {
+        requireRole(userRoleService, request, SystemRole.LOGICAL_DATA_FLOW_EDITOR);
+        return physicalFlowUploadService.getUploadJob(request.params("id"), getUsername(request));
+    }
+
+
     private Integer cleanupOrphansRoute(Request request, Response response) throws IOException {
         requireRole(userRoleService, request, SystemRole.ADMIN);
 
@@ -0,0 +1,87 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.khartec.waltz.web.endpoints.api;
+
+import com.khartec.waltz.model.query_metric.QueryMetric;
+import com.khartec.waltz.model.user.SystemRole;
+import com.khartec.waltz.service.QueryMetricsRegistry;
+import com.khartec.waltz.service.user.UserRoleService;
+import com.khartec.waltz.web.DatumRoute;
+import com.khartec.waltz.web.ListRoute;
+import com.khartec.waltz.web.endpoints.Endpoint;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.web.WebUtilities.*;
+import static com.khartec.waltz.web.endpoints.EndpointUtilities.deleteForDatum;
+import static com.khartec.waltz.web.endpoints.EndpointUtilities.getForList;
+
+
+@Service
+public class QueryMetricsEndpoint implements Endpoint {
+
+    private static final String BASE_URL = mkPath("api", "query-metrics");
+    private static final int DEFAULT_LIMIT = 20;
+
+    private final QueryMetricsRegistry queryMetricsRegistry;
+    private final UserRoleService userRoleService;
+
+
+    @Autowired
+    public QueryMetricsEndpoint(QueryMetricsRegistry queryMetricsRegistry,
+                                UserRoleService userRoleService) {
+        checkNotNull(queryMetricsRegistry, "queryMetricsRegistry cannot be null");
+        checkNotNull(userRoleService, "userRoleService cannot be null");
+
+        this.queryMetricsRegistry = queryMetricsRegistry;
+        this.userRoleService = userRoleService;
+    }
+
+
+    @Override
+    public void register() {
+        String findSlowestPath = mkPath(BASE_URL, "slowest");
+        String findMostFrequentPath = mkPath(BASE_URL, "most-frequent");
+        String resetPath = mkPath(BASE_URL);
+
+        ListRoute<QueryMetric> findSlowestRoute = (request, response) -> {
+            requireRole(userRoleService, request, SystemRole.ADMIN);
+            return queryMetricsRegistry.findSlowest(getLimit(request).orElse(DEFAULT_LIMIT));
+        };
+
+        ListRoute<QueryMetric> findMostFrequentRoute = (request, response) -> {
+            requireRole(userRoleService, request, SystemRole.ADMIN);
+            return queryMetricsRegistry.findMostFrequent(getLimit(request).orElse(DEFAULT_LIMIT));
+        };
+
+        DatumRoute<Boolean> resetRoute = (request, response) -> {
+            requireRole(userRoleService, request, SystemRole.ADMIN);
+            queryMetricsRegistry.reset();
+            return true;
+        };
+
+        getForList(findSlowestPath, findSlowestRoute);
+        getForList(findMostFrequentPath, findMostFrequentRoute);
+        deleteForDatum(resetPath, resetRoute);
+    }
+
+}
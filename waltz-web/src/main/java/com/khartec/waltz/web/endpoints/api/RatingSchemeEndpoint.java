@@ -28,7 +28,7 @@ import static com.khartec.waltz.common.Checks.checkNotNull;
 import static com.khartec.waltz.web.WebUtilities.getId;
 import static com.khartec.waltz.web.WebUtilities.mkPath;
 import static com.khartec.waltz.web.endpoints.EndpointUtilities.getForDatum;
-import static com.khartec.waltz.web.endpoints.EndpointUtilities.getForList;
+import static com.khartec.waltz.web.endpoints.EndpointUtilities.getForVersionedList;
 
 
 @Service
@@ -48,7 +48,7 @@ public class RatingSchemeEndpoint implements Endpoint {
         String findAllPath = BASE_URL;
         String getByIdPath = mkPath(BASE_URL, "id", ":id");
 
-        getForList(findAllPath, (req, resp) -> ratingSchemeService.findAll());
+        getForVersionedList(findAllPath, (req, resp) -> ratingSchemeService.findAll());
         getForDatum(getByIdPath, (req, resp) -> ratingSchemeService.getById(getId(req)));
     }
 }
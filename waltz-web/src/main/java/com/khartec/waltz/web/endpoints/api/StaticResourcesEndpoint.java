@@ -19,6 +19,7 @@
 
 package com.khartec.waltz.web.endpoints.api;
 
+import com.khartec.waltz.web.CompressionUtilities;
 import com.khartec.waltz.web.endpoints.Endpoint;
 import org.eclipse.jetty.http.HttpHeader;
 import org.slf4j.Logger;
@@ -73,16 +74,17 @@ public class StaticResourcesEndpoint implements Endpoint {
                             request.pathInfo());
                     LOG.info(message);
 
-                    response.type(getMimeType(resolvedPath));
+                    String mimeType = getMimeType(resolvedPath);
+                    response.type(mimeType);
 
                     addCacheHeadersIfNeeded(response, resolvedPath);
                     InputStream modifiedStream = modifyIndexBaseTagIfNeeded(request, resolvedPath, resourceAsStream);
 
-                    OutputStream out = response
-                            .raw()
-                            .getOutputStream();
-                    copyStream(modifiedStream, out);
-                    out.flush();
+                    try (OutputStream out = isCompressible(mimeType)
+                            ? CompressionUtilities.openOutputStream(request, response, -1)
+                            : response.raw().getOutputStream()) {
+                        copyStream(modifiedStream, out);
+                    }
 
                     return new Object(); // indicate we have handled the request
                 }
@@ -110,6 +112,18 @@ public class StaticResourcesEndpoint implements Endpoint {
     }
 
 
+    /**
+     * Text based resources (scripts, stylesheets, html, svg) compress well,
+     * images and fonts are typically compressed already.
+     */
+    private boolean isCompressible(String mimeType) {
+        return mimeType.startsWith("text/")
+                || mimeType.contains("javascript")
+                || mimeType.contains("json")
+                || mimeType.contains("xml");
+    }
+
+
     /**
      * index.html need to have a <base href="/[site_context]/" /> tag in the head section to ensure
      * html5 mode works correctly in AngularJS.  This method will ensure the existing <base href="/" /> tag
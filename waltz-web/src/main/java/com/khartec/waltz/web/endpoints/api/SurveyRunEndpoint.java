@@ -71,6 +71,7 @@ public class SurveyRunEndpoint implements Endpoint {
         String surveyRunUpdatePath = mkPath(BASE_URL, ":id");
         String generateSurveyRunRecipientsPath = mkPath(BASE_URL, ":id", "recipients");
         String createSurveyRunInstancesAndRecipientsPath = mkPath(BASE_URL, ":id", "recipients");
+        String createSurveyRunInstancesAndRecipientsJobPath = mkPath(BASE_URL, ":id", "recipients", "job");
         String createSurveyInstancesPath = mkPath(BASE_URL, ":id", "create-instances");
         String updateSurveyRunStatusPath = mkPath(BASE_URL, ":id", "status");
         String updateSurveyRunDueDatePath = mkPath(BASE_URL, ":id", "due-date");
@@ -138,6 +139,21 @@ public class SurveyRunEndpoint implements Endpoint {
                     newArrayList(readBody(request, SurveyInstanceRecipient[].class)));
         };
 
+        DatumRoute<SurveyInstanceCreationJob> submitSurveyRunInstancesAndRecipientsJobRoute = (request, response) -> {
+            ensureUserHasAdminRights(request);
+
+            return surveyRunService.submitSurveyInstancesAndRecipients(
+                    getUsername(request),
+                    getId(request),
+                    newArrayList(readBody(request, SurveyInstanceRecipient[].class)));
+        };
+
+        DatumRoute<SurveyInstanceCreationJob> getSurveyRunInstancesAndRecipientsJobRoute = (request, response) -> {
+            ensureUserHasAdminRights(request);
+
+            return surveyRunService.getSurveyInstanceCreationJob(getId(request));
+        };
+
         DatumRoute<Boolean> createSurveyInstancesRoute = (request, response) -> {
             long runId = getId(request);
             List<Long> personIds = readIdsFromBody(request);
@@ -157,6 +173,8 @@ public class SurveyRunEndpoint implements Endpoint {
         postForDatum(BASE_URL, surveyRunCreateRoute);
         putForDatum(surveyRunUpdatePath, surveyRunUpdateRoute);
         postForDatum(createSurveyRunInstancesAndRecipientsPath, createSurveyRunInstancesAndRecipientsRoute);
+        postForDatum(createSurveyRunInstancesAndRecipientsJobPath, submitSurveyRunInstancesAndRecipientsJobRoute);
+        getForDatum(createSurveyRunInstancesAndRecipientsJobPath, getSurveyRunInstancesAndRecipientsJobRoute);
         postForDatum(createSurveyInstancesPath, createSurveyInstancesRoute);
         putForDatum(updateSurveyRunStatusPath, surveyRunUpdateStatusRoute);
         putForDatum(updateSurveyRunDueDatePath, surveyRunUpdateDueDateRoute);
@@ -53,16 +53,19 @@ public class AuthenticationEndpoint implements Endpoint {
     private final UserService userService;
     private final UserRoleService userRoleService;
     private final SettingsService settingsService;
+    private final VerifiedTokenCache verifiedTokenCache;
     private final Filter filter;
 
 
     @Autowired
     public AuthenticationEndpoint(UserService userService,
                                   UserRoleService userRoleService,
-                                  SettingsService settingsService) {
+                                  SettingsService settingsService,
+                                  VerifiedTokenCache verifiedTokenCache) {
         this.userService = userService;
         this.userRoleService = userRoleService;
         this.settingsService = settingsService;
+        this.verifiedTokenCache = verifiedTokenCache;
 
         this.filter = settingsService
                 .getValue(NamedSettings.authenticationFilter)
@@ -74,7 +77,7 @@ public class AuthenticationEndpoint implements Endpoint {
     private Supplier<Filter> createDefaultFilter() {
         return () -> {
             LOG.info("Using default (jwt) authentication filter");
-            return new JWTAuthenticationFilter(settingsService);
+            return new JWTAuthenticationFilter(settingsService, verifiedTokenCache);
         };
     }
 
@@ -29,10 +29,16 @@ import org.slf4j.LoggerFactory;
 import spark.Request;
 import spark.Response;
 
+import java.util.Optional;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+
 
 /**
  * Authentication filter which verifies a jwt token.  We only care
- * about the bearer name.
+ * about the bearer name.  Tokens which have already been verified are
+ * remembered (see {@link VerifiedTokenCache}) so the signature is not
+ * re-checked on every request.
  */
 public class JWTAuthenticationFilter extends WaltzFilter {
 
@@ -40,10 +46,19 @@ public class JWTAuthenticationFilter extends WaltzFilter {
 
     private final JWTVerifier verifier256;
     private final JWTVerifier verifier512;
+    private final VerifiedTokenCache verifiedTokenCache;
 
 
     public JWTAuthenticationFilter(SettingsService settingsService) {
+        this(settingsService, new VerifiedTokenCache(10_000, 600));
+    }
+
+
+    public JWTAuthenticationFilter(SettingsService settingsService,
+                                   VerifiedTokenCache verifiedTokenCache) {
         super(settingsService);
+        checkNotNull(verifiedTokenCache, "verifiedTokenCache cannot be null");
+        this.verifiedTokenCache = verifiedTokenCache;
         try {
             Algorithm algorithm256 = Algorithm.HMAC256(JWTUtilities.SECRET);
             Algorithm algorithm512 = Algorithm.HMAC512(JWTUtilities.SECRET);
@@ -66,16 +81,29 @@ public class JWTAuthenticationFilter extends WaltzFilter {
             AuthenticationUtilities.setUserAsAnonymous(request);
         } else {
             String token = authorizationHeader.replaceFirst("Bearer ", "");
-            DecodedJWT decodedToken = JWT.decode(token);
-
-            JWTVerifier verifier = selectVerifier(decodedToken);
 
-            DecodedJWT decodedJWT = verifier.verify(token);
-            AuthenticationUtilities.setUser(request, decodedJWT.getSubject());
+            Optional<String> previouslyVerifiedSubject = verifiedTokenCache.findSubject(token);
+            if (previouslyVerifiedSubject.isPresent()) {
+                AuthenticationUtilities.setUser(request, previouslyVerifiedSubject.get());
+            } else {
+                DecodedJWT decodedJWT = verify(token);
+                AuthenticationUtilities.setUser(request, decodedJWT.getSubject());
+            }
         }
     }
 
 
+    private DecodedJWT verify(String token) {
+        DecodedJWT decodedToken = JWT.decode(token);
+
+        JWTVerifier verifier = selectVerifier(decodedToken);
+
+        DecodedJWT decodedJWT = verifier.verify(token);
+        verifiedTokenCache.recordVerified(token, decodedJWT.getSubject(), decodedJWT.getExpiresAt());
+        return decodedJWT;
+    }
+
+
     private JWTVerifier mkVerifier(Algorithm algorithm) {
         return JWT
                 .require(algorithm)
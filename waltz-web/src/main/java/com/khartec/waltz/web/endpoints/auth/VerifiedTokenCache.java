@@ -0,0 +1,195 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.khartec.waltz.web.endpoints.auth;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.khartec.waltz.common.Checks.checkNotNull;
+import static com.khartec.waltz.common.Checks.checkTrue;
+
+
+/**
+ * Remembers bearer tokens which have already passed verification so repeat
+ * requests with the same token can skip decoding and signature checks.
+ *
+ * Tokens are held as SHA-256 digests, never in the clear.  An entry lives
+ * until the token expires or for at most `maxAge`, whichever comes first,
+ * as Waltz issued tokens do not carry an expiry.  The cache is bounded, when
+ * full expired entries are purged and, failing that, the cache is cleared.
+ */
+@Component
+@ManagedResource(description = "Cache of verified JWT tokens")
+public class VerifiedTokenCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VerifiedTokenCache.class);
+
+    private static final ThreadLocal<MessageDigest> DIGESTER = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    });
+
+
+    private static class VerifiedToken {
+
+        private final String subject;
+        private final long expiresAt;
+
+
+        private VerifiedToken(String subject, long expiresAt) {
+            this.subject = subject;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+
+    private final Map<String, VerifiedToken> tokensByDigest = new ConcurrentHashMap<>();
+    private final AtomicLong verificationsAvoided = new AtomicLong();
+    private final AtomicLong verificationsPerformed = new AtomicLong();
+
+    private final int maxEntries;
+    private final long maxAgeInMillis;
+
+
+    @Autowired
+    public VerifiedTokenCache(@Value("${waltz.jwt.cache.max.entries:10000}") int maxEntries,
+                              @Value("${waltz.jwt.cache.ttl:600}") int maxAgeInSeconds) {
+        checkTrue(maxEntries >= 0, "maxEntries cannot be negative");
+        checkTrue(maxAgeInSeconds >= 0, "maxAgeInSeconds cannot be negative");
+
+        this.maxEntries = maxEntries;
+        this.maxAgeInMillis = TimeUnit.SECONDS.toMillis(maxAgeInSeconds);
+    }
+
+
+    /**
+     * @return the subject of the token if it has previously been verified and has not expired
+     */
+    public Optional<String> findSubject(String token) {
+        checkNotNull(token, "token cannot be null");
+
+        if (maxEntries == 0) {
+            return Optional.empty();
+        }
+
+        String digest = digest(token);
+        VerifiedToken verified = tokensByDigest.get(digest);
+
+        if (verified == null) {
+            return Optional.empty();
+        }
+
+        if (verified.expiresAt <= System.currentTimeMillis()) {
+            tokensByDigest.remove(digest);
+            return Optional.empty();
+        }
+
+        verificationsAvoided.incrementAndGet();
+        return Optional.ofNullable(verified.subject);
+    }
+
+
+    /**
+     * Records a token which has just passed verification.
+     * @param expiresAt  expiry claim of the token, may be null
+     */
+    public void recordVerified(String token, String subject, Date expiresAt) {
+        checkNotNull(token, "token cannot be null");
+        verificationsPerformed.incrementAndGet();
+
+        if (maxEntries == 0) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        long expiry = expiresAt == null
+                ? now + maxAgeInMillis
+                : Math.min(expiresAt.getTime(), now + maxAgeInMillis);
+
+        if (tokensByDigest.size() >= maxEntries) {
+            makeRoom(now);
+        }
+
+        tokensByDigest.put(digest(token), new VerifiedToken(subject, expiry));
+    }
+
+
+    @ManagedOperation(description = "Remove all verified tokens, forcing them to be verified again")
+    public void clear() {
+        LOG.warn("Clearing verified token cache (via jmx)");
+        tokensByDigest.clear();
+    }
+
+
+    @ManagedAttribute(description = "Number of verified tokens currently cached")
+    public int getSize() {
+        return tokensByDigest.size();
+    }
+
+
+    @ManagedAttribute(description = "Number of requests which reused a previous verification")
+    public long getVerificationsAvoided() {
+        return verificationsAvoided.get();
+    }
+
+
+    @ManagedAttribute(description = "Number of full token verifications performed")
+    public long getVerificationsPerformed() {
+        return verificationsPerformed.get();
+    }
+
+
+    // -- HELPERS ---
+
+    private void makeRoom(long now) {
+        tokensByDigest.values().removeIf(t -> t.expiresAt <= now);
+        if (tokensByDigest.size() >= maxEntries) {
+            LOG.info("Verified token cache is full ({} entries), clearing", tokensByDigest.size());
+            tokensByDigest.clear();
+        }
+    }
+
+
+    private static String digest(String token) {
+        byte[] hash = DIGESTER.get().digest(token.getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(hash);
+    }
+
+}
@@ -20,33 +20,54 @@
 package com.khartec.waltz.web.endpoints.extracts;
 
 
+import com.khartec.waltz.web.CompressionUtilities;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellType;
 import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.util.CellRangeAddress;
-import org.apache.poi.xssf.usermodel.XSSFSheet;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.eclipse.jetty.http.MimeTypes;
+import org.jooq.Cursor;
 import org.jooq.DSLContext;
 import org.jooq.Field;
+import org.jooq.Record;
 import org.jooq.Select;
+import org.jooq.impl.DSL;
+import org.supercsv.io.CsvListWriter;
+import org.supercsv.prefs.CsvPreference;
 import spark.Request;
 import spark.Response;
 
+import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletResponse;
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.Objects;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.khartec.waltz.common.Checks.checkNotNull;
 import static com.khartec.waltz.common.EnumUtilities.readEnum;
 import static com.khartec.waltz.common.StringUtilities.mkSafe;
-import static java.util.Optional.ofNullable;
+import static java.util.stream.Collectors.toList;
 
 
+/**
+ * Extracts are streamed to the client.  Rows are read from the database via
+ * a lazy cursor and written straight to the response (CSV) or to a windowed
+ * workbook which only keeps a handful of rows in memory (XLSX).  No content
+ * length is set so the container will use chunked transfer encoding.  CSV
+ * output is gzipped when enabled and accepted by the client, XLSX is already
+ * a zip archive so is sent as is.
+ */
 public abstract class BaseDataExtractor {
 
+    private static final int FETCH_SIZE = 1000;
+    private static final int EXCEL_ROW_ACCESS_WINDOW = 100;
+
     protected DSLContext dsl;
 
 
@@ -68,7 +89,7 @@ public abstract class BaseDataExtractor {
             case XLSX:
                 return writeAsExcel(suggestedFilenameStem, qry, response);
             case CSV:
-                return writeAsCSV(suggestedFilenameStem, qry, response);
+                return writeAsCSV(suggestedFilenameStem, qry, request, response);
             default:
                 throw new IllegalArgumentException("Cannot write extract using unknown format: " + format);
         }
@@ -78,29 +99,33 @@ public abstract class BaseDataExtractor {
     private Object writeAsExcel(String suggestedFilenameStem,
                                 Select<?> qry,
                                 Response response) throws IOException {
-        XSSFWorkbook workbook = new XSSFWorkbook();
-        XSSFSheet sheet = workbook.createSheet(sanitizeSheetName(suggestedFilenameStem));
-
-        writeExcelHeader(qry, sheet);
-        writeExcelBody(qry, sheet);
+        SXSSFWorkbook workbook = new SXSSFWorkbook(EXCEL_ROW_ACCESS_WINDOW);
+        try {
+            SXSSFSheet sheet = workbook.createSheet(sanitizeSheetName(suggestedFilenameStem));
 
-        sheet.setAutoFilter(new CellRangeAddress(0, 0, 0, qry.fields().length));
-        sheet.createFreezePane(0, 1);
+            writeExcelHeader(qry, sheet);
+            writeExcelBody(qry, sheet);
 
-        byte[] bytes = convertExcelToByteArray(workbook);
+            sheet.setAutoFilter(new CellRangeAddress(0, 0, 0, qry.fields().length));
+            sheet.createFreezePane(0, 1);
 
-        HttpServletResponse httpResponse = response.raw();
+            HttpServletResponse httpResponse = response.raw();
 
-        httpResponse.setHeader("Content-Type", "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
-        httpResponse.setHeader("Content-Disposition", "attachment; filename=" + suggestedFilenameStem + ".xlsx");
-        httpResponse.setHeader("Content-Transfer-Encoding", "7bit");
+            httpResponse.setHeader("Content-Type", "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+            httpResponse.setHeader("Content-Disposition", "attachment; filename=" + suggestedFilenameStem + ".xlsx");
+            httpResponse.setHeader("Content-Transfer-Encoding", "7bit");
 
-        httpResponse.setContentLength(bytes.length);
-        httpResponse.getOutputStream().write(bytes);
-        httpResponse.getOutputStream().flush();
-        httpResponse.getOutputStream().close();
+            ServletOutputStream outputStream = httpResponse.getOutputStream();
+            workbook.write(outputStream);
+            outputStream.flush();
+            outputStream.close();
 
-        return httpResponse;
+            return httpResponse;
+        } finally {
+            // removes the temporary files backing the flushed rows
+            workbook.dispose();
+            workbook.close();
+        }
     }
 
 
@@ -111,49 +136,77 @@ public abstract class BaseDataExtractor {
 
     private Object writeAsCSV(String suggestedFilenameStem,
                               Select<?> qry,
-                              Response response) {
-        String csv = qry.fetch().formatCSV();
-        response.type(MimeTypes.Type.TEXT_PLAIN.name());
-        response.header("Content-disposition", "attachment; filename=" + suggestedFilenameStem + ".csv");
-        return csv;
-    }
+                              Request request,
+                              Response response) throws IOException {
+        HttpServletResponse httpResponse = response.raw();
+
+        httpResponse.setHeader("Content-Type", MimeTypes.Type.TEXT_PLAIN_UTF_8.asString());
+        httpResponse.setHeader("Content-Disposition", "attachment; filename=" + suggestedFilenameStem + ".csv");
+
+        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+                CompressionUtilities.openOutputStream(request, response, -1),
+                StandardCharsets.UTF_8));
+
+        try (CsvListWriter csvWriter = new CsvListWriter(writer, CsvPreference.STANDARD_PREFERENCE)) {
+
+            csvWriter.write(qry
+                    .fieldStream()
+                    .map(Field::getName)
+                    .collect(toList()));
 
+            streamRows(qry, r -> csvWriter.write(r.intoList()));
+        }
 
-    private byte[] convertExcelToByteArray(XSSFWorkbook workbook) throws IOException {
-        ByteArrayOutputStream outByteStream = new ByteArrayOutputStream();
-        workbook.write(outByteStream);
-        workbook.close();
-        return outByteStream.toByteArray();
+        return httpResponse;
     }
 
 
-    private void writeExcelBody(Select<?> qry, XSSFSheet sheet) {
+    private void writeExcelBody(Select<?> qry, Sheet sheet) {
         AtomicInteger rowNum = new AtomicInteger(1);
-        qry.fetch().forEach(r -> {
+        streamRows(qry, r -> {
             Row row = sheet.createRow(rowNum.getAndIncrement());
-            AtomicInteger colNum = new AtomicInteger(0);
+            int colNum = 0;
             for (Field<?> field : r.fields()) {
-                Cell cell = row.createCell(colNum.getAndIncrement());
-                ofNullable(r.get(field)).ifPresent(v -> {
-                    if (v instanceof Number) {
-                        cell.setCellType(CellType.NUMERIC);
-                        cell.setCellValue(((Number) v).doubleValue());
-                    } else {
-                        cell.setCellValue(Objects.toString(v));
-                    }
-                });
+                Cell cell = row.createCell(colNum++);
+                Object v = r.get(field);
+                if (v == null) {
+                    continue;
+                }
+                if (v instanceof Number) {
+                    cell.setCellType(CellType.NUMERIC);
+                    cell.setCellValue(((Number) v).doubleValue());
+                } else {
+                    cell.setCellValue(Objects.toString(v));
+                }
+            }
+        });
+    }
+
+
+    /**
+     * Opens a lazy cursor over the query and hands each row to the given
+     * writer.  The cursor is opened inside a transaction as the
+     * Postgres driver only uses the fetch size, rather than materialising the
+     * full result set, when autocommit is off.
+     */
+    private void streamRows(Select<?> qry, RowWriter rowWriter) {
+        dsl.transaction(ctx -> {
+            try (Cursor<? extends Record> cursor = DSL.using(ctx).fetchLazy(qry.fetchSize(FETCH_SIZE))) {
+                for (Record r : cursor) {
+                    rowWriter.write(r);
+                }
             }
         });
     }
 
 
-    private void writeExcelHeader(Select<?> qry, XSSFSheet sheet) {
+    private void writeExcelHeader(Select<?> qry, Sheet sheet) {
         Row headerRow = sheet.createRow(0);
-        AtomicInteger colNum = new AtomicInteger();
-        qry.fieldStream().forEach(f -> {
-            Cell cell = headerRow.createCell(colNum.getAndIncrement());
+        int colNum = 0;
+        for (Field<?> f : qry.fields()) {
+            Cell cell = headerRow.createCell(colNum++);
             cell.setCellValue(Objects.toString(f.getName()));
-        });
+        }
     }
 
 
@@ -164,4 +217,10 @@ public abstract class BaseDataExtractor {
                 v -> ExtractFormat.CSV);
     }
 
+
+    @FunctionalInterface
+    private interface RowWriter {
+        void write(Record r) throws IOException;
+    }
+
 }
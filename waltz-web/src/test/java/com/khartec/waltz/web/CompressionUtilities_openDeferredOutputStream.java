@@ -0,0 +1,121 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.khartec.waltz.web;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CompressionUtilities_openDeferredOutputStream {
+
+    private final List<Boolean> opened = new ArrayList<>();
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+
+    @Test
+    public void shortBodiesAreSentUncompressedOnClose() throws IOException {
+        OutputStream out = mkStream(10);
+        out.write("abc".getBytes());
+
+        assertTrue("nothing is written until the encoding is known", opened.isEmpty());
+
+        out.close();
+
+        assertEquals(1, opened.size());
+        assertFalse(opened.get(0));
+        assertEquals("abc", body.toString());
+    }
+
+
+    @Test
+    public void longBodiesSwitchToCompressionAtTheThreshold() throws IOException {
+        OutputStream out = mkStream(4);
+        out.write("ab".getBytes());
+        out.write("cd".getBytes());
+
+        assertEquals(1, opened.size());
+        assertTrue(opened.get(0));
+
+        out.write('e');
+        out.close();
+
+        assertEquals("abcde", body.toString());
+    }
+
+
+    @Test
+    public void negativeThresholdNeverCompresses() throws IOException {
+        OutputStream out = mkStream(-1);
+        out.write(new byte[100]);
+        out.close();
+
+        assertEquals(1, opened.size());
+        assertFalse(opened.get(0));
+        assertEquals(100, body.size());
+    }
+
+
+    @Test
+    public void flushBeforeTheThresholdDoesNotDecideTheEncoding() throws IOException {
+        OutputStream out = mkStream(10);
+        out.write("abc".getBytes());
+        out.flush();
+
+        assertTrue(opened.isEmpty());
+    }
+
+
+    @Test
+    public void closeIsIdempotent() throws IOException {
+        OutputStream out = mkStream(10);
+        out.close();
+        out.close();
+
+        assertEquals(1, opened.size());
+    }
+
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cannotWriteOnceClosed() throws IOException {
+        OutputStream out = mkStream(10);
+        out.close();
+        out.write('a');
+    }
+
+
+    // -- HELPERS ---
+
+    private OutputStream mkStream(int threshold) {
+        return new CompressionUtilities.DeferredOutputStream(
+                threshold,
+                compress -> {
+                    opened.add(compress);
+                    return body;
+                });
+    }
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.khartec.waltz.web.endpoints;
+
+import org.junit.Test;
+
+import static com.khartec.waltz.web.endpoints.EndpointUtilities.isNotModified;
+import static com.khartec.waltz.web.endpoints.EndpointUtilities.mkVersionETag;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EndpointUtilities_isNotModified {
+
+    private static final String ETAG = mkVersionETag(1000L, 7L, 3L, "admin");
+
+
+    @Test
+    public void getWithCurrentTagIsNotModified() {
+        assertTrue(isNotModified("GET", ETAG, ETAG));
+    }
+
+    @Test
+    public void getWithoutTagIsModified() {
+        assertFalse(isNotModified("GET", null, ETAG));
+    }
+
+    @Test
+    public void getWithStaleTagIsModified() {
+        assertFalse(isNotModified("GET", mkVersionETag(1000L, 6L, 3L, "admin"), ETAG));
+    }
+
+    @Test
+    public void otherMethodsAlwaysRunTheirHandler() {
+        assertFalse(isNotModified("POST", ETAG, ETAG));
+        assertFalse(isNotModified("PUT", "*", ETAG));
+        assertFalse(isNotModified("DELETE", ETAG, ETAG));
+    }
+
+}
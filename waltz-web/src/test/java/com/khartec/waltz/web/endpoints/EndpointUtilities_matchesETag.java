@@ -0,0 +1,100 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.khartec.waltz.web.endpoints;
+
+import org.junit.Test;
+
+import static com.khartec.waltz.web.endpoints.EndpointUtilities.matchesETag;
+import static com.khartec.waltz.web.endpoints.EndpointUtilities.mkVersionETag;
+import static org.junit.Assert.*;
+
+public class EndpointUtilities_matchesETag {
+
+    private static final String ETAG = mkVersionETag(1000L, 7L, 3L, "admin");
+    private static final String OPAQUE_TAG = ETAG.substring(2);
+
+
+    @Test
+    public void etagIsWeakAndStable() {
+        assertTrue(ETAG.startsWith("W/\"") && ETAG.endsWith("\""));
+        assertEquals(ETAG, mkVersionETag(1000L, 7L, 3L, "admin"));
+    }
+
+    @Test
+    public void etagMovesWithStartVersionTimeAndUser() {
+        assertNotEquals(ETAG, mkVersionETag(1001L, 7L, 3L, "admin"));
+        assertNotEquals(ETAG, mkVersionETag(1000L, 8L, 3L, "admin"));
+        assertNotEquals(ETAG, mkVersionETag(1000L, 7L, 4L, "admin"));
+        assertNotEquals(ETAG, mkVersionETag(1000L, 7L, 3L, "someone.else"));
+    }
+
+    @Test
+    public void anonymousUsersGetATag() {
+        assertTrue(matchesETag(mkVersionETag(1000L, 7L, 3L, null), mkVersionETag(1000L, 7L, 3L, null)));
+    }
+
+    @Test
+    public void noHeaderDoesNotMatch() {
+        assertFalse(matchesETag(null, ETAG));
+    }
+
+    @Test
+    public void exactTagMatches() {
+        assertTrue(matchesETag(ETAG, ETAG));
+    }
+
+    @Test
+    public void strongFormOfTagMatches() {
+        assertTrue(matchesETag(OPAQUE_TAG, ETAG));
+    }
+
+    @Test
+    public void gzipVariantOfTagMatches() {
+        String gzipTag = ETAG.substring(0, ETAG.length() - 1) + "--gzip\"";
+        assertTrue(matchesETag(gzipTag, ETAG));
+    }
+
+    @Test
+    public void anyTagInListMatches() {
+        assertTrue(matchesETag("\"abc\", " + ETAG, ETAG));
+    }
+
+    @Test
+    public void wildcardMatches() {
+        assertTrue(matchesETag("*", ETAG));
+    }
+
+    @Test
+    public void wildcardInListMatches() {
+        assertTrue(matchesETag("\"abc\", *", ETAG));
+    }
+
+    @Test
+    public void differentTagDoesNotMatch() {
+        assertFalse(matchesETag("\"abc\"", ETAG));
+        assertFalse(matchesETag("W/\"abc\"", ETAG));
+    }
+
+    @Test
+    public void tagFromEarlierVersionDoesNotMatch() {
+        assertFalse(matchesETag(mkVersionETag(1000L, 6L, 3L, "admin"), ETAG));
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Waltz - Enterprise Architecture
+ * Copyright (C) 2016, 2017, 2018, 2019 Waltz open source project
+ * See README.md for more information
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.khartec.waltz.web.endpoints.auth;
+
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+
+
+public class VerifiedTokenCacheTest {
+
+    @Test
+    public void verifiedTokensAreRemembered() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(10, 60);
+
+        assertEquals(Optional.empty(), cache.findSubject("abc"));
+
+        cache.recordVerified("abc", "bob", null);
+
+        assertEquals(Optional.of("bob"), cache.findSubject("abc"));
+        assertEquals(Optional.empty(), cache.findSubject("abd"));
+        assertEquals(1, cache.getVerificationsAvoided());
+        assertEquals(1, cache.getVerificationsPerformed());
+    }
+
+
+    @Test
+    public void expiredTokensAreForgotten() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(10, 60);
+
+        cache.recordVerified("abc", "bob", new Date(System.currentTimeMillis() - 1));
+
+        assertEquals(Optional.empty(), cache.findSubject("abc"));
+        assertEquals(0, cache.getSize());
+    }
+
+
+    @Test
+    public void cacheIsBounded() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(2, 60);
+
+        cache.recordVerified("a", "bob", null);
+        cache.recordVerified("b", "bob", null);
+        cache.recordVerified("c", "bob", null);
+
+        assertEquals(1, cache.getSize());
+        assertEquals(Optional.of("bob"), cache.findSubject("c"));
+    }
+
+
+    @Test
+    public void zeroEntriesDisablesCaching() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(0, 60);
+
+        cache.recordVerified("abc", "bob", null);
+
+        assertEquals(Optional.empty(), cache.findSubject("abc"));
+    }
+
+}